@@ -0,0 +1,55 @@
+package com.mozilla.secops;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for {@link CidrUtil} */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CidrUtilBenchmark {
+  private CidrUtil cidrs;
+
+  /** Initialize subnet list */
+  @Setup
+  public void setup() {
+    cidrs = new CidrUtil();
+    cidrs.add("10.0.0.0/8");
+    cidrs.add("172.16.0.0/12");
+    cidrs.add("192.168.0.0/16");
+    cidrs.add("127.0.0.1/32");
+    cidrs.add("2001:db8::/32");
+  }
+
+  /**
+   * Test an address that matches the last IPv4 subnet in the list
+   *
+   * @return Result
+   */
+  @Benchmark
+  public Boolean containsMatch() {
+    return cidrs.contains("127.0.0.1");
+  }
+
+  /**
+   * Test an address that does not match any subnet in the list
+   *
+   * @return Result
+   */
+  @Benchmark
+  public Boolean containsNoMatch() {
+    return cidrs.contains("216.160.83.56");
+  }
+}
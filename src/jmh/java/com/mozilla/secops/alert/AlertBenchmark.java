@@ -0,0 +1,58 @@
+package com.mozilla.secops.alert;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for {@link Alert} serialization */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AlertBenchmark {
+  private Alert alert;
+  private String alertJson;
+
+  /** Create test alert */
+  @Setup
+  public void setup() {
+    alert = new Alert();
+    alert.setSummary("test alert summary");
+    alert.setCategory("httprequest");
+    alert.setSeverity(Alert.AlertSeverity.WARNING);
+    alert.addToPayload("test alert payload");
+    alert.addMetadata("sourceaddress", "216.160.83.56");
+    alert.addMetadata("count", "100");
+    alertJson = alert.toJSON();
+  }
+
+  /**
+   * Serialize alert
+   *
+   * @return JSON string
+   */
+  @Benchmark
+  public String toJSON() {
+    return alert.toJSON();
+  }
+
+  /**
+   * Deserialize alert
+   *
+   * @return Alert
+   */
+  @Benchmark
+  public Alert fromJSON() {
+    return Alert.fromJSON(alertJson);
+  }
+}
@@ -0,0 +1,93 @@
+package com.mozilla.secops.parser;
+
+import com.mozilla.secops.TestUtil;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks for {@link EventFilter} */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventFilterBenchmark {
+  private EventFilter filter;
+  private EventFilter keyFilter;
+  private Event[] events;
+
+  /**
+   * Initialize filters and parse test data
+   *
+   * @throws Exception Exception
+   */
+  @Setup
+  public void setup() throws Exception {
+    filter = new EventFilter();
+    filter.addRule(
+        new EventFilterRule()
+            .wantSubtype(Payload.PayloadType.GLB)
+            .addPayloadFilter(
+                new EventFilterPayload(GLB.class)
+                    .withStringMatch(EventFilterPayload.StringProperty.GLB_REQUESTMETHOD, "GET")
+                    .withIntegerMatch(EventFilterPayload.IntegerProperty.GLB_STATUS, 200)));
+    filter.addRule(
+        new EventFilterRule()
+            .wantNormalizedType(Normalized.Type.HTTP_REQUEST)
+            .addPayloadFilter(
+                new EventFilterPayload()
+                    .withStringRegexMatch(
+                        EventFilterPayload.StringProperty.NORMALIZED_URLREQUESTPATH,
+                        "^/public/.*")));
+
+    keyFilter = new EventFilter().matchAny();
+    keyFilter.addKeyingSelector(
+        new EventFilterRule()
+            .addPayloadFilter(
+                new EventFilterPayload()
+                    .withStringSelector(EventFilterPayload.StringProperty.NORMALIZED_SOURCEADDRESS)
+                    .withStringSelector(
+                        EventFilterPayload.StringProperty.NORMALIZED_REQUESTMETHOD)));
+
+    Parser p = new Parser();
+    String[] input = TestUtil.getTestInputArray("/testdata/httpreq_hardlimit1.txt");
+    events = new Event[input.length];
+    for (int i = 0; i < input.length; i++) {
+      events[i] = p.parse(input[i]);
+    }
+  }
+
+  /**
+   * Apply filter to each event in the test data
+   *
+   * @param bh Blackhole
+   */
+  @Benchmark
+  public void matches(Blackhole bh) {
+    for (Event e : events) {
+      bh.consume(filter.matches(e));
+    }
+  }
+
+  /**
+   * Generate a key for each event in the test data
+   *
+   * @param bh Blackhole
+   */
+  @Benchmark
+  public void getKey(Blackhole bh) {
+    for (Event e : events) {
+      bh.consume(keyFilter.getKey(e));
+    }
+  }
+}
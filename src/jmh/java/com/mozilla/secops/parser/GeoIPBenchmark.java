@@ -0,0 +1,61 @@
+package com.mozilla.secops.parser;
+
+import com.maxmind.geoip2.model.CityResponse;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for {@link GeoIP} */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeoIPBenchmark {
+  private GeoIP geoip;
+
+  /** Load test database */
+  @Setup
+  public void setup() {
+    geoip = new GeoIP(ParserTest.TEST_GEOIP_DBPATH);
+  }
+
+  /**
+   * Lookup an address present in the test database
+   *
+   * @return City response
+   */
+  @Benchmark
+  public CityResponse lookup() {
+    return geoip.lookup("216.160.83.56");
+  }
+
+  /**
+   * Lookup an address present in the test database using the lookup cache
+   *
+   * @return Location
+   */
+  @Benchmark
+  public GeoIP.Location lookupLocation() {
+    return geoip.lookupLocation("216.160.83.56");
+  }
+
+  /**
+   * Lookup an address not present in the test database
+   *
+   * @return City response
+   */
+  @Benchmark
+  public CityResponse lookupMiss() {
+    return geoip.lookup("10.0.0.1");
+  }
+}
@@ -0,0 +1,123 @@
+package com.mozilla.secops.parser;
+
+import com.mozilla.secops.TestUtil;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for {@link Parser} */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+  private static final HashMap<String, String> resources = new HashMap<String, String>();
+
+  static {
+    resources.put("glb", "/testdata/httpreq_hardlimit1.txt");
+    resources.put("openssh", "/testdata/authprof_buffer1.txt");
+    resources.put("cloudtrail", "/testdata/cloudtrail_buffer1.txt");
+    resources.put("fxaauth", "/testdata/customs_rl_badlogin_simple1.txt");
+    resources.put("secevent", "/testdata/customs_geo1.txt");
+    resources.put("duopull", "/testdata/duo_buffer1.txt");
+    resources.put("raw", "/testdata/inputtype_buffer1.txt");
+  }
+
+  /** Payload type to benchmark, each is associated with a test data resource */
+  @Param({"glb", "openssh", "cloudtrail", "fxaauth", "secevent", "duopull", "raw"})
+  public String payload;
+
+  private Parser parser;
+  private Parser xffParser;
+  private String[] input;
+  private byte[][] inputBytes;
+  private int index;
+
+  /**
+   * Initialize parsers and load test data
+   *
+   * @throws Exception Exception
+   */
+  @Setup
+  public void setup() throws Exception {
+    ParserCfg cfg = new ParserCfg();
+    cfg.setMaxmindDbPath(ParserTest.TEST_GEOIP_DBPATH);
+    parser = new Parser(cfg);
+
+    ParserCfg xffCfg = new ParserCfg();
+    xffCfg.setXffAddressSelector(
+        new ArrayList<String>(Arrays.asList("127.0.0.1/32", "10.0.0.0/8", "192.168.0.0/16")));
+    xffParser = new Parser(xffCfg);
+
+    input = TestUtil.getTestInputArray(resources.get(payload));
+    inputBytes = new byte[input.length][];
+    for (int i = 0; i < input.length; i++) {
+      inputBytes[i] = input[i].getBytes(StandardCharsets.UTF_8);
+    }
+    index = 0;
+  }
+
+  private String next() {
+    String ret = input[index];
+    index = (index + 1) % input.length;
+    return ret;
+  }
+
+  /**
+   * Parse the next event from the test data
+   *
+   * @return Parsed event
+   */
+  @Benchmark
+  public Event parse() {
+    return parser.parse(next());
+  }
+
+  /**
+   * Parse the next event from the test data as UTF-8 encoded input
+   *
+   * @return Parsed event
+   */
+  @Benchmark
+  public Event parseBytes() {
+    byte[] ret = inputBytes[index];
+    index = (index + 1) % inputBytes.length;
+    return parser.parseBytes(ret);
+  }
+
+  /**
+   * Apply the XFF address selector to a multi-address header value
+   *
+   * @return Selected address
+   */
+  @Benchmark
+  public String applyXffAddressSelector() {
+    return xffParser.applyXffAddressSelector("216.160.83.56, 192.168.1.1, 10.0.0.1, 127.0.0.1");
+  }
+
+  /**
+   * Parse a Stackdriver style timestamp
+   *
+   * @return Parsed timestamp
+   */
+  @Benchmark
+  public DateTime parseISO8601() {
+    return Parser.parseISO8601("2018-09-28T18:55:12.469373944Z");
+  }
+}
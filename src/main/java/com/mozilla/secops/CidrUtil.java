@@ -5,6 +5,7 @@ import com.mozilla.secops.parser.Normalized;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Scanner;
 import javax.naming.NamingEnumeration;
@@ -13,11 +14,47 @@ import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.InitialDirContext;
 import org.apache.beam.sdk.transforms.DoFn;
-import org.springframework.security.web.util.matcher.IpAddressMatcher;
 
-/** CIDR matching utilities */
+/**
+ * CIDR matching utilities
+ *
+ * <p>Subnets are stored and matched in numeric form. Addresses can be tested as strings, or as
+ * addresses already parsed using {@link #parseAddress}.
+ */
 public class CidrUtil {
-  private ArrayList<IpAddressMatcher> subnets;
+  private ArrayList<Subnet> subnets;
+
+  private static class Subnet {
+    private final byte[] addr;
+    private final int len;
+    private final int prefix;
+
+    Subnet(byte[] addr, int len, int prefix) {
+      this.addr = addr;
+      this.len = len;
+      this.prefix = prefix;
+    }
+
+    boolean matches(byte[] in, int inLen) {
+      if (inLen != len) {
+        return false;
+      }
+      int full = prefix / 8;
+      for (int i = 0; i < full; i++) {
+        if (in[i] != addr[i]) {
+          return false;
+        }
+      }
+      int rem = prefix % 8;
+      if (rem != 0) {
+        int mask = (0xff << (8 - rem)) & 0xff;
+        if ((in[full] & mask) != (addr[full] & mask)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
 
   /**
    * Returns a DoFn that filters any events that have a normalized source address field that is
@@ -66,14 +103,193 @@ public class CidrUtil {
    * @return True if any loaded subnet contains the address
    */
   public Boolean contains(String addr) {
-    for (IpAddressMatcher s : subnets) {
-      if (s.matches(addr)) {
+    if (addr == null) {
+      return false;
+    }
+    byte[] buf = new byte[16];
+    int len = parseAddress(addr, 0, addr.length(), buf);
+    if (len == -1) {
+      return false;
+    }
+    return contains(buf, len);
+  }
+
+  /**
+   * Return true if any loaded subnet contains the specified numeric address
+   *
+   * @param addr Address in network byte order, as returned by {@link #parseAddress}
+   * @param len Length of address in bytes, 4 for IPv4 or 16 for IPv6
+   * @return True if any loaded subnet contains the address
+   */
+  public boolean contains(byte[] addr, int len) {
+    for (Subnet s : subnets) {
+      if (s.matches(addr, len)) {
         return true;
       }
     }
     return false;
   }
 
+  /**
+   * Parse an IPv4 or IPv6 address literal into numeric form
+   *
+   * <p>The address is read from the specified region of the input without allocation. IPv4 mapped
+   * IPv6 addresses are returned as IPv4 addresses. Host names are not resolved, and are treated as
+   * invalid.
+   *
+   * @param in Input string
+   * @param start Index of first character of address
+   * @param end Index following last character of address
+   * @param out Output buffer for address in network byte order, must be at least 16 bytes
+   * @return 4 for an IPv4 address, 16 for an IPv6 address, or -1 if the input is not a valid
+   *     address
+   */
+  public static int parseAddress(String in, int start, int end, byte[] out) {
+    if (start >= end) {
+      return -1;
+    }
+    for (int i = start; i < end; i++) {
+      if (in.charAt(i) == ':') {
+        return parseInet6Address(in, start, end, out);
+      }
+    }
+    return parseInet4Address(in, start, end, out, 0) ? 4 : -1;
+  }
+
+  private static boolean parseInet4Address(String in, int start, int end, byte[] out, int off) {
+    int octets = 0;
+    int val = 0;
+    int digits = 0;
+    for (int i = start; i < end; i++) {
+      char c = in.charAt(i);
+      if (c >= '0' && c <= '9') {
+        if (digits == 1 && val == 0) {
+          // Leading zeros are not permitted
+          return false;
+        }
+        val = val * 10 + (c - '0');
+        if (++digits > 3 || val > 255) {
+          return false;
+        }
+      } else if (c == '.') {
+        if (digits == 0 || octets == 3) {
+          return false;
+        }
+        out[off + octets++] = (byte) val;
+        val = 0;
+        digits = 0;
+      } else {
+        return false;
+      }
+    }
+    if (digits == 0 || octets != 3) {
+      return false;
+    }
+    out[off + 3] = (byte) val;
+    return true;
+  }
+
+  private static int hexValue(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    } else if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    } else if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    }
+    return -1;
+  }
+
+  private static int parseInet6Address(String in, int start, int end, byte[] out) {
+    int groups = 0;
+    int compressAt = -1;
+    int i = start;
+
+    if (in.charAt(i) == ':') {
+      if (i + 1 >= end || in.charAt(i + 1) != ':') {
+        return -1;
+      }
+      compressAt = 0;
+      i += 2;
+    }
+
+    while (i < end) {
+      int gstart = i;
+      int val = 0;
+      boolean embedded = false;
+      while (i < end) {
+        char c = in.charAt(i);
+        if (c == ':') {
+          break;
+        } else if (c == '.') {
+          embedded = true;
+          break;
+        }
+        int h = hexValue(c);
+        if (h == -1 || i - gstart == 4) {
+          return -1;
+        }
+        val = (val << 4) | h;
+        i++;
+      }
+      if (embedded) {
+        // Embedded IPv4 address, must be the final component
+        if (groups > 6 || !parseInet4Address(in, gstart, end, out, groups * 2)) {
+          return -1;
+        }
+        groups += 2;
+        break;
+      }
+      if (i == gstart || groups == 8) {
+        return -1;
+      }
+      out[groups * 2] = (byte) (val >> 8);
+      out[groups * 2 + 1] = (byte) val;
+      groups++;
+      if (i == end) {
+        break;
+      }
+      if (++i == end) {
+        return -1;
+      }
+      if (in.charAt(i) == ':') {
+        if (compressAt != -1) {
+          return -1;
+        }
+        compressAt = groups;
+        i++;
+      }
+    }
+
+    if (compressAt == -1) {
+      if (groups != 8) {
+        return -1;
+      }
+    } else {
+      if (groups > 7) {
+        return -1;
+      }
+      // Move groups following the compression point to the end of the address, and zero fill
+      int tail = (groups - compressAt) * 2;
+      System.arraycopy(out, compressAt * 2, out, 16 - tail, tail);
+      for (int j = compressAt * 2; j < 16 - tail; j++) {
+        out[j] = 0;
+      }
+    }
+
+    // Return IPv4 mapped addresses as IPv4, consistent with InetAddress
+    for (int j = 0; j < 10; j++) {
+      if (out[j] != 0) {
+        return 16;
+      }
+    }
+    if (out[10] == (byte) 0xff && out[11] == (byte) 0xff) {
+      System.arraycopy(out, 12, out, 0, 4);
+      return 4;
+    }
+    return 16;
+  }
+
   private static ArrayList<String> spfResolver(String record, String prefix) {
     ArrayList<String> ret = new ArrayList<>();
     try {
@@ -128,15 +344,32 @@ public class CidrUtil {
   /**
    * Add subnet to subnet list
    *
+   * <p>If the subnet does not include a prefix length, only the exact address will match.
+   *
    * @param cidr Subnet to add
+   * @throws IllegalArgumentException if the subnet is not valid
    */
   public void add(String cidr) {
-    subnets.add(new IpAddressMatcher(cidr));
+    int slash = cidr.indexOf('/');
+    int aend = slash == -1 ? cidr.length() : slash;
+    byte[] buf = new byte[16];
+    int len = parseAddress(cidr, 0, aend, buf);
+    if (len == -1) {
+      throw new IllegalArgumentException("invalid subnet address: " + cidr);
+    }
+    int prefix = len * 8;
+    if (slash != -1) {
+      prefix = Integer.parseInt(cidr.substring(slash + 1));
+      if (prefix < 0 || prefix > len * 8) {
+        throw new IllegalArgumentException("invalid subnet prefix length: " + cidr);
+      }
+    }
+    subnets.add(new Subnet(Arrays.copyOf(buf, len), len, prefix));
   }
 
   /** Constructor for {@link CidrUtil}, initialize empty */
   public CidrUtil() {
-    subnets = new ArrayList<IpAddressMatcher>();
+    subnets = new ArrayList<Subnet>();
   }
 
   /**
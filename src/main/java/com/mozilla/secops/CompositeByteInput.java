@@ -0,0 +1,158 @@
+package com.mozilla.secops;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
+import org.apache.beam.sdk.io.TextIO;
+import org.apache.beam.sdk.io.gcp.pubsub.PubsubIO;
+import org.apache.beam.sdk.io.gcp.pubsub.PubsubMessage;
+import org.apache.beam.sdk.io.kinesis.KinesisIO;
+import org.apache.beam.sdk.io.kinesis.KinesisRecord;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.Flatten;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.PBegin;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionList;
+
+/**
+ * {@link CompositeByteInput} provides a standardized composite input transform emitting raw UTF-8
+ * encoded input elements
+ *
+ * <p>The transform reads the same inputs as {@link CompositeInput}, but elements are not decoded
+ * into strings, and can be parsed using {@link com.mozilla.secops.parser.ByteParserDoFn}. Pubsub
+ * message payloads are emitted as is, and Kinesis records are split into lines without being
+ * decoded. File input is read as lines of text by {@link TextIO} and re-encoded.
+ */
+public class CompositeByteInput extends PTransform<PBegin, PCollection<byte[]>> {
+  private static final long serialVersionUID = 1L;
+
+  private final String[] fileInputs;
+  private final String[] pubsubInputs;
+  private final String[] kinesisInputs;
+  private final String project;
+
+  /**
+   * Initialize new {@link CompositeByteInput} transform
+   *
+   * @param options Input options
+   */
+  public CompositeByteInput(InputOptions options) {
+    fileInputs = options.getInputFile();
+    pubsubInputs = options.getInputPubsub();
+    kinesisInputs = options.getInputKinesis();
+    project = options.getProject();
+  }
+
+  /**
+   * Split input bytes into lines
+   *
+   * <p>Lines are terminated by \n or \r\n. The result is equivalent to encoding each element
+   * returned by splitting the decoded input using the regular expression \r?\n; trailing empty
+   * lines are not returned.
+   *
+   * @param input Input bytes
+   * @return List of lines, not including line terminators
+   */
+  public static List<byte[]> splitLines(byte[] input) {
+    ArrayList<byte[]> ret = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i < input.length; i++) {
+      if (input[i] != '\n') {
+        continue;
+      }
+      int end = (i > start && input[i - 1] == '\r') ? i - 1 : i;
+      ret.add(Arrays.copyOfRange(input, start, end));
+      start = i + 1;
+    }
+    if (start == 0) {
+      // No line terminator present, return the input as is
+      ret.add(input);
+      return ret;
+    }
+    if (start < input.length) {
+      ret.add(Arrays.copyOfRange(input, start, input.length));
+    }
+    int n = ret.size();
+    while (n > 0 && ret.get(n - 1).length == 0) {
+      ret.remove(--n);
+    }
+    return ret;
+  }
+
+  @Override
+  public PCollection<byte[]> expand(PBegin begin) {
+    PCollectionList<byte[]> inputList = PCollectionList.<byte[]>empty(begin.getPipeline());
+
+    if (fileInputs != null) {
+      for (String i : fileInputs) {
+        inputList =
+            inputList.and(
+                begin
+                    .apply(TextIO.read().from(i))
+                    .apply(
+                        ParDo.of(
+                            new DoFn<String, byte[]>() {
+                              private static final long serialVersionUID = 1L;
+
+                              @ProcessElement
+                              public void processElement(ProcessContext c) {
+                                c.output(c.element().getBytes(StandardCharsets.UTF_8));
+                              }
+                            })));
+      }
+    }
+
+    if (pubsubInputs != null) {
+      for (String i : pubsubInputs) {
+        inputList =
+            inputList.and(
+                begin
+                    .apply(PubsubIO.readMessages().fromTopic(i))
+                    .apply(
+                        ParDo.of(
+                            new DoFn<PubsubMessage, byte[]>() {
+                              private static final long serialVersionUID = 1L;
+
+                              @ProcessElement
+                              public void processElement(ProcessContext c) {
+                                c.output(c.element().getPayload());
+                              }
+                            })));
+      }
+    }
+
+    if (kinesisInputs != null) {
+      for (String i : kinesisInputs) {
+        KinesisIO.Read read = CompositeInput.kinesisRead(i, project);
+        if (read == null) {
+          return null;
+        }
+        inputList =
+            inputList.and(
+                begin
+                    .apply(read)
+                    .apply(
+                        ParDo.of(
+                            new DoFn<KinesisRecord, byte[]>() {
+                              private static final long serialVersionUID = 1L;
+
+                              @ProcessElement
+                              public void processElement(ProcessContext c) {
+                                // Kinesis records contain newline delimited elements, consistent
+                                // with CompositeInput
+                                for (byte[] e : splitLines(c.element().getDataAsBytes())) {
+                                  c.output(e);
+                                }
+                              }
+                            })));
+        CompositeInput.kinesisSetupDelay();
+      }
+    }
+
+    return inputList.apply(Flatten.<byte[]>pCollections()).setCoder(ByteArrayCoder.of());
+  }
+}
@@ -43,8 +43,6 @@ public class CompositeInput extends PTransform<PBegin, PCollection<String>> {
 
   @Override
   public PCollection<String> expand(PBegin begin) {
-    Logger log = LoggerFactory.getLogger(CompositeInput.class);
-
     PCollectionList<String> inputList = PCollectionList.<String>empty(begin.getPipeline());
 
     if (fileInputs != null) {
@@ -61,27 +59,14 @@ public class CompositeInput extends PTransform<PBegin, PCollection<String>> {
 
     if (kinesisInputs != null) {
       for (String i : kinesisInputs) {
-        String k = null;
-        try {
-          k = RuntimeSecrets.interpretSecret(i, project);
-        } catch (IOException exc) {
-          // XXX Just return null here for now which will result in a null pointer exception in the
-          // pipeline, but this should also log the error.
+        KinesisIO.Read read = kinesisRead(i, project);
+        if (read == null) {
           return null;
         }
-        String[] parts = k.split(":");
-        if (parts.length != 4) {
-          return null;
-        }
-        log.info("attempting kinesis input setup for {} in {}", parts[0], parts[3]);
         inputList =
             inputList.and(
                 begin
-                    .apply(
-                        KinesisIO.read()
-                            .withStreamName(parts[0])
-                            .withInitialPositionInStream(InitialPositionInStream.LATEST)
-                            .withAWSClientsProvider(parts[1], parts[2], Regions.fromName(parts[3])))
+                    .apply(read)
                     .apply(
                         ParDo.of(
                             new DoFn<KinesisRecord, String>() {
@@ -101,22 +86,55 @@ public class CompositeInput extends PTransform<PBegin, PCollection<String>> {
                                 }
                               }
                             })));
-        try {
-          // XXX Pause for a moment here for cases where we are configuring multiple Kinesis streams
-          // that might exist in the same account; since setup calls DescribeStream it is possible
-          // to end up hitting rate limits here.
-          //
-          // Note this seems like it can also happen after initial configuration once the stream
-          // starts being read, but KinesisIO does not handle the transient error.
-          //
-          // This needs more investigation.
-          Thread.sleep(1000);
-        } catch (InterruptedException exc) {
-          // pass
-        }
+        kinesisSetupDelay();
       }
     }
 
     return inputList.apply(Flatten.<String>pCollections());
   }
+
+  /**
+   * Create a Kinesis read transform from a Kinesis input specification
+   *
+   * @param spec Input specification, stream:key:secret:region (supports RuntimeSecrets)
+   * @param project GCP project used to interpret secrets
+   * @return Read transform, or null if the specification is invalid
+   */
+  static KinesisIO.Read kinesisRead(String spec, String project) {
+    Logger log = LoggerFactory.getLogger(CompositeInput.class);
+    String k = null;
+    try {
+      k = RuntimeSecrets.interpretSecret(spec, project);
+    } catch (IOException exc) {
+      // XXX Just return null here for now which will result in a null pointer exception in the
+      // pipeline, but this should also log the error.
+      return null;
+    }
+    String[] parts = k.split(":");
+    if (parts.length != 4) {
+      return null;
+    }
+    log.info("attempting kinesis input setup for {} in {}", parts[0], parts[3]);
+    return KinesisIO.read()
+        .withStreamName(parts[0])
+        .withInitialPositionInStream(InitialPositionInStream.LATEST)
+        .withAWSClientsProvider(parts[1], parts[2], Regions.fromName(parts[3]));
+  }
+
+  /** Pause between configuring Kinesis streams */
+  static void kinesisSetupDelay() {
+    try {
+      // XXX Pause for a moment here for cases where we are configuring multiple Kinesis streams
+      // that might exist in the same account; since setup calls DescribeStream it is possible
+      // to end up hitting rate limits here.
+      //
+      // Note this seems like it can also happen after initial configuration once the stream
+      // starts being read, but KinesisIO does not handle the transient error.
+      //
+      // This needs more investigation.
+      Thread.sleep(1000);
+    } catch (InterruptedException exc) {
+      // pass
+    }
+  }
 }
@@ -0,0 +1,256 @@
+package com.mozilla.secops;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.CustomCoder;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.util.VarInt;
+
+/**
+ * Count-Min frequency sketch
+ *
+ * <p>Maintains depth rows of width counters; each value increments one counter per row, selected
+ * using a hash of the value. The estimated count of a value is the minimum of its counters, and is
+ * never less than the true count. With a total count of N, an estimate exceeds the true count by
+ * more than e * N / width with probability at most e^-depth.
+ *
+ * <p>Sketches with the same dimensions can be merged, and {@link #combineFn} returns a {@link
+ * CombineFn} that builds a sketch from a collection of strings.
+ */
+public class CountMinSketch implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /** Default sketch width */
+  public static final int DEFAULT_WIDTH = 2048;
+
+  /** Default sketch depth */
+  public static final int DEFAULT_DEPTH = 5;
+
+  private final int depth;
+  private final int width;
+  private final long[] counts;
+  private long total;
+
+  /**
+   * Create new empty sketch
+   *
+   * @param depth Number of rows
+   * @param width Number of counters per row
+   */
+  public CountMinSketch(int depth, int width) {
+    if (depth < 1 || width < 1) {
+      throw new IllegalArgumentException("sketch depth and width must be positive");
+    }
+    this.depth = depth;
+    this.width = width;
+    counts = new long[depth * width];
+  }
+
+  /** Create new empty sketch with the default dimensions */
+  public CountMinSketch() {
+    this(DEFAULT_DEPTH, DEFAULT_WIDTH);
+  }
+
+  /**
+   * Get sketch depth
+   *
+   * @return Depth
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Get sketch width
+   *
+   * @return Width
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Get total of all counts added to the sketch
+   *
+   * @return Total count
+   */
+  public long getTotal() {
+    return total;
+  }
+
+  private int index(int row, long h) {
+    // Derive the row hash from two halves of the 64 bit hash
+    int combined = (int) h + row * (int) (h >>> 32);
+    return row * width + (combined & Integer.MAX_VALUE) % width;
+  }
+
+  /**
+   * Add a value to the sketch
+   *
+   * @param value Value
+   * @return CountMinSketch for chaining
+   */
+  public CountMinSketch add(String value) {
+    return add(value, 1L);
+  }
+
+  /**
+   * Add a value to the sketch with the specified count
+   *
+   * @param value Value
+   * @param count Count to add
+   * @return CountMinSketch for chaining
+   */
+  public CountMinSketch add(String value, long count) {
+    long h = HyperLogLog.hash(value);
+    for (int i = 0; i < depth; i++) {
+      counts[index(i, h)] += count;
+    }
+    total += count;
+    return this;
+  }
+
+  /**
+   * Estimate the count of a value
+   *
+   * @param value Value
+   * @return Estimated count, which is never less than the true count
+   */
+  public long estimate(String value) {
+    long h = HyperLogLog.hash(value);
+    long ret = Long.MAX_VALUE;
+    for (int i = 0; i < depth; i++) {
+      ret = Math.min(ret, counts[index(i, h)]);
+    }
+    return ret;
+  }
+
+  /**
+   * Merge another sketch into this sketch
+   *
+   * @param other Sketch to merge, must have the same dimensions
+   * @return CountMinSketch for chaining
+   */
+  public CountMinSketch merge(CountMinSketch other) {
+    if (other.depth != depth || other.width != width) {
+      throw new IllegalArgumentException("cannot merge sketches with different dimensions");
+    }
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    total += other.total;
+    return this;
+  }
+
+  /**
+   * Return a {@link CombineFn} building a sketch from a collection of strings
+   *
+   * @param depth Sketch depth
+   * @param width Sketch width
+   * @return {@link SketchCombiner}
+   */
+  public static SketchCombiner combineFn(int depth, int width) {
+    return new SketchCombiner(depth, width);
+  }
+
+  /** {@link CombineFn} building a {@link CountMinSketch} from a collection of strings */
+  public static class SketchCombiner extends CombineFn<String, CountMinSketch, CountMinSketch> {
+    private static final long serialVersionUID = 1L;
+
+    private final int depth;
+    private final int width;
+
+    @Override
+    public CountMinSketch createAccumulator() {
+      return new CountMinSketch(depth, width);
+    }
+
+    @Override
+    public CountMinSketch addInput(CountMinSketch sketch, String input) {
+      return sketch.add(input);
+    }
+
+    @Override
+    public CountMinSketch mergeAccumulators(Iterable<CountMinSketch> sketches) {
+      CountMinSketch merged = new CountMinSketch(depth, width);
+      for (CountMinSketch s : sketches) {
+        merged.merge(s);
+      }
+      return merged;
+    }
+
+    @Override
+    public CountMinSketch extractOutput(CountMinSketch sketch) {
+      return sketch;
+    }
+
+    @Override
+    public Coder<CountMinSketch> getAccumulatorCoder(
+        CoderRegistry registry, Coder<String> inputCoder) {
+      return new CountMinSketchCoder();
+    }
+
+    @Override
+    public Coder<CountMinSketch> getDefaultOutputCoder(
+        CoderRegistry registry, Coder<String> inputCoder) {
+      return new CountMinSketchCoder();
+    }
+
+    SketchCombiner(int depth, int width) {
+      // Validate dimensions when the transform is constructed
+      new CountMinSketch(depth, width);
+      this.depth = depth;
+      this.width = width;
+    }
+  }
+
+  /**
+   * {@link org.apache.beam.sdk.coders.Coder} for {@link CountMinSketch}
+   *
+   * <p>Counters are variable length encoded, so counters that are zero or small use a single byte.
+   */
+  public static class CountMinSketchCoder extends CustomCoder<CountMinSketch> {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void encode(CountMinSketch value, OutputStream outStream) throws IOException {
+      if (value == null) {
+        throw new CoderException("cannot encode a null CountMinSketch");
+      }
+      DataOutputStream out = new DataOutputStream(outStream);
+      VarInt.encode(value.depth, out);
+      VarInt.encode(value.width, out);
+      VarInt.encode(value.total, out);
+      for (long c : value.counts) {
+        VarInt.encode(c, out);
+      }
+      out.flush();
+    }
+
+    @Override
+    public CountMinSketch decode(InputStream inStream) throws IOException {
+      DataInputStream in = new DataInputStream(inStream);
+      CountMinSketch ret;
+      try {
+        ret = new CountMinSketch(VarInt.decodeInt(in), VarInt.decodeInt(in));
+      } catch (IllegalArgumentException exc) {
+        throw new CoderException(exc);
+      }
+      ret.total = VarInt.decodeLong(in);
+      for (int i = 0; i < ret.counts.length; i++) {
+        ret.counts[i] = VarInt.decodeLong(in);
+      }
+      return ret;
+    }
+
+    @Override
+    public void verifyDeterministic() {}
+  }
+}
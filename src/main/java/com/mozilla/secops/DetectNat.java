@@ -5,9 +5,8 @@ import com.mozilla.secops.parser.GLB;
 import com.mozilla.secops.parser.Payload;
 import java.util.Map;
 import org.apache.beam.sdk.Pipeline;
-import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.Combine;
 import org.apache.beam.sdk.transforms.Create;
-import org.apache.beam.sdk.transforms.Distinct;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
@@ -28,12 +27,32 @@ import org.apache.beam.sdk.values.TypeDescriptors;
  * IP address identified in the window and the value is a boolean set to true if there is a
  * possibility the source address is a NAT gateway. If it is not suspected the source address is a
  * NAT gateway, it will not be included in the output set.
+ *
+ * <p>The number of distinct user agents per source address is estimated using a {@link HyperLogLog}
+ * sketch per address, so no shuffle of distinct address and user agent pairs is required. Counts
+ * this small are exact while the sketch is in sparse mode.
  */
 public class DetectNat extends PTransform<PCollection<Event>, PCollection<KV<String, Boolean>>> {
   private static final long serialVersionUID = 1L;
 
   private static final Long UAMARKPROBABLE = 2L;
 
+  private final int precision;
+
+  /** Create new {@link DetectNat} using the default {@link HyperLogLog} precision */
+  public DetectNat() {
+    this(HyperLogLog.DEFAULT_PRECISION);
+  }
+
+  /**
+   * Create new {@link DetectNat}
+   *
+   * @param precision Precision of {@link HyperLogLog} sketch used for user agent cardinality
+   */
+  public DetectNat(int precision) {
+    this.precision = precision;
+  }
+
   /**
    * Return an empty NAT view, suitable as a placeholder if NAT detection is not desired
    *
@@ -54,7 +73,19 @@ public class DetectNat extends PTransform<PCollection<Event>, PCollection<KV<Str
    * @return {@link PCollectionView} representing output of analysis
    */
   public static PCollectionView<Map<String, Boolean>> getView(PCollection<Event> events) {
-    return events.apply(new DetectNat()).apply(View.<String, Boolean>asMap());
+    return getView(events, HyperLogLog.DEFAULT_PRECISION);
+  }
+
+  /**
+   * Execute the transform returning a {@link PCollectionView} suitable for use as a side input
+   *
+   * @param events Input events
+   * @param precision Precision of {@link HyperLogLog} sketch used for user agent cardinality
+   * @return {@link PCollectionView} representing output of analysis
+   */
+  public static PCollectionView<Map<String, Boolean>> getView(
+      PCollection<Event> events, int precision) {
+    return events.apply(new DetectNat(precision)).apply(View.<String, Boolean>asMap());
   }
 
   @Override
@@ -86,8 +117,9 @@ public class DetectNat extends PTransform<PCollection<Event>, PCollection<KV<Str
                         }
                       }
                     }))
-            .apply(Distinct.<KV<String, String>>create())
-            .apply(Count.<String, String>perKey());
+            .apply(
+                "user agent cardinality",
+                Combine.<String, String, Long>perKey(HyperLogLog.combineFn(precision)));
 
     // Operate solely on the UA output right now here, but this should be expanded with more
     // detailed analysis
@@ -0,0 +1,433 @@
+package com.mozilla.secops;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.CustomCoder;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.util.VarInt;
+
+/**
+ * HyperLogLog cardinality sketch
+ *
+ * <p>Follows the HLL++ layout; values are hashed to 64 bits, and the sketch starts in a sparse mode
+ * that records register updates at a precision of 25 bits, which gives near exact results for small
+ * cardinalities. Once the sparse list would use more memory than the dense registers, the sketch is
+ * converted to a dense array of 2^precision registers. In place of the HLL++ empirical bias
+ * correction, the dense estimate uses the improved estimator described by Ertl, which is unbiased
+ * over the full range of cardinalities. The relative standard error of a dense estimate is about
+ * 1.04 / sqrt(2^precision).
+ *
+ * <p>Sketches with the same precision can be merged, and {@link #combineFn} returns a {@link
+ * CombineFn} that estimates the number of distinct strings in a collection.
+ */
+public class HyperLogLog implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /** Default precision */
+  public static final int DEFAULT_PRECISION = 14;
+
+  /** Minimum supported precision */
+  public static final int MIN_PRECISION = 4;
+
+  /** Maximum supported precision */
+  public static final int MAX_PRECISION = 18;
+
+  private static final int SPARSE_PRECISION = 25;
+  private static final int RHO_BITS = 6;
+  private static final int RHO_MASK = (1 << RHO_BITS) - 1;
+  private static final double ALPHA_INF = 0.5 / Math.log(2.0);
+
+  private final int precision;
+
+  // Dense registers, null while the sketch is sparse
+  private byte[] registers;
+
+  // Sparse entries, each holding a 25 bit register index followed by a 6 bit rank
+  private int[] sparse;
+  private int sparseCount;
+  private boolean sparseSorted;
+
+  /**
+   * Create new empty sketch
+   *
+   * @param precision Number of bits used to select a register, between {@link #MIN_PRECISION} and
+   *     {@link #MAX_PRECISION}
+   */
+  public HyperLogLog(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException(
+          String.format("precision must be between %d and %d", MIN_PRECISION, MAX_PRECISION));
+    }
+    this.precision = precision;
+    sparse = new int[Math.min(4, sparseLimit())];
+    sparseSorted = true;
+  }
+
+  /** Create new empty sketch with the default precision */
+  public HyperLogLog() {
+    this(DEFAULT_PRECISION);
+  }
+
+  /**
+   * Get sketch precision
+   *
+   * @return Precision
+   */
+  public int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Return true if the sketch is using the sparse representation
+   *
+   * @return True if sparse
+   */
+  public boolean isSparse() {
+    return registers == null;
+  }
+
+  /**
+   * Hash a string value for use with {@link #addHash}
+   *
+   * @param value Value
+   * @return 64 bit hash
+   */
+  public static long hash(String value) {
+    // 64 bit FNV-1a over the UTF-8 encoding, followed by the MurmurHash3 finalizer to distribute
+    // the high order bits
+    long h = 0xcbf29ce484222325L;
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      h ^= (b & 0xff);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Add a value to the sketch
+   *
+   * @param value Value
+   * @return HyperLogLog for chaining
+   */
+  public HyperLogLog add(String value) {
+    return addHash(hash(value));
+  }
+
+  /**
+   * Add a hashed value to the sketch
+   *
+   * @param h 64 bit hash of value
+   * @return HyperLogLog for chaining
+   */
+  public HyperLogLog addHash(long h) {
+    if (registers != null) {
+      int idx = (int) (h >>> (64 - precision));
+      int rho = Long.numberOfLeadingZeros((h << precision) | (1L << (precision - 1))) + 1;
+      setRegister(idx, rho);
+      return this;
+    }
+    int idx = (int) (h >>> (64 - SPARSE_PRECISION));
+    int rho =
+        Long.numberOfLeadingZeros((h << SPARSE_PRECISION) | (1L << (SPARSE_PRECISION - 1))) + 1;
+    addSparse((idx << RHO_BITS) | rho);
+    return this;
+  }
+
+  /**
+   * Merge another sketch into this sketch
+   *
+   * @param other Sketch to merge, must have the same precision
+   * @return HyperLogLog for chaining
+   */
+  public HyperLogLog merge(HyperLogLog other) {
+    if (other.precision != precision) {
+      throw new IllegalArgumentException("cannot merge sketches with different precision");
+    }
+    if (other.registers != null) {
+      if (registers == null) {
+        toDense();
+      }
+      for (int i = 0; i < registers.length; i++) {
+        setRegister(i, other.registers[i]);
+      }
+      return this;
+    }
+    for (int i = 0; i < other.sparseCount; i++) {
+      if (registers != null) {
+        setSparseRegister(other.sparse[i]);
+      } else {
+        addSparse(other.sparse[i]);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Estimate the number of distinct values added to the sketch
+   *
+   * @return Estimated cardinality
+   */
+  public long cardinality() {
+    if (registers == null) {
+      // Linear counting over the sparse registers
+      compactSparse();
+      double m = 1 << SPARSE_PRECISION;
+      return Math.round(m * Math.log(m / (m - sparseCount)));
+    }
+
+    int q = 64 - precision;
+    int m = registers.length;
+    int[] c = new int[q + 2];
+    for (byte r : registers) {
+      c[r]++;
+    }
+    if (c[0] == m) {
+      return 0L;
+    }
+    double z = m * tau((m - c[q + 1]) / (double) m);
+    for (int k = q; k >= 1; k--) {
+      z = 0.5 * (z + c[k]);
+    }
+    z += m * sigma(c[0] / (double) m);
+    return Math.round(ALPHA_INF * m * m / z);
+  }
+
+  private static double sigma(double x) {
+    if (x == 1.0) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double y = 1.0;
+    double z = x;
+    double zPrev;
+    do {
+      x *= x;
+      zPrev = z;
+      z += x * y;
+      y += y;
+    } while (z != zPrev);
+    return z;
+  }
+
+  private static double tau(double x) {
+    if (x == 0.0 || x == 1.0) {
+      return 0.0;
+    }
+    double y = 1.0;
+    double z = 1.0 - x;
+    double zPrev;
+    do {
+      x = Math.sqrt(x);
+      zPrev = z;
+      y *= 0.5;
+      z -= (1.0 - x) * (1.0 - x) * y;
+    } while (z != zPrev);
+    return z / 3.0;
+  }
+
+  private int sparseLimit() {
+    // Convert to dense once the sparse entries would use more memory than the registers
+    return (1 << precision) / 4;
+  }
+
+  private void setRegister(int idx, int rho) {
+    if (rho > registers[idx]) {
+      registers[idx] = (byte) rho;
+    }
+  }
+
+  private void setSparseRegister(int entry) {
+    int shift = SPARSE_PRECISION - precision;
+    int sidx = entry >>> RHO_BITS;
+    int low = sidx & ((1 << shift) - 1);
+    int rho;
+    if (low != 0) {
+      rho = Integer.numberOfLeadingZeros(low) - (32 - shift) + 1;
+    } else {
+      rho = shift + (entry & RHO_MASK);
+    }
+    setRegister(sidx >>> shift, rho);
+  }
+
+  private void addSparse(int entry) {
+    if (sparseCount == sparse.length) {
+      compactSparse();
+      if (sparseCount >= sparseLimit()) {
+        toDense();
+        setSparseRegister(entry);
+        return;
+      }
+      if (sparseCount == sparse.length) {
+        sparse = Arrays.copyOf(sparse, Math.min(sparse.length * 2, sparseLimit()));
+      }
+    }
+    sparse[sparseCount++] = entry;
+    sparseSorted = false;
+  }
+
+  /** Sort sparse entries, keeping only the highest rank for each register */
+  private void compactSparse() {
+    if (sparseSorted) {
+      return;
+    }
+    Arrays.sort(sparse, 0, sparseCount);
+    int out = 0;
+    for (int i = 0; i < sparseCount; i++) {
+      if (out > 0 && (sparse[out - 1] >>> RHO_BITS) == (sparse[i] >>> RHO_BITS)) {
+        // Entries for the same register sort by rank, so the later entry is retained
+        sparse[out - 1] = sparse[i];
+      } else {
+        sparse[out++] = sparse[i];
+      }
+    }
+    sparseCount = out;
+    sparseSorted = true;
+  }
+
+  private void toDense() {
+    registers = new byte[1 << precision];
+    for (int i = 0; i < sparseCount; i++) {
+      setSparseRegister(sparse[i]);
+    }
+    sparse = null;
+    sparseCount = 0;
+  }
+
+  /**
+   * Return a {@link CombineFn} estimating the number of distinct strings in a collection
+   *
+   * @param precision Sketch precision
+   * @return {@link CardinalityCombiner}
+   */
+  public static CardinalityCombiner combineFn(int precision) {
+    return new CardinalityCombiner(precision);
+  }
+
+  /**
+   * Return a {@link CombineFn} estimating the number of distinct strings in a collection, using the
+   * default precision
+   *
+   * @return {@link CardinalityCombiner}
+   */
+  public static CardinalityCombiner combineFn() {
+    return new CardinalityCombiner(DEFAULT_PRECISION);
+  }
+
+  /** {@link CombineFn} estimating the number of distinct strings using {@link HyperLogLog} */
+  public static class CardinalityCombiner extends CombineFn<String, HyperLogLog, Long> {
+    private static final long serialVersionUID = 1L;
+
+    private final int precision;
+
+    @Override
+    public HyperLogLog createAccumulator() {
+      return new HyperLogLog(precision);
+    }
+
+    @Override
+    public HyperLogLog addInput(HyperLogLog sketch, String input) {
+      return sketch.add(input);
+    }
+
+    @Override
+    public HyperLogLog mergeAccumulators(Iterable<HyperLogLog> sketches) {
+      HyperLogLog merged = new HyperLogLog(precision);
+      for (HyperLogLog s : sketches) {
+        merged.merge(s);
+      }
+      return merged;
+    }
+
+    @Override
+    public Long extractOutput(HyperLogLog sketch) {
+      return sketch.cardinality();
+    }
+
+    @Override
+    public Coder<HyperLogLog> getAccumulatorCoder(
+        CoderRegistry registry, Coder<String> inputCoder) {
+      return new HyperLogLogCoder();
+    }
+
+    CardinalityCombiner(int precision) {
+      // Validate precision when the transform is constructed
+      new HyperLogLog(precision);
+      this.precision = precision;
+    }
+  }
+
+  /**
+   * {@link org.apache.beam.sdk.coders.Coder} for {@link HyperLogLog}
+   *
+   * <p>Sparse sketches are encoded as the sorted register entries, delta encoded. Dense sketches
+   * are encoded as the register array.
+   */
+  public static class HyperLogLogCoder extends CustomCoder<HyperLogLog> {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void encode(HyperLogLog value, OutputStream outStream) throws IOException {
+      if (value == null) {
+        throw new CoderException("cannot encode a null HyperLogLog");
+      }
+      DataOutputStream out = new DataOutputStream(outStream);
+      out.writeByte(value.precision);
+      if (value.registers != null) {
+        out.writeBoolean(false);
+        out.write(value.registers);
+      } else {
+        value.compactSparse();
+        out.writeBoolean(true);
+        VarInt.encode(value.sparseCount, out);
+        int prev = 0;
+        for (int i = 0; i < value.sparseCount; i++) {
+          VarInt.encode(value.sparse[i] - prev, out);
+          prev = value.sparse[i];
+        }
+      }
+      out.flush();
+    }
+
+    @Override
+    public HyperLogLog decode(InputStream inStream) throws IOException {
+      DataInputStream in = new DataInputStream(inStream);
+      HyperLogLog ret;
+      try {
+        ret = new HyperLogLog(in.readUnsignedByte());
+      } catch (IllegalArgumentException exc) {
+        throw new CoderException(exc);
+      }
+      if (!in.readBoolean()) {
+        ret.registers = new byte[1 << ret.precision];
+        in.readFully(ret.registers);
+        ret.sparse = null;
+        return ret;
+      }
+      int n = VarInt.decodeInt(in);
+      ret.sparse = new int[Math.max(n, ret.sparse.length)];
+      int prev = 0;
+      for (int i = 0; i < n; i++) {
+        prev += VarInt.decodeInt(in);
+        ret.sparse[i] = prev;
+      }
+      ret.sparseCount = n;
+      return ret;
+    }
+
+    @Override
+    public void verifyDeterministic() {}
+  }
+}
@@ -42,4 +42,10 @@ public interface InputOptions extends PipelineOptions, PubsubOptions, GcpOptions
   String getParserFastMatcher();
 
   void setParserFastMatcher(String value);
+
+  @Description(
+      "Install parser fast matcher patterns (multiple allowed); substring, ^ and $ anchors supported")
+  String[] getParserFastMatcherPatterns();
+
+  void setParserFastMatcherPatterns(String[] value);
 }
@@ -1,12 +1,17 @@
 package com.mozilla.secops;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.UUID;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.CustomCoder;
 import org.apache.beam.sdk.transforms.Combine;
-import org.apache.beam.sdk.transforms.CombineWithContext.CombineFnWithContext;
-import org.apache.beam.sdk.transforms.CombineWithContext.Context;
-import org.apache.beam.sdk.transforms.Mean;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.View;
 import org.apache.beam.sdk.values.PCollection;
@@ -29,6 +34,9 @@ public class Stats extends PTransform<PCollection<Long>, PCollection<Stats.Stats
     private Long totalSum;
     private Double popVar;
     private Double mean;
+    private Double stdDev;
+    private Long min;
+    private Long max;
 
     @Override
     public boolean equals(Object o) {
@@ -104,67 +112,191 @@ public class Stats extends PTransform<PCollection<Long>, PCollection<Stats.Stats
       return totalSum;
     }
 
+    /**
+     * Get population standard deviation
+     *
+     * @return Population standard deviation
+     */
+    public Double getStandardDeviation() {
+      return stdDev;
+    }
+
+    /**
+     * Set population standard deviation in result
+     *
+     * @param stdDev Population standard deviation
+     */
+    public void setStandardDeviation(Double stdDev) {
+      this.stdDev = stdDev;
+    }
+
+    /**
+     * Get minimum value in set
+     *
+     * @return Minimum value
+     */
+    public Long getMin() {
+      return min;
+    }
+
+    /**
+     * Set minimum value in result
+     *
+     * @param min Minimum value
+     */
+    public void setMin(Long min) {
+      this.min = min;
+    }
+
+    /**
+     * Get maximum value in set
+     *
+     * @return Maximum value
+     */
+    public Long getMax() {
+      return max;
+    }
+
+    /**
+     * Set maximum value in result
+     *
+     * @param max Maximum value
+     */
+    public void setMax(Long max) {
+      this.max = max;
+    }
+
     /** Initialize new statistics output class */
     StatsOutput() {
       sid = UUID.randomUUID();
       totalSum = 0L;
       popVar = 0.0;
       mean = 0.0;
+      stdDev = 0.0;
+      min = 0L;
+      max = 0L;
     }
   }
 
-  /** {@link CombineFnWithContext} for performing statistics operations on a collection of values */
-  public static class StatsCombiner
-      extends CombineFnWithContext<Long, StatsCombiner.State, StatsOutput> {
+  /**
+   * {@link CombineFn} for performing statistics operations on a collection of values
+   *
+   * <p>Statistics are computed in a single pass using an accumulator of fixed size, holding the
+   * count, sum, minimum, maximum, running mean and sum of squared differences from the mean.
+   * Accumulators are merged using the parallel variance algorithm of Chan et al.
+   */
+  public static class StatsCombiner extends CombineFn<Long, StatsCombiner.State, StatsOutput> {
     private static final long serialVersionUID = 1L;
 
-    private PCollectionView<Double> meanValue;
-
-    private static class State implements Serializable {
+    static class State implements Serializable {
       private static final long serialVersionUID = 1L;
 
-      Long sum;
-      ArrayList<Double> varianceSq;
+      long count;
+      long sum;
+      long min;
+      long max;
+      double mean;
+      double m2;
 
       State() {
-        sum = 0L;
-        varianceSq = new ArrayList<Double>();
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+      }
+
+      void add(long input) {
+        count++;
+        sum += input;
+        min = Math.min(min, input);
+        max = Math.max(max, input);
+        // Welford's update of the running mean and sum of squared differences
+        double delta = input - mean;
+        mean += delta / count;
+        m2 += delta * (input - mean);
+      }
+
+      void merge(State s) {
+        if (s.count == 0) {
+          return;
+        }
+        long n = count + s.count;
+        double delta = s.mean - mean;
+        mean += delta * s.count / n;
+        m2 += s.m2 + delta * delta * ((double) count * s.count / n);
+        count = n;
+        sum += s.sum;
+        min = Math.min(min, s.min);
+        max = Math.max(max, s.max);
+      }
+    }
+
+    /** Fixed size {@link org.apache.beam.sdk.coders.Coder} for accumulator state */
+    static class StateCoder extends CustomCoder<State> {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public void encode(State value, OutputStream outStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outStream);
+        out.writeLong(value.count);
+        out.writeLong(value.sum);
+        out.writeLong(value.min);
+        out.writeLong(value.max);
+        out.writeDouble(value.mean);
+        out.writeDouble(value.m2);
+        out.flush();
+      }
+
+      @Override
+      public State decode(InputStream inStream) throws IOException {
+        DataInputStream in = new DataInputStream(inStream);
+        State ret = new State();
+        ret.count = in.readLong();
+        ret.sum = in.readLong();
+        ret.min = in.readLong();
+        ret.max = in.readLong();
+        ret.mean = in.readDouble();
+        ret.m2 = in.readDouble();
+        return ret;
       }
     }
 
     @Override
-    public State createAccumulator(Context c) {
+    public Coder<State> getAccumulatorCoder(CoderRegistry registry, Coder<Long> inputCoder) {
+      return new StateCoder();
+    }
+
+    @Override
+    public State createAccumulator() {
       return new State();
     }
 
     @Override
-    public State addInput(State state, Long input, Context c) {
-      state.sum += input;
-      state.varianceSq.add(Math.pow(input - c.sideInput(meanValue), 2));
+    public State addInput(State state, Long input) {
+      state.add(input);
       return state;
     }
 
     @Override
-    public State mergeAccumulators(Iterable<State> states, Context c) {
+    public State mergeAccumulators(Iterable<State> states) {
       State merged = new State();
       for (State s : states) {
-        merged.sum += s.sum;
-        merged.varianceSq.addAll(s.varianceSq);
+        merged.merge(s);
       }
       return merged;
     }
 
     @Override
-    public StatsOutput extractOutput(State state, Context c) {
-      Double mean = c.sideInput(meanValue);
+    public StatsOutput extractOutput(State state) {
       StatsOutput ret = new StatsOutput();
-      ret.setTotalSum(state.sum);
-      Double x = 0.0;
-      for (Double y : state.varianceSq) {
-        x += y;
+      if (state.count == 0) {
+        return ret;
       }
-      ret.setPopulationVariance(x / state.varianceSq.size());
-      ret.setMean(mean);
+      Double popVar = state.m2 / state.count;
+      ret.setTotalSum(state.sum);
+      ret.setMean((double) state.sum / state.count);
+      ret.setPopulationVariance(popVar);
+      ret.setStandardDeviation(Math.sqrt(popVar));
+      ret.setMin(state.min);
+      ret.setMax(state.max);
       return ret;
     }
 
@@ -173,9 +305,7 @@ public class Stats extends PTransform<PCollection<Long>, PCollection<Stats.Stats
       return new StatsOutput();
     }
 
-    StatsCombiner(PCollectionView<Double> meanValue) {
-      this.meanValue = meanValue;
-    }
+    StatsCombiner() {}
   }
 
   Stats() {}
@@ -192,8 +322,6 @@ public class Stats extends PTransform<PCollection<Long>, PCollection<Stats.Stats
 
   @Override
   public PCollection<StatsOutput> expand(PCollection<Long> input) {
-    PCollectionView<Double> meanValue = input.apply(Mean.<Long>globally().asSingletonView());
-    return input.apply(
-        Combine.globally(new StatsCombiner(meanValue)).withoutDefaults().withSideInputs(meanValue));
+    return input.apply(Combine.globally(new StatsCombiner()).withoutDefaults());
   }
 }
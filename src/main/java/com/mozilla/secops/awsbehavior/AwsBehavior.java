@@ -14,6 +14,8 @@ import com.mozilla.secops.parser.ParserDoFn;
 import com.mozilla.secops.parser.Payload;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.regex.PatternSyntaxException;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.options.Default;
@@ -56,6 +58,10 @@ public class AwsBehavior implements Serializable {
      */
     public ParseAndWindow(AwsBehaviorOptions options) {
       cfg = ParserCfg.fromInputOptions(options);
+      // Only Cloudtrail events are processed by this pipeline, so we don't need to test
+      // events against any of the other payload parsers
+      cfg.setPayloadTypes(
+          new ArrayList<Payload.PayloadType>(Arrays.asList(Payload.PayloadType.CLOUDTRAIL)));
     }
 
     @Override
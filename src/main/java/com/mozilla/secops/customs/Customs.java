@@ -6,6 +6,7 @@ import com.mozilla.secops.OutputOptions;
 import com.mozilla.secops.alert.Alert;
 import com.mozilla.secops.alert.AlertFormatter;
 import com.mozilla.secops.parser.Event;
+import com.mozilla.secops.parser.EventFilter;
 import com.mozilla.secops.parser.ParserCfg;
 import com.mozilla.secops.parser.ParserDoFn;
 import java.io.IOException;
@@ -21,6 +22,7 @@ import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionList;
+import org.apache.beam.sdk.values.PCollectionTuple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,37 +33,6 @@ import org.slf4j.LoggerFactory;
 public class Customs implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  /** Generic rate limiting detector driven by {@link CustomsCfgEntry} */
-  public static class Detector extends PTransform<PCollection<Event>, PCollection<Alert>> {
-    private static final long serialVersionUID = 1L;
-
-    private final String detectorName;
-    private final String monitoredResource;
-    private final CustomsCfgEntry cfg;
-
-    private Logger log;
-
-    /**
-     * Initialize detector
-     *
-     * @param detectorName Descriptive name for detector instance
-     * @param cfg Configuration for detector
-     * @param monitoredResource Monitored resource name
-     */
-    public Detector(String detectorName, CustomsCfgEntry cfg, String monitoredResource) {
-      log = LoggerFactory.getLogger(Detector.class);
-      log.info("initializing new detector, {}", detectorName);
-      this.cfg = cfg;
-      this.detectorName = detectorName;
-      this.monitoredResource = monitoredResource;
-    }
-
-    @Override
-    public PCollection<Alert> expand(PCollection<Event> col) {
-      return col.apply(new RateLimitAnalyzer(detectorName, cfg, monitoredResource));
-    }
-  }
-
   /** High level transform for invoking all detector instances given the customs configuration */
   public static class Detectors extends PTransform<PCollection<Event>, PCollection<Alert>> {
     private static final long serialVersionUID = 1L;
@@ -69,6 +40,8 @@ public class Customs implements Serializable {
     private final CustomsCfg cfg;
     private final String monitoredResource;
 
+    private Logger log;
+
     /**
      * Initialize new flattening detectors instance
      *
@@ -76,20 +49,46 @@ public class Customs implements Serializable {
      * @param options Pipeline options
      */
     public Detectors(CustomsCfg cfg, CustomsOptions options) {
+      log = LoggerFactory.getLogger(Detectors.class);
       this.cfg = cfg;
       monitoredResource = options.getMonitoredResourceIndicator();
     }
 
     @Override
     public PCollection<Alert> expand(PCollection<Event> col) {
-      PCollectionList<Alert> alerts = PCollectionList.empty(col.getPipeline());
+      // Evaluate the filters and keying selectors of all detectors in a single pass over the
+      // event stream, and route keyed events to the analysis branch of each detector
+      DetectorDispatch dispatch = new DetectorDispatch();
       for (Map.Entry<String, CustomsCfgEntry> entry : cfg.getDetectors().entrySet()) {
-        String detectorName = entry.getKey();
-        CustomsCfgEntry detectorCfg = entry.getValue();
-        alerts =
-            alerts.and(
-                col.apply(
-                    detectorName, new Detector(detectorName, detectorCfg, monitoredResource)));
+        EventFilter filter;
+        try {
+          filter = entry.getValue().getEventFilterCfg().getEventFilter("default");
+        } catch (IOException exc) {
+          return null;
+        }
+        dispatch.withDetector(entry.getKey(), filter);
+      }
+
+      PCollectionList<Alert> alerts = PCollectionList.empty(col.getPipeline());
+      if (!dispatch.getTags().isEmpty()) {
+        PCollectionTuple keyed =
+            col.apply(
+                "detector dispatch",
+                ParDo.of(dispatch)
+                    .withOutputTags(
+                        dispatch.getMainOutputTag(), dispatch.getAdditionalOutputTags()));
+        for (Map.Entry<String, CustomsCfgEntry> entry : cfg.getDetectors().entrySet()) {
+          String detectorName = entry.getKey();
+          log.info("initializing new detector, {}", detectorName);
+          alerts =
+              alerts.and(
+                  keyed
+                      .get(dispatch.getTag(detectorName))
+                      .apply(
+                          detectorName,
+                          new RateLimitAnalyzer.KeyedAnalyzer(
+                              detectorName, entry.getValue(), monitoredResource)));
+        }
       }
       PCollection<Alert> ret = alerts.apply(Flatten.<Alert>pCollections());
       return ret;
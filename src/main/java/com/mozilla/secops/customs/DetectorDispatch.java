@@ -0,0 +1,122 @@
+package com.mozilla.secops.customs;
+
+import com.mozilla.secops.parser.CompositeKey;
+import com.mozilla.secops.parser.Event;
+import com.mozilla.secops.parser.EventFilter;
+import com.mozilla.secops.parser.EventFilterSet;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.TupleTag;
+import org.apache.beam.sdk.values.TupleTagList;
+
+/**
+ * Evaluate the filters and keying selectors of all detectors in a single pass over each event
+ *
+ * <p>Each detector is associated with an output tag. An event matching a detector filter is keyed
+ * using the keying selectors of the detector, and emitted to the output of that detector.
+ */
+public class DetectorDispatch extends DoFn<Event, KV<CompositeKey, Event>> {
+  private static final long serialVersionUID = 1L;
+
+  private final EventFilterSet filters;
+  private final ArrayList<TupleTag<KV<CompositeKey, Event>>> tags;
+  private final ArrayList<String> detectorNames;
+
+  private transient boolean[] matched;
+
+  /**
+   * Add a detector to the dispatcher
+   *
+   * @param detectorName Detector name
+   * @param filter Event filter for detector, including any keying selectors
+   * @return DetectorDispatch for chaining
+   */
+  public DetectorDispatch withDetector(String detectorName, EventFilter filter) {
+    filters.add(filter);
+    detectorNames.add(detectorName);
+    // Tags are created as anonymous subclasses so the output type, and therefore the coder, can be
+    // inferred for each output
+    tags.add(
+        new TupleTag<KV<CompositeKey, Event>>(detectorName) {
+          private static final long serialVersionUID = 1L;
+        });
+    return this;
+  }
+
+  /**
+   * Get output tag for a detector
+   *
+   * @param detectorName Detector name
+   * @return Output tag, or null if the detector is not known
+   */
+  public TupleTag<KV<CompositeKey, Event>> getTag(String detectorName) {
+    int i = detectorNames.indexOf(detectorName);
+    return i == -1 ? null : tags.get(i);
+  }
+
+  /**
+   * Get output tags for all detectors
+   *
+   * @return Output tags, in the order detectors were added
+   */
+  public List<TupleTag<KV<CompositeKey, Event>>> getTags() {
+    return tags;
+  }
+
+  /**
+   * Get main output tag for use with {@link
+   * org.apache.beam.sdk.transforms.ParDo.SingleOutput#withOutputTags}
+   *
+   * @return Output tag of the first detector
+   */
+  public TupleTag<KV<CompositeKey, Event>> getMainOutputTag() {
+    return tags.get(0);
+  }
+
+  /**
+   * Get additional output tags for use with {@link
+   * org.apache.beam.sdk.transforms.ParDo.SingleOutput#withOutputTags}
+   *
+   * @return Output tags of all detectors other than the first
+   */
+  public TupleTagList getAdditionalOutputTags() {
+    return TupleTagList.of(new ArrayList<TupleTag<?>>(tags.subList(1, tags.size())));
+  }
+
+  @Setup
+  public void setup() {
+    matched = new boolean[filters.size()];
+  }
+
+  @ProcessElement
+  public void processElement(ProcessContext c) {
+    Event e = c.element();
+    if (!filters.matches(e, matched)) {
+      return;
+    }
+    for (int i = 0; i < matched.length; i++) {
+      if (!matched[i]) {
+        continue;
+      }
+      EventFilter filter = filters.get(i);
+      CompositeKey key = filter.getCompositeKey(e);
+      if (key == null) {
+        continue;
+      }
+      if (filter.getOutputWithTimestamp()) {
+        c.outputWithTimestamp(tags.get(i), KV.of(key, e), e.getTimestamp().toInstant());
+      } else {
+        c.output(tags.get(i), KV.of(key, e));
+      }
+    }
+  }
+
+  /** Create new empty {@link DetectorDispatch} */
+  public DetectorDispatch() {
+    filters = new EventFilterSet();
+    tags = new ArrayList<TupleTag<KV<CompositeKey, Event>>>();
+    detectorNames = new ArrayList<String>();
+  }
+}
@@ -1,6 +1,7 @@
 package com.mozilla.secops.customs;
 
 import com.mozilla.secops.alert.Alert;
+import com.mozilla.secops.parser.CompositeKey;
 import com.mozilla.secops.parser.Event;
 import com.mozilla.secops.parser.EventFilter;
 import java.io.IOException;
@@ -28,6 +29,69 @@ public class RateLimitAnalyzer extends PTransform<PCollection<Event>, PCollectio
   private String detectorName;
   private String monitoredResource;
 
+  /**
+   * Rate limit analysis of events that have already been filtered and keyed
+   *
+   * <p>Used where the filter and keying selectors of the detector have been applied elsewhere, such
+   * as by {@link DetectorDispatch}.
+   */
+  public static class KeyedAnalyzer
+      extends PTransform<PCollection<KV<CompositeKey, Event>>, PCollection<Alert>> {
+    private static final long serialVersionUID = 1L;
+
+    private final CustomsCfgEntry cfg;
+    private final String detectorName;
+    private final String monitoredResource;
+
+    /**
+     * Create new KeyedAnalyzer
+     *
+     * @param detectorName Detector name
+     * @param cfg Customs configuration entry
+     * @param monitoredResource Monitored resource name
+     */
+    public KeyedAnalyzer(String detectorName, CustomsCfgEntry cfg, String monitoredResource) {
+      this.detectorName = detectorName;
+      this.cfg = cfg;
+      this.monitoredResource = monitoredResource;
+    }
+
+    @Override
+    public PCollection<Alert> expand(PCollection<KV<CompositeKey, Event>> input) {
+      PCollection<KV<CompositeKey, Event>> winevents =
+          input.apply(
+              "analysis windows",
+              Window.<KV<CompositeKey, Event>>into(
+                      SlidingWindows.of(Duration.standardSeconds(cfg.getSlidingWindowLength()))
+                          .every(Duration.standardSeconds(cfg.getSlidingWindowSlides())))
+                  .triggering(
+                      Repeatedly.forever(
+                          AfterWatermark.pastEndOfWindow()
+                              .withEarlyFirings(
+                                  AfterProcessingTime.pastFirstElementInPane()
+                                      .plusDelayOf(Duration.standardSeconds(5L)))))
+                  .withAllowedLateness(Duration.ZERO)
+                  .accumulatingFiredPanes());
+
+      PCollectionView<Map<CompositeKey, Iterable<Event>>> eventView =
+          winevents.apply(View.<CompositeKey, Event>asMultimap());
+
+      return winevents
+          .apply(Count.<CompositeKey, Event>perKey())
+          .apply(
+              ParDo.of(new RateLimitCriterion(detectorName, cfg, eventView, monitoredResource))
+                  .withSideInputs(eventView))
+          .apply(
+              "suppression windows",
+              Window.<KV<CompositeKey, Alert>>into(new GlobalWindows())
+                  .triggering(
+                      Repeatedly.forever(
+                          AfterProcessingTime.pastFirstElementInPane()
+                              .plusDelayOf(Duration.standardSeconds(5L)))))
+          .apply(ParDo.of(new RateLimitSuppressor(cfg)));
+    }
+  }
+
   @Override
   public PCollection<Alert> expand(PCollection<Event> input) {
     EventFilter filter = null;
@@ -37,39 +101,9 @@ public class RateLimitAnalyzer extends PTransform<PCollection<Event>, PCollectio
       return null;
     }
 
-    PCollection<KV<String, Event>> winevents =
-        input
-            .apply(EventFilter.getKeyingTransform(filter))
-            .apply(
-                "analysis windows",
-                Window.<KV<String, Event>>into(
-                        SlidingWindows.of(Duration.standardSeconds(cfg.getSlidingWindowLength()))
-                            .every(Duration.standardSeconds(cfg.getSlidingWindowSlides())))
-                    .triggering(
-                        Repeatedly.forever(
-                            AfterWatermark.pastEndOfWindow()
-                                .withEarlyFirings(
-                                    AfterProcessingTime.pastFirstElementInPane()
-                                        .plusDelayOf(Duration.standardSeconds(5L)))))
-                    .withAllowedLateness(Duration.ZERO)
-                    .accumulatingFiredPanes());
-
-    PCollectionView<Map<String, Iterable<Event>>> eventView =
-        winevents.apply(View.<String, Event>asMultimap());
-
-    return winevents
-        .apply(Count.<String, Event>perKey())
-        .apply(
-            ParDo.of(new RateLimitCriterion(detectorName, cfg, eventView, monitoredResource))
-                .withSideInputs(eventView))
-        .apply(
-            "suppression windows",
-            Window.<KV<String, Alert>>into(new GlobalWindows())
-                .triggering(
-                    Repeatedly.forever(
-                        AfterProcessingTime.pastFirstElementInPane()
-                            .plusDelayOf(Duration.standardSeconds(5L)))))
-        .apply(ParDo.of(new RateLimitSuppressor(cfg)));
+    return input
+        .apply(EventFilter.getKeyingTransform(filter))
+        .apply(new KeyedAnalyzer(detectorName, cfg, monitoredResource));
   }
 
   /**
@@ -1,8 +1,8 @@
 package com.mozilla.secops.customs;
 
 import com.mozilla.secops.alert.Alert;
+import com.mozilla.secops.parser.CompositeKey;
 import com.mozilla.secops.parser.Event;
-import com.mozilla.secops.parser.EventFilter;
 import java.util.Map;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.values.KV;
@@ -15,13 +15,13 @@ import org.slf4j.LoggerFactory;
  * Operate in conjunction with {@link RateLimitAnalyzer} to apply analysis criterion to incoming
  * event stream.
  */
-public class RateLimitCriterion extends DoFn<KV<String, Long>, KV<String, Alert>> {
+public class RateLimitCriterion extends DoFn<KV<CompositeKey, Long>, KV<CompositeKey, Alert>> {
   private static final long serialVersionUID = 1L;
 
   private final String detectorName;
   private final String monitoredResource;
   private final CustomsCfgEntry cfg;
-  private final PCollectionView<Map<String, Iterable<Event>>> eventView;
+  private final PCollectionView<Map<CompositeKey, Iterable<Event>>> eventView;
   private final Alert.AlertSeverity severity;
 
   private Logger log;
@@ -37,7 +37,7 @@ public class RateLimitCriterion extends DoFn<KV<String, Long>, KV<String, Alert>
   public RateLimitCriterion(
       String detectorName,
       CustomsCfgEntry cfg,
-      PCollectionView<Map<String, Iterable<Event>>> eventView,
+      PCollectionView<Map<CompositeKey, Iterable<Event>>> eventView,
       String monitoredResource) {
     this.detectorName = detectorName;
     this.cfg = cfg;
@@ -55,9 +55,9 @@ public class RateLimitCriterion extends DoFn<KV<String, Long>, KV<String, Alert>
 
   @ProcessElement
   public void processElement(ProcessContext c) {
-    String key = c.element().getKey();
+    CompositeKey key = c.element().getKey();
     Long count = c.element().getValue();
-    Map<String, Iterable<Event>> eventMap = c.sideInput(eventView);
+    Map<CompositeKey, Iterable<Event>> eventMap = c.sideInput(eventView);
 
     if (count < cfg.getThreshold()) {
       return;
@@ -92,7 +92,7 @@ public class RateLimitCriterion extends DoFn<KV<String, Long>, KV<String, Alert>
     alert.addMetadata("count", count.toString());
     alert.setNotifyMergeKey(detectorName);
 
-    String[] kelements = EventFilter.splitKey(key);
+    String[] kelements = key.getElements();
     int kelementCount = kelements.length;
     if (kelementCount != cfg.getMetadataAssembly().length) {
       log.warn("dropping alert for {}, metadata assembly length did not match key count", key);
@@ -1,6 +1,7 @@
 package com.mozilla.secops.customs;
 
 import com.mozilla.secops.alert.Alert;
+import com.mozilla.secops.parser.CompositeKey;
 import org.apache.beam.sdk.state.StateSpec;
 import org.apache.beam.sdk.state.StateSpecs;
 import org.apache.beam.sdk.state.ValueState;
@@ -13,12 +14,12 @@ import org.slf4j.LoggerFactory;
 /**
  * {@link DoFn} to apply suppression of alerts.
  *
- * <p>The input is expected to be a {@link KV} where the key is a string identifier that suppression
- * is desired for, and the value is an alert associated with this identifier. Global window state is
- * used to suppress additional alerts for the identifier until the suppression timeframe configured
- * for a particular detector has expired.
+ * <p>The input is expected to be a {@link KV} where the key is a {@link CompositeKey} identifier
+ * that suppression is desired for, and the value is an alert associated with this identifier.
+ * Global window state is used to suppress additional alerts for the identifier until the
+ * suppression timeframe configured for a particular detector has expired.
  */
-public class RateLimitSuppressor extends DoFn<KV<String, Alert>, Alert> {
+public class RateLimitSuppressor extends DoFn<KV<CompositeKey, Alert>, Alert> {
   private static final long serialVersionUID = 1L;
 
   private Logger log;
@@ -39,7 +40,7 @@ public class RateLimitSuppressor extends DoFn<KV<String, Alert>, Alert> {
 
   @ProcessElement
   public void processElement(ProcessContext c, @StateId("id_last_alert") ValueState<Instant> last) {
-    String key = c.element().getKey();
+    CompositeKey key = c.element().getKey();
     Alert alertval = c.element().getValue();
 
     Long suppressMillis = cfg.getAlertSuppressionLength() * 1000;
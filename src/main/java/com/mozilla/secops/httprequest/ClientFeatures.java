@@ -0,0 +1,204 @@
+package com.mozilla.secops.httprequest;
+
+import com.mozilla.secops.HyperLogLog;
+import com.mozilla.secops.parser.Event;
+import com.mozilla.secops.parser.Normalized;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.CustomCoder;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.util.VarInt;
+
+/**
+ * Request features for a single client within a window
+ *
+ * <p>Records the total number of requests, the number of requests resulting in client (4xx) and
+ * server (5xx) errors, and {@link HyperLogLog} sketches estimating the number of distinct request
+ * paths and user agents.
+ */
+public class ClientFeatures implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private long requests;
+  private long clientErrors;
+  private long serverErrors;
+  private final HyperLogLog paths;
+  private final HyperLogLog userAgents;
+
+  /**
+   * Get total number of requests
+   *
+   * @return Request count
+   */
+  public long getRequests() {
+    return requests;
+  }
+
+  /**
+   * Get number of requests with a 4xx status
+   *
+   * @return Client error count
+   */
+  public long getClientErrors() {
+    return clientErrors;
+  }
+
+  /**
+   * Get number of requests with a 5xx status
+   *
+   * @return Server error count
+   */
+  public long getServerErrors() {
+    return serverErrors;
+  }
+
+  /**
+   * Get estimated number of distinct request paths
+   *
+   * @return Distinct path estimate
+   */
+  public long getDistinctPaths() {
+    return paths.cardinality();
+  }
+
+  /**
+   * Get estimated number of distinct user agents
+   *
+   * @return Distinct user agent estimate
+   */
+  public long getDistinctUserAgents() {
+    return userAgents.cardinality();
+  }
+
+  void add(Integer status, String path, String userAgent) {
+    requests++;
+    if (status != null) {
+      if (status >= 400 && status < 500) {
+        clientErrors++;
+      } else if (status >= 500 && status < 600) {
+        serverErrors++;
+      }
+    }
+    if (path != null) {
+      paths.add(path);
+    }
+    if (userAgent != null) {
+      userAgents.add(userAgent);
+    }
+  }
+
+  void merge(ClientFeatures f) {
+    requests += f.requests;
+    clientErrors += f.clientErrors;
+    serverErrors += f.serverErrors;
+    paths.merge(f.paths);
+    userAgents.merge(f.userAgents);
+  }
+
+  /**
+   * Create new empty feature record
+   *
+   * @param precision Precision of distinct path and user agent sketches
+   */
+  public ClientFeatures(int precision) {
+    paths = new HyperLogLog(precision);
+    userAgents = new HyperLogLog(precision);
+  }
+
+  private ClientFeatures(HyperLogLog paths, HyperLogLog userAgents) {
+    this.paths = paths;
+    this.userAgents = userAgents;
+  }
+
+  /** {@link CombineFn} building {@link ClientFeatures} from the events for a client */
+  public static class Combiner extends CombineFn<Event, ClientFeatures, ClientFeatures> {
+    private static final long serialVersionUID = 1L;
+
+    private final int precision;
+
+    @Override
+    public ClientFeatures createAccumulator() {
+      return new ClientFeatures(precision);
+    }
+
+    @Override
+    public ClientFeatures addInput(ClientFeatures features, Event input) {
+      Normalized n = input.getNormalized();
+      if (n != null) {
+        features.add(n.getRequestStatus(), n.getUrlRequestPath(), n.getUserAgent());
+      }
+      return features;
+    }
+
+    @Override
+    public ClientFeatures mergeAccumulators(Iterable<ClientFeatures> features) {
+      ClientFeatures merged = new ClientFeatures(precision);
+      for (ClientFeatures f : features) {
+        merged.merge(f);
+      }
+      return merged;
+    }
+
+    @Override
+    public ClientFeatures extractOutput(ClientFeatures features) {
+      return features;
+    }
+
+    @Override
+    public Coder<ClientFeatures> getAccumulatorCoder(
+        CoderRegistry registry, Coder<Event> inputCoder) {
+      return new ClientFeaturesCoder();
+    }
+
+    @Override
+    public Coder<ClientFeatures> getDefaultOutputCoder(
+        CoderRegistry registry, Coder<Event> inputCoder) {
+      return new ClientFeaturesCoder();
+    }
+
+    /**
+     * Create new combiner
+     *
+     * @param precision Precision of distinct path and user agent sketches
+     */
+    public Combiner(int precision) {
+      // Validate precision when the transform is constructed
+      new HyperLogLog(precision);
+      this.precision = precision;
+    }
+  }
+
+  /** {@link Coder} for {@link ClientFeatures} */
+  public static class ClientFeaturesCoder extends CustomCoder<ClientFeatures> {
+    private static final long serialVersionUID = 1L;
+
+    private static final HyperLogLog.HyperLogLogCoder sketchCoder =
+        new HyperLogLog.HyperLogLogCoder();
+
+    @Override
+    public void encode(ClientFeatures value, OutputStream outStream) throws IOException {
+      VarInt.encode(value.requests, outStream);
+      VarInt.encode(value.clientErrors, outStream);
+      VarInt.encode(value.serverErrors, outStream);
+      sketchCoder.encode(value.paths, outStream);
+      sketchCoder.encode(value.userAgents, outStream);
+    }
+
+    @Override
+    public ClientFeatures decode(InputStream inStream) throws IOException {
+      long requests = VarInt.decodeLong(inStream);
+      long clientErrors = VarInt.decodeLong(inStream);
+      long serverErrors = VarInt.decodeLong(inStream);
+      ClientFeatures ret =
+          new ClientFeatures(sketchCoder.decode(inStream), sketchCoder.decode(inStream));
+      ret.requests = requests;
+      ret.clientErrors = clientErrors;
+      ret.serverErrors = serverErrors;
+      return ret;
+    }
+  }
+}
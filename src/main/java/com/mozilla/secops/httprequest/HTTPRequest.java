@@ -1,14 +1,18 @@
 package com.mozilla.secops.httprequest;
 
 import com.mozilla.secops.CidrUtil;
+import com.mozilla.secops.CompositeByteInput;
 import com.mozilla.secops.CompositeInput;
+import com.mozilla.secops.CountMinSketch;
 import com.mozilla.secops.DetectNat;
+import com.mozilla.secops.HyperLogLog;
 import com.mozilla.secops.InputOptions;
 import com.mozilla.secops.IprepdIO;
 import com.mozilla.secops.OutputOptions;
 import com.mozilla.secops.Stats;
 import com.mozilla.secops.alert.Alert;
 import com.mozilla.secops.alert.AlertFormatter;
+import com.mozilla.secops.parser.ByteParserDoFn;
 import com.mozilla.secops.parser.Event;
 import com.mozilla.secops.parser.EventFilter;
 import com.mozilla.secops.parser.EventFilterPayload;
@@ -17,11 +21,20 @@ import com.mozilla.secops.parser.EventFilterRule;
 import com.mozilla.secops.parser.Normalized;
 import com.mozilla.secops.parser.ParserCfg;
 import com.mozilla.secops.parser.ParserDoFn;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.CustomCoder;
+import org.apache.beam.sdk.coders.NullableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptions;
@@ -29,14 +42,16 @@ import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.state.StateSpec;
 import org.apache.beam.sdk.state.StateSpecs;
 import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.transforms.ApproximateQuantiles.ApproximateQuantilesCombineFn;
 import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
 import org.apache.beam.sdk.transforms.Count;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.Flatten;
-import org.apache.beam.sdk.transforms.GroupByKey;
-import org.apache.beam.sdk.transforms.Keys;
+import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Top;
 import org.apache.beam.sdk.transforms.Values;
 import org.apache.beam.sdk.transforms.windowing.AfterProcessingTime;
 import org.apache.beam.sdk.transforms.windowing.AfterWatermark;
@@ -44,10 +59,12 @@ import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.FixedWindows;
 import org.apache.beam.sdk.transforms.windowing.Repeatedly;
 import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionList;
 import org.apache.beam.sdk.values.PCollectionView;
+import org.apache.beam.sdk.values.TypeDescriptors;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.slf4j.Logger;
@@ -93,8 +110,7 @@ public class HTTPRequest implements Serializable {
       cfg = ParserCfg.fromInputOptions(options);
     }
 
-    @Override
-    public PCollection<Event> expand(PCollection<String> col) {
+    private EventFilter buildFilter() {
       EventFilter filter =
           new EventFilter().setWantUTC(true).setOutputWithTimestamp(emitEventTimestamps);
       EventFilterRule rule = new EventFilterRule().wantNormalizedType(Normalized.Type.HTTP_REQUEST);
@@ -143,9 +159,10 @@ public class HTTPRequest implements Serializable {
         rule.addPayloadFilter(orFilter);
       }
       filter.addRule(rule);
-      PCollection<Event> parsed =
-          col.apply(
-              ParDo.of(new ParserDoFn().withConfiguration(cfg).withInlineEventFilter(filter)));
+      return filter;
+    }
+
+    private PCollection<Event> excludeAddresses(PCollection<Event> parsed) {
       if (cidrExclusionList != null) {
         return parsed.apply(
             "cidr exclusion",
@@ -153,6 +170,35 @@ public class HTTPRequest implements Serializable {
       }
       return parsed;
     }
+
+    @Override
+    public PCollection<Event> expand(PCollection<String> col) {
+      return excludeAddresses(
+          col.apply(
+              ParDo.of(
+                  new ParserDoFn().withConfiguration(cfg).withInlineEventFilter(buildFilter()))));
+    }
+
+    /**
+     * Return transform parsing UTF-8 encoded input from {@link CompositeByteInput}
+     *
+     * @return Transform
+     */
+    public PTransform<PCollection<byte[]>, PCollection<Event>> fromBytes() {
+      return new PTransform<PCollection<byte[]>, PCollection<Event>>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public PCollection<Event> expand(PCollection<byte[]> col) {
+          return excludeAddresses(
+              col.apply(
+                  ParDo.of(
+                      new ByteParserDoFn()
+                          .withConfiguration(cfg)
+                          .withInlineEventFilter(buildFilter()))));
+        }
+      };
+    }
   }
 
   /** Window events into fixed one minute windows */
@@ -189,11 +235,62 @@ public class HTTPRequest implements Serializable {
     }
   }
 
+  /**
+   * Aggregate per-client request features within each window
+   *
+   * <p>Events are keyed by normalized source address and reduced to a {@link ClientFeatures} record
+   * per client using a single combiner, so analyses that only require per-client totals can share
+   * one aggregation rather than each counting the events separately. Events without a source
+   * address are ignored.
+   */
+  public static class ClientFeatureAggregation
+      extends PTransform<PCollection<Event>, PCollection<KV<String, ClientFeatures>>> {
+    private static final long serialVersionUID = 1L;
+
+    private final int precision;
+
+    /** Initialize aggregation using the default sketch precision */
+    public ClientFeatureAggregation() {
+      this(HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    /**
+     * Initialize aggregation
+     *
+     * @param precision Precision of distinct path and user agent sketches
+     */
+    public ClientFeatureAggregation(int precision) {
+      this.precision = precision;
+    }
+
+    @Override
+    public PCollection<KV<String, ClientFeatures>> expand(PCollection<Event> input) {
+      return input
+          .apply(
+              "key by client",
+              ParDo.of(
+                  new DoFn<Event, KV<String, Event>>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @ProcessElement
+                    public void processElement(ProcessContext c) {
+                      Normalized n = c.element().getNormalized();
+                      if (n.getSourceAddress() == null) {
+                        return;
+                      }
+                      c.output(KV.of(n.getSourceAddress(), c.element()));
+                    }
+                  }))
+          .apply("client features", Combine.perKey(new ClientFeatures.Combiner(precision)));
+    }
+  }
+
   /** Transform for analysis of error rates per client within a given window. */
   public static class ErrorRateAnalysis extends PTransform<PCollection<Event>, PCollection<Alert>> {
     private static final long serialVersionUID = 1L;
 
     private final Long maxErrorRate;
+    private final Integer cardinalityPrecision;
     private final String monitoredResource;
     private final Boolean enableIprepdDatastoreWhitelist;
     private final String iprepdDatastoreWhitelistProject;
@@ -205,6 +302,7 @@ public class HTTPRequest implements Serializable {
      */
     public ErrorRateAnalysis(HTTPRequestOptions options) {
       maxErrorRate = options.getMaxClientErrorRate();
+      cardinalityPrecision = options.getCardinalityPrecision();
       monitoredResource = options.getMonitoredResourceIndicator();
       enableIprepdDatastoreWhitelist = options.getOutputIprepdEnableDatastoreWhitelist();
       iprepdDatastoreWhitelistProject = options.getOutputIprepdDatastoreWhitelistProject();
@@ -213,70 +311,88 @@ public class HTTPRequest implements Serializable {
     @Override
     public PCollection<Alert> expand(PCollection<Event> input) {
       return input
-          .apply(
-              "isolate client errors",
-              ParDo.of(
-                  new DoFn<Event, String>() {
-                    private static final long serialVersionUID = 1L;
+          .apply("client features", new ClientFeatureAggregation(cardinalityPrecision))
+          .apply("error rate features", fromFeatures());
+    }
 
-                    @ProcessElement
-                    public void processElement(ProcessContext c) {
-                      Normalized n = c.element().getNormalized();
-                      Integer status = n.getRequestStatus();
-                      if (status == null) {
-                        return;
-                      }
-                      if (n.getSourceAddress() == null) {
-                        return;
-                      }
-                      if (status >= 400 && status < 500) {
-                        c.output(n.getSourceAddress());
-                      }
-                    }
-                  }))
-          .apply(Count.<String>perElement())
-          .apply(
-              "per-client error rate analysis",
-              ParDo.of(
-                  new DoFn<KV<String, Long>, Alert>() {
-                    private static final long serialVersionUID = 1L;
+    /**
+     * Return transform applying error rate analysis to features from {@link
+     * ClientFeatureAggregation}
+     *
+     * @return Transform
+     */
+    public PTransform<PCollection<KV<String, ClientFeatures>>, PCollection<Alert>> fromFeatures() {
+      return new PTransform<PCollection<KV<String, ClientFeatures>>, PCollection<Alert>>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public PCollection<Alert> expand(PCollection<KV<String, ClientFeatures>> features) {
+          return analyze(
+              features.apply(
+                  "isolate client errors",
+                  MapElements.into(
+                          TypeDescriptors.kvs(TypeDescriptors.strings(), TypeDescriptors.longs()))
+                      .via(
+                          (KV<String, ClientFeatures> kv) ->
+                              KV.of(kv.getKey(), kv.getValue().getClientErrors()))));
+        }
+      };
+    }
 
-                    @ProcessElement
-                    public void processElement(ProcessContext c, BoundedWindow w) {
-                      if (c.element().getValue() <= maxErrorRate) {
-                        return;
-                      }
-                      Alert a = new Alert();
-                      a.setSummary(
-                          String.format(
-                              "%s httprequest error_rate %s %d",
-                              monitoredResource, c.element().getKey(), c.element().getValue()));
-                      a.setCategory("httprequest");
-                      a.addMetadata("category", "error_rate");
-                      a.addMetadata("sourceaddress", c.element().getKey());
-                      if (enableIprepdDatastoreWhitelist) {
-                        IprepdIO.addMetadataIfWhitelisted(
-                            c.element().getKey(), a, iprepdDatastoreWhitelistProject);
-                      }
-                      a.addMetadata("error_count", c.element().getValue().toString());
-                      a.addMetadata("error_threshold", maxErrorRate.toString());
-                      a.setNotifyMergeKey(String.format("error_count", c.element().getKey()));
-                      a.addMetadata(
-                          "window_timestamp", (new DateTime(w.maxTimestamp())).toString());
-                      if (!a.hasCorrectFields()) {
-                        throw new IllegalArgumentException("alert has invalid field configuration");
-                      }
-                      c.output(a);
-                    }
-                  }));
+    private PCollection<Alert> analyze(PCollection<KV<String, Long>> errorCounts) {
+      return errorCounts.apply(
+          "per-client error rate analysis",
+          ParDo.of(
+              new DoFn<KV<String, Long>, Alert>() {
+                private static final long serialVersionUID = 1L;
+
+                @ProcessElement
+                public void processElement(ProcessContext c, BoundedWindow w) {
+                  if (c.element().getValue() <= maxErrorRate) {
+                    return;
+                  }
+                  Alert a = new Alert();
+                  a.setSummary(
+                      String.format(
+                          "%s httprequest error_rate %s %d",
+                          monitoredResource, c.element().getKey(), c.element().getValue()));
+                  a.setCategory("httprequest");
+                  a.addMetadata("category", "error_rate");
+                  a.addMetadata("sourceaddress", c.element().getKey());
+                  if (enableIprepdDatastoreWhitelist) {
+                    IprepdIO.addMetadataIfWhitelisted(
+                        c.element().getKey(), a, iprepdDatastoreWhitelistProject);
+                  }
+                  a.addMetadata("error_count", c.element().getValue().toString());
+                  a.addMetadata("error_threshold", maxErrorRate.toString());
+                  a.setNotifyMergeKey(String.format("error_count", c.element().getKey()));
+                  a.addMetadata("window_timestamp", (new DateTime(w.maxTimestamp())).toString());
+                  if (!a.hasCorrectFields()) {
+                    throw new IllegalArgumentException("alert has invalid field configuration");
+                  }
+                  c.output(a);
+                }
+              }));
     }
   }
 
-  /** Transform for analysis of hard per-source request count limit within fixed window */
+  /**
+   * Transform for analysis of hard per-source request count limit within fixed window
+   *
+   * <p>By default requests are counted exactly for every source address, using the request totals
+   * from {@link ClientFeatureAggregation}. In heavy hitter mode, a {@link CountMinSketch} of source
+   * addresses is built for the window, and only addresses with an estimated count over the limit
+   * are counted exactly. Sketch estimates are never less than the true count, so no address over
+   * the limit is missed, and the exact count only includes the small number of candidate addresses
+   * regardless of how many distinct addresses are seen.
+   */
   public static class HardLimitAnalysis extends PTransform<PCollection<Event>, PCollection<Alert>> {
     private static final long serialVersionUID = 1L;
 
     private final Long maxCount;
+    private final Boolean heavyHitters;
+    private final Integer sketchWidth;
+    private final Integer cardinalityPrecision;
     private final String monitoredResource;
     private final Boolean enableIprepdDatastoreWhitelist;
     private final String iprepdDatastoreWhitelistProject;
@@ -291,6 +407,9 @@ public class HTTPRequest implements Serializable {
      */
     public HardLimitAnalysis(HTTPRequestOptions options) {
       maxCount = options.getHardLimitRequestCount();
+      heavyHitters = options.getHardLimitHeavyHitters();
+      sketchWidth = options.getHardLimitSketchWidth();
+      cardinalityPrecision = options.getCardinalityPrecision();
       monitoredResource = options.getMonitoredResourceIndicator();
       enableIprepdDatastoreWhitelist = options.getOutputIprepdEnableDatastoreWhitelist();
       iprepdDatastoreWhitelistProject = options.getOutputIprepdDatastoreWhitelistProject();
@@ -311,12 +430,14 @@ public class HTTPRequest implements Serializable {
 
     @Override
     public PCollection<Alert> expand(PCollection<Event> input) {
-      if (natView == null) {
-        // If natView was not set then we just create an empty view for use as the side input
-        natView = DetectNat.getEmptyView(input.getPipeline());
+      if (!heavyHitters) {
+        return input
+            .apply("client features", new ClientFeatureAggregation(cardinalityPrecision))
+            .apply("hard limit features", fromFeatures());
       }
-      return input
-          .apply(
+
+      PCollection<String> clients =
+          input.apply(
               "hard limit per client count",
               ParDo.of(
                   new DoFn<Event, String>() {
@@ -330,54 +451,108 @@ public class HTTPRequest implements Serializable {
                       }
                       c.output(n.getSourceAddress());
                     }
-                  }))
-          .apply(Count.<String>perElement())
-          .apply(
-              "per-source hard limit analysis",
-              ParDo.of(
-                      new DoFn<KV<String, Long>, Alert>() {
-                        private static final long serialVersionUID = 1L;
-
-                        @ProcessElement
-                        public void processElement(ProcessContext c, BoundedWindow w) {
-                          Map<String, Boolean> nv = c.sideInput(natView);
-                          if (c.element().getValue() <= maxCount) {
-                            return;
-                          }
-                          Boolean isNat = nv.get(c.element().getKey());
-                          if (isNat != null && isNat) {
-                            log.info(
-                                "{}: detectnat: skipping result emission for {}",
-                                w.toString(),
-                                c.element().getKey());
-                            return;
-                          }
-                          Alert a = new Alert();
-                          a.setSummary(
-                              String.format(
-                                  "%s httprequest hard_limit %s %d",
-                                  monitoredResource, c.element().getKey(), c.element().getValue()));
-                          a.setCategory("httprequest");
-                          a.addMetadata("category", "hard_limit");
-                          a.addMetadata("sourceaddress", c.element().getKey());
-                          if (enableIprepdDatastoreWhitelist) {
-                            IprepdIO.addMetadataIfWhitelisted(
-                                c.element().getKey(), a, iprepdDatastoreWhitelistProject);
-                          }
-                          a.addMetadata("count", c.element().getValue().toString());
-                          a.addMetadata("request_threshold", maxCount.toString());
-                          a.setNotifyMergeKey(
-                              String.format("hard_limit_count", c.element().getKey()));
-                          a.addMetadata(
-                              "window_timestamp", (new DateTime(w.maxTimestamp())).toString());
-                          if (!a.hasCorrectFields()) {
-                            throw new IllegalArgumentException(
-                                "alert has invalid field configuration");
-                          }
-                          c.output(a);
-                        }
-                      })
-                  .withSideInputs(natView));
+                  }));
+
+      final PCollectionView<CountMinSketch> sketch =
+          clients.apply(
+              "client sketch",
+              Combine.globally(CountMinSketch.combineFn(CountMinSketch.DEFAULT_DEPTH, sketchWidth))
+                  .withoutDefaults()
+                  .asSingletonView());
+      return analyze(
+          clients
+              .apply(
+                  "heavy hitter candidates",
+                  ParDo.of(
+                          new DoFn<String, String>() {
+                            private static final long serialVersionUID = 1L;
+
+                            @ProcessElement
+                            public void processElement(ProcessContext c) {
+                              if (c.sideInput(sketch).estimate(c.element()) > maxCount) {
+                                c.output(c.element());
+                              }
+                            }
+                          })
+                      .withSideInputs(sketch))
+              .apply(Count.<String>perElement()));
+    }
+
+    /**
+     * Return transform applying hard limit analysis to features from {@link
+     * ClientFeatureAggregation}
+     *
+     * <p>Request totals in the features are exact, so heavy hitter mode does not apply.
+     *
+     * @return Transform
+     */
+    public PTransform<PCollection<KV<String, ClientFeatures>>, PCollection<Alert>> fromFeatures() {
+      return new PTransform<PCollection<KV<String, ClientFeatures>>, PCollection<Alert>>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public PCollection<Alert> expand(PCollection<KV<String, ClientFeatures>> features) {
+          return analyze(
+              features.apply(
+                  "extract request counts",
+                  MapElements.into(
+                          TypeDescriptors.kvs(TypeDescriptors.strings(), TypeDescriptors.longs()))
+                      .via(
+                          (KV<String, ClientFeatures> kv) ->
+                              KV.of(kv.getKey(), kv.getValue().getRequests()))));
+        }
+      };
+    }
+
+    private PCollection<Alert> analyze(PCollection<KV<String, Long>> clientCounts) {
+      if (natView == null) {
+        // If natView was not set then we just create an empty view for use as the side input
+        natView = DetectNat.getEmptyView(clientCounts.getPipeline());
+      }
+      return clientCounts.apply(
+          "per-source hard limit analysis",
+          ParDo.of(
+                  new DoFn<KV<String, Long>, Alert>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @ProcessElement
+                    public void processElement(ProcessContext c, BoundedWindow w) {
+                      Map<String, Boolean> nv = c.sideInput(natView);
+                      if (c.element().getValue() <= maxCount) {
+                        return;
+                      }
+                      Boolean isNat = nv.get(c.element().getKey());
+                      if (isNat != null && isNat) {
+                        log.info(
+                            "{}: detectnat: skipping result emission for {}",
+                            w.toString(),
+                            c.element().getKey());
+                        return;
+                      }
+                      Alert a = new Alert();
+                      a.setSummary(
+                          String.format(
+                              "%s httprequest hard_limit %s %d",
+                              monitoredResource, c.element().getKey(), c.element().getValue()));
+                      a.setCategory("httprequest");
+                      a.addMetadata("category", "hard_limit");
+                      a.addMetadata("sourceaddress", c.element().getKey());
+                      if (enableIprepdDatastoreWhitelist) {
+                        IprepdIO.addMetadataIfWhitelisted(
+                            c.element().getKey(), a, iprepdDatastoreWhitelistProject);
+                      }
+                      a.addMetadata("count", c.element().getValue().toString());
+                      a.addMetadata("request_threshold", maxCount.toString());
+                      a.setNotifyMergeKey(String.format("hard_limit_count", c.element().getKey()));
+                      a.addMetadata(
+                          "window_timestamp", (new DateTime(w.maxTimestamp())).toString());
+                      if (!a.hasCorrectFields()) {
+                        throw new IllegalArgumentException("alert has invalid field configuration");
+                      }
+                      c.output(a);
+                    }
+                  })
+              .withSideInputs(natView));
     }
   }
 
@@ -394,11 +569,172 @@ public class HTTPRequest implements Serializable {
 
     private Logger log;
 
-    private final Map<String[], Integer> endpoints;
+    private final Map<String, Map<String, Integer>> endpointIndex;
+    private final ArrayList<String> endpointMethods;
+    private final ArrayList<String> endpointPaths;
+    private final ArrayList<Integer> endpointThresholds;
     private final String monitoredResource;
     private final Boolean enableIprepdDatastoreWhitelist;
     private final String iprepdDatastoreWhitelistProject;
 
+    /**
+     * Per client request profile
+     *
+     * <p>Records the endpoint of the first request seen for a client, a sample user agent, the
+     * number of requests, and whether any request was made to a different endpoint or to an
+     * endpoint that is not monitored.
+     */
+    public static class EndpointProfile implements Serializable {
+      private static final long serialVersionUID = 1L;
+
+      /** Endpoint index used for requests to endpoints that are not monitored */
+      public static final int UNMONITORED = -1;
+
+      private int endpoint;
+      private boolean varied;
+      private int count;
+      private String userAgent;
+
+      /**
+       * Get index of endpoint requested by client
+       *
+       * @return Endpoint index
+       */
+      public int getEndpoint() {
+        return endpoint;
+      }
+
+      /**
+       * Return true if the client requested more than one endpoint, or an endpoint that is not
+       * monitored
+       *
+       * @return True if requests varied
+       */
+      public boolean isVaried() {
+        return varied;
+      }
+
+      /**
+       * Get number of requests
+       *
+       * @return Request count
+       */
+      public int getCount() {
+        return count;
+      }
+
+      /**
+       * Get sample user agent
+       *
+       * @return User agent
+       */
+      public String getUserAgent() {
+        return userAgent;
+      }
+
+      void add(int endpoint, String userAgent) {
+        if (count == 0) {
+          this.endpoint = endpoint;
+          this.userAgent = userAgent;
+        } else if (endpoint != this.endpoint) {
+          varied = true;
+        }
+        if (endpoint == UNMONITORED) {
+          varied = true;
+        }
+        count++;
+      }
+
+      void merge(EndpointProfile p) {
+        if (p.count == 0) {
+          return;
+        }
+        if (count == 0) {
+          endpoint = p.endpoint;
+          userAgent = p.userAgent;
+        } else if (p.endpoint != endpoint) {
+          varied = true;
+        }
+        varied = varied || p.varied;
+        count += p.count;
+      }
+    }
+
+    /** {@link Coder} for {@link EndpointProfile} */
+    static class EndpointProfileCoder extends CustomCoder<EndpointProfile> {
+      private static final long serialVersionUID = 1L;
+
+      private static final Coder<String> uaCoder = NullableCoder.of(StringUtf8Coder.of());
+
+      @Override
+      public void encode(EndpointProfile value, OutputStream outStream) throws IOException {
+        VarInt.encode(value.endpoint + 1, outStream);
+        outStream.write(value.varied ? 1 : 0);
+        VarInt.encode(value.count, outStream);
+        uaCoder.encode(value.userAgent, outStream);
+      }
+
+      @Override
+      public EndpointProfile decode(InputStream inStream) throws IOException {
+        EndpointProfile ret = new EndpointProfile();
+        ret.endpoint = VarInt.decodeInt(inStream) - 1;
+        ret.varied = inStream.read() == 1;
+        ret.count = VarInt.decodeInt(inStream);
+        ret.userAgent = uaCoder.decode(inStream);
+        return ret;
+      }
+    }
+
+    /**
+     * {@link CombineFn} building an {@link EndpointProfile} from endpoint index and user agent
+     * pairs
+     */
+    public static class EndpointProfileCombiner
+        extends CombineFn<KV<Integer, String>, EndpointProfile, EndpointProfile> {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public EndpointProfile createAccumulator() {
+        return new EndpointProfile();
+      }
+
+      @Override
+      public EndpointProfile addInput(EndpointProfile profile, KV<Integer, String> input) {
+        if (!profile.varied) {
+          profile.add(input.getKey(), input.getValue());
+        } else {
+          profile.count++;
+        }
+        return profile;
+      }
+
+      @Override
+      public EndpointProfile mergeAccumulators(Iterable<EndpointProfile> profiles) {
+        EndpointProfile merged = new EndpointProfile();
+        for (EndpointProfile p : profiles) {
+          merged.merge(p);
+        }
+        return merged;
+      }
+
+      @Override
+      public EndpointProfile extractOutput(EndpointProfile profile) {
+        return profile;
+      }
+
+      @Override
+      public Coder<EndpointProfile> getAccumulatorCoder(
+          CoderRegistry registry, Coder<KV<Integer, String>> inputCoder) {
+        return new EndpointProfileCoder();
+      }
+
+      @Override
+      public Coder<EndpointProfile> getDefaultOutputCoder(
+          CoderRegistry registry, Coder<KV<Integer, String>> inputCoder) {
+        return new EndpointProfileCoder();
+      }
+    }
+
     /**
      * Static initializer for {@link EndpointAbuseAnalysis}
      *
@@ -411,17 +747,22 @@ public class HTTPRequest implements Serializable {
       enableIprepdDatastoreWhitelist = options.getOutputIprepdEnableDatastoreWhitelist();
       iprepdDatastoreWhitelistProject = options.getOutputIprepdDatastoreWhitelistProject();
 
-      endpoints = new HashMap<String[], Integer>();
+      endpointIndex = new HashMap<String, Map<String, Integer>>();
+      endpointMethods = new ArrayList<String>();
+      endpointPaths = new ArrayList<String>();
+      endpointThresholds = new ArrayList<Integer>();
       for (String endpoint : options.getEndpointAbusePath()) {
         String[] parts = endpoint.split(":");
         if (parts.length != 3) {
           throw new IllegalArgumentException(
               "invalid format for abuse endpoint path, must be <int>:<method>:<path>");
         }
-        String k[] = new String[2];
-        k[0] = parts[1];
-        k[1] = parts[2];
-        endpoints.put(k, new Integer(parts[0]));
+        endpointIndex
+            .computeIfAbsent(parts[1], k -> new HashMap<String, Integer>())
+            .put(parts[2], endpointThresholds.size());
+        endpointMethods.add(parts[1]);
+        endpointPaths.add(parts[2]);
+        endpointThresholds.add(new Integer(parts[0]));
       }
     }
 
@@ -431,7 +772,7 @@ public class HTTPRequest implements Serializable {
           .apply(
               "filter inapplicable requests",
               ParDo.of(
-                  new DoFn<Event, KV<String, ArrayList<String>>>() {
+                  new DoFn<Event, KV<String, KV<Integer, String>>>() {
                     private static final long serialVersionUID = 1L;
 
                     @ProcessElement
@@ -448,18 +789,19 @@ public class HTTPRequest implements Serializable {
                       if (userAgent == null) {
                         userAgent = "unknown";
                       }
-                      ArrayList<String> v = new ArrayList<>();
-                      v.add(requestMethod);
-                      v.add(rpath);
-                      v.add(userAgent);
-                      c.output(KV.of(sourceAddress, v));
+                      c.output(
+                          KV.of(
+                              sourceAddress, KV.of(getEndpoint(rpath, requestMethod), userAgent)));
                     }
                   }))
-          .apply(GroupByKey.<String, ArrayList<String>>create())
+          .apply(
+              "per-client profile",
+              Combine.<String, KV<Integer, String>, EndpointProfile>perKey(
+                  new EndpointProfileCombiner()))
           .apply(
               "analyze per-client",
               ParDo.of(
-                  new DoFn<KV<String, Iterable<ArrayList<String>>>, Alert>() {
+                  new DoFn<KV<String, EndpointProfile>, Alert>() {
                     private static final long serialVersionUID = 1L;
 
                     @StateId("counter")
@@ -471,40 +813,22 @@ public class HTTPRequest implements Serializable {
                         BoundedWindow w,
                         @StateId("counter") ValueState<Integer> counter) {
                       String remoteAddress = c.element().getKey();
-                      Iterable<ArrayList<String>> paths = c.element().getValue();
-
-                      // Take a look at the first entry in the data set and see if it
-                      // corresponds to anything we have in the endpoints map. If so, look at
-                      // the rest of the requests in the window to determine variance and
-                      // if the noted threshold has been exceeded.
-                      Integer foundThreshold = null;
-                      String compareMethod = null;
-                      String comparePath = null;
-                      String userAgent = null;
-                      int count = 0;
-                      for (ArrayList<String> i : paths) {
-                        if (foundThreshold == null) {
-                          foundThreshold = getEndpointThreshold(i.get(1), i.get(0));
-                          compareMethod = i.get(0);
-                          comparePath = i.get(1);
-                          userAgent = i.get(2);
-                        } else {
-                          if (!(compareMethod.equals(i.get(0)))
-                              || !(comparePath.equals(i.get(1)))) {
-                            // Variance in requests in-window
-                            return;
-                          }
-                        }
-                        if (foundThreshold == null) {
-                          // Entry wasn't in monitor map, so just ignore this client
-                          //
-                          // XXX This should be improved to determine when to ignore based on
-                          // perhaps a weighting heuristic if most of the requests are
-                          // applicable.
-                          return;
-                        }
-                        count++;
+                      EndpointProfile profile = c.element().getValue();
+
+                      // Only clients whose requests in the window were all made to a single
+                      // monitored endpoint are considered.
+                      //
+                      // XXX This should be improved to determine when to ignore based on
+                      // perhaps a weighting heuristic if most of the requests are
+                      // applicable.
+                      if (profile.isVaried() || profile.getCount() == 0) {
+                        return;
                       }
+                      int foundThreshold = endpointThresholds.get(profile.getEndpoint());
+                      String compareMethod = endpointMethods.get(profile.getEndpoint());
+                      String comparePath = endpointPaths.get(profile.getEndpoint());
+                      String userAgent = profile.getUserAgent();
+                      int count = profile.getCount();
                       if (count >= foundThreshold) {
                         // If we already have counter state for this key, compare it against what
                         // the path count was. If they are the same, this is likely a
@@ -569,24 +893,42 @@ public class HTTPRequest implements Serializable {
                   }));
     }
 
-    private Integer getEndpointThreshold(String path, String method) {
-      for (Map.Entry<String[], Integer> entry : endpoints.entrySet()) {
-        String k[] = entry.getKey();
-        if (method.equals(k[0]) && path.equals(k[1])) {
-          return entry.getValue();
-        }
+    private int getEndpoint(String path, String method) {
+      Map<String, Integer> paths = endpointIndex.get(method);
+      if (paths == null) {
+        return EndpointProfile.UNMONITORED;
       }
-      return null;
+      Integer ret = paths.get(path);
+      return ret == null ? EndpointProfile.UNMONITORED : ret;
     }
   }
 
   /**
    * Composite transform that conducts threshold analysis using the configured threshold modifier
+   *
+   * <p>By default the threshold is the mean request count of clients in the window multiplied by
+   * the modifier. If a threshold percentile is configured, the threshold is instead derived from
+   * that percentile of client request counts, estimated using a mergeable quantile sketch of fixed
+   * size so memory use does not depend on the number of clients in the window. The sketch is sized
+   * for up to {@link #QUANTILE_MAX_CLIENTS} clients per window, with a rank error below the 0.1
+   * percentile resolution of the configured percentile.
    */
   public static class ThresholdAnalysis extends PTransform<PCollection<Event>, PCollection<Alert>> {
     private static final long serialVersionUID = 1L;
 
+    // Number of quantiles computed by the sketch, giving a resolution of 0.1 percentile
+    private static final int QUANTILE_COUNT = 1001;
+
+    /** Number of clients per window the quantile sketch is sized for */
+    public static final long QUANTILE_MAX_CLIENTS = 1000000L;
+
+    // Maximum rank error of the quantile sketch as a fraction of the clients in the window, half
+    // the 0.1 percentile resolution so adjacent percentiles remain distinguishable
+    private static final double QUANTILE_EPSILON = 0.0005;
+
     private final Double thresholdModifier;
+    private final Double thresholdPercentile;
+    private final Integer cardinalityPrecision;
     private final Double requiredMinimumAverage;
     private final Long requiredMinimumClients;
     private final Double clampThresholdMaximum;
@@ -607,6 +949,12 @@ public class HTTPRequest implements Serializable {
       this.requiredMinimumAverage = options.getRequiredMinimumAverage();
       this.requiredMinimumClients = options.getRequiredMinimumClients();
       this.clampThresholdMaximum = options.getClampThresholdMaximum();
+      this.thresholdPercentile = options.getThresholdPercentile();
+      this.cardinalityPrecision = options.getCardinalityPrecision();
+      if (thresholdPercentile != null
+          && (thresholdPercentile < 0.0 || thresholdPercentile > 100.0)) {
+        throw new IllegalArgumentException("threshold percentile must be between 0 and 100");
+      }
       this.monitoredResource = options.getMonitoredResourceIndicator();
       this.enableIprepdDatastoreWhitelist = options.getOutputIprepdEnableDatastoreWhitelist();
       this.iprepdDatastoreWhitelistProject = options.getOutputIprepdDatastoreWhitelistProject();
@@ -627,37 +975,71 @@ public class HTTPRequest implements Serializable {
 
     @Override
     public PCollection<Alert> expand(PCollection<Event> col) {
+      return col.apply("client features", new ClientFeatureAggregation(cardinalityPrecision))
+          .apply("threshold features", fromFeatures());
+    }
+
+    /**
+     * Return the {@link CombineFn} used to estimate quantiles of client request counts
+     *
+     * <p>With the default parameters the sketch is sized for a billion elements with a rank error
+     * equal to the quantile resolution, requiring several hundred thousand buffered values per
+     * accumulator. The sketch is instead bounded by the expected number of clients per window.
+     *
+     * @return Quantiles combiner returning quantiles at a resolution of 0.1 percentile
+     */
+    static ApproximateQuantilesCombineFn<Long, Top.Natural<Long>> quantilesCombineFn() {
+      return ApproximateQuantilesCombineFn.create(
+          QUANTILE_COUNT, new Top.Natural<Long>(), QUANTILE_MAX_CLIENTS, QUANTILE_EPSILON);
+    }
+
+    /**
+     * Return index into the output of {@link #quantilesCombineFn} for a percentile
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return Quantile index
+     */
+    static int quantileIndex(double percentile) {
+      return (int) Math.round(percentile * (QUANTILE_COUNT - 1) / 100.0);
+    }
+
+    /**
+     * Return transform applying threshold analysis to features from {@link
+     * ClientFeatureAggregation}
+     *
+     * @return Transform
+     */
+    public PTransform<PCollection<KV<String, ClientFeatures>>, PCollection<Alert>> fromFeatures() {
+      return new PTransform<PCollection<KV<String, ClientFeatures>>, PCollection<Alert>>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public PCollection<Alert> expand(PCollection<KV<String, ClientFeatures>> features) {
+          return analyze(
+              features.apply(
+                  "extract request counts",
+                  MapElements.into(
+                          TypeDescriptors.kvs(TypeDescriptors.strings(), TypeDescriptors.longs()))
+                      .via(
+                          (KV<String, ClientFeatures> kv) ->
+                              KV.of(kv.getKey(), kv.getValue().getRequests()))));
+        }
+      };
+    }
+
+    private PCollection<Alert> analyze(PCollection<KV<String, Long>> clientCounts) {
       if (natView == null) {
         // If natView was not set then we just create an empty view for use as the side input
-        natView = DetectNat.getEmptyView(col.getPipeline());
+        natView = DetectNat.getEmptyView(clientCounts.getPipeline());
       }
 
-      // Count per source address
-      PCollection<KV<String, Long>> clientCounts =
-          col.apply(
-                  "calculate per client count",
-                  ParDo.of(
-                      new DoFn<Event, String>() {
-                        private static final long serialVersionUID = 1L;
-
-                        @ProcessElement
-                        public void processElement(ProcessContext c) {
-                          Normalized n = c.element().getNormalized();
-                          if (n.getSourceAddress() == null) {
-                            return;
-                          }
-                          c.output(n.getSourceAddress());
-                        }
-                      }))
-              .apply(Count.<String>perElement());
-
-      // Calculate the number of unique clients in the collection
+      // There is one count per client, so counting them gives the exact number of unique clients
       PCollectionView<Long> uniqueClients =
-          clientCounts
-              .apply(Keys.<String>create())
-              .apply(
-                  "unique client count",
-                  Combine.globally(Count.<String>combineFn()).withoutDefaults().asSingletonView());
+          clientCounts.apply(
+              "unique client count",
+              Combine.globally(Count.<KV<String, Long>>combineFn())
+                  .withoutDefaults()
+                  .asSingletonView());
 
       // For each client, extract the request count
       PCollection<Long> counts = clientCounts.apply("extract counts", Values.<Long>create());
@@ -665,6 +1047,26 @@ public class HTTPRequest implements Serializable {
       // Obtain statistics on the client count population for use as a side input
       final PCollectionView<Stats.StatsOutput> wStats = Stats.getView(counts);
 
+      ArrayList<PCollectionView<?>> sideInputs = new ArrayList<PCollectionView<?>>();
+      sideInputs.add(wStats);
+      sideInputs.add(natView);
+      sideInputs.add(uniqueClients);
+
+      // If configured, obtain quantiles of the client count population to derive the threshold
+      final PCollectionView<List<Long>> wQuantiles;
+      final int quantileIndex;
+      if (thresholdPercentile != null) {
+        wQuantiles =
+            counts.apply(
+                "client count quantiles",
+                Combine.globally(quantilesCombineFn()).withoutDefaults().asSingletonView());
+        sideInputs.add(wQuantiles);
+        quantileIndex = quantileIndex(thresholdPercentile);
+      } else {
+        wQuantiles = null;
+        quantileIndex = 0;
+      }
+
       return clientCounts.apply(
           ParDo.of(
                   new DoFn<KV<String, Long>, Alert>() {
@@ -688,13 +1090,26 @@ public class HTTPRequest implements Serializable {
                       Map<String, Boolean> nv = c.sideInput(natView);
 
                       Double cMean = sOutput.getMean();
+                      // Value the threshold modifier is applied to, either the mean or the
+                      // configured percentile
+                      Double tBase = cMean;
+                      if (wQuantiles != null) {
+                        List<Long> q = c.sideInput(wQuantiles);
+                        if (q.isEmpty()) {
+                          return;
+                        }
+                        tBase = q.get(quantileIndex).doubleValue();
+                      }
                       if (!statsLogged) {
                         log.info(
-                            "{}: statistics: mean/{} unique_clients/{} threshold/{}",
+                            "{}: statistics: mean/{} stddev/{} percentile/{} unique_clients/{} "
+                                + "threshold/{}",
                             w.toString(),
                             cMean,
+                            sOutput.getStandardDeviation(),
+                            tBase,
                             uc,
-                            cMean * thresholdModifier);
+                            tBase * thresholdModifier);
                         statsLogged = true;
                       }
 
@@ -718,19 +1133,19 @@ public class HTTPRequest implements Serializable {
                         return;
                       }
 
-                      if ((clampThresholdMaximum != null) && (cMean > clampThresholdMaximum)) {
+                      if ((clampThresholdMaximum != null) && (tBase > clampThresholdMaximum)) {
                         if (!clampMaximumLogged) {
                           log.info(
-                              "{}: clamping calculated mean {} to maximum {}",
+                              "{}: clamping calculated threshold basis {} to maximum {}",
                               w.toString(),
-                              cMean,
+                              tBase,
                               clampThresholdMaximum);
                           clampMaximumLogged = true;
                         }
-                        cMean = clampThresholdMaximum;
+                        tBase = clampThresholdMaximum;
                       }
 
-                      if (c.element().getValue() >= (cMean * thresholdModifier)) {
+                      if (c.element().getValue() >= (tBase * thresholdModifier)) {
                         Boolean isNat = nv.get(c.element().getKey());
                         if (isNat != null && isNat) {
                           log.info(
@@ -755,6 +1170,10 @@ public class HTTPRequest implements Serializable {
                         a.addMetadata("mean", sOutput.getMean().toString());
                         a.addMetadata("count", c.element().getValue().toString());
                         a.addMetadata("threshold_modifier", thresholdModifier.toString());
+                        if (wQuantiles != null) {
+                          a.addMetadata("threshold_percentile", thresholdPercentile.toString());
+                          a.addMetadata("percentile_value", tBase.toString());
+                        }
                         a.setNotifyMergeKey(
                             String.format("threshold_analysis", c.element().getKey()));
                         a.addMetadata(
@@ -767,7 +1186,7 @@ public class HTTPRequest implements Serializable {
                       }
                     }
                   })
-              .withSideInputs(wStats, natView, uniqueClients));
+              .withSideInputs(sideInputs));
     }
   }
 
@@ -797,6 +1216,20 @@ public class HTTPRequest implements Serializable {
 
     void setEnableHardLimitAnalysis(Boolean value);
 
+    @Description(
+        "Use bounded memory heavy hitter detection for hard limit analysis, only counting clients "
+            + "whose sketch estimate exceeds the limit")
+    @Default.Boolean(false)
+    Boolean getHardLimitHeavyHitters();
+
+    void setHardLimitHeavyHitters(Boolean value);
+
+    @Description("Width of Count-Min sketch used for hard limit heavy hitter detection")
+    @Default.Integer(2048)
+    Integer getHardLimitSketchWidth();
+
+    void setHardLimitSketchWidth(Integer value);
+
     @Description("Hard limit request count per window per client")
     @Default.Long(100L)
     Long getHardLimitRequestCount();
@@ -828,6 +1261,21 @@ public class HTTPRequest implements Serializable {
 
     void setClampThresholdMaximum(Double value);
 
+    @Description(
+        "Precision of HyperLogLog sketches used to estimate distinct user agents and request "
+            + "paths per client; 4 to 18")
+    @Default.Integer(14)
+    Integer getCardinalityPrecision();
+
+    void setCardinalityPrecision(Integer value);
+
+    @Description(
+        "Use percentile of client request counts (0 to 100) in place of mean as basis for threshold "
+            + "analysis threshold, for example 99.9")
+    Double getThresholdPercentile();
+
+    void setThresholdPercentile(Double value);
+
     @Description("Maximum permitted client error rate per window")
     @Default.Long(30L)
     Long getMaxClientErrorRate();
@@ -876,13 +1324,25 @@ public class HTTPRequest implements Serializable {
     String getCidrExclusionList();
 
     void setCidrExclusionList(String value);
+
+    @Description("Parse input as UTF-8 bytes without first decoding each element into a string")
+    @Default.Boolean(false)
+    Boolean getParseInputBytes();
+
+    void setParseInputBytes(Boolean value);
   }
 
   private static void runHTTPRequest(HTTPRequestOptions options) {
     Pipeline p = Pipeline.create(options);
 
-    PCollection<Event> events =
-        p.apply("input", new CompositeInput(options)).apply("parse", new Parse(options));
+    PCollection<Event> events;
+    if (options.getParseInputBytes()) {
+      events =
+          p.apply("input", new CompositeByteInput(options))
+              .apply("parse", new Parse(options).fromBytes());
+    } else {
+      events = p.apply("input", new CompositeInput(options)).apply("parse", new Parse(options));
+    }
 
     if (options.getEnableThresholdAnalysis()
         || options.getEnableErrorRateAnalysis()
@@ -893,30 +1353,44 @@ public class HTTPRequest implements Serializable {
 
       PCollectionView<Map<String, Boolean>> natView = null;
       if (options.getNatDetection()) {
-        natView = DetectNat.getView(fwEvents);
+        natView = DetectNat.getView(fwEvents, options.getCardinalityPrecision());
       }
 
+      // Per-client features are aggregated once and shared by the analyses
+      PCollection<KV<String, ClientFeatures>> features =
+          fwEvents.apply(
+              "client features", new ClientFeatureAggregation(options.getCardinalityPrecision()));
+
       if (options.getEnableThresholdAnalysis()) {
         resultsList =
             resultsList.and(
-                fwEvents
-                    .apply("threshold analysis", new ThresholdAnalysis(options, natView))
+                features
+                    .apply(
+                        "threshold analysis",
+                        new ThresholdAnalysis(options, natView).fromFeatures())
                     .apply("output format", ParDo.of(new AlertFormatter(options))));
       }
 
       if (options.getEnableHardLimitAnalysis()) {
+        PCollection<Alert> hardLimitAlerts;
+        if (options.getHardLimitHeavyHitters()) {
+          hardLimitAlerts =
+              fwEvents.apply("hard limit analysis", new HardLimitAnalysis(options, natView));
+        } else {
+          hardLimitAlerts =
+              features.apply(
+                  "hard limit analysis", new HardLimitAnalysis(options, natView).fromFeatures());
+        }
         resultsList =
             resultsList.and(
-                fwEvents
-                    .apply("hard limit analysis", new HardLimitAnalysis(options, natView))
-                    .apply("output format", ParDo.of(new AlertFormatter(options))));
+                hardLimitAlerts.apply("output format", ParDo.of(new AlertFormatter(options))));
       }
 
       if (options.getEnableErrorRateAnalysis()) {
         resultsList =
             resultsList.and(
-                fwEvents
-                    .apply("error rate analysis", new ErrorRateAnalysis(options))
+                features
+                    .apply("error rate analysis", new ErrorRateAnalysis(options).fromFeatures())
                     .apply("output format", ParDo.of(new AlertFormatter(options))));
       }
 
@@ -1,17 +1,26 @@
 package com.mozilla.secops.parser;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-/** Payload parser for Apache combined log format */
+/**
+ * Payload parser for Apache combined log format
+ *
+ * <p>Input lines are matched and split into fields in a single pass using a hand-written tokenizer
+ * that accepts the same lines as the regular expression. Lines the tokenizer does not support are
+ * handed to the regular expression.
+ */
 public class ApacheCombined extends PayloadBase implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  private final String matchRe =
+  private static final String matchRe =
       "^\"([^\"]+)\" - (\\S+) \\[(\\d{1,2}/\\S{3}/\\d{4}:\\d{1,2}:\\d{1,2}:\\d{1,2} "
           + "[^\\]]+)\\] \"([^\"]+)\" (\\d+) (\\d+|-) \"([^\"]+)\" \"([^\"]+)\"$";
-  private Pattern pattRe;
+  private static final Pattern pattRe = Pattern.compile(matchRe);
 
   private String remoteAddr;
   private String userAgent;
@@ -25,13 +34,173 @@ public class ApacheCombined extends PayloadBase implements Serializable {
   private String requestUrl;
   private String requestPath;
 
+  // Number of capturing groups in matchRe; tokens are stored as start and end offsets for each
+  // group, indexed by group number
+  private static final int GROUPS = 8;
+
+  // Returned by the tokenizer for input it does not support
+  private static final int[] UNSUPPORTED = new int[0];
+
+  private static int quoted(String in, int i, int[] tok, int group) {
+    if (!LineScanner.charAt(in, i, '"')) {
+      return -1;
+    }
+    int end = in.indexOf('"', i + 1);
+    if (end <= i + 1) {
+      return -1;
+    }
+    tok[group * 2] = i + 1;
+    tok[group * 2 + 1] = end;
+    return end + 1;
+  }
+
+  private static int digits(String in, int i, int[] tok, int group) {
+    int end = LineScanner.skipDigits(in, i, -1);
+    if (end == i) {
+      return -1;
+    }
+    tok[group * 2] = i;
+    tok[group * 2 + 1] = end;
+    return end;
+  }
+
+  private static int timestamp(String in, int i, int[] tok, int group) {
+    int start = i;
+    int j = LineScanner.skipDigits(in, i, 2);
+    if (j == i || !LineScanner.charAt(in, j, '/')) {
+      return -1;
+    }
+    i = j + 1;
+    for (int k = 0; k < 3; k++, i++) {
+      if (i >= in.length() || LineScanner.isSpace(in.charAt(i))) {
+        return -1;
+      }
+    }
+    if (!LineScanner.charAt(in, i, '/')) {
+      return -1;
+    }
+    i++;
+    j = LineScanner.skipDigits(in, i, 4);
+    if (j - i != 4) {
+      return -1;
+    }
+    i = j;
+    for (int k = 0; k < 3; k++) {
+      if (!LineScanner.charAt(in, i, ':')) {
+        return -1;
+      }
+      i++;
+      j = LineScanner.skipDigits(in, i, 2);
+      if (j == i) {
+        return -1;
+      }
+      i = j;
+    }
+    if (!LineScanner.charAt(in, i, ' ')) {
+      return -1;
+    }
+    int end = in.indexOf(']', i + 1);
+    if (end <= i + 1) {
+      return -1;
+    }
+    tok[group * 2] = start;
+    tok[group * 2 + 1] = end;
+    return end;
+  }
+
+  /**
+   * Tokenize an input line
+   *
+   * @param in Input
+   * @return Group offsets, {@link #UNSUPPORTED} if the tokenizer cannot process the line, or null
+   *     if the line is not in combined log format
+   */
+  private static int[] tokenize(String in) {
+    int[] tok = new int[(GROUPS + 1) * 2];
+    int i = quoted(in, 0, tok, 1);
+    if (i == -1 || !in.startsWith(" - ", i)) {
+      return null;
+    }
+    i += 3;
+    int j = LineScanner.skipNonSpace(in, i);
+    if (j == i || !in.startsWith(" [", j)) {
+      return null;
+    }
+    tok[4] = i;
+    tok[5] = j;
+    i = timestamp(in, j + 2, tok, 3);
+    if (i == -1 || !in.startsWith("] ", i)) {
+      return null;
+    }
+    i = quoted(in, i + 2, tok, 4);
+    if (i == -1 || !LineScanner.charAt(in, i, ' ')) {
+      return null;
+    }
+    i = digits(in, i + 1, tok, 5);
+    if (i == -1 || !LineScanner.charAt(in, i, ' ')) {
+      return null;
+    }
+    i++;
+    if (LineScanner.charAt(in, i, '-')) {
+      tok[12] = i;
+      tok[13] = ++i;
+    } else {
+      i = digits(in, i, tok, 6);
+    }
+    if (i == -1 || !LineScanner.charAt(in, i, ' ')) {
+      return null;
+    }
+    i = quoted(in, i + 1, tok, 7);
+    if (i == -1 || !LineScanner.charAt(in, i, ' ')) {
+      return null;
+    }
+    i = quoted(in, i + 1, tok, 8);
+    if (i != in.length()) {
+      return null;
+    }
+
+    // Numeric fields that do not fit in an int are left to the regular expression
+    if (LineScanner.parseInt(in, tok[10], tok[11]) == -1
+        || (!LineScanner.regionIs(in, tok[12], tok[13], '-')
+            && LineScanner.parseInt(in, tok[12], tok[13]) == -1)) {
+      return UNSUPPORTED;
+    }
+    return tok;
+  }
+
+  private static int[] regexTokenize(String in) {
+    Matcher mat = pattRe.matcher(in);
+    if (!mat.matches()) {
+      return null;
+    }
+    int[] tok = new int[(GROUPS + 1) * 2];
+    for (int g = 1; g <= GROUPS; g++) {
+      tok[g * 2] = mat.start(g);
+      tok[g * 2 + 1] = mat.end(g);
+    }
+    return tok;
+  }
+
+  private static int[] getTokens(String input, ParserState state) {
+    Object hint = state.getTokenHint(Payload.PayloadType.APACHE_COMBINED, input);
+    if (hint instanceof int[]) {
+      return (int[]) hint;
+    }
+    int[] tok = tokenize(input);
+    if (tok == UNSUPPORTED) {
+      tok = regexTokenize(input);
+    }
+    return tok;
+  }
+
   @Override
   public Boolean matcher(String input, ParserState state) {
-    Matcher mat = pattRe.matcher(input);
-    if (mat.matches()) {
-      return true;
+    int[] tok = getTokens(input, state);
+    if (tok == null) {
+      return false;
     }
-    return false;
+    state.setTokenHint(Payload.PayloadType.APACHE_COMBINED, input, tok);
+    return true;
   }
 
   @Override
@@ -39,11 +208,37 @@ public class ApacheCombined extends PayloadBase implements Serializable {
     return Payload.PayloadType.APACHE_COMBINED;
   }
 
-  /** Construct matcher object. */
-  public ApacheCombined() {
-    pattRe = Pattern.compile(matchRe);
+  @Override
+  void writeFields(DataOutputStream out) throws IOException {
+    EventCoder.writeString(out, remoteAddr);
+    EventCoder.writeString(out, userAgent);
+    EventCoder.writeString(out, referrer);
+    EventCoder.writeString(out, request);
+    EventCoder.writeString(out, remoteUser);
+    EventCoder.writeInteger(out, bytesSent);
+    EventCoder.writeInteger(out, status);
+    EventCoder.writeString(out, requestMethod);
+    EventCoder.writeString(out, requestUrl);
+    EventCoder.writeString(out, requestPath);
   }
 
+  @Override
+  void readFields(DataInputStream in) throws IOException {
+    remoteAddr = EventCoder.readString(in);
+    userAgent = EventCoder.readString(in);
+    referrer = EventCoder.readString(in);
+    request = EventCoder.readString(in);
+    remoteUser = EventCoder.readString(in);
+    bytesSent = EventCoder.readInteger(in);
+    status = EventCoder.readInteger(in);
+    requestMethod = EventCoder.readString(in);
+    requestUrl = EventCoder.readString(in);
+    requestPath = EventCoder.readString(in);
+  }
+
+  /** Construct matcher object. */
+  public ApacheCombined() {}
+
   /**
    * Construct parser object.
    *
@@ -52,43 +247,35 @@ public class ApacheCombined extends PayloadBase implements Serializable {
    * @param state State
    */
   public ApacheCombined(String input, Event e, ParserState state) {
-    pattRe = Pattern.compile(matchRe);
-    Matcher mat = pattRe.matcher(input);
-    if (!mat.matches()) {
+    int[] tok = getTokens(input, state);
+    if (tok == null) {
       return;
     }
 
-    remoteAddr = mat.group(1);
-    if (remoteAddr != null) {
-      if (remoteAddr.equals("-")) {
-        remoteAddr = null;
-      } else {
-        remoteAddr = state.getParser().applyXffAddressSelector(remoteAddr);
-      }
+    if (LineScanner.regionIs(input, tok[2], tok[3], '-')) {
+      remoteAddr = null;
+    } else {
+      remoteAddr = state.getParser().applyXffAddressSelector(input.substring(tok[2], tok[3]));
     }
 
-    remoteUser = mat.group(2);
-    if ((remoteUser != null) && (remoteUser.equals("-"))) {
-      remoteUser = null;
+    if (!LineScanner.regionIs(input, tok[4], tok[5], '-')) {
+      remoteUser = input.substring(tok[4], tok[5]);
     }
 
-    request = mat.group(4);
+    request = input.substring(tok[8], tok[9]);
 
-    status = new Integer(mat.group(5));
+    status = parseInteger(input, tok[10], tok[11]);
 
-    String bsv = mat.group(6);
-    if ((bsv != null) && (!bsv.equals("-"))) {
-      bytesSent = new Integer(bsv);
+    if (!LineScanner.regionIs(input, tok[12], tok[13], '-')) {
+      bytesSent = parseInteger(input, tok[12], tok[13]);
     }
 
-    referrer = mat.group(7);
-    if ((referrer != null) && (referrer.equals("-"))) {
-      referrer = null;
+    if (!LineScanner.regionIs(input, tok[14], tok[15], '-')) {
+      referrer = input.substring(tok[14], tok[15]);
     }
 
-    userAgent = mat.group(8);
-    if ((userAgent != null) && (userAgent.equals("-"))) {
-      userAgent = null;
+    if (!LineScanner.regionIs(input, tok[16], tok[17], '-')) {
+      userAgent = input.substring(tok[16], tok[17]);
     }
 
     if (request != null) {
@@ -118,6 +305,15 @@ public class ApacheCombined extends PayloadBase implements Serializable {
     n.setUrlRequestPath(requestPath);
   }
 
+  private static Integer parseInteger(String in, int start, int end) {
+    int v = LineScanner.parseInt(in, start, end);
+    if (v == -1) {
+      // Out of range, preserve the exception raised for the field previously
+      return new Integer(in.substring(start, end));
+    }
+    return v;
+  }
+
   /**
    * Get request URL.
    *
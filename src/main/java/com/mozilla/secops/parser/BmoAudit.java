@@ -2,8 +2,9 @@ package com.mozilla.secops.parser;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.maxmind.geoip2.model.CityResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
@@ -15,8 +16,11 @@ import java.util.regex.Pattern;
 public class BmoAudit extends PayloadBase implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  private final String reLogin = "^successful login of (\\S+) from (\\S+) using \"([^\"]+)\",.*";
-  private final String reCreate = "^(\\S+) <([^>]+)> created bug.*";
+  private static final String reLogin =
+      "^successful login of (\\S+) from (\\S+) using \"([^\"]+)\",.*";
+  private static final String reCreate = "^(\\S+) <([^>]+)> created bug.*";
+  private static final Pattern pattLogin = Pattern.compile(reLogin);
+  private static final Pattern pattCreate = Pattern.compile(reCreate);
 
   public enum AuditType {
     /** Login event */
@@ -88,17 +92,30 @@ public class BmoAudit extends PayloadBase implements Serializable {
     return userAgent;
   }
 
-  private Map<String, String> convertInput(String input) {
-    ObjectMapper mapper = new ObjectMapper();
+  private static final TypeReference<Map<String, String>> fieldsType =
+      new TypeReference<Map<String, String>>() {};
+
+  private Map<String, String> convertInput(String input, ParserState state) {
     Map<String, String> fields = new HashMap<String, String>();
     try {
-      fields = mapper.readValue(input, new TypeReference<Map<String, String>>() {});
+      // Use the Mozlog fields tree shared by the parser if it is available
+      JsonNode node = state.getDecodedInput();
+      if (node != null) {
+        fields = MapperCache.getReader(MapperCache.Profile.DEFAULT, fieldsType).readValue(node);
+      } else {
+        fields = MapperCache.getReader(MapperCache.Profile.DEFAULT, fieldsType).readValue(input);
+      }
     } catch (IOException exc) {
       return null;
     }
     return fields;
   }
 
+  @Override
+  boolean requiresInputString() {
+    return false;
+  }
+
   @Override
   public Boolean matcher(String input, ParserState state) {
     // There should always have an associated Mozlog hint
@@ -110,7 +127,7 @@ public class BmoAudit extends PayloadBase implements Serializable {
     if ((type == null) || (!(type.equals("audit")))) {
       return false;
     }
-    Map<String, String> fields = convertInput(input);
+    Map<String, String> fields = convertInput(input, state);
     if (fields == null) {
       return false;
     }
@@ -118,9 +135,9 @@ public class BmoAudit extends PayloadBase implements Serializable {
         && (fields.get("remote_ip") != null)
         && (fields.get("request_id") != null)) {
       String msg = fields.get("msg");
-      if (Pattern.compile(reLogin).matcher(msg).matches()) {
+      if (pattLogin.matcher(msg).matches()) {
         return true;
-      } else if (Pattern.compile(reCreate).matcher(msg).matches()) {
+      } else if (pattCreate.matcher(msg).matches()) {
         return true;
       }
     }
@@ -133,6 +150,30 @@ public class BmoAudit extends PayloadBase implements Serializable {
     return Payload.PayloadType.BMOAUDIT;
   }
 
+  @Override
+  void writeFields(DataOutputStream out) throws IOException {
+    EventCoder.writeString(out, msg);
+    EventCoder.writeString(out, remoteIp);
+    EventCoder.writeString(out, remoteIpCity);
+    EventCoder.writeString(out, remoteIpCountry);
+    EventCoder.writeString(out, requestId);
+    EventCoder.writeString(out, user);
+    EventCoder.writeString(out, userAgent);
+    EventCoder.writeEnum(out, type);
+  }
+
+  @Override
+  void readFields(DataInputStream in) throws IOException {
+    msg = EventCoder.readString(in);
+    remoteIp = EventCoder.readString(in);
+    remoteIpCity = EventCoder.readString(in);
+    remoteIpCountry = EventCoder.readString(in);
+    requestId = EventCoder.readString(in);
+    user = EventCoder.readString(in);
+    userAgent = EventCoder.readString(in);
+    type = EventCoder.readEnum(in, AuditType.values());
+  }
+
   /** Construct matcher object. */
   public BmoAudit() {}
 
@@ -144,7 +185,7 @@ public class BmoAudit extends PayloadBase implements Serializable {
    * @param state State
    */
   public BmoAudit(String input, Event e, ParserState state) {
-    Map<String, String> fields = convertInput(input);
+    Map<String, String> fields = convertInput(input, state);
     if (fields == null) {
       return;
     }
@@ -157,16 +198,16 @@ public class BmoAudit extends PayloadBase implements Serializable {
     }
 
     if (remoteIp != null) {
-      CityResponse cr = state.getParser().geoIp(remoteIp);
-      if (cr != null) {
-        remoteIpCity = cr.getCity().getName();
-        remoteIpCountry = cr.getCountry().getIsoCode();
+      GeoIP.Location loc = state.getParser().geoIpLocation(remoteIp);
+      if (loc != null) {
+        remoteIpCity = loc.getCity();
+        remoteIpCountry = loc.getCountry();
       }
     }
 
     Normalized n = e.getNormalized();
 
-    Matcher mat = Pattern.compile(reLogin).matcher(msg);
+    Matcher mat = pattLogin.matcher(msg);
     if (mat.matches()) {
       type = AuditType.LOGIN;
       user = mat.group(1);
@@ -183,7 +224,7 @@ public class BmoAudit extends PayloadBase implements Serializable {
       return;
     }
 
-    mat = Pattern.compile(reCreate).matcher(msg);
+    mat = pattCreate.matcher(msg);
     if (mat.matches()) {
       type = AuditType.CREATEBUG;
       user = mat.group(1);
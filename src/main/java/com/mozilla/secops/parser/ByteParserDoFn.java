@@ -0,0 +1,57 @@
+package com.mozilla.secops.parser;
+
+import org.apache.beam.sdk.transforms.DoFn;
+
+/**
+ * {@link DoFn} applying simple event parsing operations to UTF-8 encoded input
+ *
+ * <p>Behaves identically to {@link ParserDoFn}, including the metrics it reports, but accepts raw
+ * input bytes. Fast matchers are applied to the bytes, and JSON input is decoded directly without
+ * first creating a string copy of the input.
+ */
+public class ByteParserDoFn extends DoFn<byte[], Event> {
+  private static final long serialVersionUID = 1L;
+
+  private final ParserDoFn fn = new ParserDoFn();
+
+  /**
+   * Install an inline {@link EventFilter} in this transform
+   *
+   * @see ParserDoFn#withInlineEventFilter
+   * @param inlineFilter Event filter to install
+   * @return ByteParserDoFn
+   */
+  public ByteParserDoFn withInlineEventFilter(EventFilter inlineFilter) {
+    fn.withInlineEventFilter(inlineFilter);
+    return this;
+  }
+
+  /**
+   * Configure this function to use the specified configuration in the parser
+   *
+   * @param cfg Parser configuration
+   * @return ByteParserDoFn
+   */
+  public ByteParserDoFn withConfiguration(ParserCfg cfg) {
+    fn.withConfiguration(cfg);
+    return this;
+  }
+
+  @Setup
+  public void setup() {
+    fn.setup();
+  }
+
+  @ProcessElement
+  public void processElement(ProcessContext c) {
+    Event e = fn.parseElement(null, c.element());
+    if (e != null) {
+      fn.output(c, e);
+    }
+  }
+
+  @FinishBundle
+  public void finishBundle() {
+    fn.reportFastMatcherHits();
+  }
+}
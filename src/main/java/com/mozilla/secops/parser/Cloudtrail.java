@@ -1,16 +1,12 @@
 package com.mozilla.secops.parser;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.google.api.client.json.JsonParser;
-import com.google.api.client.json.jackson2.JacksonFactory;
-import com.google.api.services.logging.v2.model.LogEntry;
-import com.maxmind.geoip2.model.CityResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.mozilla.secops.identity.IdentityManager;
 import com.mozilla.secops.parser.models.cloudtrail.CloudtrailEvent;
 import com.mozilla.secops.parser.models.cloudtrail.UserIdentity;
-import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
@@ -20,17 +16,20 @@ import java.util.Map;
 public class Cloudtrail extends PayloadBase implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  private ObjectMapper mapper;
-
   private CloudtrailEvent event;
 
   private String sourceAddressCity;
   private String sourceAddressCountry;
 
+  @Override
+  boolean requiresInputString() {
+    return false;
+  }
+
   @Override
   public Boolean matcher(String input, ParserState state) {
     try {
-      if (parseInput(input) != null) {
+      if (parseInput(input, state) != null) {
         return true;
       }
     } catch (IOException exc) {
@@ -44,11 +43,23 @@ public class Cloudtrail extends PayloadBase implements Serializable {
     return Payload.PayloadType.CLOUDTRAIL;
   }
 
-  /** Construct matcher object. */
-  public Cloudtrail() {
-    mapper = getObjectMapper();
+  @Override
+  void writeFields(DataOutputStream out) throws IOException {
+    EventCoder.writeSerializable(out, event);
+    EventCoder.writeString(out, sourceAddressCity);
+    EventCoder.writeString(out, sourceAddressCountry);
   }
 
+  @Override
+  void readFields(DataInputStream in) throws IOException {
+    event = EventCoder.readSerializable(in, CloudtrailEvent.class);
+    sourceAddressCity = EventCoder.readString(in);
+    sourceAddressCountry = EventCoder.readString(in);
+  }
+
+  /** Construct matcher object. */
+  public Cloudtrail() {}
+
   /**
    * Construct parser object.
    *
@@ -57,9 +68,8 @@ public class Cloudtrail extends PayloadBase implements Serializable {
    * @param state State
    */
   public Cloudtrail(String input, Event e, ParserState state) {
-    mapper = getObjectMapper();
     try {
-      event = parseInput(input);
+      event = parseInput(input, state);
       if (isAuthEvent()) {
         Normalized n = e.getNormalized();
         n.setType(Normalized.Type.AUTH);
@@ -86,10 +96,10 @@ public class Cloudtrail extends PayloadBase implements Serializable {
         }
 
         if (getSourceAddress() != null) {
-          CityResponse cr = state.getParser().geoIp(getSourceAddress());
-          if (cr != null) {
-            sourceAddressCity = cr.getCity().getName();
-            sourceAddressCountry = cr.getCountry().getIsoCode();
+          GeoIP.Location loc = state.getParser().geoIpLocation(getSourceAddress());
+          if (loc != null) {
+            sourceAddressCity = loc.getCity();
+            sourceAddressCountry = loc.getCountry();
             n.setSourceAddressCity(sourceAddressCity);
             n.setSourceAddressCountry(sourceAddressCountry);
           }
@@ -100,46 +110,31 @@ public class Cloudtrail extends PayloadBase implements Serializable {
     }
   }
 
-  private CloudtrailEvent parseInput(String input) throws IOException {
-    try {
-      JacksonFactory jfmatcher = new JacksonFactory();
-      JsonParser jp = jfmatcher.createJsonParser(input);
-      LogEntry entry = jp.parse(LogEntry.class);
-      Map<String, Object> m = entry.getJsonPayload();
-      if (m != null) {
-        // XXX Unwrap the json payload within the log entry into a string
-        // that can then be parsed by ObjectMapper into CloudtrailEvent. This
-        // should probably be done within Parser.
-        ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        mapper.writeValue(buf, m);
-        input = buf.toString();
+  private CloudtrailEvent parseInput(String input, ParserState state) throws IOException {
+    // Make use of the tree already decoded by the parser if it is available, otherwise decode
+    // the input here
+    ObjectReader reader = MapperCache.getReader(MapperCache.Profile.LENIENT, CloudtrailEvent.class);
+    JsonNode node = state.getDecodedInput();
+    if (node == null) {
+      node = reader.readTree(input);
+      if (node == null) {
+        return null;
       }
-    } catch (IOException exc) {
-      // pass
-    } catch (IllegalArgumentException exc) {
-      // pass
     }
 
-    try {
-      CloudtrailEvent _event = mapper.readValue(input, CloudtrailEvent.class);
-      if (_event.getEventVersion() != null) {
-        return _event;
-      }
-    } catch (IOException exc) {
-      throw exc;
+    // If the event is encapsulated in the json payload of a log entry, unwrap it
+    JsonNode m = node.get("jsonPayload");
+    if (m != null && m.isObject()) {
+      node = m;
     }
 
+    CloudtrailEvent _event = reader.readValue(node);
+    if (_event != null && _event.getEventVersion() != null) {
+      return _event;
+    }
     return null;
   }
 
-  private ObjectMapper getObjectMapper() {
-    ObjectMapper _mapper = new ObjectMapper();
-    _mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-    // Allows for null values in the JsonPayload in a LogEntry when mapping to a Map<String, Object>
-    _mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
-    return _mapper;
-  }
-
   /**
    * Get username
    *
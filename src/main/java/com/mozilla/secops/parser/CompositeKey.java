@@ -0,0 +1,100 @@
+package com.mozilla.secops.parser;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.beam.sdk.coders.DefaultCoder;
+
+/**
+ * Ordered tuple of string values used as a key
+ *
+ * <p>Composite keys are produced by the keying selectors of an {@link EventFilter}, and hold the
+ * selected values in their original form. Keys are immutable, and compare equal if they contain the
+ * same values in the same order.
+ */
+@DefaultCoder(CompositeKeyCoder.class)
+public class CompositeKey implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final String[] elements;
+
+  /**
+   * Create a key from the specified values
+   *
+   * @param elements Key values
+   * @return CompositeKey
+   */
+  public static CompositeKey of(String... elements) {
+    return new CompositeKey(elements.clone());
+  }
+
+  /**
+   * Create a key from the specified values
+   *
+   * @param elements Key values
+   * @return CompositeKey
+   */
+  public static CompositeKey of(List<String> elements) {
+    return new CompositeKey(elements.toArray(new String[0]));
+  }
+
+  /**
+   * Get number of values in key
+   *
+   * @return Value count
+   */
+  public int size() {
+    return elements.length;
+  }
+
+  /**
+   * Get value at index
+   *
+   * @param index Index
+   * @return Value
+   */
+  public String get(int index) {
+    return elements[index];
+  }
+
+  /**
+   * Get values in key
+   *
+   * @return Copy of values in key
+   */
+  public String[] getElements() {
+    return elements.clone();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof CompositeKey)) {
+      return false;
+    }
+    return Arrays.equals(elements, ((CompositeKey) o).elements);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(elements);
+  }
+
+  /**
+   * Return key values separated by spaces, for display purposes
+   *
+   * @return String
+   */
+  @Override
+  public String toString() {
+    return String.join(" ", elements);
+  }
+
+  CompositeKey(String[] elements) {
+    for (String s : elements) {
+      if (s == null) {
+        throw new IllegalArgumentException("composite key values cannot be null");
+      }
+    }
+    this.elements = elements;
+  }
+}
@@ -0,0 +1,89 @@
+package com.mozilla.secops.parser;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.CoderProvider;
+import org.apache.beam.sdk.coders.CoderProviders;
+import org.apache.beam.sdk.coders.CustomCoder;
+import org.apache.beam.sdk.util.VarInt;
+import org.apache.beam.sdk.values.TypeDescriptor;
+
+/**
+ * Deterministic {@link org.apache.beam.sdk.coders.Coder} for {@link CompositeKey}
+ *
+ * <p>A key is encoded as the number of values, followed by each value as UTF-8 bytes prefixed with
+ * the length. Equal keys always have the same encoding, so the coder can be used for grouping and
+ * state keys.
+ */
+public class CompositeKeyCoder extends CustomCoder<CompositeKey> {
+  private static final long serialVersionUID = 1L;
+
+  private static final CompositeKeyCoder INSTANCE = new CompositeKeyCoder();
+
+  /**
+   * Return an instance of the coder
+   *
+   * @return CompositeKeyCoder
+   */
+  public static CompositeKeyCoder of() {
+    return INSTANCE;
+  }
+
+  /**
+   * Return a coder provider for {@link CompositeKey}, used by the {@link
+   * org.apache.beam.sdk.coders.DefaultCoder} annotation
+   *
+   * @return CoderProvider
+   */
+  public static CoderProvider getCoderProvider() {
+    return CoderProviders.forCoder(TypeDescriptor.of(CompositeKey.class), INSTANCE);
+  }
+
+  @Override
+  public void encode(CompositeKey value, OutputStream outStream) throws IOException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null CompositeKey");
+    }
+    VarInt.encode(value.size(), outStream);
+    for (int i = 0; i < value.size(); i++) {
+      byte[] buf = value.get(i).getBytes(StandardCharsets.UTF_8);
+      VarInt.encode(buf.length, outStream);
+      outStream.write(buf);
+    }
+  }
+
+  @Override
+  public CompositeKey decode(InputStream inStream) throws IOException {
+    DataInputStream in = new DataInputStream(inStream);
+    int n = VarInt.decodeInt(in);
+    String[] elements = new String[n];
+    for (int i = 0; i < n; i++) {
+      byte[] buf = new byte[VarInt.decodeInt(in)];
+      in.readFully(buf);
+      elements[i] = new String(buf, StandardCharsets.UTF_8);
+    }
+    return new CompositeKey(elements);
+  }
+
+  @Override
+  public void verifyDeterministic() {}
+
+  @Override
+  public boolean consistentWithEquals() {
+    return true;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof CompositeKeyCoder;
+  }
+
+  @Override
+  public int hashCode() {
+    return CompositeKeyCoder.class.hashCode();
+  }
+}
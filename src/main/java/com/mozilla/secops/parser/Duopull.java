@@ -1,7 +1,10 @@
 package com.mozilla.secops.parser;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 
@@ -15,12 +18,28 @@ public class Duopull extends PayloadBase implements Serializable {
 
   private com.mozilla.secops.parser.models.duopull.Duopull duoPullData;
 
+  private com.mozilla.secops.parser.models.duopull.Duopull decode(String input, ParserState state)
+      throws IOException {
+    ObjectReader reader =
+        MapperCache.getReader(
+            MapperCache.Profile.DEFAULT, com.mozilla.secops.parser.models.duopull.Duopull.class);
+    JsonNode node = state.getDecodedInput();
+    if (node != null) {
+      return reader.readValue(node);
+    }
+    return reader.readValue(input);
+  }
+
+  @Override
+  boolean requiresInputString() {
+    return false;
+  }
+
   @Override
   public Boolean matcher(String input, ParserState state) {
-    ObjectMapper mapper = new ObjectMapper();
     com.mozilla.secops.parser.models.duopull.Duopull d;
     try {
-      d = mapper.readValue(input, com.mozilla.secops.parser.models.duopull.Duopull.class);
+      d = decode(input, state);
     } catch (IOException exc) {
       return false;
     }
@@ -56,6 +75,25 @@ public class Duopull extends PayloadBase implements Serializable {
     duoPullData = data;
   }
 
+  @Override
+  void writeFields(DataOutputStream out) throws IOException {
+    EventCoder.writeJson(
+        out,
+        MapperCache.getWriter(
+            MapperCache.Profile.DEFAULT, com.mozilla.secops.parser.models.duopull.Duopull.class),
+        duoPullData);
+  }
+
+  @Override
+  void readFields(DataInputStream in) throws IOException {
+    duoPullData =
+        EventCoder.readJson(
+            in,
+            MapperCache.getReader(
+                MapperCache.Profile.DEFAULT,
+                com.mozilla.secops.parser.models.duopull.Duopull.class));
+  }
+
   /** Construct matcher object. */
   public Duopull() {}
 
@@ -67,9 +105,8 @@ public class Duopull extends PayloadBase implements Serializable {
    * @param state State
    */
   public Duopull(String input, Event e, ParserState state) {
-    ObjectMapper mapper = new ObjectMapper();
     try {
-      duoPullData = mapper.readValue(input, com.mozilla.secops.parser.models.duopull.Duopull.class);
+      duoPullData = decode(input, state);
     } catch (IOException exc) {
       return;
     }
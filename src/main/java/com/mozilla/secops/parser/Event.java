@@ -1,17 +1,20 @@
 package com.mozilla.secops.parser;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.joda.JodaModule;
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.DefaultCoder;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
@@ -23,9 +26,13 @@ import org.joda.time.DateTimeZone;
  *
  * <p>Specific parser implementations may also add {@link Normalized} data fields to the event.
  */
+@DefaultCoder(EventCoder.class)
 public class Event implements Serializable {
   private static final long serialVersionUID = 1L;
 
+  private static final TypeReference<ArrayList<Event>> eventListType =
+      new TypeReference<ArrayList<Event>>() {};
+
   private Payload<? extends PayloadBase> payload;
   private final UUID eventId;
   private DateTime timestamp;
@@ -34,13 +41,40 @@ public class Event implements Serializable {
   private String stackdriverProject;
   private Map<String, String> stackdriverLabels;
 
+  // Deferred payload decoding state, set if the event was parsed with lazy payload decoding
+  private transient PendingPayload pending;
+
+  private static class PendingPayload {
+    private final Payload.PayloadType type;
+    private final PayloadFactory factory;
+    private final String input;
+    private final ParserState state;
+
+    PendingPayload(
+        Payload.PayloadType type, PayloadFactory factory, String input, ParserState state) {
+      this.type = type;
+      this.factory = factory;
+      this.input = input;
+      this.state = state;
+    }
+  }
+
   /**
    * Create a new {@link Event} object.
    *
    * <p>The default timestamp associated with the event is the current time.
    */
   Event() {
-    eventId = UUID.randomUUID();
+    this(UUID.randomUUID());
+  }
+
+  /**
+   * Create a new {@link Event} object with the specified event ID.
+   *
+   * @param eventId Event ID
+   */
+  Event(UUID eventId) {
+    this.eventId = eventId;
     normalized = new Normalized();
 
     // Default the event timestamp to creation time
@@ -58,6 +92,103 @@ public class Event implements Serializable {
     return eventId.hashCode();
   }
 
+  /**
+   * Defer decoding of the event payload until it is first accessed
+   *
+   * <p>The payload type is known, but the payload object and any {@link Normalized} fields it
+   * populates are not constructed until the payload, normalized data, or timestamp is requested.
+   *
+   * @param type Type of payload that matched the input
+   * @param factory Factory used to construct the payload
+   * @param input Input string
+   * @param state Parser state
+   */
+  void setPendingPayload(
+      Payload.PayloadType type, PayloadFactory factory, String input, ParserState state) {
+    pending = new PendingPayload(type, factory, input, state);
+  }
+
+  /** Decode the event payload if decoding was deferred */
+  void decodePayload() {
+    if (pending == null) {
+      return;
+    }
+    PendingPayload p = pending;
+    pending = null;
+    setPayload(p.factory.create(p.input, this, p.state));
+  }
+
+  /**
+   * Test if the event payload has been decoded
+   *
+   * @return False if decoding of the payload has been deferred and has not yet occurred
+   */
+  @JsonIgnore
+  public boolean isPayloadDecoded() {
+    return pending == null;
+  }
+
+  /**
+   * Write event fields for {@link EventCoder}
+   *
+   * @param out Output stream
+   */
+  void writeFields(DataOutputStream out) throws IOException {
+    decodePayload();
+    out.writeLong(eventId.getMostSignificantBits());
+    out.writeLong(eventId.getLeastSignificantBits());
+    EventCoder.writeDateTime(out, timestamp);
+    EventCoder.writeString(out, stackdriverProject);
+    EventCoder.writeStringMap(out, stackdriverLabels);
+    out.writeBoolean(mozlog != null);
+    if (mozlog != null) {
+      mozlog.writeFields(out);
+    }
+    normalized.writeFields(out);
+    if (payload == null) {
+      EventCoder.writeEnum(out, null);
+      return;
+    }
+    PayloadBase data = payload.getData();
+    EventCoder.writeEnum(out, data.getType());
+    data.writeFields(out);
+  }
+
+  /**
+   * Read an event written by {@link #writeFields}
+   *
+   * @param in Input stream
+   * @return Event
+   */
+  static Event readFields(DataInputStream in) throws IOException {
+    Event ret = new Event(new UUID(in.readLong(), in.readLong()));
+    ret.timestamp = EventCoder.readDateTime(in);
+    ret.stackdriverProject = EventCoder.readString(in);
+    ret.stackdriverLabels = EventCoder.readStringMap(in);
+    if (in.readBoolean()) {
+      ret.mozlog = new Mozlog();
+      ret.mozlog.readFields(in);
+    }
+    ret.normalized.readFields(in);
+    Payload.PayloadType type = EventCoder.readEnum(in, Payload.PayloadType.values());
+    if (type == null) {
+      return ret;
+    }
+    PayloadRegistry.Entry entry = PayloadRegistry.getEntry(type);
+    if (entry == null) {
+      throw new CoderException("no registered payload parser for " + type.toString());
+    }
+    PayloadBase data = entry.newMatcher();
+    data.readFields(in);
+    ret.setPayload(data);
+    return ret;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    decodePayload();
+    out.defaultWriteObject();
+  }
+
   /**
    * Set event payload.
    *
@@ -75,6 +206,7 @@ public class Event implements Serializable {
   @SuppressWarnings("unchecked")
   @JsonProperty("payload")
   public <T extends PayloadBase> T getPayload() {
+    decodePayload();
     return (T) payload.getData();
   }
 
@@ -85,6 +217,9 @@ public class Event implements Serializable {
    */
   @JsonProperty("payload_type")
   public Payload.PayloadType getPayloadType() {
+    if (pending != null) {
+      return pending.type;
+    }
     return payload.getType();
   }
 
@@ -196,6 +331,7 @@ public class Event implements Serializable {
    * @return Timestamp associated with event.
    */
   public DateTime getTimestamp() {
+    decodePayload();
     return timestamp;
   }
 
@@ -214,27 +350,18 @@ public class Event implements Serializable {
    * @return {@link Normalized} data associated with event.
    */
   public Normalized getNormalized() {
+    decodePayload();
     return normalized;
   }
 
-  private static ObjectMapper getObjectMapper() {
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.registerModule(new JodaModule());
-    mapper.configure(
-        com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-    mapper.setSerializationInclusion(Include.NON_NULL);
-    return mapper;
-  }
-
   /**
    * Convert event into JSON string representation
    *
    * @return JSON string, null on failure
    */
   public String toJSON() {
-    ObjectMapper mapper = getObjectMapper();
     try {
-      return mapper.writeValueAsString(this);
+      return MapperCache.getWriter(MapperCache.Profile.EVENT, Event.class).writeValueAsString(this);
     } catch (JsonProcessingException exc) {
       return null;
     }
@@ -247,9 +374,8 @@ public class Event implements Serializable {
    * @return Event object or null on failure
    */
   public static Event fromJSON(String input) {
-    ObjectMapper mapper = getObjectMapper();
     try {
-      return mapper.readValue(input, Event.class);
+      return MapperCache.getReader(MapperCache.Profile.EVENT, Event.class).readValue(input);
     } catch (IOException exc) {
       return null;
     }
@@ -262,10 +388,8 @@ public class Event implements Serializable {
    * @return Iterable list of events, or null on failure
    */
   public static Iterable<Event> jsonToIterable(String input) {
-    ObjectMapper mapper = getObjectMapper();
     try {
-      return mapper.readValue(
-          input, mapper.getTypeFactory().constructCollectionType(ArrayList.class, Event.class));
+      return MapperCache.getReader(MapperCache.Profile.EVENT, eventListType).readValue(input);
     } catch (IOException exc) {
       return null;
     }
@@ -278,9 +402,8 @@ public class Event implements Serializable {
    * @return JSON string, null on failure
    */
   public static String iterableToJson(Iterable<Event> input) {
-    ObjectMapper mapper = getObjectMapper();
     try {
-      return mapper.writeValueAsString(input);
+      return MapperCache.getMapper(MapperCache.Profile.EVENT).writeValueAsString(input);
     } catch (JsonProcessingException exc) {
       return null;
     }
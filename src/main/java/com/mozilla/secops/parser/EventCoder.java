@@ -0,0 +1,382 @@
+package com.mozilla.secops.parser;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.CoderProvider;
+import org.apache.beam.sdk.coders.CoderProviders;
+import org.apache.beam.sdk.coders.CustomCoder;
+import org.apache.beam.sdk.util.VarInt;
+import org.apache.beam.sdk.values.TypeDescriptor;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Compact binary {@link org.apache.beam.sdk.coders.Coder} for {@link Event}
+ *
+ * <p>Events are encoded field by field rather than using Java serialization. The event envelope,
+ * {@link Normalized} data, {@link Mozlog} data and each payload type write their own fields; nested
+ * parser models are encoded as JSON using the same mapper configuration the payload parser uses to
+ * read them. Cloudtrail models are not symmetric under JSON serialization and fall back to Java
+ * serialization of the model object only.
+ *
+ * <p>Each encoded event is prefixed with a format version. The ordinal values of {@link
+ * Payload.PayloadType} and {@link Normalized.Type} are part of the format, so new values must be
+ * appended to these enums. Any other change to the encoding of a class must increment {@link
+ * #VERSION}.
+ *
+ * <p>The coder is registered as the default coder for {@link Event} and is used automatically in
+ * all pipelines.
+ */
+public class EventCoder extends CustomCoder<Event> {
+  private static final long serialVersionUID = 1L;
+
+  /** Current encoding format version */
+  public static final int VERSION = 1;
+
+  private static final EventCoder INSTANCE = new EventCoder();
+
+  /**
+   * Return an instance of the coder
+   *
+   * @return EventCoder
+   */
+  public static EventCoder of() {
+    return INSTANCE;
+  }
+
+  /**
+   * Return a coder provider for {@link Event}, used by the {@link
+   * org.apache.beam.sdk.coders.DefaultCoder} annotation
+   *
+   * @return CoderProvider
+   */
+  public static CoderProvider getCoderProvider() {
+    return CoderProviders.forCoder(TypeDescriptor.of(Event.class), INSTANCE);
+  }
+
+  @Override
+  public void encode(Event value, OutputStream outStream) throws IOException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Event");
+    }
+    DataOutputStream out = new DataOutputStream(outStream);
+    out.writeByte(VERSION);
+    value.writeFields(out);
+    out.flush();
+  }
+
+  @Override
+  public Event decode(InputStream inStream) throws IOException {
+    DataInputStream in = new DataInputStream(inStream);
+    int version = in.readUnsignedByte();
+    if (version != VERSION) {
+      throw new CoderException("unsupported event encoding version " + version);
+    }
+    return Event.readFields(in);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof EventCoder;
+  }
+
+  @Override
+  public int hashCode() {
+    return EventCoder.class.hashCode();
+  }
+
+  /**
+   * Write a nullable string
+   *
+   * @param out Output stream
+   * @param value Value
+   */
+  static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      VarInt.encode(0, out);
+      return;
+    }
+    byte[] buf = value.getBytes(StandardCharsets.UTF_8);
+    VarInt.encode(buf.length + 1, out);
+    out.write(buf);
+  }
+
+  /**
+   * Read a nullable string
+   *
+   * @param in Input stream
+   * @return Value
+   */
+  static String readString(DataInputStream in) throws IOException {
+    int len = VarInt.decodeInt(in);
+    if (len == 0) {
+      return null;
+    }
+    byte[] buf = new byte[len - 1];
+    in.readFully(buf);
+    return new String(buf, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Write a nullable integer
+   *
+   * @param out Output stream
+   * @param value Value
+   */
+  static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      VarInt.encode(value, out);
+    }
+  }
+
+  /**
+   * Read a nullable integer
+   *
+   * @param in Input stream
+   * @return Value
+   */
+  static Integer readInteger(DataInputStream in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    return VarInt.decodeInt(in);
+  }
+
+  /**
+   * Write a nullable long
+   *
+   * @param out Output stream
+   * @param value Value
+   */
+  static void writeLong(DataOutputStream out, Long value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      VarInt.encode(value, out);
+    }
+  }
+
+  /**
+   * Read a nullable long
+   *
+   * @param in Input stream
+   * @return Value
+   */
+  static Long readLong(DataInputStream in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    return VarInt.decodeLong(in);
+  }
+
+  /**
+   * Write a nullable double
+   *
+   * @param out Output stream
+   * @param value Value
+   */
+  static void writeDouble(DataOutputStream out, Double value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeDouble(value);
+    }
+  }
+
+  /**
+   * Read a nullable double
+   *
+   * @param in Input stream
+   * @return Value
+   */
+  static Double readDouble(DataInputStream in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    return in.readDouble();
+  }
+
+  /**
+   * Write a nullable enum value
+   *
+   * @param out Output stream
+   * @param value Value
+   */
+  static void writeEnum(DataOutputStream out, Enum<?> value) throws IOException {
+    VarInt.encode(value == null ? 0 : value.ordinal() + 1, out);
+  }
+
+  /**
+   * Read a nullable enum value
+   *
+   * @param in Input stream
+   * @param values Values of the enum type, as returned by values()
+   * @return Value
+   */
+  static <T extends Enum<T>> T readEnum(DataInputStream in, T[] values) throws IOException {
+    int v = VarInt.decodeInt(in);
+    if (v == 0) {
+      return null;
+    }
+    if (v > values.length) {
+      throw new CoderException("invalid enum ordinal " + (v - 1));
+    }
+    return values[v - 1];
+  }
+
+  /**
+   * Write a nullable timestamp
+   *
+   * @param out Output stream
+   * @param value Value
+   */
+  static void writeDateTime(DataOutputStream out, DateTime value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      VarInt.encode(value.getMillis(), out);
+      writeString(out, value.getZone().getID());
+    }
+  }
+
+  /**
+   * Read a nullable timestamp
+   *
+   * @param in Input stream
+   * @return Value
+   */
+  static DateTime readDateTime(DataInputStream in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    long millis = VarInt.decodeLong(in);
+    String zone = readString(in);
+    return new DateTime(millis, DateTimeZone.forID(zone));
+  }
+
+  /**
+   * Write a nullable string map
+   *
+   * @param out Output stream
+   * @param value Value
+   */
+  static void writeStringMap(DataOutputStream out, Map<String, String> value) throws IOException {
+    if (value == null) {
+      VarInt.encode(0, out);
+      return;
+    }
+    VarInt.encode(value.size() + 1, out);
+    for (Map.Entry<String, String> entry : value.entrySet()) {
+      writeString(out, entry.getKey());
+      writeString(out, entry.getValue());
+    }
+  }
+
+  /**
+   * Read a nullable string map
+   *
+   * @param in Input stream
+   * @return Value
+   */
+  static HashMap<String, String> readStringMap(DataInputStream in) throws IOException {
+    int len = VarInt.decodeInt(in);
+    if (len == 0) {
+      return null;
+    }
+    HashMap<String, String> ret = new HashMap<String, String>();
+    for (int i = 0; i < len - 1; i++) {
+      String k = readString(in);
+      ret.put(k, readString(in));
+    }
+    return ret;
+  }
+
+  /**
+   * Write a nullable object as JSON
+   *
+   * @param out Output stream
+   * @param writer Writer to use to encode value
+   * @param value Value
+   */
+  static void writeJson(DataOutputStream out, ObjectWriter writer, Object value)
+      throws IOException {
+    if (value == null) {
+      VarInt.encode(0, out);
+      return;
+    }
+    byte[] buf = writer.writeValueAsBytes(value);
+    VarInt.encode(buf.length + 1, out);
+    out.write(buf);
+  }
+
+  /**
+   * Write a nullable object using Java serialization
+   *
+   * <p>Used for nested models which cannot be round tripped through JSON.
+   *
+   * @param out Output stream
+   * @param value Value
+   */
+  static void writeSerializable(DataOutputStream out, Serializable value) throws IOException {
+    if (value == null) {
+      VarInt.encode(0, out);
+      return;
+    }
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    try (ObjectOutputStream o = new ObjectOutputStream(buf)) {
+      o.writeObject(value);
+    }
+    VarInt.encode(buf.size() + 1, out);
+    buf.writeTo(out);
+  }
+
+  /**
+   * Read a nullable object written using Java serialization
+   *
+   * @param in Input stream
+   * @param cls Expected class of value
+   * @return Value
+   */
+  static <T> T readSerializable(DataInputStream in, Class<T> cls) throws IOException {
+    int len = VarInt.decodeInt(in);
+    if (len == 0) {
+      return null;
+    }
+    byte[] buf = new byte[len - 1];
+    in.readFully(buf);
+    try (ObjectInputStream o = new ObjectInputStream(new ByteArrayInputStream(buf))) {
+      return cls.cast(o.readObject());
+    } catch (ClassNotFoundException | ClassCastException exc) {
+      throw new CoderException(exc);
+    }
+  }
+
+  /**
+   * Read a nullable object encoded as JSON
+   *
+   * @param in Input stream
+   * @param reader Reader to use to decode value
+   * @return Value
+   */
+  static <T> T readJson(DataInputStream in, ObjectReader reader) throws IOException {
+    int len = VarInt.decodeInt(in);
+    if (len == 0) {
+      return null;
+    }
+    byte[] buf = new byte[len - 1];
+    in.readFully(buf);
+    return reader.readValue(buf);
+  }
+}
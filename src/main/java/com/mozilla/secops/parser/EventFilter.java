@@ -3,6 +3,7 @@ package com.mozilla.secops.parser;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
@@ -20,6 +21,9 @@ public class EventFilter implements Serializable {
   private Boolean outputWithTimestamp;
   private Boolean matchAny; // If true, match on any input event
 
+  // Rules compiled on first use, reset when rules are added
+  private transient volatile EventFilterProgram program;
+
   private static final String keyChar = " ";
   private static final String splitChar = "\\ ";
 
@@ -61,27 +65,30 @@ public class EventFilter implements Serializable {
    * Get composite transform to apply filter to event stream and perform any required keying
    * operations
    *
+   * <p>Events are keyed using the {@link CompositeKey} returned by {@link #getCompositeKey}, and
+   * events the key selectors do not apply to are dropped.
+   *
    * @param filter Event filter
    * @return Transform
    */
-  public static PTransform<PCollection<Event>, PCollection<KV<String, Event>>> getKeyingTransform(
-      EventFilter filter) {
-    return new PTransform<PCollection<Event>, PCollection<KV<String, Event>>>() {
+  public static PTransform<PCollection<Event>, PCollection<KV<CompositeKey, Event>>>
+      getKeyingTransform(EventFilter filter) {
+    return new PTransform<PCollection<Event>, PCollection<KV<CompositeKey, Event>>>() {
       private static final long serialVersionUID = 1L;
 
       @Override
-      public PCollection<KV<String, Event>> expand(PCollection<Event> input) {
+      public PCollection<KV<CompositeKey, Event>> expand(PCollection<Event> input) {
         return input
             .apply(getTransform(filter))
             .apply(
                 ParDo.of(
-                    new DoFn<Event, KV<String, Event>>() {
+                    new DoFn<Event, KV<CompositeKey, Event>>() {
                       private static final long serialVersionUID = 1L;
 
                       @ProcessElement
                       public void processElement(ProcessContext c) {
                         Event e = c.element();
-                        String key = filter.getKey(e);
+                        CompositeKey key = filter.getCompositeKey(e);
                         if (key == null) {
                           return;
                         }
@@ -99,21 +106,87 @@ public class EventFilter implements Serializable {
    * @return True if filter matches
    */
   public Boolean matches(Event e) {
+    return matches(e, getProgram(), 0, null);
+  }
+
+  /**
+   * Test if event matches filter using a compiled program
+   *
+   * @param e Event to match against filter
+   * @param prog Program containing the compiled rules of this filter
+   * @param group Rule group of this filter in the program
+   * @param f Evaluation state for the event, or null to create new state
+   * @return True if filter matches
+   */
+  boolean matches(Event e, EventFilterProgram prog, int group, EventFilterProgram.Frame f) {
     if (matchAny) {
       return true;
     }
+    // Rules are tested prior to the timestamp zone, since accessing the timestamp requires the
+    // payload to be decoded
+    if (!prog.matches(group, e, f == null ? prog.newFrame() : f)) {
+      return false;
+    }
     if (wantUTC) {
       if (!(e.getTimestamp().getZone().getID().equals("Etc/UTC")
           || e.getTimestamp().getZone().getID().equals("UTC"))) {
         return false;
       }
     }
+    return true;
+  }
+
+  /**
+   * Compile the rules in this filter
+   *
+   * @param b Program builder
+   * @return Compiled rules
+   */
+  List<EventFilterProgram.Rule> compileRules(EventFilterProgram.Builder b) {
+    ArrayList<EventFilterProgram.Rule> ret = new ArrayList<EventFilterProgram.Rule>();
     for (EventFilterRule r : rules) {
-      if (r.matches(e)) {
-        return true;
+      ret.add(r.compile(b));
+    }
+    return ret;
+  }
+
+  /**
+   * Get the compiled form of the filter rules, compiling them if required
+   *
+   * <p>Rules are compiled once per filter instance. Compilation occurs when the filter is first
+   * used, so rules added to the filter or modified prior to first use are included.
+   *
+   * @return Compiled program
+   */
+  EventFilterProgram getProgram() {
+    EventFilterProgram ret = program;
+    if (ret == null) {
+      EventFilterProgram.Builder b = new EventFilterProgram.Builder();
+      ret = b.build(compileRules(b));
+      program = ret;
+    }
+    return ret;
+  }
+
+  /**
+   * Given any keySelectors return the applicable composite key from the event
+   *
+   * <p>The key contains the value extracted by each selector, in the order the selectors were added
+   * to the filter.
+   *
+   * @param e Input event
+   * @return Composite key, or null if any selector does not apply to the event
+   */
+  public CompositeKey getCompositeKey(Event e) {
+    ArrayList<String> keys = new ArrayList<String>();
+    for (EventFilterRule r : keySelectors) {
+      ArrayList<String> values = r.getKeyValues(e);
+      if (values == null) {
+        return null;
       }
+      keys.addAll(values);
     }
-    return false;
+    return CompositeKey.of(keys);
   }
 
   /**
@@ -121,7 +194,8 @@ public class EventFilter implements Serializable {
    *
    * <p>Base64 encoding is applied to key sub elements that are used in the returned key.
    *
-   * <p>Pipelines should use splitKey to convert the elements back to their original form.
+   * <p>Pipelines should use splitKey to convert the elements back to their original form. Where the
+   * key is only used within a pipeline, {@link #getCompositeKey} avoids the encoding.
    *
    * @param e Input event
    * @return Key string
@@ -153,6 +227,33 @@ public class EventFilter implements Serializable {
     return ret;
   }
 
+  /**
+   * Derive fast matcher patterns from the rules in the filter
+   *
+   * <p>If every rule in the filter requires a literal value that must be present in the raw input
+   * of an event for the rule to match, the set of these literals is returned. Input that does not
+   * contain any of the literals cannot match the filter, and can be discarded by a {@link
+   * FastMatcher} prior to parsing.
+   *
+   * @return {@link ArrayList} of literals, or null if patterns cannot be derived for the filter
+   */
+  public ArrayList<String> getFastMatcherLiterals() {
+    if (matchAny || rules.isEmpty()) {
+      return null;
+    }
+    ArrayList<String> ret = new ArrayList<String>();
+    for (EventFilterRule r : rules) {
+      String l = r.getFastMatcherLiteral();
+      if (l == null) {
+        return null;
+      }
+      if (!ret.contains(l)) {
+        ret.add(l);
+      }
+    }
+    return ret;
+  }
+
   /**
    * Add new rule to filter
    *
@@ -160,6 +261,7 @@ public class EventFilter implements Serializable {
    */
   public void addRule(EventFilterRule rule) {
     rules.add(rule);
+    program = null;
   }
 
   /**
@@ -3,7 +3,9 @@ package com.mozilla.secops.parser;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -49,7 +51,22 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
     FXAAUTH_ACCOUNTID,
     FXAAUTH_SMSRECIPIENT,
     FXAAUTH_EMAILRECIPIENT,
-    FXAAUTH_UID
+    FXAAUTH_UID;
+
+    private final boolean normalized;
+
+    StringProperty() {
+      normalized = name().startsWith("NORMALIZED_");
+    }
+
+    /**
+     * Test if property is read from {@link Normalized} data rather than the payload
+     *
+     * @return True for normalized properties
+     */
+    public boolean isNormalized() {
+      return normalized;
+    }
   }
 
   /** Properties match integers from various payload event types */
@@ -58,9 +75,45 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
 
     GLB_STATUS,
 
-    NGINX_STATUS
+    NGINX_STATUS;
+
+    private final boolean normalized;
+
+    IntegerProperty() {
+      normalized = name().startsWith("NORMALIZED_");
+    }
+
+    /**
+     * Test if property is read from {@link Normalized} data rather than the payload
+     *
+     * @return True for normalized properties
+     */
+    public boolean isNormalized() {
+      return normalized;
+    }
   }
 
+  // Properties with values copied verbatim from the event input, that are candidates for use as
+  // fast matcher literals
+  private static final EnumSet<StringProperty> verbatimProperties =
+      EnumSet.of(
+          StringProperty.NORMALIZED_REQUESTMETHOD,
+          StringProperty.SECEVENT_ACTION,
+          StringProperty.SECEVENT_SOURCEADDRESS,
+          StringProperty.SECEVENT_ACCOUNTID,
+          StringProperty.SECEVENT_EMAILRECIPIENT,
+          StringProperty.SECEVENT_SMSRECIPIENT,
+          StringProperty.OPENSSH_AUTHMETHOD,
+          StringProperty.RAW_RAW,
+          StringProperty.CLOUDTRAIL_ACCOUNTID,
+          StringProperty.CLOUDTRAIL_EVENTNAME,
+          StringProperty.CLOUDTRAIL_EVENTSOURCE,
+          StringProperty.CLOUDTRAIL_INVOKEDBY,
+          StringProperty.GLB_REQUESTMETHOD,
+          StringProperty.NGINX_REQUESTMETHOD);
+
+  private static final String fastMatcherSafeChars = " _-.:@";
+
   private Class<? extends PayloadBase> ptype;
   private Map<StringProperty, String> stringMatchers;
   private Map<StringProperty, Pattern> stringRegexMatchers;
@@ -80,7 +133,7 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
     }
     for (Map.Entry<StringProperty, String> entry : stringMatchers.entrySet()) {
       String value = null;
-      if (entry.getKey().name().startsWith("NORMALIZED_")) {
+      if (entry.getKey().isNormalized()) {
         Normalized n = e.getNormalized();
         if (n != null) {
           value = n.eventStringValue(entry.getKey());
@@ -97,7 +150,7 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
     }
     for (Map.Entry<StringProperty, Pattern> entry : stringRegexMatchers.entrySet()) {
       String value = null;
-      if (entry.getKey().name().startsWith("NORMALIZED_")) {
+      if (entry.getKey().isNormalized()) {
         Normalized n = e.getNormalized();
         if (n != null) {
           value = n.eventStringValue(entry.getKey());
@@ -115,7 +168,7 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
     }
     for (Map.Entry<IntegerProperty, Integer> entry : integerMatchers.entrySet()) {
       Integer value = null;
-      if (entry.getKey().name().startsWith("NORMALIZED_")) {
+      if (entry.getKey().isNormalized()) {
         Normalized n = e.getNormalized();
         if (n != null) {
           value = n.eventIntegerValue(entry.getKey());
@@ -133,6 +186,67 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
     return true;
   }
 
+  /**
+   * Compile payload filter criteria into atoms of an {@link EventFilterProgram}
+   *
+   * @param b Program builder
+   * @param atoms List to add atom indexes to
+   */
+  void compile(EventFilterProgram.Builder b, List<Integer> atoms) {
+    if (ptype != null) {
+      atoms.add(b.payloadClass(ptype));
+    }
+    for (Map.Entry<StringProperty, String> entry : stringMatchers.entrySet()) {
+      atoms.add(b.stringMatch(entry.getKey(), entry.getValue()));
+    }
+    for (Map.Entry<StringProperty, Pattern> entry : stringRegexMatchers.entrySet()) {
+      atoms.add(b.stringRegexMatch(entry.getKey(), entry.getValue()));
+    }
+    for (Map.Entry<IntegerProperty, Integer> entry : integerMatchers.entrySet()) {
+      atoms.add(b.integerMatch(entry.getKey(), entry.getValue()));
+    }
+  }
+
+  /**
+   * Return a literal that must be present in the raw input of any event matching this filter
+   *
+   * <p>Only exact string matches against properties whose values are copied verbatim from the input
+   * are considered, and only if the value consists of characters that would not be escaped when
+   * encoded in JSON.
+   *
+   * @return Literal string, or null if one cannot be derived
+   */
+  String getFastMatcherLiteral() {
+    for (Map.Entry<StringProperty, String> entry : stringMatchers.entrySet()) {
+      if (verbatimProperties.contains(entry.getKey()) && isFastMatcherSafe(entry.getValue())) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Test if a string can be used as a fast matcher literal
+   *
+   * @param value Input string
+   * @return True if the string only contains characters that are safe for use as a literal
+   */
+  static boolean isFastMatcherSafe(String value) {
+    if (value == null || value.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (!((c >= 'a' && c <= 'z')
+          || (c >= 'A' && c <= 'Z')
+          || (c >= '0' && c <= '9')
+          || (fastMatcherSafeChars.indexOf(c) != -1))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Return extracted keys from event based on string selectors
    *
@@ -140,10 +254,28 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
    * @return {@link ArrayList} of extracted keys
    */
   public ArrayList<String> getKeys(Event e) {
+    ArrayList<String> values = getKeyValues(e);
+    if (values == null) {
+      return null;
+    }
+    ArrayList<String> ret = new ArrayList<String>();
+    for (String value : values) {
+      ret.add(new String(Base64.getEncoder().encode(value.getBytes())));
+    }
+    return ret;
+  }
+
+  /**
+   * Return values selected by string selectors from event, without encoding
+   *
+   * @param e Input event
+   * @return {@link ArrayList} of selected values, or null if any selector has no value
+   */
+  ArrayList<String> getKeyValues(Event e) {
     ArrayList<String> ret = new ArrayList<String>();
     for (StringProperty s : stringSelectors) {
       String value;
-      if (s.name().startsWith("NORMALIZED_")) {
+      if (s.isNormalized()) {
         Normalized n = e.getNormalized();
         if (n == null) {
           return null;
@@ -155,7 +287,6 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
       if (value == null) {
         return null;
       }
-      value = new String(Base64.getEncoder().encode(value.getBytes()));
       ret.add(value);
     }
     return ret;
@@ -0,0 +1,397 @@
+package com.mozilla.secops.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled form of the rules in an {@link EventFilter}
+ *
+ * <p>Each rule is reduced to a list of primitive checks, referred to here as atoms. Identical atoms
+ * in different rules (for example the same payload type or Stackdriver project criteria) are stored
+ * once, and the result of each atom is computed at most once per event. Payload property values are
+ * likewise fetched at most once per event, with the choice between reading {@link Normalized} data
+ * or the payload resolved at compile time.
+ *
+ * <p>Within a rule, atoms are ordered so that inexpensive and highly selective checks which do not
+ * require the payload to be decoded run first, and rules are ordered by the cost of their leading
+ * check. Rules sharing a leading check are kept adjacent, so an event rejected by that check is
+ * rejected by all of them after a single evaluation.
+ */
+class EventFilterProgram {
+  // Relative cost of atom evaluation, atoms with a lower cost are tested first
+  static final int COST_PAYLOAD_TYPE = 0;
+  static final int COST_STACKDRIVER = 1;
+  static final int COST_NORMALIZED_TYPE = 2;
+  static final int COST_PAYLOAD_CLASS = 3;
+  static final int COST_VALUE = 4;
+  static final int COST_REGEX = 5;
+  static final int COST_OPAQUE = 6;
+
+  private static final byte UNKNOWN = 0;
+  private static final byte TRUE = 1;
+  private static final byte FALSE = 2;
+
+  private static final Object UNSET = new Object();
+
+  private final Atom[] atoms;
+  private final Rule[][] groups;
+  private final EventFilterPayload.StringProperty[] stringSlots;
+  private final EventFilterPayload.IntegerProperty[] integerSlots;
+
+  /** Primitive check against an event */
+  abstract static class Atom {
+    private final int cost;
+
+    Atom(int cost) {
+      this.cost = cost;
+    }
+
+    int getCost() {
+      return cost;
+    }
+
+    abstract boolean test(Event e, Frame f);
+  }
+
+  /** Conjunction of atoms, followed by negation rules */
+  static class Rule {
+    private final int[] atoms;
+    private final Rule[] except;
+
+    Rule(int[] atoms, Rule[] except) {
+      this.atoms = atoms;
+      this.except = except;
+    }
+
+    boolean matches(Event e, Frame f) {
+      for (int a : atoms) {
+        if (!f.test(a, e)) {
+          return false;
+        }
+      }
+      for (Rule r : except) {
+        if (r.matches(e, f)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /** Per event evaluation state */
+  class Frame {
+    private final byte[] results = new byte[atoms.length];
+    private final Object[] strings = new Object[stringSlots.length];
+    private final Object[] integers = new Object[integerSlots.length];
+
+    Frame() {
+      Arrays.fill(strings, UNSET);
+      Arrays.fill(integers, UNSET);
+    }
+
+    boolean test(int atom, Event e) {
+      byte r = results[atom];
+      if (r == UNKNOWN) {
+        r = atoms[atom].test(e, this) ? TRUE : FALSE;
+        results[atom] = r;
+      }
+      return r == TRUE;
+    }
+
+    String stringValue(int slot, Event e) {
+      Object ret = strings[slot];
+      if (ret == UNSET) {
+        ret = fetchString(stringSlots[slot], e);
+        strings[slot] = ret;
+      }
+      return (String) ret;
+    }
+
+    Integer integerValue(int slot, Event e) {
+      Object ret = integers[slot];
+      if (ret == UNSET) {
+        ret = fetchInteger(integerSlots[slot], e);
+        integers[slot] = ret;
+      }
+      return (Integer) ret;
+    }
+  }
+
+  private static String fetchString(EventFilterPayload.StringProperty p, Event e) {
+    if (p.isNormalized()) {
+      Normalized n = e.getNormalized();
+      return n == null ? null : n.eventStringValue(p);
+    }
+    return e.getPayload().eventStringValue(p);
+  }
+
+  private static Integer fetchInteger(EventFilterPayload.IntegerProperty p, Event e) {
+    if (p.isNormalized()) {
+      Normalized n = e.getNormalized();
+      return n == null ? null : n.eventIntegerValue(p);
+    }
+    return e.getPayload().eventIntegerValue(p);
+  }
+
+  /** Builder used by rules to register atoms during compilation */
+  static class Builder {
+    private final ArrayList<Atom> atoms = new ArrayList<>();
+    private final HashMap<Object, Integer> atomIndex = new HashMap<>();
+    private final ArrayList<EventFilterPayload.StringProperty> stringSlots = new ArrayList<>();
+    private final ArrayList<EventFilterPayload.IntegerProperty> integerSlots = new ArrayList<>();
+
+    private int add(Object key, Atom atom) {
+      Integer ret = atomIndex.get(key);
+      if (ret == null) {
+        ret = atoms.size();
+        atoms.add(atom);
+        atomIndex.put(key, ret);
+      }
+      return ret;
+    }
+
+    private int stringSlot(EventFilterPayload.StringProperty p) {
+      int ret = stringSlots.indexOf(p);
+      if (ret == -1) {
+        ret = stringSlots.size();
+        stringSlots.add(p);
+      }
+      return ret;
+    }
+
+    private int integerSlot(EventFilterPayload.IntegerProperty p) {
+      int ret = integerSlots.indexOf(p);
+      if (ret == -1) {
+        ret = integerSlots.size();
+        integerSlots.add(p);
+      }
+      return ret;
+    }
+
+    int payloadType(Payload.PayloadType type) {
+      return add(
+          Arrays.asList("payloadtype", type),
+          new Atom(COST_PAYLOAD_TYPE) {
+            @Override
+            boolean test(Event e, Frame f) {
+              return e.getPayloadType() == type;
+            }
+          });
+    }
+
+    int stackdriverProject(String project) {
+      return add(
+          Arrays.asList("project", project),
+          new Atom(COST_STACKDRIVER) {
+            @Override
+            boolean test(Event e, Frame f) {
+              return project.equals(e.getStackdriverProject());
+            }
+          });
+    }
+
+    int stackdriverLabel(String key, String value) {
+      return add(
+          Arrays.asList("label", key, value),
+          new Atom(COST_STACKDRIVER) {
+            @Override
+            boolean test(Event e, Frame f) {
+              String v = e.getStackdriverLabel(key);
+              return v != null && v.equals(value);
+            }
+          });
+    }
+
+    int normalizedType(Normalized.Type type) {
+      return add(
+          Arrays.asList("normalizedtype", type),
+          new Atom(COST_NORMALIZED_TYPE) {
+            @Override
+            boolean test(Event e, Frame f) {
+              return e.getNormalized().isOfType(type);
+            }
+          });
+    }
+
+    int payloadClass(Class<? extends PayloadBase> cls) {
+      return add(
+          Arrays.asList("payloadclass", cls),
+          new Atom(COST_PAYLOAD_CLASS) {
+            @Override
+            boolean test(Event e, Frame f) {
+              return cls.isInstance(e.getPayload());
+            }
+          });
+    }
+
+    int stringMatch(EventFilterPayload.StringProperty p, String value) {
+      int slot = stringSlot(p);
+      return add(
+          Arrays.asList("string", p, value),
+          new Atom(COST_VALUE) {
+            @Override
+            boolean test(Event e, Frame f) {
+              String v = f.stringValue(slot, e);
+              return v != null && v.equals(value);
+            }
+          });
+    }
+
+    int stringRegexMatch(EventFilterPayload.StringProperty p, Pattern pattern) {
+      int slot = stringSlot(p);
+      return add(
+          Arrays.asList("regex", p, pattern.pattern(), pattern.flags()),
+          new Atom(COST_REGEX) {
+            @Override
+            boolean test(Event e, Frame f) {
+              String v = f.stringValue(slot, e);
+              return v != null && pattern.matcher(v).matches();
+            }
+          });
+    }
+
+    int integerMatch(EventFilterPayload.IntegerProperty p, Integer value) {
+      int slot = integerSlot(p);
+      return add(
+          Arrays.asList("integer", p, value),
+          new Atom(COST_VALUE) {
+            @Override
+            boolean test(Event e, Frame f) {
+              Integer v = f.integerValue(slot, e);
+              return v != null && v.equals(value);
+            }
+          });
+    }
+
+    /**
+     * Register a payload filter that is not compiled, and is evaluated as a whole
+     *
+     * @param p Payload filter
+     * @return Atom index
+     */
+    int opaque(EventFilterPayloadInterface p) {
+      return add(
+          p,
+          new Atom(COST_OPAQUE) {
+            @Override
+            boolean test(Event e, Frame f) {
+              return p.matches(e);
+            }
+          });
+    }
+
+    /**
+     * Create a rule from a set of atom indexes, ordering atoms by cost
+     *
+     * @param ruleAtoms Atom indexes
+     * @param except Compiled negation rules
+     * @return Rule
+     */
+    Rule rule(List<Integer> ruleAtoms, List<Rule> except) {
+      int[] a =
+          ruleAtoms
+              .stream()
+              .distinct()
+              .sorted(Comparator.comparingInt((Integer i) -> atoms.get(i).getCost()))
+              .mapToInt(Integer::intValue)
+              .toArray();
+      return new Rule(a, except.toArray(new Rule[0]));
+    }
+
+    /**
+     * Create the program from top level rules
+     *
+     * @param top Rules in the order they were added to the filter
+     * @return Compiled program
+     */
+    EventFilterProgram build(List<Rule> top) {
+      return buildGroups(Collections.singletonList(top));
+    }
+
+    /**
+     * Create a program from several groups of top level rules
+     *
+     * <p>Each group is matched independently, but all groups share the atoms registered with the
+     * builder, so checks common to several groups are evaluated once per event.
+     *
+     * @param top Groups of rules, each in the order the rules were added to the filter
+     * @return Compiled program
+     */
+    EventFilterProgram buildGroups(List<List<Rule>> top) {
+      Rule[][] groups = new Rule[top.size()][];
+      for (int i = 0; i < groups.length; i++) {
+        ArrayList<Rule> sorted = new ArrayList<>(top.get(i));
+        // A rule with no atoms always matches (subject to negation), and is tested first
+        sorted.sort(
+            Comparator.comparingInt((Rule r) -> r.atoms.length == 0 ? -1 : cost(r.atoms[0]))
+                .thenComparingInt(r -> r.atoms.length == 0 ? -1 : r.atoms[0]));
+        groups[i] = sorted.toArray(new Rule[0]);
+      }
+      return new EventFilterProgram(this, groups);
+    }
+
+    private int cost(int atom) {
+      return atoms.get(atom).getCost();
+    }
+  }
+
+  private EventFilterProgram(Builder b, Rule[][] groups) {
+    atoms = b.atoms.toArray(new Atom[0]);
+    stringSlots = b.stringSlots.toArray(new EventFilterPayload.StringProperty[0]);
+    integerSlots = b.integerSlots.toArray(new EventFilterPayload.IntegerProperty[0]);
+    this.groups = groups;
+  }
+
+  /**
+   * Create new evaluation state for an event
+   *
+   * <p>A frame can be used for multiple calls to {@link #matches(int, Event, Frame)} for the same
+   * event.
+   *
+   * @return Frame
+   */
+  Frame newFrame() {
+    return new Frame();
+  }
+
+  /**
+   * Test if any rule in the first rule group matches the event
+   *
+   * @param e Event
+   * @return True if any rule matches
+   */
+  boolean matches(Event e) {
+    return matches(0, e, new Frame());
+  }
+
+  /**
+   * Test if any rule in a rule group matches the event
+   *
+   * @param group Rule group index
+   * @param e Event
+   * @param f Evaluation state for the event
+   * @return True if any rule in the group matches
+   */
+  boolean matches(int group, Event e, Frame f) {
+    for (Rule r : groups[group]) {
+      if (r.matches(e, f)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get number of distinct atoms in the program
+   *
+   * @return Atom count
+   */
+  int getAtomCount() {
+    return atoms.length;
+  }
+}
@@ -72,6 +72,40 @@ public class EventFilterRule implements Serializable {
     return true;
   }
 
+  /**
+   * Compile rule into an {@link EventFilterProgram} rule
+   *
+   * @param b Program builder
+   * @return Compiled rule
+   */
+  EventFilterProgram.Rule compile(EventFilterProgram.Builder b) {
+    ArrayList<Integer> atoms = new ArrayList<Integer>();
+    if (wantStackdriverProject != null) {
+      atoms.add(b.stackdriverProject(wantStackdriverProject));
+    }
+    for (Map.Entry<String, String> entry : wantStackdriverLabel.entrySet()) {
+      atoms.add(b.stackdriverLabel(entry.getKey(), entry.getValue()));
+    }
+    if (wantSubtype != null) {
+      atoms.add(b.payloadType(wantSubtype));
+    }
+    if (wantNormalizedType != null) {
+      atoms.add(b.normalizedType(wantNormalizedType));
+    }
+    for (EventFilterPayloadInterface p : payloadFilters) {
+      if (p instanceof EventFilterPayload) {
+        ((EventFilterPayload) p).compile(b, atoms);
+      } else {
+        atoms.add(b.opaque(p));
+      }
+    }
+    ArrayList<EventFilterProgram.Rule> except = new ArrayList<EventFilterProgram.Rule>();
+    for (EventFilterRule r : exceptRules) {
+      except.add(r.compile(b));
+    }
+    return b.rule(atoms, except);
+  }
+
   /**
    * Install negation rules for this filter rule
    *
@@ -109,6 +143,60 @@ public class EventFilterRule implements Serializable {
     return ret;
   }
 
+  /**
+   * Return values selected from event by the payload filters in this rule, without encoding
+   *
+   * @param e Input event
+   * @return {@link ArrayList} of selected values, or null if the rule does not select a value
+   */
+  ArrayList<String> getKeyValues(Event e) {
+    ArrayList<String> ret = new ArrayList<String>();
+    if (wantSubtype != null) {
+      if (e.getPayloadType() != wantSubtype) {
+        return null;
+      }
+    }
+    for (EventFilterPayloadInterface p : payloadFilters) {
+      ArrayList<String> values;
+      if (p instanceof EventFilterPayload) {
+        values = ((EventFilterPayload) p).getKeyValues(e);
+      } else {
+        values = p.getKeys(e);
+      }
+      if (values == null) {
+        return null;
+      }
+      ret.addAll(values);
+    }
+    return ret;
+  }
+
+  /**
+   * Return a literal that must be present in the raw input of any event matching this rule
+   *
+   * @return Literal string, or null if one cannot be derived
+   */
+  String getFastMatcherLiteral() {
+    if (wantStackdriverProject != null
+        && EventFilterPayload.isFastMatcherSafe(wantStackdriverProject)) {
+      return wantStackdriverProject;
+    }
+    for (String v : wantStackdriverLabel.values()) {
+      if (EventFilterPayload.isFastMatcherSafe(v)) {
+        return v;
+      }
+    }
+    for (EventFilterPayloadInterface p : payloadFilters) {
+      if (p instanceof EventFilterPayload) {
+        String ret = ((EventFilterPayload) p).getFastMatcherLiteral();
+        if (ret != null) {
+          return ret;
+        }
+      }
+    }
+    return null;
+  }
+
   /**
    * Add payload filter
    *
@@ -0,0 +1,88 @@
+package com.mozilla.secops.parser;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Set of {@link EventFilter} instances evaluated together
+ *
+ * <p>The rules of all filters in the set are compiled into a single program, so checks that are
+ * common to several filters, such as payload type criteria, are evaluated once per event rather
+ * than once per filter.
+ */
+public class EventFilterSet implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final ArrayList<EventFilter> filters;
+
+  private transient volatile EventFilterProgram program;
+
+  /**
+   * Add filter to set
+   *
+   * @param filter Event filter
+   * @return EventFilterSet for chaining
+   */
+  public EventFilterSet add(EventFilter filter) {
+    filters.add(filter);
+    program = null;
+    return this;
+  }
+
+  /**
+   * Get filter at the specified index
+   *
+   * @param index Index, in the order filters were added
+   * @return Event filter
+   */
+  public EventFilter get(int index) {
+    return filters.get(index);
+  }
+
+  /**
+   * Get number of filters in set
+   *
+   * @return Filter count
+   */
+  public int size() {
+    return filters.size();
+  }
+
+  private EventFilterProgram getProgram() {
+    EventFilterProgram ret = program;
+    if (ret == null) {
+      EventFilterProgram.Builder b = new EventFilterProgram.Builder();
+      List<List<EventFilterProgram.Rule>> groups = new ArrayList<List<EventFilterProgram.Rule>>();
+      for (EventFilter f : filters) {
+        groups.add(f.compileRules(b));
+      }
+      ret = b.buildGroups(groups);
+      program = ret;
+    }
+    return ret;
+  }
+
+  /**
+   * Test event against each filter in the set
+   *
+   * @param e Event
+   * @param out Output array with an element for each filter, set to true if the filter matches
+   * @return True if any filter matched
+   */
+  public boolean matches(Event e, boolean[] out) {
+    EventFilterProgram prog = getProgram();
+    EventFilterProgram.Frame f = prog.newFrame();
+    boolean ret = false;
+    for (int i = 0; i < filters.size(); i++) {
+      out[i] = filters.get(i).matches(e, prog, i, f);
+      ret |= out[i];
+    }
+    return ret;
+  }
+
+  /** Create new empty {@link EventFilterSet} */
+  public EventFilterSet() {
+    filters = new ArrayList<EventFilter>();
+  }
+}
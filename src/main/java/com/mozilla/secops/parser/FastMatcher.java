@@ -0,0 +1,398 @@
+package com.mozilla.secops.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Multi-pattern prefilter for raw event input
+ *
+ * <p>A fast matcher is a set of patterns that is compiled into a single Aho-Corasick automaton, and
+ * can be used to discard input strings prior to performing any decoding of the input. An input
+ * string matches if any pattern in the set matches it.
+ *
+ * <p>Patterns are literal substrings. A pattern beginning with ^ will only match at the start of
+ * the input, and a pattern ending with $ will only match at the end of the input. Literals that
+ * should not be interpreted in this way can be added using {@link #withLiteral}.
+ *
+ * <p>The matcher records the number of inputs each pattern has matched, which can be retrieved
+ * using {@link #getHitCounts}. {@link ParserDoFn} reports these as per-pattern counters.
+ */
+public class FastMatcher {
+  private final ArrayList<String> patterns;
+  private final ArrayList<String> literals;
+  private final ArrayList<Boolean> anchorStart;
+  private final ArrayList<Boolean> anchorEnd;
+
+  private int[] asciiClass;
+  private char[] extChars;
+  private int[] extClass;
+  private int[][] delta;
+  private int[][] out;
+  private int[] length;
+  private boolean[] start;
+  private boolean[] end;
+  private AtomicLongArray hits;
+
+  /**
+   * Add a pattern to the matcher
+   *
+   * @param pattern Pattern, optionally anchored using ^ or $
+   * @return FastMatcher for chaining
+   */
+  public FastMatcher withPattern(String pattern) {
+    String lit = pattern;
+    boolean anchoredStart = false;
+    boolean anchoredEnd = false;
+    if (lit.startsWith("^")) {
+      anchoredStart = true;
+      lit = lit.substring(1);
+    }
+    if (lit.endsWith("$")) {
+      anchoredEnd = true;
+      lit = lit.substring(0, lit.length() - 1);
+    }
+    return add(pattern, lit, anchoredStart, anchoredEnd);
+  }
+
+  /**
+   * Add a literal substring to the matcher
+   *
+   * @param literal Literal substring, anchor characters are not interpreted
+   * @return FastMatcher for chaining
+   */
+  public FastMatcher withLiteral(String literal) {
+    return add(literal, literal, false, false);
+  }
+
+  private FastMatcher add(String pattern, String lit, boolean anchoredStart, boolean anchoredEnd) {
+    if (lit.isEmpty()) {
+      throw new IllegalArgumentException("fast matcher pattern cannot be empty");
+    }
+    patterns.add(pattern);
+    literals.add(lit);
+    anchorStart.add(anchoredStart);
+    anchorEnd.add(anchoredEnd);
+    compile();
+    return this;
+  }
+
+  /**
+   * Get patterns in the matcher
+   *
+   * @return Patterns, in the order they were added
+   */
+  public String[] getPatterns() {
+    return patterns.toArray(new String[0]);
+  }
+
+  /**
+   * Get hit counts for each pattern
+   *
+   * @return Number of inputs matched by each pattern, indexed in the same order as {@link
+   *     #getPatterns}
+   */
+  public long[] getHitCounts() {
+    long[] ret = new long[hits.length()];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = hits.get(i);
+    }
+    return ret;
+  }
+
+  /**
+   * Get number of patterns in the matcher
+   *
+   * @return Pattern count
+   */
+  public int size() {
+    return patterns.size();
+  }
+
+  private int classOf(char c) {
+    if (c < 128) {
+      return asciiClass[c];
+    }
+    int i = Arrays.binarySearch(extChars, c);
+    return i < 0 ? 0 : extClass[i];
+  }
+
+  private void compile() {
+    TreeSet<Character> alphabet = new TreeSet<>();
+    for (String l : literals) {
+      for (int i = 0; i < l.length(); i++) {
+        alphabet.add(l.charAt(i));
+      }
+    }
+
+    // Class 0 represents any character that is not present in a pattern
+    asciiClass = new int[128];
+    ArrayList<Character> ext = new ArrayList<>();
+    int nclass = 1;
+    for (Character c : alphabet) {
+      if (c < 128) {
+        asciiClass[c] = nclass++;
+      } else {
+        ext.add(c);
+      }
+    }
+    extChars = new char[ext.size()];
+    extClass = new int[ext.size()];
+    for (int i = 0; i < ext.size(); i++) {
+      extChars[i] = ext.get(i);
+      extClass[i] = nclass++;
+    }
+
+    // Build the trie
+    ArrayList<int[]> next = new ArrayList<>();
+    ArrayList<ArrayList<Integer>> outl = new ArrayList<>();
+    next.add(newRow(nclass));
+    outl.add(new ArrayList<Integer>());
+    for (int p = 0; p < literals.size(); p++) {
+      String l = literals.get(p);
+      int s = 0;
+      for (int i = 0; i < l.length(); i++) {
+        int c = classOf(l.charAt(i));
+        if (next.get(s)[c] == -1) {
+          next.get(s)[c] = next.size();
+          next.add(newRow(nclass));
+          outl.add(new ArrayList<Integer>());
+        }
+        s = next.get(s)[c];
+      }
+      outl.get(s).add(p);
+    }
+
+    // Compute failure links in breadth first order and convert the trie into a DFA
+    int[] fail = new int[next.size()];
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+    int[] root = next.get(0);
+    for (int c = 0; c < nclass; c++) {
+      if (root[c] == -1) {
+        root[c] = 0;
+      } else {
+        fail[root[c]] = 0;
+        queue.add(root[c]);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int s = queue.poll();
+      int[] row = next.get(s);
+      outl.get(s).addAll(outl.get(fail[s]));
+      for (int c = 0; c < nclass; c++) {
+        if (row[c] == -1) {
+          row[c] = next.get(fail[s])[c];
+        } else {
+          fail[row[c]] = next.get(fail[s])[c];
+          queue.add(row[c]);
+        }
+      }
+    }
+
+    delta = next.toArray(new int[0][]);
+    out = new int[outl.size()][];
+    for (int s = 0; s < out.length; s++) {
+      out[s] = new int[outl.get(s).size()];
+      for (int i = 0; i < out[s].length; i++) {
+        out[s][i] = outl.get(s).get(i);
+      }
+    }
+    length = new int[literals.size()];
+    start = new boolean[literals.size()];
+    end = new boolean[literals.size()];
+    for (int p = 0; p < literals.size(); p++) {
+      length[p] = literals.get(p).length();
+      start[p] = anchorStart.get(p);
+      end[p] = anchorEnd.get(p);
+    }
+    hits = new AtomicLongArray(patterns.size());
+  }
+
+  private static int[] newRow(int nclass) {
+    int[] ret = new int[nclass];
+    Arrays.fill(ret, -1);
+    return ret;
+  }
+
+  /**
+   * Test input against matcher
+   *
+   * @param input Input string
+   * @return True if any pattern in the matcher matches the input
+   */
+  public boolean matches(String input) {
+    if (input == null || patterns.isEmpty()) {
+      return false;
+    }
+    // Patterns already counted for this input; only matchers with more than 64 patterns need
+    // an array
+    long seenMask = 0L;
+    boolean[] seen = null;
+    boolean ret = false;
+    int s = 0;
+    int last = input.length() - 1;
+    for (int i = 0; i <= last; i++) {
+      s = delta[s][classOf(input.charAt(i))];
+      int[] o = out[s];
+      for (int j = 0; j < o.length; j++) {
+        int p = o[j];
+        if (start[p] && (i + 1 != length[p])) {
+          continue;
+        }
+        if (end[p] && (i != last)) {
+          continue;
+        }
+        if (p < 64) {
+          if ((seenMask & (1L << p)) != 0) {
+            continue;
+          }
+          seenMask |= 1L << p;
+        } else {
+          if (seen == null) {
+            seen = new boolean[patterns.size()];
+          }
+          if (seen[p]) {
+            continue;
+          }
+          seen[p] = true;
+        }
+        hits.incrementAndGet(p);
+        ret = true;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Test UTF-8 encoded input against matcher
+   *
+   * <p>The input is decoded as it is scanned, and the result is identical to testing the decoded
+   * string using {@link #matches(String)}.
+   *
+   * @param input Input bytes
+   * @return True if any pattern in the matcher matches the input
+   */
+  public boolean matchesBytes(byte[] input) {
+    if (input == null || patterns.isEmpty()) {
+      return false;
+    }
+    long seenMask = 0L;
+    boolean[] seen = null;
+    boolean ret = false;
+    int s = 0;
+    int chars = 0;
+    int i = 0;
+    char[] units = new char[2];
+    while (i < input.length) {
+      int n = decodeUtf8(input, i, units);
+      i += n & 0xff;
+      int ucount = n >>> 8;
+      for (int u = 0; u < ucount; u++) {
+        s = delta[s][classOf(units[u])];
+        chars++;
+        int[] o = out[s];
+        for (int j = 0; j < o.length; j++) {
+          int p = o[j];
+          if (start[p] && (chars != length[p])) {
+            continue;
+          }
+          if (end[p] && (i != input.length || u != ucount - 1)) {
+            continue;
+          }
+          if (p < 64) {
+            if ((seenMask & (1L << p)) != 0) {
+              continue;
+            }
+            seenMask |= 1L << p;
+          } else {
+            if (seen == null) {
+              seen = new boolean[patterns.size()];
+            }
+            if (seen[p]) {
+              continue;
+            }
+            seen[p] = true;
+          }
+          hits.incrementAndGet(p);
+          ret = true;
+        }
+      }
+    }
+    return ret;
+  }
+
+  private static boolean isContinuation(byte[] in, int i) {
+    return i < in.length && (in[i] & 0xc0) == 0x80;
+  }
+
+  /**
+   * Decode a single UTF-8 sequence into UTF-16 code units
+   *
+   * <p>Malformed sequences decode to a replacement character for each maximal invalid subpart,
+   * consistent with {@link String#String(byte[], java.nio.charset.Charset)}.
+   *
+   * @return Number of code units written shifted left by 8, combined with the number of bytes
+   *     consumed
+   */
+  private static int decodeUtf8(byte[] in, int i, char[] units) {
+    int b = in[i] & 0xff;
+    if (b < 0x80) {
+      units[0] = (char) b;
+      return (1 << 8) | 1;
+    }
+    units[0] = '\ufffd';
+    if (b >= 0xc2 && b <= 0xdf) {
+      if (!isContinuation(in, i + 1)) {
+        return (1 << 8) | 1;
+      }
+      units[0] = (char) (((b & 0x1f) << 6) | (in[i + 1] & 0x3f));
+      return (1 << 8) | 2;
+    }
+    if (b >= 0xe0 && b <= 0xef) {
+      if (!isContinuation(in, i + 1)) {
+        return (1 << 8) | 1;
+      }
+      int b1 = in[i + 1] & 0xff;
+      if ((b == 0xe0 && b1 < 0xa0) || (b == 0xed && b1 > 0x9f)) {
+        return (1 << 8) | 1;
+      }
+      if (!isContinuation(in, i + 2)) {
+        return (1 << 8) | 2;
+      }
+      units[0] = (char) (((b & 0x0f) << 12) | ((b1 & 0x3f) << 6) | (in[i + 2] & 0x3f));
+      return (1 << 8) | 3;
+    }
+    if (b >= 0xf0 && b <= 0xf4) {
+      if (!isContinuation(in, i + 1)) {
+        return (1 << 8) | 1;
+      }
+      int b1 = in[i + 1] & 0xff;
+      if ((b == 0xf0 && b1 < 0x90) || (b == 0xf4 && b1 > 0x8f)) {
+        return (1 << 8) | 1;
+      }
+      if (!isContinuation(in, i + 2)) {
+        return (1 << 8) | 2;
+      }
+      if (!isContinuation(in, i + 3)) {
+        return (1 << 8) | 3;
+      }
+      int cp =
+          ((b & 0x07) << 18) | ((b1 & 0x3f) << 12) | ((in[i + 2] & 0x3f) << 6) | (in[i + 3] & 0x3f);
+      units[0] = Character.highSurrogate(cp);
+      units[1] = Character.lowSurrogate(cp);
+      return (2 << 8) | 4;
+    }
+    return (1 << 8) | 1;
+  }
+
+  /** Create new empty fast matcher */
+  public FastMatcher() {
+    patterns = new ArrayList<String>();
+    literals = new ArrayList<String>();
+    anchorStart = new ArrayList<Boolean>();
+    anchorEnd = new ArrayList<Boolean>();
+    compile();
+  }
+}
@@ -1,10 +1,11 @@
 package com.mozilla.secops.parser;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.joda.JodaModule;
-import com.maxmind.geoip2.model.CityResponse;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -78,21 +79,34 @@ public class FxaAuth extends PayloadBase implements Serializable {
     return null;
   }
 
-  private ObjectMapper getObjectMapper() {
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.registerModule(new JodaModule());
-    mapper.configure(
-        com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-    mapper.configure(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES, true);
-    return mapper;
+  private static final TypeReference<ArrayList<String>> addressChainType =
+      new TypeReference<ArrayList<String>>() {};
+
+  private static ObjectReader getReader() {
+    return MapperCache.getReader(
+        MapperCache.Profile.MOZLOG, com.mozilla.secops.parser.models.fxaauth.FxaAuth.class);
+  }
+
+  private static com.mozilla.secops.parser.models.fxaauth.FxaAuth decode(
+      String input, ParserState state) throws IOException {
+    // Use the Mozlog fields tree shared by the parser if it is available
+    JsonNode node = state.getDecodedInput();
+    if (node != null) {
+      return getReader().readValue(node);
+    }
+    return getReader().readValue(input);
+  }
+
+  @Override
+  boolean requiresInputString() {
+    return false;
   }
 
   @Override
   public Boolean matcher(String input, ParserState state) {
-    ObjectMapper mapper = getObjectMapper();
     com.mozilla.secops.parser.models.fxaauth.FxaAuth d;
     try {
-      d = mapper.readValue(input, com.mozilla.secops.parser.models.fxaauth.FxaAuth.class);
+      d = decode(input, state);
     } catch (IOException exc) {
       return false;
     }
@@ -256,6 +270,33 @@ public class FxaAuth extends PayloadBase implements Serializable {
     }
   }
 
+  @Override
+  void writeFields(DataOutputStream out) throws IOException {
+    EventCoder.writeJson(
+        out,
+        MapperCache.getWriter(
+            MapperCache.Profile.MOZLOG, com.mozilla.secops.parser.models.fxaauth.FxaAuth.class),
+        fxaAuthData);
+    EventCoder.writeEnum(out, eventSummary);
+    EventCoder.writeString(out, sourceAddress);
+    EventCoder.writeString(out, sourceAddressCity);
+    EventCoder.writeString(out, sourceAddressCountry);
+  }
+
+  @Override
+  void readFields(DataInputStream in) throws IOException {
+    fxaAuthData =
+        EventCoder.readJson(
+            in,
+            MapperCache.getReader(
+                MapperCache.Profile.MOZLOG,
+                com.mozilla.secops.parser.models.fxaauth.FxaAuth.class));
+    eventSummary = EventCoder.readEnum(in, EventSummary.values());
+    sourceAddress = EventCoder.readString(in);
+    sourceAddressCity = EventCoder.readString(in);
+    sourceAddressCountry = EventCoder.readString(in);
+  }
+
   /** Construct matcher object. */
   public FxaAuth() {}
 
@@ -267,9 +308,8 @@ public class FxaAuth extends PayloadBase implements Serializable {
    * @param state State
    */
   public FxaAuth(String input, Event e, ParserState state) {
-    ObjectMapper mapper = getObjectMapper();
     try {
-      fxaAuthData = mapper.readValue(input, com.mozilla.secops.parser.models.fxaauth.FxaAuth.class);
+      fxaAuthData = decode(input, state);
       if (fxaAuthData == null) {
         return;
       }
@@ -283,10 +323,7 @@ public class FxaAuth extends PayloadBase implements Serializable {
       // array of addresses, so convert that
       ArrayList<String> raca = new ArrayList<>();
       try {
-        raca =
-            mapper.readValue(
-                rac,
-                mapper.getTypeFactory().constructCollectionType(ArrayList.class, String.class));
+        raca = MapperCache.getReader(MapperCache.Profile.MOZLOG, addressChainType).readValue(rac);
         if (raca != null) {
           sourceAddress = state.getParser().applyXffAddressSelector(String.join(",", raca));
         }
@@ -296,10 +333,10 @@ public class FxaAuth extends PayloadBase implements Serializable {
     }
 
     if (sourceAddress != null) {
-      CityResponse cr = state.getParser().geoIp(sourceAddress);
-      if (cr != null) {
-        sourceAddressCity = cr.getCity().getName();
-        sourceAddressCountry = cr.getCountry().getIsoCode();
+      GeoIP.Location loc = state.getParser().geoIpLocation(sourceAddress);
+      if (loc != null) {
+        sourceAddressCity = loc.getCity();
+        sourceAddressCountry = loc.getCountry();
       }
     }
 
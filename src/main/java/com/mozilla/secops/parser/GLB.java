@@ -1,22 +1,18 @@
 package com.mozilla.secops.parser;
 
-import com.google.api.client.json.JsonParser;
-import com.google.api.client.json.jackson2.JacksonFactory;
-import com.google.api.services.logging.v2.model.HttpRequest;
-import com.google.api.services.logging.v2.model.LogEntry;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Map;
 import org.joda.time.DateTime;
 
 /** Payload parser for Google Load Balancer log data. */
 public class GLB extends PayloadBase implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  private final JacksonFactory jfmatcher;
-
   private String requestMethod;
   private String userAgent;
   private String requestUrl;
@@ -25,29 +21,23 @@ public class GLB extends PayloadBase implements Serializable {
   private URL parsedUrl;
 
   @Override
-  public Boolean matcher(String input, ParserState state) {
-    try {
-      LogEntry entry = state.getLogEntryHint();
-      if (entry == null) {
-        JsonParser jp = jfmatcher.createJsonParser(input);
-        entry = jp.parse(LogEntry.class);
-      }
+  boolean requiresInputString() {
+    return false;
+  }
 
-      Map<String, Object> m = entry.getJsonPayload();
-      if (m == null) {
-        return false;
-      }
-      String eType = (String) m.get("@type");
-      if (eType != null) {
-        if (eType.equals(
-            "type.googleapis.com/google.cloud.loadbalancing.type.LoadBalancerLogEntry")) {
-          return true;
-        }
+  @Override
+  public Boolean matcher(String input, ParserState state) {
+    JsonNode m = state.getLogEntryJsonPayload();
+    if (m == null) {
+      return false;
+    }
+    JsonNode eType = m.get("@type");
+    if (eType != null) {
+      if (eType
+          .asText()
+          .equals("type.googleapis.com/google.cloud.loadbalancing.type.LoadBalancerLogEntry")) {
+        return true;
       }
-    } catch (IOException exc) {
-      // pass
-    } catch (IllegalArgumentException exc) {
-      // pass
     }
     return false;
   }
@@ -57,11 +47,34 @@ public class GLB extends PayloadBase implements Serializable {
     return Payload.PayloadType.GLB;
   }
 
-  /** Construct matcher object. */
-  public GLB() {
-    jfmatcher = new JacksonFactory();
+  @Override
+  void writeFields(DataOutputStream out) throws IOException {
+    EventCoder.writeString(out, requestMethod);
+    EventCoder.writeString(out, userAgent);
+    EventCoder.writeString(out, requestUrl);
+    EventCoder.writeString(out, sourceAddress);
+    EventCoder.writeInteger(out, status);
   }
 
+  @Override
+  void readFields(DataInputStream in) throws IOException {
+    requestMethod = EventCoder.readString(in);
+    userAgent = EventCoder.readString(in);
+    requestUrl = EventCoder.readString(in);
+    sourceAddress = EventCoder.readString(in);
+    status = EventCoder.readInteger(in);
+    if (requestUrl != null) {
+      try {
+        parsedUrl = new URL(requestUrl);
+      } catch (MalformedURLException exc) {
+        // pass
+      }
+    }
+  }
+
+  /** Construct matcher object. */
+  public GLB() {}
+
   /**
    * Construct parser object.
    *
@@ -70,41 +83,35 @@ public class GLB extends PayloadBase implements Serializable {
    * @param state State
    */
   public GLB(String input, Event e, ParserState state) {
-    jfmatcher = null;
-    LogEntry entry = state.getLogEntryHint();
+    JsonNode entry = state.getLogEntryHint();
     if (entry == null) {
-      // Use method local JacksonFactory as the object is not serializable, and this event
-      // may be passed around
-      JacksonFactory jf = new JacksonFactory();
-      try {
-        JsonParser jp = jf.createJsonParser(input);
-        entry = jp.parse(LogEntry.class);
-      } catch (IOException exc) {
-        return;
-      }
+      return;
     }
-    HttpRequest h = entry.getHttpRequest();
-    if (h == null) {
+    JsonNode h = entry.get("httpRequest");
+    if (h == null || !h.isObject()) {
       return;
     }
 
-    String ets = entry.getTimestamp();
-    if (ets != null) {
-      DateTime d = Parser.parseISO8601(ets);
+    JsonNode ets = entry.get("timestamp");
+    if (ets != null && ets.isTextual()) {
+      DateTime d = Parser.parseISO8601(ets.asText());
       if (d != null) {
         e.setTimestamp(d);
       }
     }
 
-    sourceAddress = h.getRemoteIp();
-    requestUrl = h.getRequestUrl();
-    userAgent = h.getUserAgent();
-    requestMethod = h.getRequestMethod();
-    status = h.getStatus();
+    sourceAddress = textValue(h, "remoteIp");
+    requestUrl = textValue(h, "requestUrl");
+    userAgent = textValue(h, "userAgent");
+    requestMethod = textValue(h, "requestMethod");
+    JsonNode s = h.get("status");
+    if (s != null && s.canConvertToInt()) {
+      status = s.asInt();
+    }
 
-    if (h.getRequestUrl() != null) {
+    if (requestUrl != null) {
       try {
-        parsedUrl = new URL(h.getRequestUrl());
+        parsedUrl = new URL(requestUrl);
       } catch (MalformedURLException exc) {
         // pass
       }
@@ -123,6 +130,14 @@ public class GLB extends PayloadBase implements Serializable {
     }
   }
 
+  private static String textValue(JsonNode node, String field) {
+    JsonNode v = node.get(field);
+    if (v == null || !v.isTextual()) {
+      return null;
+    }
+    return v.asText();
+  }
+
   @Override
   public String eventStringValue(EventFilterPayload.StringProperty property) {
     switch (property) {
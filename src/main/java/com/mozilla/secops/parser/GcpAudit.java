@@ -1,28 +1,17 @@
 package com.mozilla.secops.parser;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.api.client.json.JsonParser;
-import com.google.api.client.json.jackson2.JacksonFactory;
-import com.google.api.services.logging.v2.model.LogEntry;
-import com.google.api.services.servicecontrol.v1.model.AuditLog;
-import com.google.api.services.servicecontrol.v1.model.AuthenticationInfo;
-import com.google.api.services.servicecontrol.v1.model.AuthorizationInfo;
-import com.google.api.services.servicecontrol.v1.model.RequestMetadata;
-import com.maxmind.geoip2.model.CityResponse;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.mozilla.secops.identity.IdentityManager;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.List;
-import java.util.Map;
 
 /** Payload parser for GCP audit log data. */
 public class GcpAudit extends PayloadBase implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  private final JacksonFactory jfmatcher;
-
   private String principalEmail;
   private String resource;
   private String callerIp;
@@ -79,29 +68,29 @@ public class GcpAudit extends PayloadBase implements Serializable {
     return callerIpCountry;
   }
 
+  private static String textValue(JsonNode node, String field) {
+    if (node == null) {
+      return null;
+    }
+    JsonNode v = node.get(field);
+    if (v == null || !v.isTextual()) {
+      return null;
+    }
+    return v.asText();
+  }
+
   @Override
-  public Boolean matcher(String input, ParserState state) {
-    try {
-      LogEntry entry = state.getLogEntryHint();
-      if (entry == null) {
-        JsonParser jp = jfmatcher.createJsonParser(input);
-        entry = jp.parse(LogEntry.class);
-      }
+  boolean requiresInputString() {
+    return false;
+  }
 
-      Map<String, Object> m = entry.getProtoPayload();
-      if (m == null) {
-        return false;
-      }
-      String eType = (String) m.get("@type");
-      if (eType != null) {
-        if (eType.equals("type.googleapis.com/google.cloud.audit.AuditLog")) {
-          return true;
-        }
+  @Override
+  public Boolean matcher(String input, ParserState state) {
+    String eType = textValue(state.getLogEntryProtoPayload(), "@type");
+    if (eType != null) {
+      if (eType.equals("type.googleapis.com/google.cloud.audit.AuditLog")) {
+        return true;
       }
-    } catch (IOException exc) {
-      // pass
-    } catch (IllegalArgumentException exc) {
-      // pass
     }
     return false;
   }
@@ -111,11 +100,27 @@ public class GcpAudit extends PayloadBase implements Serializable {
     return Payload.PayloadType.GCPAUDIT;
   }
 
-  /** Construct matcher object. */
-  public GcpAudit() {
-    jfmatcher = new JacksonFactory();
+  @Override
+  void writeFields(DataOutputStream out) throws IOException {
+    EventCoder.writeString(out, principalEmail);
+    EventCoder.writeString(out, resource);
+    EventCoder.writeString(out, callerIp);
+    EventCoder.writeString(out, callerIpCity);
+    EventCoder.writeString(out, callerIpCountry);
   }
 
+  @Override
+  void readFields(DataInputStream in) throws IOException {
+    principalEmail = EventCoder.readString(in);
+    resource = EventCoder.readString(in);
+    callerIp = EventCoder.readString(in);
+    callerIpCity = EventCoder.readString(in);
+    callerIpCountry = EventCoder.readString(in);
+  }
+
+  /** Construct matcher object. */
+  public GcpAudit() {}
+
   /**
    * Construct parser object.
    *
@@ -124,60 +129,29 @@ public class GcpAudit extends PayloadBase implements Serializable {
    * @param state State
    */
   public GcpAudit(String input, Event e, ParserState state) {
-    jfmatcher = null;
-    LogEntry entry = state.getLogEntryHint();
-    if (entry == null) {
-      // Use method local JacksonFactory as the object is not serializable, and this event
-      // may be passed around
-      JacksonFactory jf = new JacksonFactory();
-      try {
-        JsonParser jp = jf.createJsonParser(input);
-        entry = jp.parse(LogEntry.class);
-      } catch (IOException exc) {
-        return;
-      }
-    }
-
-    String pbuf = null;
-    try {
-      ObjectMapper mapper = new ObjectMapper();
-      pbuf = mapper.writeValueAsString(entry.getProtoPayload());
-    } catch (JsonProcessingException exc) {
-      return;
-    }
-    if (pbuf == null) {
-      return;
-    }
-    AuditLog auditLog;
-    try {
-      auditLog = (new JacksonFactory()).createJsonParser(pbuf).parse(AuditLog.class);
-    } catch (IOException exc) {
+    // Fields are read directly from the protoPayload tree that was decoded by the parser,
+    // rather than binding the entire AuditLog model
+    JsonNode auditLog = state.getLogEntryProtoPayload();
+    if (auditLog == null) {
       return;
     }
 
     Normalized n = e.getNormalized();
 
-    AuthenticationInfo authen = auditLog.getAuthenticationInfo();
-    if (authen != null) {
-      principalEmail = authen.getPrincipalEmail();
-    }
-
-    RequestMetadata rm = auditLog.getRequestMetadata();
-    if (rm != null) {
-      callerIp = rm.getCallerIp();
+    principalEmail = textValue(auditLog.get("authenticationInfo"), "principalEmail");
 
-      if (callerIp != null) {
-        CityResponse cr = state.getParser().geoIp(callerIp);
-        if (cr != null) {
-          callerIpCity = cr.getCity().getName();
-          callerIpCountry = cr.getCountry().getIsoCode();
-        }
+    callerIp = textValue(auditLog.get("requestMetadata"), "callerIp");
+    if (callerIp != null) {
+      GeoIP.Location loc = state.getParser().geoIpLocation(callerIp);
+      if (loc != null) {
+        callerIpCity = loc.getCity();
+        callerIpCountry = loc.getCountry();
       }
     }
 
-    List<AuthorizationInfo> author = auditLog.getAuthorizationInfo();
-    if (author != null && author.size() >= 1) {
-      resource = author.get(0).getResource();
+    JsonNode author = auditLog.get("authorizationInfo");
+    if (author != null && author.isArray() && author.size() >= 1) {
+      resource = textValue(author.get(0), "resource");
     }
 
     if (principalEmail != null && callerIp != null && resource != null) {
@@ -1,33 +1,179 @@
 package com.mozilla.secops.parser;
 
+import com.maxmind.db.Reader;
 import com.maxmind.geoip2.DatabaseReader;
 import com.maxmind.geoip2.exception.GeoIp2Exception;
 import com.maxmind.geoip2.model.CityResponse;
+import com.mozilla.secops.CidrUtil;
 import com.mozilla.secops.GcsUtil;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-/** GeoIP resolution */
+/**
+ * GeoIP resolution
+ *
+ * <p>The database is copied to local disk once per JVM and opened memory-mapped, so it does not
+ * occupy heap. Results of {@link #lookupLocation} are stored in a bounded LRU cache shared by all
+ * instances, keyed on the numeric address so equivalent representations of an address share an
+ * entry.
+ */
 public class GeoIP {
+  /** Default maximum number of entries in the lookup cache */
+  public static final int DEFAULT_CACHE_SIZE = 16384;
+
+  private static final int CACHE_SEGMENTS = 16;
+
   private static DatabaseReader geoipDb = null;
   private static AtomicBoolean initialized = new AtomicBoolean(false);
+  private static volatile LocationCache cache = new LocationCache(DEFAULT_CACHE_SIZE);
+
+  /** City and country resolved for an address */
+  public static class Location {
+    private final String city;
+    private final String country;
+
+    /**
+     * Get city name
+     *
+     * @return City name, or null if not known
+     */
+    public String getCity() {
+      return city;
+    }
+
+    /**
+     * Get country ISO code
+     *
+     * @return Country ISO code, or null if not known
+     */
+    public String getCountry() {
+      return country;
+    }
+
+    Location(String city, String country) {
+      this.city = city;
+      this.country = country;
+    }
+  }
+
+  // Cached in place of a location for addresses that were not found in the database
+  private static final Location NOT_FOUND = new Location(null, null);
+
+  /** Numeric address used as a cache key */
+  private static class AddressKey {
+    private final long hi;
+    private final long lo;
+    private final int len;
+
+    AddressKey(byte[] addr, int len) {
+      long hi = 0;
+      long lo = 0;
+      for (int i = 0; i < len; i++) {
+        if (i < 8) {
+          hi = (hi << 8) | (addr[i] & 0xff);
+        } else {
+          lo = (lo << 8) | (addr[i] & 0xff);
+        }
+      }
+      this.hi = hi;
+      this.lo = lo;
+      this.len = len;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof AddressKey)) {
+        return false;
+      }
+      AddressKey k = (AddressKey) o;
+      return hi == k.hi && lo == k.lo && len == k.len;
+    }
+
+    @Override
+    public int hashCode() {
+      long h = hi * 31 + lo;
+      return (int) (h ^ (h >>> 32)) + len;
+    }
+  }
+
+  /**
+   * Bounded LRU cache, split into segments with independent locks to reduce contention between
+   * threads on a worker
+   */
+  private static class LocationCache {
+    private final ArrayList<LinkedHashMap<AddressKey, Location>> segments;
+
+    LocationCache(int size) {
+      final int segmentSize = Math.max(1, size / CACHE_SEGMENTS);
+      segments = new ArrayList<LinkedHashMap<AddressKey, Location>>(CACHE_SEGMENTS);
+      for (int i = 0; i < CACHE_SEGMENTS; i++) {
+        segments.add(
+            new LinkedHashMap<AddressKey, Location>(16, 0.75f, true) {
+              private static final long serialVersionUID = 1L;
+
+              @Override
+              protected boolean removeEldestEntry(Map.Entry<AddressKey, Location> eldest) {
+                return size() > segmentSize;
+              }
+            });
+      }
+    }
+
+    private LinkedHashMap<AddressKey, Location> segment(AddressKey key) {
+      int h = key.hashCode();
+      return segments.get((h ^ (h >>> 16)) & (CACHE_SEGMENTS - 1));
+    }
+
+    Location get(AddressKey key) {
+      LinkedHashMap<AddressKey, Location> s = segment(key);
+      synchronized (s) {
+        return s.get(key);
+      }
+    }
+
+    void put(AddressKey key, Location value) {
+      LinkedHashMap<AddressKey, Location> s = segment(key);
+      synchronized (s) {
+        s.put(key, value);
+      }
+    }
+  }
 
   /**
    * Lookup city/country from IP address string
    *
+   * <p>This function performs a database lookup on each call; {@link #lookupLocation} should be
+   * preferred where only the city and country are required.
+   *
    * @param ip IP address string
    * @return MaxmindDB {@link CityResponse}, or null on failure
    */
   public CityResponse lookup(String ip) {
-    if (!initialized.get()) {
+    if (!initialized.get() || ip == null) {
       return null;
     }
 
+    // Only resolve address literals, avoiding any name resolution
+    byte[] buf = new byte[16];
+    int len = CidrUtil.parseAddress(ip, 0, ip.length(), buf);
+    if (len == -1) {
+      return null;
+    }
+    return lookup(buf, len);
+  }
+
+  private CityResponse lookup(byte[] addr, int len) {
     try {
-      InetAddress ia = InetAddress.getByName(ip);
-      return geoipDb.city(ia);
+      return geoipDb.city(InetAddress.getByAddress(Arrays.copyOf(addr, len)));
     } catch (IOException exc) {
       return null;
     } catch (GeoIp2Exception exc) {
@@ -35,29 +181,89 @@ public class GeoIP {
     }
   }
 
-  private static synchronized void initialize(String path) throws IOException {
-    InputStream in;
+  /**
+   * Lookup city and country from IP address string, using the lookup cache
+   *
+   * @param ip IP address string
+   * @return {@link Location}, or null if the address could not be resolved
+   */
+  public Location lookupLocation(String ip) {
+    if (!initialized.get() || ip == null) {
+      return null;
+    }
 
-    if (initialized.get()) {
-      return;
+    byte[] buf = new byte[16];
+    int len = CidrUtil.parseAddress(ip, 0, ip.length(), buf);
+    if (len == -1) {
+      return null;
     }
 
+    LocationCache c = cache;
+    AddressKey key = new AddressKey(buf, len);
+    Location ret = c.get(key);
+    if (ret == null) {
+      CityResponse cr = lookup(buf, len);
+      if (cr == null) {
+        ret = NOT_FOUND;
+      } else {
+        ret = new Location(cr.getCity().getName(), cr.getCountry().getIsoCode());
+      }
+      c.put(key, ret);
+    }
+    return ret == NOT_FOUND ? null : ret;
+  }
+
+  /**
+   * Set maximum number of entries in the lookup cache
+   *
+   * <p>The cache is shared by all instances in the JVM, and any existing entries are discarded.
+   *
+   * @param size Maximum number of cache entries
+   */
+  public static void setCacheSize(int size) {
+    cache = new LocationCache(size);
+  }
+
+  private static File fetchDatabase(String path) throws IOException {
+    InputStream in;
+
     if (GcsUtil.isGcsUrl(path)) {
       in = GcsUtil.fetchInputStreamContent(path);
     } else {
       in = GeoIP.class.getResourceAsStream(path);
     }
     if (in == null) {
+      return null;
+    }
+
+    File ret = File.createTempFile("geoip", ".mmdb");
+    ret.deleteOnExit();
+    try (InputStream i = in) {
+      Files.copy(i, ret.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    return ret;
+  }
+
+  private static synchronized void initialize(String path) throws IOException {
+    if (initialized.get()) {
       return;
     }
 
-    geoipDb = new DatabaseReader.Builder(in).build();
+    File db = fetchDatabase(path);
+    if (db == null) {
+      return;
+    }
+
+    geoipDb = new DatabaseReader.Builder(db).fileMode(Reader.FileMode.MEMORY_MAPPED).build();
     initialized.set(true);
   }
 
   /**
    * Initialize new {@link GeoIP}, load database from specified path
    *
+   * <p>The database is fetched and opened on the first initialization in the JVM; subsequent
+   * instances share the same database.
+   *
    * @param path Resource or GCS path to load database from
    */
   public GeoIP(String path) {
@@ -0,0 +1,138 @@
+package com.mozilla.secops.parser;
+
+/**
+ * Character scanning helpers for hand-written raw log line tokenizers
+ *
+ * <p>Character classes follow the default {@link java.util.regex.Pattern} definitions, so a
+ * tokenizer built using these helpers accepts the same input as the equivalent regular expression.
+ */
+final class LineScanner {
+  /**
+   * Test for a whitespace character as matched by \s
+   *
+   * @param c Character
+   * @return True if whitespace
+   */
+  static boolean isSpace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == 0x0b || c == '\f' || c == '\r';
+  }
+
+  /**
+   * Test for a digit as matched by \d
+   *
+   * @param c Character
+   * @return True if digit
+   */
+  static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Test for a line terminator, which is not matched by .
+   *
+   * @param c Character
+   * @return True if line terminator
+   */
+  static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  /**
+   * Return index following a run of non-whitespace characters
+   *
+   * @param in Input
+   * @param i Start index
+   * @return Index of first whitespace character at or after i, or input length
+   */
+  static int skipNonSpace(String in, int i) {
+    int len = in.length();
+    while (i < len && !isSpace(in.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Return index following a run of at most max digits
+   *
+   * @param in Input
+   * @param i Start index
+   * @param max Maximum number of digits to consume, or -1 for no limit
+   * @return Index following the digits
+   */
+  static int skipDigits(String in, int i, int max) {
+    int len = in.length();
+    int end = max < 0 ? len : Math.min(len, i + max);
+    while (i < end && isDigit(in.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Test that a region contains no line terminators
+   *
+   * @param in Input
+   * @param start Start index
+   * @param end End index
+   * @return True if no line terminator is present in the region
+   */
+  static boolean isSingleLine(String in, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (isLineTerminator(in.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Test for a single character at the specified index
+   *
+   * @param in Input
+   * @param i Index
+   * @param c Expected character
+   * @return True if the input contains c at index i
+   */
+  static boolean charAt(String in, int i, char c) {
+    return i < in.length() && in.charAt(i) == c;
+  }
+
+  /**
+   * Test that a region of the input equals a single character
+   *
+   * @param in Input
+   * @param start Start index
+   * @param end End index
+   * @param c Character
+   * @return True if the region is exactly c
+   */
+  static boolean regionIs(String in, int start, int end, char c) {
+    return end - start == 1 && in.charAt(start) == c;
+  }
+
+  /**
+   * Parse a region containing only digits as an integer
+   *
+   * @param in Input
+   * @param start Start index
+   * @param end End index
+   * @return Value, or -1 if the region is empty, contains a non-digit or overflows an int
+   */
+  static int parseInt(String in, int start, int end) {
+    if (start >= end || end - start > 9) {
+      return -1;
+    }
+    int ret = 0;
+    for (int i = start; i < end; i++) {
+      char c = in.charAt(i);
+      if (!isDigit(c)) {
+        return -1;
+      }
+      ret = ret * 10 + (c - '0');
+    }
+    return ret;
+  }
+
+  private LineScanner() {}
+}
@@ -0,0 +1,135 @@
+package com.mozilla.secops.parser;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
+import java.util.EnumMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared cache of preconfigured Jackson readers and writers
+ *
+ * <p>Constructing an {@link ObjectMapper} and performing the initial serializer and deserializer
+ * lookups for a model is expensive relative to the cost of parsing a small event. This class
+ * maintains a single mapper for each supported configuration {@link Profile}, and caches immutable
+ * {@link ObjectReader} and {@link ObjectWriter} instances for each model type. Readers and writers
+ * are thread-safe and can be shared between payload parsers.
+ *
+ * <p>The mappers returned by {@link #getMapper} are shared and must not be reconfigured by callers.
+ */
+public class MapperCache {
+  /** Mapper configuration profiles */
+  public enum Profile {
+    /** Default Jackson configuration */
+    DEFAULT,
+    /** Joda module, ISO8601 date serialization and case insensitive properties */
+    MOZLOG,
+    /** Unknown properties are ignored and empty beans can be serialized */
+    LENIENT,
+    /** Joda module, ISO8601 date serialization and null values excluded from output */
+    EVENT
+  }
+
+  private static final EnumMap<Profile, ObjectMapper> mappers;
+  private static final EnumMap<Profile, ConcurrentHashMap<JavaType, ObjectReader>> readers;
+  private static final EnumMap<Profile, ConcurrentHashMap<JavaType, ObjectWriter>> writers;
+
+  static {
+    mappers = new EnumMap<Profile, ObjectMapper>(Profile.class);
+    readers = new EnumMap<Profile, ConcurrentHashMap<JavaType, ObjectReader>>(Profile.class);
+    writers = new EnumMap<Profile, ConcurrentHashMap<JavaType, ObjectWriter>>(Profile.class);
+    for (Profile p : Profile.values()) {
+      mappers.put(p, createMapper(p));
+      readers.put(p, new ConcurrentHashMap<JavaType, ObjectReader>());
+      writers.put(p, new ConcurrentHashMap<JavaType, ObjectWriter>());
+    }
+  }
+
+  private static ObjectMapper createMapper(Profile p) {
+    ObjectMapper mapper = new ObjectMapper();
+    switch (p) {
+      case MOZLOG:
+        mapper.registerModule(new JodaModule());
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        // Not all Mozlog implementations use lower case field names
+        mapper.configure(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES, true);
+        break;
+      case LENIENT:
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+        break;
+      case EVENT:
+        mapper.registerModule(new JodaModule());
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        mapper.setSerializationInclusion(Include.NON_NULL);
+        break;
+      default:
+        break;
+    }
+    return mapper;
+  }
+
+  /**
+   * Get shared mapper for profile
+   *
+   * @param p Profile
+   * @return Shared {@link ObjectMapper}
+   */
+  public static ObjectMapper getMapper(Profile p) {
+    return mappers.get(p);
+  }
+
+  /**
+   * Get reader for the specified type
+   *
+   * @param p Profile
+   * @param type Type to read
+   * @return Cached {@link ObjectReader}
+   */
+  public static ObjectReader getReader(Profile p, JavaType type) {
+    return readers.get(p).computeIfAbsent(type, t -> mappers.get(p).readerFor(t));
+  }
+
+  /**
+   * Get reader for the specified class
+   *
+   * @param p Profile
+   * @param cls Class to read
+   * @return Cached {@link ObjectReader}
+   */
+  public static ObjectReader getReader(Profile p, Class<?> cls) {
+    return getReader(p, mappers.get(p).getTypeFactory().constructType(cls));
+  }
+
+  /**
+   * Get reader for the specified type reference
+   *
+   * @param p Profile
+   * @param ref Type reference to read
+   * @return Cached {@link ObjectReader}
+   */
+  public static ObjectReader getReader(Profile p, TypeReference<?> ref) {
+    return getReader(p, mappers.get(p).getTypeFactory().constructType(ref));
+  }
+
+  /**
+   * Get writer for the specified class
+   *
+   * @param p Profile
+   * @param cls Class to write
+   * @return Cached {@link ObjectWriter}
+   */
+  public static ObjectWriter getWriter(Profile p, Class<?> cls) {
+    JavaType type = mappers.get(p).getTypeFactory().constructType(cls);
+    return writers.get(p).computeIfAbsent(type, t -> mappers.get(p).writerFor(t));
+  }
+
+  private MapperCache() {}
+}
@@ -4,9 +4,10 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.joda.JodaModule;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Map;
@@ -119,11 +120,9 @@ public class Mozlog implements Serializable {
    */
   @JsonIgnore
   public String getFieldsAsJson() {
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.configure(
-        com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
     try {
-      return mapper.writeValueAsString(fields);
+      return MapperCache.getWriter(MapperCache.Profile.MOZLOG, Map.class)
+          .writeValueAsString(fields);
     } catch (JsonProcessingException exc) {
       return null;
     }
@@ -138,15 +137,26 @@ public class Mozlog implements Serializable {
   public static Mozlog fromJSON(String input) {
     Mozlog ret;
 
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.registerModule(new JodaModule());
-    mapper.configure(
-        com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-    // Not all Mozlog implementations use lower case field names
-    mapper.configure(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES, true);
+    try {
+      ret = MapperCache.getReader(MapperCache.Profile.MOZLOG, Mozlog.class).readValue(input);
+    } catch (IOException exc) {
+      return null;
+    }
+
+    return ret;
+  }
+
+  /**
+   * Create a new {@link Mozlog} object using an already decoded JSON tree as input
+   *
+   * @param input Mozlog JSON event tree
+   * @return Mozlog event or null if conversion failed
+   */
+  public static Mozlog fromJSON(JsonNode input) {
+    Mozlog ret;
 
     try {
-      ret = mapper.readValue(input, Mozlog.class);
+      ret = MapperCache.getReader(MapperCache.Profile.MOZLOG, Mozlog.class).readValue(input);
     } catch (IOException exc) {
       return null;
     }
@@ -154,5 +164,40 @@ public class Mozlog implements Serializable {
     return ret;
   }
 
+  private static final TypeReference<Map<String, Object>> fieldsType =
+      new TypeReference<Map<String, Object>>() {};
+
+  /**
+   * Write Mozlog fields for {@link EventCoder}
+   *
+   * @param out Output stream
+   */
+  void writeFields(DataOutputStream out) throws IOException {
+    EventCoder.writeInteger(out, severity);
+    EventCoder.writeInteger(out, pid);
+    EventCoder.writeString(out, logger);
+    EventCoder.writeString(out, type);
+    EventCoder.writeLong(out, timestamp);
+    EventCoder.writeString(out, hostname);
+    EventCoder.writeDateTime(out, time);
+    EventCoder.writeJson(out, MapperCache.getWriter(MapperCache.Profile.MOZLOG, Map.class), fields);
+  }
+
+  /**
+   * Read Mozlog fields written by {@link #writeFields}
+   *
+   * @param in Input stream
+   */
+  void readFields(DataInputStream in) throws IOException {
+    severity = EventCoder.readInteger(in);
+    pid = EventCoder.readInteger(in);
+    logger = EventCoder.readString(in);
+    type = EventCoder.readString(in);
+    timestamp = EventCoder.readLong(in);
+    hostname = EventCoder.readString(in);
+    time = EventCoder.readDateTime(in);
+    fields = EventCoder.readJson(in, MapperCache.getReader(MapperCache.Profile.MOZLOG, fieldsType));
+  }
+
   public Mozlog() {}
 }
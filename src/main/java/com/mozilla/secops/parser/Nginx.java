@@ -1,13 +1,10 @@
 package com.mozilla.secops.parser;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.api.client.json.JsonParser;
-import com.google.api.client.json.jackson2.JacksonFactory;
-import com.google.api.services.logging.v2.model.LogEntry;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.Map;
 import org.joda.time.DateTime;
 
 /**
@@ -19,8 +16,6 @@ import org.joda.time.DateTime;
 public class Nginx extends PayloadBase implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  private final JacksonFactory jfmatcher;
-
   private String xForwardedProto;
   private String remoteAddr;
   private String userAgent;
@@ -37,50 +32,43 @@ public class Nginx extends PayloadBase implements Serializable {
   private String requestUrl;
   private String requestPath;
 
-  private Boolean matchesStackdriverVariant1(Map<String, Object> m) {
+  private Boolean matchesStackdriverVariant1(JsonNode m) {
     // Variant 1, GCP Stackdriver nginx stdout native
-    return ((m.get("remote_addr") != null)
-        && (m.get("request") != null)
-        && (m.get("bytes_sent") != null)
-        && (m.get("request_time") != null));
+    return (m.hasNonNull("remote_addr")
+        && m.hasNonNull("request")
+        && m.hasNonNull("bytes_sent")
+        && m.hasNonNull("request_time"));
   }
 
-  private Boolean matchesStackdriverVariant2(Map<String, Object> m) {
+  private Boolean matchesStackdriverVariant2(JsonNode m) {
     // Variant 2, Stackdriver nginx ec2
-    return ((m.get("remote_ip") != null)
-        && (m.get("referrer") != null)
-        && (m.get("req_time") != null)
-        && (m.get("agent") != null)
-        && (m.get("request") != null));
+    return (m.hasNonNull("remote_ip")
+        && m.hasNonNull("referrer")
+        && m.hasNonNull("req_time")
+        && m.hasNonNull("agent")
+        && m.hasNonNull("request"));
   }
 
   @Override
-  public Boolean matcher(String input, ParserState state) {
-    try {
-      // XXX We only support processing Stackdriver encapsulated nginx log entries
-      // that are present in jsonPayload right now. This needs to be adjusted to support
-      // for example raw nginx log entries.
-      LogEntry entry = state.getLogEntryHint();
-      if (entry == null) {
-        JsonParser jp = jfmatcher.createJsonParser(input);
-        entry = jp.parse(LogEntry.class);
-      }
+  boolean requiresInputString() {
+    return false;
+  }
 
-      Map<String, Object> m = entry.getJsonPayload();
-      if (m == null) {
-        return false;
-      }
+  @Override
+  public Boolean matcher(String input, ParserState state) {
+    // XXX We only support processing Stackdriver encapsulated nginx log entries
+    // that are present in jsonPayload right now. This needs to be adjusted to support
+    // for example raw nginx log entries.
+    JsonNode m = state.getLogEntryJsonPayload();
+    if (m == null) {
+      return false;
+    }
 
-      // XXX This is not very efficient but there is otherwise no way to determine the
-      // JSON payload type, as no field exists to indicate the type of log message. Check if
-      // we have a few of the fields we want and indicate true of they are present.
-      if (matchesStackdriverVariant1(m) || matchesStackdriverVariant2(m)) {
-        return true;
-      }
-    } catch (IOException exc) {
-      // pass
-    } catch (IllegalArgumentException exc) {
-      // pass
+    // XXX This is not very efficient but there is otherwise no way to determine the
+    // JSON payload type, as no field exists to indicate the type of log message. Check if
+    // we have a few of the fields we want and indicate true of they are present.
+    if (matchesStackdriverVariant1(m) || matchesStackdriverVariant2(m)) {
+      return true;
     }
     return false;
   }
@@ -90,11 +78,80 @@ public class Nginx extends PayloadBase implements Serializable {
     return Payload.PayloadType.NGINX;
   }
 
-  /** Construct matcher object. */
-  public Nginx() {
-    jfmatcher = new JacksonFactory();
+  private static String textValue(JsonNode m, String field) {
+    JsonNode v = m.get(field);
+    if (v == null || !v.isValueNode() || v.isNull()) {
+      return null;
+    }
+    return v.asText();
+  }
+
+  private static Integer parseInteger(String v) {
+    if (v == null) {
+      return null;
+    }
+    try {
+      return Integer.valueOf(v);
+    } catch (NumberFormatException exc) {
+      // pass
+    }
+    try {
+      return Double.valueOf(v).intValue();
+    } catch (NumberFormatException exc) {
+      return null;
+    }
   }
 
+  private static Double parseDouble(String v) {
+    if (v == null) {
+      return null;
+    }
+    try {
+      return Double.valueOf(v);
+    } catch (NumberFormatException exc) {
+      return null;
+    }
+  }
+
+  @Override
+  void writeFields(DataOutputStream out) throws IOException {
+    EventCoder.writeString(out, xForwardedProto);
+    EventCoder.writeString(out, remoteAddr);
+    EventCoder.writeString(out, userAgent);
+    EventCoder.writeString(out, referrer);
+    EventCoder.writeString(out, request);
+    EventCoder.writeString(out, remoteUser);
+    EventCoder.writeDouble(out, requestTime);
+    EventCoder.writeInteger(out, bytesSent);
+    EventCoder.writeString(out, trace);
+    EventCoder.writeInteger(out, status);
+    EventCoder.writeString(out, xForwardedFor);
+    EventCoder.writeString(out, requestMethod);
+    EventCoder.writeString(out, requestUrl);
+    EventCoder.writeString(out, requestPath);
+  }
+
+  @Override
+  void readFields(DataInputStream in) throws IOException {
+    xForwardedProto = EventCoder.readString(in);
+    remoteAddr = EventCoder.readString(in);
+    userAgent = EventCoder.readString(in);
+    referrer = EventCoder.readString(in);
+    request = EventCoder.readString(in);
+    remoteUser = EventCoder.readString(in);
+    requestTime = EventCoder.readDouble(in);
+    bytesSent = EventCoder.readInteger(in);
+    trace = EventCoder.readString(in);
+    status = EventCoder.readInteger(in);
+    xForwardedFor = EventCoder.readString(in);
+    requestMethod = EventCoder.readString(in);
+    requestUrl = EventCoder.readString(in);
+    requestPath = EventCoder.readString(in);
+  }
+
+  /** Construct matcher object. */
+  public Nginx() {}
+
   /**
    * Construct parser object.
    *
@@ -103,89 +160,49 @@ public class Nginx extends PayloadBase implements Serializable {
    * @param state State
    */
   public Nginx(String input, Event e, ParserState state) {
-    jfmatcher = null;
-    LogEntry entry = state.getLogEntryHint();
-    if (entry == null) {
-      // Use method local JacksonFactory as the object is not serializable, and this event
-      // may be passed around
-      JacksonFactory jf = new JacksonFactory();
-      try {
-        JsonParser jp = jf.createJsonParser(input);
-        entry = jp.parse(LogEntry.class);
-      } catch (IOException exc) {
-        return;
-      }
-    }
-
-    Map<String, Object> m = entry.getJsonPayload();
+    JsonNode m = state.getLogEntryJsonPayload();
     if (m == null) {
       return;
     }
 
-    String ets = entry.getTimestamp();
-    if (ets != null) {
-      DateTime d = Parser.parseISO8601(ets);
+    JsonNode ets = state.getLogEntryHint().get("timestamp");
+    if (ets != null && ets.isTextual()) {
+      DateTime d = Parser.parseISO8601(ets.asText());
       if (d != null) {
         e.setTimestamp(d);
       }
     }
 
-    String pbuf = null;
-    try {
-      ObjectMapper mapper = new ObjectMapper();
-      pbuf = mapper.writeValueAsString(m);
-    } catch (JsonProcessingException exc) {
-      return;
-    }
-    if (pbuf == null) {
+    boolean variant1 = matchesStackdriverVariant1(m);
+    if (!variant1 && !matchesStackdriverVariant2(m)) {
       return;
     }
 
-    if (matchesStackdriverVariant1(m)) {
-      com.mozilla.secops.parser.models.nginxstackdriver.NginxStackdriverVariant1 nginxs;
-      try {
-        ObjectMapper mapper = new ObjectMapper();
-        nginxs =
-            mapper.readValue(
-                pbuf,
-                com.mozilla.secops.parser.models.nginxstackdriver.NginxStackdriverVariant1.class);
-      } catch (IOException exc) {
-        return;
-      }
-
-      xForwardedProto = nginxs.getXForwardedProto();
-      remoteAddr = nginxs.getRemoteAddr();
-      userAgent = nginxs.getUserAgent();
-      referrer = nginxs.getReferrer();
-      request = nginxs.getRequest();
-      remoteUser = nginxs.getRemoteUser();
-      requestTime = nginxs.getRequestTime();
-      bytesSent = nginxs.getBytesSent();
-      trace = nginxs.getTrace();
-      status = new Integer(nginxs.getStatus());
-      xForwardedFor = nginxs.getXForwardedFor();
-    } else if (matchesStackdriverVariant2(m)) {
-      com.mozilla.secops.parser.models.nginxstackdriver.NginxStackdriverVariant2 nginxs;
-      try {
-        ObjectMapper mapper = new ObjectMapper();
-        nginxs =
-            mapper.readValue(
-                pbuf,
-                com.mozilla.secops.parser.models.nginxstackdriver.NginxStackdriverVariant2.class);
-      } catch (IOException exc) {
-        return;
-      }
-
-      remoteAddr = nginxs.getRemoteIp();
-      userAgent = nginxs.getUserAgent();
-      referrer = nginxs.getReferrer();
-      request = nginxs.getRequest();
-      requestTime = new Double(nginxs.getRequestTime());
-      bytesSent = new Integer(nginxs.getBytesSent());
-      status = new Integer(nginxs.getCode());
+    // Read the fields we need directly from the decoded payload tree, rather than binding the
+    // payload to an intermediate model object and copying the values out of it
+    referrer = textValue(m, "referrer");
+    request = textValue(m, "request");
+    String bytesSentValue = textValue(m, "bytes_sent");
+    String statusValue;
+    String requestTimeValue;
+    if (variant1) {
+      remoteAddr = textValue(m, "remote_addr");
+      userAgent = textValue(m, "user_agent");
+      statusValue = textValue(m, "status");
+      requestTimeValue = textValue(m, "request_time");
+      xForwardedProto = textValue(m, "x_forwarded_proto");
+      xForwardedFor = textValue(m, "x_forwarded_for");
+      remoteUser = textValue(m, "remote_user");
+      trace = textValue(m, "trace");
     } else {
-      return;
+      remoteAddr = textValue(m, "remote_ip");
+      userAgent = textValue(m, "agent");
+      statusValue = textValue(m, "code");
+      requestTimeValue = textValue(m, "req_time");
     }
+    status = parseInteger(statusValue);
+    requestTime = parseDouble(requestTimeValue);
+    bytesSent = parseInteger(bytesSentValue);
 
     if ((remoteAddr != null) && (remoteAddr.equals("-"))) {
       remoteAddr = null;
@@ -1,7 +1,11 @@
 package com.mozilla.secops.parser;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.EnumSet;
+import org.apache.beam.sdk.util.VarInt;
 
 /** Normalized event data */
 public class Normalized implements Serializable {
@@ -39,6 +43,58 @@ public class Normalized implements Serializable {
     types = EnumSet.noneOf(Type.class);
   }
 
+  /**
+   * Write normalized fields for {@link EventCoder}
+   *
+   * @param out Output stream
+   */
+  void writeFields(DataOutputStream out) throws IOException {
+    int mask = 0;
+    for (Type t : types) {
+      mask |= 1 << t.ordinal();
+    }
+    VarInt.encode(mask, out);
+    EventCoder.writeString(out, subjectUser);
+    EventCoder.writeString(out, sourceAddress);
+    EventCoder.writeString(out, sourceAddressCity);
+    EventCoder.writeString(out, sourceAddressCountry);
+    EventCoder.writeString(out, object);
+    EventCoder.writeString(out, requestMethod);
+    EventCoder.writeString(out, requestUrl);
+    EventCoder.writeString(out, urlRequestPath);
+    EventCoder.writeString(out, urlRequestHost);
+    EventCoder.writeInteger(out, requestStatus);
+    EventCoder.writeString(out, userAgent);
+    EventCoder.writeString(out, subjectUserIdentity);
+  }
+
+  /**
+   * Read normalized fields written by {@link #writeFields}
+   *
+   * @param in Input stream
+   */
+  void readFields(DataInputStream in) throws IOException {
+    int mask = VarInt.decodeInt(in);
+    types = EnumSet.noneOf(Type.class);
+    for (Type t : Type.values()) {
+      if ((mask & (1 << t.ordinal())) != 0) {
+        types.add(t);
+      }
+    }
+    subjectUser = EventCoder.readString(in);
+    sourceAddress = EventCoder.readString(in);
+    sourceAddressCity = EventCoder.readString(in);
+    sourceAddressCountry = EventCoder.readString(in);
+    object = EventCoder.readString(in);
+    requestMethod = EventCoder.readString(in);
+    requestUrl = EventCoder.readString(in);
+    urlRequestPath = EventCoder.readString(in);
+    urlRequestHost = EventCoder.readString(in);
+    requestStatus = EventCoder.readInteger(in);
+    userAgent = EventCoder.readString(in);
+    subjectUserIdentity = EventCoder.readString(in);
+  }
+
   /**
    * Return a given normalized payload field based on the supplied field identifier
    *
@@ -1,21 +1,32 @@
 package com.mozilla.secops.parser;
 
-import com.maxmind.geoip2.model.CityResponse;
 import com.mozilla.secops.identity.IdentityManager;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-/** Payload parser for OpenSSH log data */
+/**
+ * Payload parser for OpenSSH log data
+ *
+ * <p>Input lines are matched and tokenized in a single pass using a hand-written tokenizer that
+ * accepts the same lines as the regular expressions. Lines the tokenizer does not support are
+ * handed to the regular expressions.
+ */
 public class OpenSSH extends PayloadBase implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  private final String matchRe = "^" + Parser.SYSLOG_TS_RE + " \\S+ \\S*sshd\\[\\d+\\]: .+";
-  private Pattern pattRe;
-
-  private final String authAcceptedRe =
+  private static final String authAcceptedRe =
       "^.* (\\S+) sshd\\[\\d+\\]: Accepted (\\S+) for (\\S+) from (\\S+) " + "port (\\d+).*";
-  private Pattern pattAuthAcceptedRe;
+  private static final Pattern pattAuthAcceptedRe = Pattern.compile(authAcceptedRe);
+
+  // Token offsets for the syslog header
+  private static final int TOK_HOST_START = 0;
+  private static final int TOK_HOST_END = 1;
+  private static final int TOK_MSG_START = 2;
+  private static final int TOK_EXACT_PROGRAM = 3;
 
   private String user;
   private String authMethod;
@@ -24,13 +35,119 @@ public class OpenSSH extends PayloadBase implements Serializable {
   private String sourceAddressCountry;
   private String hostname;
 
+  /**
+   * Tokenize the syslog header of an input line
+   *
+   * <p>Lines are accepted if they match {@link Parser#SYSLOG_TS_RE} followed by a space and {@code
+   * \S+ \S*sshd\[\d+\]: .+}.
+   *
+   * @param in Input
+   * @return Token offsets, or null if the line is not an sshd log line
+   */
+  private static int[] tokenize(String in) {
+    int len = in.length();
+    int i = 0;
+    for (; i < 3; i++) {
+      if (i >= len || LineScanner.isSpace(in.charAt(i))) {
+        return null;
+      }
+    }
+    if (!LineScanner.charAt(in, i, ' ')) {
+      return null;
+    }
+    i++;
+    if (LineScanner.charAt(in, i, ' ')) {
+      i++;
+    }
+    for (int k = 0; k < 4; k++) {
+      int j = LineScanner.skipDigits(in, i, 2);
+      if (j == i || !LineScanner.charAt(in, j, k < 3 && k > 0 ? ':' : ' ')) {
+        return null;
+      }
+      i = j + 1;
+    }
+
+    int[] tok = new int[4];
+    int j = LineScanner.skipNonSpace(in, i);
+    if (j == i || !LineScanner.charAt(in, j, ' ')) {
+      return null;
+    }
+    tok[TOK_HOST_START] = i;
+    tok[TOK_HOST_END] = j;
+
+    // Program token, which must end with sshd[pid]:
+    i = j + 1;
+    j = LineScanner.skipNonSpace(in, i);
+    if (!LineScanner.charAt(in, j, ' ') || j - i < 8) {
+      return null;
+    }
+    if (in.charAt(j - 1) != ':' || in.charAt(j - 2) != ']') {
+      return null;
+    }
+    int k = j - 3;
+    while (k >= i && LineScanner.isDigit(in.charAt(k))) {
+      k--;
+    }
+    if (k == j - 3 || k - 4 < i || !in.startsWith("sshd[", k - 4)) {
+      return null;
+    }
+    tok[TOK_EXACT_PROGRAM] = k - 4 == i ? 1 : 0;
+
+    i = j + 1;
+    if (i >= len || !LineScanner.isSingleLine(in, i, len)) {
+      return null;
+    }
+    tok[TOK_MSG_START] = i;
+    return tok;
+  }
+
+  private static int[] getTokens(String input, ParserState state) {
+    Object hint = state.getTokenHint(Payload.PayloadType.OPENSSH, input);
+    if (hint instanceof int[]) {
+      return (int[]) hint;
+    }
+    return tokenize(input);
+  }
+
+  /**
+   * Extract fields from an accepted authentication message
+   *
+   * @param in Input
+   * @param tok Token offsets
+   * @return Hostname, authentication method, user and source address, or null if the message is not
+   *     an accepted authentication message
+   */
+  private static String[] accepted(String in, int[] tok) {
+    int i = tok[TOK_MSG_START];
+    if (tok[TOK_EXACT_PROGRAM] == 0 || !in.startsWith("Accepted ", i)) {
+      return null;
+    }
+    String[] ret = new String[4];
+    ret[0] = in.substring(tok[TOK_HOST_START], tok[TOK_HOST_END]);
+    i += 9;
+    String[] seps = new String[] {" for ", " from ", " port "};
+    for (int f = 1; f < 4; f++) {
+      int j = LineScanner.skipNonSpace(in, i);
+      if (j == i || !in.startsWith(seps[f - 1], j)) {
+        return null;
+      }
+      ret[f] = in.substring(i, j);
+      i = j + seps[f - 1].length();
+    }
+    if (LineScanner.skipDigits(in, i, -1) == i) {
+      return null;
+    }
+    return ret;
+  }
+
   @Override
   public Boolean matcher(String input, ParserState state) {
-    Matcher mat = pattRe.matcher(input);
-    if (mat.matches()) {
-      return true;
+    int[] tok = getTokens(input, state);
+    if (tok == null) {
+      return false;
     }
-    return false;
+    state.setTokenHint(Payload.PayloadType.OPENSSH, input, tok);
+    return true;
   }
 
   @Override
@@ -38,11 +155,29 @@ public class OpenSSH extends PayloadBase implements Serializable {
     return Payload.PayloadType.OPENSSH;
   }
 
-  /** Construct matcher object. */
-  public OpenSSH() {
-    pattRe = Pattern.compile(matchRe);
+  @Override
+  void writeFields(DataOutputStream out) throws IOException {
+    EventCoder.writeString(out, user);
+    EventCoder.writeString(out, authMethod);
+    EventCoder.writeString(out, sourceAddress);
+    EventCoder.writeString(out, sourceAddressCity);
+    EventCoder.writeString(out, sourceAddressCountry);
+    EventCoder.writeString(out, hostname);
   }
 
+  @Override
+  void readFields(DataInputStream in) throws IOException {
+    user = EventCoder.readString(in);
+    authMethod = EventCoder.readString(in);
+    sourceAddress = EventCoder.readString(in);
+    sourceAddressCity = EventCoder.readString(in);
+    sourceAddressCountry = EventCoder.readString(in);
+    hostname = EventCoder.readString(in);
+  }
+
+  /** Construct matcher object. */
+  public OpenSSH() {}
+
   /**
    * Construct parser object.
    *
@@ -51,13 +186,23 @@ public class OpenSSH extends PayloadBase implements Serializable {
    * @param state State
    */
   public OpenSSH(String input, Event e, ParserState state) {
-    pattAuthAcceptedRe = Pattern.compile(authAcceptedRe);
-    Matcher mat = pattAuthAcceptedRe.matcher(input);
-    if (mat.matches()) {
-      hostname = mat.group(1);
-      authMethod = mat.group(2);
-      user = mat.group(3);
-      sourceAddress = mat.group(4);
+    String[] fields = null;
+    int[] tok = getTokens(input, state);
+    if (tok != null && input.indexOf(" sshd[", tok[TOK_MSG_START] - 1) == -1) {
+      fields = accepted(input, tok);
+    } else {
+      // The message contains further sshd program tokens, or the line is not supported by the
+      // tokenizer
+      Matcher mat = pattAuthAcceptedRe.matcher(input);
+      if (mat.matches()) {
+        fields = new String[] {mat.group(1), mat.group(2), mat.group(3), mat.group(4)};
+      }
+    }
+    if (fields != null) {
+      hostname = fields[0];
+      authMethod = fields[1];
+      user = fields[2];
+      sourceAddress = fields[3];
       Normalized n = e.getNormalized();
       n.addType(Normalized.Type.AUTH);
       n.setSubjectUser(user);
@@ -75,10 +220,10 @@ public class OpenSSH extends PayloadBase implements Serializable {
       }
 
       if (sourceAddress != null) {
-        CityResponse cr = state.getParser().geoIp(sourceAddress);
-        if (cr != null) {
-          sourceAddressCity = cr.getCity().getName();
-          sourceAddressCountry = cr.getCountry().getIsoCode();
+        GeoIP.Location loc = state.getParser().geoIpLocation(sourceAddress);
+        if (loc != null) {
+          sourceAddressCity = loc.getCity();
+          sourceAddressCountry = loc.getCountry();
           n.setSourceAddressCity(sourceAddressCity);
           n.setSourceAddressCountry(sourceAddressCountry);
         }
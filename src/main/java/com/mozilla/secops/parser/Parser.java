@@ -1,22 +1,21 @@
 package com.mozilla.secops.parser;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.api.client.json.JsonParser;
-import com.google.api.client.json.jackson2.JacksonFactory;
-import com.google.api.services.logging.v2.model.LogEntry;
-import com.google.api.services.logging.v2.model.MonitoredResource;
 import com.maxmind.geoip2.model.CityResponse;
 import com.mozilla.secops.CidrUtil;
 import com.mozilla.secops.identity.IdentityManager;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import org.apache.commons.validator.routines.InetAddressValidator;
 import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,24 +28,32 @@ public class Parser {
   private static final long serialVersionUID = 1L;
 
   private final List<PayloadBase> payloads;
-  private final JacksonFactory jf;
+  private final EnumMap<Payload.PayloadType, PayloadBase> payloadsByType;
+  private final EnumMap<Payload.PayloadType, PayloadFactory> factories;
+  private final ObjectMapper mapper;
   private final Logger log;
   private final ParserCfg cfg;
+  private final FastMatcher fastMatcher;
+  private final CidrUtil xffSelector;
   private GeoIP geoip;
 
   public static final String SYSLOG_TS_RE = "\\S{3} {1,2}\\d{1,2} \\d{1,2}:\\d{1,2}:\\d{1,2}";
 
   private IdentityManager idmanager;
 
+  private static final TimestampDecoder timestampDecoder = new TimestampDecoder();
+
   /**
    * Parse an ISO8601 date string and return a {@link DateTime} object.
    *
+   * <p>Parsing is done using a {@link TimestampDecoder} shared by all parsers.
+   *
    * @param in Input string
-   * @return Parsed {@link DateTime}, null if string could not be parsed
+   * @return Parsed {@link DateTime}
+   * @throws IllegalArgumentException if the string could not be parsed
    */
   public static DateTime parseISO8601(String in) {
-    DateTimeFormatter fmt = ISODateTimeFormat.dateTimeParser();
-    return fmt.parseDateTime(in);
+    return timestampDecoder.parseISO8601(in);
   }
 
   /**
@@ -55,6 +62,10 @@ public class Parser {
    * <p>If no XFF address selector has been configured in the parser configuration, and the input
    * contains multiple XFF style addresses, the last address is returned.
    *
+   * <p>The input is scanned from the right-most address, and each address is parsed into numeric
+   * form and tested against the selector in place. Only the selected address is copied from the
+   * input.
+   *
    * @param input Input string
    * @return Results of address selector application
    */
@@ -63,32 +74,64 @@ public class Parser {
       return null;
     }
 
-    CidrUtil c = cfg.getXffAddressSelectorAsCidrUtil();
-
-    String[] parts = parseXForwardedFor(input);
-    if (parts == null) {
-      // Input was not formatted correctly or was not an IP address
-      return null;
+    byte[] buf = new byte[16];
+    int count = 0;
+    int lastStart = 0;
+    int lastEnd = 0;
+    int selStart = -1;
+    int selEnd = -1;
+    int end = input.length();
+    while (true) {
+      int sep = input.lastIndexOf(',', end - 1);
+      int start = xffTokenStart(input, sep, end);
+      // Empty trailing elements are ignored, consistent with parseXForwardedFor
+      if (start < end || count > 0) {
+        int len = CidrUtil.parseAddress(input, start, end, buf);
+        if (len == -1) {
+          // Input was not formatted correctly or was not an IP address
+          return null;
+        }
+        if (count++ == 0) {
+          lastStart = start;
+          lastEnd = end;
+        }
+        if (selStart == -1 && xffSelector != null && !xffSelector.contains(buf, len)) {
+          selStart = start;
+          selEnd = end;
+        }
+      }
+      if (sep == -1) {
+        break;
+      }
+      end = sep;
     }
 
-    if (parts.length <= 1) {
+    if (count <= 1) {
       // Just a single element, return the input as is
       return input;
     }
 
-    if (c == null) {
-      // No selectors specified but we had multiple addresses, return the last one
-      return parts[parts.length - 1];
+    if (selStart == -1) {
+      // No selectors specified or all addresses matched the selector, return the last one
+      return input.substring(lastStart, lastEnd);
     }
+    return input.substring(selStart, selEnd);
+  }
 
-    for (int i = parts.length - 1; i >= 0; i--) {
-      if (c.contains(parts[i])) {
-        continue;
-      } else {
-        return parts[i];
-      }
+  /**
+   * Return the start index of the XFF element ending at end and following the separator at sep
+   *
+   * <p>Elements are separated by a comma and an optional single space.
+   */
+  private static int xffTokenStart(String in, int sep, int end) {
+    if (sep == -1) {
+      return 0;
+    }
+    int ret = sep + 1;
+    if (ret < end && in.charAt(ret) == ' ') {
+      ret++;
     }
-    return parts[parts.length - 1];
+    return ret;
   }
 
   /**
@@ -104,98 +147,154 @@ public class Parser {
     } else if (in.isEmpty()) {
       return new String[0];
     }
-    String[] v = in.split(", ?");
-    InetAddressValidator iav = new InetAddressValidator();
-    for (String t : v) {
-      if (!(iav.isValid(t))) {
-        return null;
+    byte[] buf = new byte[16];
+    ArrayList<String> ret = new ArrayList<String>();
+    int end = in.length();
+    while (true) {
+      int sep = in.lastIndexOf(',', end - 1);
+      int start = xffTokenStart(in, sep, end);
+      if (start < end || !ret.isEmpty()) {
+        if (CidrUtil.parseAddress(in, start, end, buf) == -1) {
+          return null;
+        }
+        ret.add(in.substring(start, end));
+      }
+      if (sep == -1) {
+        break;
       }
+      end = sep;
     }
-    return v;
+    Collections.reverse(ret);
+    return ret.toArray(new String[0]);
   }
 
-  private String getStackdriverProject(LogEntry entry) {
-    if (entry == null) {
+  private String getStackdriverProject(JsonNode entry) {
+    JsonNode project = entry.path("resource").path("labels").get("project_id");
+    if (project == null || !project.isTextual()) {
       return null;
     }
-    MonitoredResource mr = entry.getResource();
-    if (mr == null) {
+    return project.asText();
+  }
+
+  private Map<String, String> getStackdriverLabels(JsonNode entry) {
+    JsonNode labels = entry.get("labels");
+    if (labels == null || !labels.isObject()) {
       return null;
     }
-    Map<String, String> labels = mr.getLabels();
-    if (labels == null) {
-      return null;
+    HashMap<String, String> ret = new HashMap<String, String>();
+    Iterator<Map.Entry<String, JsonNode>> it = labels.fields();
+    while (it.hasNext()) {
+      Map.Entry<String, JsonNode> l = it.next();
+      if (l.getValue().isValueNode() && !l.getValue().isNull()) {
+        ret.put(l.getKey(), l.getValue().asText());
+      }
     }
-    return labels.get("project_id");
+    return ret;
   }
 
   private String stripStackdriverEncapsulation(Event e, String input, ParserState state) {
+    JsonNode entry;
     try {
-      JsonParser jp = jf.createJsonParser(input);
-      LogEntry entry = jp.parse(LogEntry.class);
+      entry = mapper.readTree(input);
+    } catch (IOException exc) {
+      // If the input data could not be decoded just return it as is
+      return input;
+    }
+    if (entry == null || !entry.isObject()) {
+      return input;
+    }
+    String ret = applyLogEntry(e, entry, state);
+    return ret == null ? input : ret;
+  }
 
-      e.setStackdriverProject(getStackdriverProject(entry));
-      e.setStackdriverLabels(entry.getLabels());
+  /**
+   * Apply a decoded JSON object input to the event and parser state
+   *
+   * @return Replacement input string, or null if the input corresponds to the decoded tree
+   */
+  private String applyLogEntry(Event e, JsonNode entry, ParserState state) {
+    e.setStackdriverProject(getStackdriverProject(entry));
+    e.setStackdriverLabels(getStackdriverLabels(entry));
 
-      // We were able to deserialize the LogEntry so store it as a hint in the state
-      state.setLogEntryHint(entry);
+    // We were able to decode the LogEntry so store it as a hint in the state; the decoded tree
+    // is shared with the payload parsers so they do not need to decode the input again
+    state.setLogEntryHint(entry);
 
-      String ret = entry.getTextPayload();
-      if (ret != null && !ret.isEmpty()) {
-        return ret;
-      }
-      Map<String, Object> jret = entry.getJsonPayload();
-      if (jret == null) {
-        jret = entry.getProtoPayload();
-      }
-      if (jret != null) {
-        // XXX Serialize the Stackdriver JSON data and emit a string for use in the
-        // matchers. This is inefficient and we could probably look at changing this
-        // to return a different type to avoid having to deserialize the data twice.
-        return entry.toString();
+    JsonNode text = entry.get("textPayload");
+    if (text != null && text.isTextual() && !text.asText().isEmpty()) {
+      return text.asText();
+    }
+
+    // If we have a JSON or proto payload, or if the input was not Stackdriver encapsulated, the
+    // input remains the full document which corresponds to the decoded tree
+    state.setDecodedInput(entry);
+    return null;
+  }
+
+  private static JsonNode getMozlogFields(JsonNode entry) {
+    // Mozlog field names are not case sensitive
+    Iterator<Map.Entry<String, JsonNode>> it = entry.fields();
+    while (it.hasNext()) {
+      Map.Entry<String, JsonNode> f = it.next();
+      if (f.getKey().equalsIgnoreCase("fields")) {
+        return f.getValue().isObject() ? f.getValue() : null;
       }
-    } catch (IOException exc) {
-      // pass
-    } catch (IllegalArgumentException exc) {
-      // pass
     }
-    // If the input data could not be converted into a Stackdriver LogEntry just return
-    // it as is.
-    return input;
+    return null;
+  }
+
+  private String unwrapMozlog(Event e, JsonNode entry, ParserState state) {
+    Mozlog m = Mozlog.fromJSON(entry);
+    if (m == null) {
+      return null;
+    }
+    e.setMozlog(m);
+    state.setMozlogHint(m);
+
+    // The Mozlog fields become the input for the payload parsers; share the fields subtree with
+    // them as the decoded input so they do not need to decode the string again
+    JsonNode fields = getMozlogFields(entry);
+    state.setDecodedInput(fields);
+    if (fields == null) {
+      return m.getFieldsAsJson();
+    }
+    try {
+      return MapperCache.getWriter(MapperCache.Profile.MOZLOG, JsonNode.class)
+          .writeValueAsString(fields);
+    } catch (JsonProcessingException exc) {
+      state.setDecodedInput(null);
+      return m.getFieldsAsJson();
+    }
   }
 
   private String stripMozlog(Event e, String input, ParserState state) {
-    LogEntry entry = state.getLogEntryHint();
-    if (entry != null) {
-      // If we have an existing LogEntry hint, attempt to treat a present jsonPayload
-      // as Mozlog
-      Map<String, Object> jsonPayload = entry.getJsonPayload();
-      String jbuf = null;
-      if (jsonPayload != null) {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(
-            com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-        try {
-          jbuf = mapper.writeValueAsString(jsonPayload);
-        } catch (JsonProcessingException exc) {
-          // pass
-        }
-      }
-      if (jbuf != null) {
-        Mozlog m = Mozlog.fromJSON(jbuf);
-        if (m != null) {
-          e.setMozlog(m);
-          state.setMozlogHint(m);
-          return m.getFieldsAsJson();
-        }
+    // If we have an existing LogEntry hint, attempt to treat a present jsonPayload
+    // as Mozlog
+    JsonNode jsonPayload = state.getLogEntryJsonPayload();
+    if (jsonPayload != null) {
+      String ret = unwrapMozlog(e, jsonPayload, state);
+      if (ret != null) {
+        return ret;
       }
     }
 
-    Mozlog m = Mozlog.fromJSON(input);
-    if (m != null) {
-      e.setMozlog(m);
-      state.setMozlogHint(m);
-      return m.getFieldsAsJson();
+    JsonNode entry = state.getDecodedInput();
+    if (entry == null) {
+      if (input == null || PayloadRouter.firstNonWhitespace(input) != '{') {
+        return input;
+      }
+      try {
+        entry = mapper.readTree(input);
+      } catch (IOException exc) {
+        return input;
+      }
+      if (entry == null) {
+        return input;
+      }
+    }
+    String ret = unwrapMozlog(e, entry, state);
+    if (ret != null) {
+      return ret;
     }
     return input;
   }
@@ -226,6 +325,23 @@ public class Parser {
     return geoip.lookup(ip);
   }
 
+  /**
+   * Resolve GeoIP city and country from IP address string
+   *
+   * <p>GeoIP resolution must be enabled in the parser, or this function will always return null.
+   * Results are cached, so this function should be preferred over {@link #geoIp} where only the
+   * city and country are required.
+   *
+   * @param ip IP address string
+   * @return {@link GeoIP.Location}, or null if lookup fails
+   */
+  public GeoIP.Location geoIpLocation(String ip) {
+    if (geoip == null) {
+      return null;
+    }
+    return geoip.lookupLocation(ip);
+  }
+
   /**
    * Set an identity manager in the parser that can be used for lookups
    *
@@ -244,6 +360,31 @@ public class Parser {
     return idmanager;
   }
 
+  private static FastMatcher buildFastMatcher(ParserCfg cfg) {
+    FastMatcher ret = new FastMatcher();
+    if (cfg.getParserFastMatcher() != null && !cfg.getParserFastMatcher().isEmpty()) {
+      ret.withLiteral(cfg.getParserFastMatcher());
+    }
+    if (cfg.getParserFastMatcherPatterns() != null) {
+      for (String p : cfg.getParserFastMatcherPatterns()) {
+        ret.withPattern(p);
+      }
+    }
+    if (ret.size() == 0) {
+      return null;
+    }
+    return ret;
+  }
+
+  /**
+   * Get fast matcher installed in the parser
+   *
+   * @return {@link FastMatcher} or null if no fast matcher has been configured
+   */
+  public FastMatcher getFastMatcher() {
+    return fastMatcher;
+  }
+
   /**
    * Parse an event
    *
@@ -251,15 +392,79 @@ public class Parser {
    * @return {@link Event} or null if the event should be ignored
    */
   public Event parse(String input) {
-    String fm = cfg.getParserFastMatcher();
+    return parse(input, getLazyPayloadDecoding());
+  }
+
+  /**
+   * Test if lazy payload decoding is enabled in the parser configuration
+   *
+   * @return True if lazy payload decoding is enabled
+   */
+  public boolean getLazyPayloadDecoding() {
+    return cfg.getLazyPayloadDecoding();
+  }
+
+  /**
+   * Parse an event, optionally deferring payload decoding
+   *
+   * <p>If lazy is true, the payload parser that matches the input is identified but the payload
+   * object is not constructed until the payload, normalized data, or timestamp of the returned
+   * event is first accessed. Filters which only consider the payload type or Stackdriver metadata
+   * can reject the event without the payload being decoded.
+   *
+   * @param input Input string
+   * @param lazy True to defer payload decoding
+   * @return {@link Event} or null if the event should be ignored
+   */
+  public Event parse(String input, boolean lazy) {
     // If a fast matcher is set, test the input immediately against it and discard the
     // event if it does not match
-    if (fm != null && input != null) {
-      if (!input.contains(fm)) {
+    if (fastMatcher != null && input != null) {
+      if (!fastMatcher.matches(input)) {
         return null;
       }
     }
+    return parseInput(input, lazy);
+  }
+
+  /**
+   * Parse an event from UTF-8 encoded input
+   *
+   * @param input Input bytes
+   * @return {@link Event} or null if the event should be ignored
+   */
+  public Event parseBytes(byte[] input) {
+    return parseBytes(input, getLazyPayloadDecoding());
+  }
 
+  /**
+   * Parse an event from UTF-8 encoded input, optionally deferring payload decoding
+   *
+   * <p>JSON input is decoded directly from the bytes, and a string copy of the input is only
+   * created if a payload parser requires it. Results are identical to calling {@link #parse(String,
+   * boolean)} with the decoded input string.
+   *
+   * @param input Input bytes
+   * @param lazy True to defer payload decoding
+   * @return {@link Event} or null if the event should be ignored
+   */
+  public Event parseBytes(byte[] input, boolean lazy) {
+    if (fastMatcher != null && input != null) {
+      if (!fastMatcher.matchesBytes(input)) {
+        return null;
+      }
+    }
+    return parseInput(input, lazy);
+  }
+
+  /**
+   * Parse an event without applying the fast matcher
+   *
+   * @param input Input string
+   * @param lazy True to defer payload decoding
+   * @return {@link Event} or null if the event should be ignored
+   */
+  Event parseInput(String input, boolean lazy) {
     ParserState state = new ParserState(this);
 
     if (input == null) {
@@ -272,21 +477,100 @@ public class Parser {
     if (input == null) {
       return null;
     }
+    return parsePayload(e, input, state, lazy);
+  }
 
-    for (PayloadBase p : payloads) {
-      if (!p.matcher(input, state)) {
-        continue;
+  private static boolean startsWithObject(byte[] input) {
+    for (int i = 0; i < input.length; i++) {
+      byte b = input[i];
+      if (b == '{') {
+        return true;
+      } else if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+        return false;
       }
-      Class<?> cls = p.getClass();
-      try {
-        e.setPayload(
-            (PayloadBase)
-                cls.getConstructor(String.class, Event.class, ParserState.class)
-                    .newInstance(input, e, state));
-      } catch (ReflectiveOperationException exc) {
-        log.warn(exc.getMessage());
+    }
+    return false;
+  }
+
+  /**
+   * Parse an event from UTF-8 encoded input without applying the fast matcher
+   *
+   * @param input Input bytes
+   * @param lazy True to defer payload decoding
+   * @return {@link Event} or null if the event should be ignored
+   */
+  Event parseInput(byte[] input, boolean lazy) {
+    if (input == null || !startsWithObject(input)) {
+      // Only JSON input benefits from decoding the bytes directly
+      return parseInput(input == null ? null : new String(input, StandardCharsets.UTF_8), lazy);
+    }
+
+    JsonNode entry;
+    try {
+      entry = mapper.readTree(input);
+    } catch (IOException exc) {
+      entry = null;
+    }
+    if (entry == null || !entry.isObject()) {
+      return parseInput(new String(input, StandardCharsets.UTF_8), lazy);
+    }
+
+    ParserState state = new ParserState(this);
+    Event e = new Event();
+    String s = applyLogEntry(e, entry, state);
+    s = stripMozlog(e, s, state);
+    if (s == null) {
+      // The input corresponds to the decoded tree, so only create the input string if a payload
+      // parser requires it
+      state.setInputSupplier(() -> new String(input, StandardCharsets.UTF_8));
+    }
+    return parsePayload(e, s, state, lazy);
+  }
+
+  private static String payloadInput(PayloadBase p, String input, ParserState state) {
+    return p.requiresInputString() ? state.getInput(input) : input;
+  }
+
+  /**
+   * Select and apply the payload parser for an event
+   *
+   * <p>The input string may be null if it has not been created from the decoded input, in which
+   * case it is created from the input supplier in the parser state only for payload parsers which
+   * require it.
+   */
+  private Event parsePayload(Event e, String input, ParserState state, boolean lazy) {
+
+    // Test any candidate payload parsers selected by the router first, falling back to an
+    // ordered scan of the remaining parsers if none of the candidates match
+    PayloadBase match = null;
+    List<Payload.PayloadType> candidates = PayloadRouter.route(input, state);
+    for (Payload.PayloadType t : candidates) {
+      PayloadBase p = payloadsByType.get(t);
+      if (p != null && p.matcher(payloadInput(p, input, state), state)) {
+        match = p;
+        break;
+      }
+    }
+    if (match == null) {
+      for (PayloadBase p : payloads) {
+        if (candidates.contains(p.getType())) {
+          continue;
+        }
+        if (p.matcher(payloadInput(p, input, state), state)) {
+          match = p;
+          break;
+        }
+      }
+    }
+
+    if (match != null) {
+      PayloadFactory f = factories.get(match.getType());
+      String s = payloadInput(match, input, state);
+      if (lazy) {
+        e.setPendingPayload(match.getType(), f, s, state);
+      } else {
+        e.setPayload(f.create(s, e, state));
       }
-      break;
     }
 
     return e;
@@ -299,23 +583,22 @@ public class Parser {
    */
   public Parser(ParserCfg cfg) {
     log = LoggerFactory.getLogger(Parser.class);
-    jf = new JacksonFactory();
+    mapper = MapperCache.getMapper(MapperCache.Profile.DEFAULT);
     this.cfg = cfg;
     if (cfg.getMaxmindDbPath() != null) {
       geoip = new GeoIP(cfg.getMaxmindDbPath());
     }
+    fastMatcher = buildFastMatcher(cfg);
+    xffSelector = cfg.getXffAddressSelectorAsCidrUtil();
     payloads = new ArrayList<PayloadBase>();
-    payloads.add(new GLB());
-    payloads.add(new Nginx());
-    payloads.add(new SecEvent());
-    payloads.add(new Cloudtrail());
-    payloads.add(new GcpAudit());
-    payloads.add(new ApacheCombined());
-    payloads.add(new BmoAudit());
-    payloads.add(new FxaAuth());
-    payloads.add(new OpenSSH());
-    payloads.add(new Duopull());
-    payloads.add(new Raw());
+    payloadsByType = new EnumMap<Payload.PayloadType, PayloadBase>(Payload.PayloadType.class);
+    factories = new EnumMap<Payload.PayloadType, PayloadFactory>(Payload.PayloadType.class);
+    for (PayloadRegistry.Entry ent : PayloadRegistry.getEntries(cfg.getPayloadTypes())) {
+      PayloadBase p = ent.newMatcher();
+      payloads.add(p);
+      payloadsByType.put(ent.getType(), p);
+      factories.put(ent.getType(), ent.getFactory());
+    }
 
     if (cfg.getIdentityManagerPath() != null) {
       try {
@@ -12,8 +12,11 @@ public class ParserCfg implements Serializable {
 
   private String maxmindDbPath;
   private String fastMatcher;
+  private ArrayList<String> fastMatcherPatterns;
   private ArrayList<String> xffAddressSelectorSubnets;
   private String idmanagerPath;
+  private ArrayList<Payload.PayloadType> payloadTypes;
+  private boolean lazyPayloadDecoding;
 
   /**
    * Create a parser configuration from pipeline {@link InputOptions}
@@ -26,6 +29,10 @@ public class ParserCfg implements Serializable {
     cfg.setMaxmindDbPath(options.getMaxmindDbPath());
     cfg.setIdentityManagerPath(options.getIdentityManagerPath());
     cfg.setParserFastMatcher(options.getParserFastMatcher());
+    if (options.getParserFastMatcherPatterns() != null) {
+      cfg.setParserFastMatcherPatterns(
+          new ArrayList<String>(Arrays.asList(options.getParserFastMatcherPatterns())));
+    }
     if (options.getXffAddressSelector() != null) {
       String parts[] = options.getXffAddressSelector().split(",");
       if (parts.length > 0) {
@@ -138,6 +145,72 @@ public class ParserCfg implements Serializable {
     this.fastMatcher = fastMatcher;
   }
 
+  /**
+   * Get parser fast matcher patterns
+   *
+   * @return {@link ArrayList} of patterns, or null if not specified
+   */
+  public ArrayList<String> getParserFastMatcherPatterns() {
+    return fastMatcherPatterns;
+  }
+
+  /**
+   * Set parser fast matcher patterns
+   *
+   * <p>Patterns are compiled into a single {@link FastMatcher} along with any substring set using
+   * {@link #setParserFastMatcher}, and an input string is dropped prior to parsing if it does not
+   * match any of them. See {@link FastMatcher} for the supported pattern syntax.
+   *
+   * @param patterns Patterns
+   */
+  public void setParserFastMatcherPatterns(ArrayList<String> patterns) {
+    fastMatcherPatterns = patterns;
+  }
+
+  /**
+   * Get payload types enabled in the parser
+   *
+   * @return {@link ArrayList} of payload types, or null if all payload types are enabled
+   */
+  public ArrayList<Payload.PayloadType> getPayloadTypes() {
+    return payloadTypes;
+  }
+
+  /**
+   * Set payload types enabled in the parser
+   *
+   * <p>If set, the parser will only attempt to match events against the specified payload types, in
+   * the priority order defined by {@link PayloadRegistry}. Events that do not match any of the
+   * configured types will be returned with a {@link Raw} payload. If unset, all supported payload
+   * types are enabled.
+   *
+   * @param payloadTypes Payload types to enable
+   */
+  public void setPayloadTypes(ArrayList<Payload.PayloadType> payloadTypes) {
+    this.payloadTypes = payloadTypes;
+  }
+
+  /**
+   * Get lazy payload decoding setting
+   *
+   * @return True if payload decoding is deferred until first access
+   */
+  public boolean getLazyPayloadDecoding() {
+    return lazyPayloadDecoding;
+  }
+
+  /**
+   * Set lazy payload decoding
+   *
+   * <p>If enabled, the parser identifies the payload type of an event but defers construction of
+   * the payload object until the payload, normalized data, or timestamp of the event is accessed.
+   *
+   * @param lazyPayloadDecoding True to enable lazy payload decoding
+   */
+  public void setLazyPayloadDecoding(boolean lazyPayloadDecoding) {
+    this.lazyPayloadDecoding = lazyPayloadDecoding;
+  }
+
   /** Construct default parser configuration */
   public ParserCfg() {}
 }
@@ -1,15 +1,99 @@
 package com.mozilla.secops.parser;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.transforms.DoFn;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 
-/** {@link DoFn} applying simple event parsing operations */
+/**
+ * {@link DoFn} applying simple event parsing operations
+ *
+ * <p>The function reports Beam metrics in the namespace of this class. Counters are maintained for
+ * input events, events parsed by payload type, events that fell through to the {@link Raw} payload
+ * parser, events ignored by the parser, and events rejected by a fast matcher or the inline filter.
+ * Inputs matched by each fast matcher pattern are counted by pattern index, and published when each
+ * bundle finishes. Distributions are maintained for parse time by payload type in microseconds, and
+ * for the lag between the event timestamp and processing time in milliseconds for emitted events.
+ */
 public class ParserDoFn extends DoFn<String, Event> {
   private static final long serialVersionUID = 1L;
 
+  /** Counter, input elements */
+  public static final String METRIC_EVENTS_IN = "events_in";
+  /** Counter prefix, events parsed by payload type (e.g., parsed_openssh) */
+  public static final String METRIC_PARSED_PREFIX = "parsed_";
+  /** Counter, events that did not match any payload parser other than {@link Raw} */
+  public static final String METRIC_RAW_FALLTHROUGH = "raw_fallthrough";
+  /** Counter, input the parser returned no event for */
+  public static final String METRIC_EVENTS_IGNORED = "events_ignored";
+  /** Counter, input rejected by a fast matcher prior to parsing */
+  public static final String METRIC_FAST_MATCHER_REJECTS = "fast_matcher_rejects";
+  /**
+   * Counter prefix, inputs matched by each parser fast matcher pattern, by index in the order the
+   * patterns were configured (e.g., fast_matcher_hits_0)
+   */
+  public static final String METRIC_FAST_MATCHER_HITS_PREFIX = "fast_matcher_hits_";
+  /**
+   * Counter prefix, inputs matched by each fast matcher literal derived from the inline filter, by
+   * index (e.g., filter_matcher_hits_0)
+   */
+  public static final String METRIC_FILTER_MATCHER_HITS_PREFIX = "filter_matcher_hits_";
+  /** Counter, events rejected by the inline filter */
+  public static final String METRIC_INLINE_FILTER_REJECTS = "inline_filter_rejects";
+  /** Distribution prefix, parse time in microseconds by payload type (e.g., parse_time_us_raw) */
+  public static final String METRIC_PARSE_TIME_PREFIX = "parse_time_us_";
+  /** Distribution, milliseconds between event timestamp and processing time */
+  public static final String METRIC_EVENT_LAG = "event_lag_ms";
+
+  private final Counter eventsIn = Metrics.counter(ParserDoFn.class, METRIC_EVENTS_IN);
+  private final Counter rawFallthrough = Metrics.counter(ParserDoFn.class, METRIC_RAW_FALLTHROUGH);
+  private final Counter eventsIgnored = Metrics.counter(ParserDoFn.class, METRIC_EVENTS_IGNORED);
+  private final Counter fastMatcherRejects =
+      Metrics.counter(ParserDoFn.class, METRIC_FAST_MATCHER_REJECTS);
+  private final Counter inlineFilterRejects =
+      Metrics.counter(ParserDoFn.class, METRIC_INLINE_FILTER_REJECTS);
+  private final Distribution eventLag = Metrics.distribution(ParserDoFn.class, METRIC_EVENT_LAG);
+
+  private transient EnumMap<Payload.PayloadType, Counter> parsed;
+  private transient EnumMap<Payload.PayloadType, Distribution> parseTime;
+  private transient HitReporter parserHits;
+  private transient HitReporter filterHits;
+
   private Parser ep;
 
   private EventFilter inlineFilter;
   private ParserCfg cfg;
+  private FastMatcher filterMatcher;
+
+  /** Publishes the per-pattern hit counts of a {@link FastMatcher} as counters */
+  private static class HitReporter {
+    private final FastMatcher matcher;
+    private final Counter[] counters;
+    private final long[] reported;
+
+    HitReporter(FastMatcher matcher, String prefix) {
+      this.matcher = matcher;
+      counters = new Counter[matcher.size()];
+      for (int i = 0; i < counters.length; i++) {
+        counters[i] = Metrics.counter(ParserDoFn.class, prefix + i);
+      }
+      reported = new long[counters.length];
+    }
+
+    void report() {
+      long[] hits = matcher.getHitCounts();
+      for (int i = 0; i < hits.length; i++) {
+        if (hits[i] > reported[i]) {
+          counters[i].inc(hits[i] - reported[i]);
+          reported[i] = hits[i];
+        }
+      }
+    }
+  }
 
   /**
    * Install an inline {@link EventFilter} in this transform
@@ -43,22 +127,130 @@ public class ParserDoFn extends DoFn<String, Event> {
     } else {
       ep = new Parser(cfg);
     }
+
+    parsed = new EnumMap<Payload.PayloadType, Counter>(Payload.PayloadType.class);
+    parseTime = new EnumMap<Payload.PayloadType, Distribution>(Payload.PayloadType.class);
+    for (Payload.PayloadType t : Payload.PayloadType.values()) {
+      String n = t.name().toLowerCase();
+      parsed.put(t, Metrics.counter(ParserDoFn.class, METRIC_PARSED_PREFIX + n));
+      parseTime.put(t, Metrics.distribution(ParserDoFn.class, METRIC_PARSE_TIME_PREFIX + n));
+    }
+
+    // If the inline filter allows it, derive a fast matcher from the filter rules so input that
+    // cannot match the filter is discarded before it is parsed
+    filterMatcher = null;
+    if (inlineFilter != null) {
+      ArrayList<String> literals = inlineFilter.getFastMatcherLiterals();
+      if (literals != null) {
+        filterMatcher = new FastMatcher();
+        for (String l : literals) {
+          filterMatcher.withLiteral(l);
+        }
+      }
+    }
+
+    parserHits = null;
+    if (ep.getFastMatcher() != null) {
+      parserHits = new HitReporter(ep.getFastMatcher(), METRIC_FAST_MATCHER_HITS_PREFIX);
+    }
+    filterHits = null;
+    if (filterMatcher != null) {
+      filterHits = new HitReporter(filterMatcher, METRIC_FILTER_MATCHER_HITS_PREFIX);
+    }
+  }
+
+  /** Publish fast matcher hit counts accumulated since they were last published */
+  void reportFastMatcherHits() {
+    if (parserHits != null) {
+      parserHits.report();
+    }
+    if (filterHits != null) {
+      filterHits.report();
+    }
+  }
+
+  /**
+   * Parse a single input element, updating metrics
+   *
+   * <p>Exactly one of the string or byte input should be supplied.
+   *
+   * @param input Input string, or null if bytes are supplied
+   * @param bytes UTF-8 encoded input, or null if a string is supplied
+   * @return Event to emit, or null if the input was rejected or ignored
+   */
+  Event parseElement(String input, byte[] bytes) {
+    eventsIn.inc();
+
+    FastMatcher fm = ep.getFastMatcher();
+    boolean rejected;
+    if (bytes != null) {
+      rejected =
+          (filterMatcher != null && !filterMatcher.matchesBytes(bytes))
+              || (fm != null && !fm.matchesBytes(bytes));
+    } else {
+      rejected =
+          (filterMatcher != null && !filterMatcher.matches(input))
+              || (fm != null && input != null && !fm.matches(input));
+    }
+    if (rejected) {
+      fastMatcherRejects.inc();
+      return null;
+    }
+
+    // With an inline filter installed, defer payload decoding so events rejected by the filter
+    // based on payload type or Stackdriver metadata are never fully decoded
+    long start = System.nanoTime();
+    boolean lazy = inlineFilter != null || ep.getLazyPayloadDecoding();
+    Event e = bytes != null ? ep.parseInput(bytes, lazy) : ep.parseInput(input, lazy);
+    if (e == null) {
+      eventsIgnored.inc();
+      return null;
+    }
+    Payload.PayloadType type = e.getPayloadType();
+    parsed.get(type).inc();
+    if (type == Payload.PayloadType.RAW) {
+      rawFallthrough.inc();
+    }
+
+    if (inlineFilter != null) {
+      if (!(inlineFilter.matches(e))) {
+        parseTime.get(type).update((System.nanoTime() - start) / 1000);
+        inlineFilterRejects.inc();
+        return null;
+      }
+    }
+    e.decodePayload();
+    parseTime.get(type).update((System.nanoTime() - start) / 1000);
+    eventLag.update(new DateTime(DateTimeZone.UTC).getMillis() - e.getTimestamp().getMillis());
+    return e;
+  }
+
+  /**
+   * Emit a parsed event, using the event timestamp if the inline filter requests it
+   *
+   * @param c Output receiver
+   * @param e Event
+   */
+  void output(DoFn<?, Event>.ProcessContext c, Event e) {
+    if (inlineFilter != null) {
+      if (inlineFilter.getOutputWithTimestamp()) {
+        c.outputWithTimestamp(e, e.getTimestamp().toInstant());
+        return;
+      }
+    }
+    c.output(e);
   }
 
   @ProcessElement
   public void processElement(ProcessContext c) {
-    Event e = ep.parse(c.element());
+    Event e = parseElement(c.element(), null);
     if (e != null) {
-      if (inlineFilter != null) {
-        if (!(inlineFilter.matches(e))) {
-          return;
-        }
-        if (inlineFilter.getOutputWithTimestamp()) {
-          c.outputWithTimestamp(e, e.getTimestamp().toInstant());
-          return;
-        }
-      }
-      c.output(e);
+      output(c, e);
     }
   }
+
+  @FinishBundle
+  public void finishBundle() {
+    reportFastMatcherHits();
+  }
 }
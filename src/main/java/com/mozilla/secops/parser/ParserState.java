@@ -1,31 +1,121 @@
 package com.mozilla.secops.parser;
 
-import com.google.api.services.logging.v2.model.LogEntry;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.function.Supplier;
 
 /** Stores per-event state of parser */
 class ParserState {
   private final Parser parser;
-  private LogEntry logEntryHint;
+  private JsonNode logEntryHint;
+  private JsonNode decodedInput;
+  private Supplier<String> inputSupplier;
+  private String suppliedInput;
   private Mozlog mozLogHint;
+  private Payload.PayloadType tokenHintType;
+  private String tokenHintInput;
+  private Object tokenHint;
 
   /**
    * Get LogEntry hint
    *
+   * <p>The hint is the decoded JSON tree of the original input, and is set if the input could be
+   * decoded as a JSON object.
+   *
    * @return hint or null if it has not been set
    */
-  public LogEntry getLogEntryHint() {
+  public JsonNode getLogEntryHint() {
     return logEntryHint;
   }
 
   /**
    * Set LogEntry hint
    *
-   * @param entry LogEntry to store as hint
+   * @param entry Decoded LogEntry to store as hint
    */
-  public void setLogEntryHint(LogEntry entry) {
+  public void setLogEntryHint(JsonNode entry) {
     logEntryHint = entry;
   }
 
+  /**
+   * Get jsonPayload node from LogEntry hint
+   *
+   * @return jsonPayload object node, or null if not present
+   */
+  public JsonNode getLogEntryJsonPayload() {
+    return getLogEntryObject("jsonPayload");
+  }
+
+  /**
+   * Get protoPayload node from LogEntry hint
+   *
+   * @return protoPayload object node, or null if not present
+   */
+  public JsonNode getLogEntryProtoPayload() {
+    return getLogEntryObject("protoPayload");
+  }
+
+  private JsonNode getLogEntryObject(String field) {
+    if (logEntryHint == null) {
+      return null;
+    }
+    JsonNode ret = logEntryHint.get(field);
+    if (ret == null || !ret.isObject()) {
+      return null;
+    }
+    return ret;
+  }
+
+  /**
+   * Get decoded input
+   *
+   * <p>If the input string being supplied to the payload parsers has already been decoded as JSON
+   * by the parser, this returns the decoded tree so matchers and constructors can consume it
+   * directly instead of decoding the input string again.
+   *
+   * @return Decoded JSON tree for current input, or null if not available
+   */
+  public JsonNode getDecodedInput() {
+    return decodedInput;
+  }
+
+  /**
+   * Set decoded input
+   *
+   * @param node Decoded JSON tree corresponding to current input string, or null
+   */
+  public void setDecodedInput(JsonNode node) {
+    decodedInput = node;
+  }
+
+  /**
+   * Set input supplier
+   *
+   * <p>If the input string for the payload parsers has not been created, it is created using the
+   * supplier the first time it is requested with {@link #getInput}.
+   *
+   * @param supplier Supplier returning the input string
+   */
+  public void setInputSupplier(Supplier<String> supplier) {
+    inputSupplier = supplier;
+    suppliedInput = null;
+  }
+
+  /**
+   * Get input string for a payload parser
+   *
+   * @param input Input string, or null if it has not been created
+   * @return Input string, created using the input supplier if required
+   */
+  public String getInput(String input) {
+    if (input != null || inputSupplier == null) {
+      return input;
+    }
+    if (suppliedInput == null) {
+      suppliedInput = inputSupplier.get();
+    }
+    return suppliedInput;
+  }
+
   /**
    * Get Mozlog hint
    *
@@ -44,6 +134,36 @@ class ParserState {
     mozLogHint = entry;
   }
 
+  /**
+   * Get token hint
+   *
+   * <p>The token hint is set by a payload matcher that tokenizes the input while testing it, so the
+   * payload parser can reuse the token boundaries rather than scanning the input again.
+   *
+   * @param type Payload type the hint is requested for
+   * @param input Input string the hint is requested for
+   * @return hint or null if it has not been set for this payload type and input
+   */
+  public Object getTokenHint(Payload.PayloadType type, String input) {
+    if (type != tokenHintType || input != tokenHintInput) {
+      return null;
+    }
+    return tokenHint;
+  }
+
+  /**
+   * Set token hint
+   *
+   * @param type Payload type that tokenized the input
+   * @param input Input string that was tokenized
+   * @param hint Token hint to store
+   */
+  public void setTokenHint(Payload.PayloadType type, String input, Object hint) {
+    tokenHintType = type;
+    tokenHintInput = input;
+    tokenHint = hint;
+  }
+
   /**
    * Get {@link Parser} associated with this state object
    *
@@ -4,6 +4,9 @@ import static com.fasterxml.jackson.annotation.JsonSubTypes.Type;
 
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 /** Base class for payloads */
 @JsonTypeInfo(
@@ -39,6 +42,36 @@ public abstract class PayloadBase {
     return false;
   }
 
+  /**
+   * Test if the payload requires the input string
+   *
+   * <p>Payloads which decode events using only the decoded input and LogEntry hint in the parser
+   * state return false, and the parser may then supply a null input string to the matcher and
+   * constructor if the input string has not otherwise been created.
+   *
+   * @return True if the input string is required
+   */
+  boolean requiresInputString() {
+    return true;
+  }
+
+  /**
+   * Write payload fields for {@link EventCoder}
+   *
+   * <p>Every payload must encode all of its fields, otherwise they are lost when the event is
+   * encoded.
+   *
+   * @param out Output stream
+   */
+  abstract void writeFields(DataOutputStream out) throws IOException;
+
+  /**
+   * Read payload fields written by {@link #writeFields}
+   *
+   * @param in Input stream
+   */
+  abstract void readFields(DataInputStream in) throws IOException;
+
   private void setType(String value) {
     // Noop setter, required for event deserialization
   }
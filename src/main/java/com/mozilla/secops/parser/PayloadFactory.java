@@ -0,0 +1,15 @@
+package com.mozilla.secops.parser;
+
+/** Constructs a parsed payload object without the use of reflection */
+@FunctionalInterface
+public interface PayloadFactory {
+  /**
+   * Construct parser object.
+   *
+   * @param input Input string.
+   * @param e Parent {@link Event}.
+   * @param state Parser state.
+   * @return Payload object
+   */
+  PayloadBase create(String input, Event e, ParserState state);
+}
@@ -0,0 +1,115 @@
+package com.mozilla.secops.parser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Registry of payload parsers supported by {@link Parser}
+ *
+ * <p>Each entry in the registry associates a payload type with a supplier for the matcher object
+ * and a {@link PayloadFactory} used to construct the parser object. Entries are stored in priority
+ * order; when scanning for a matching payload parser, the entry with the highest priority (lowest
+ * index) is tested first.
+ */
+public class PayloadRegistry {
+  /** Entry in the payload registry */
+  public static class Entry {
+    private final Payload.PayloadType type;
+    private final Supplier<PayloadBase> matcher;
+    private final PayloadFactory factory;
+
+    /**
+     * Get payload type
+     *
+     * @return Payload type
+     */
+    public Payload.PayloadType getType() {
+      return type;
+    }
+
+    /**
+     * Create new matcher object for entry
+     *
+     * @return Matcher object
+     */
+    public PayloadBase newMatcher() {
+      return matcher.get();
+    }
+
+    /**
+     * Get payload factory
+     *
+     * @return Payload factory
+     */
+    public PayloadFactory getFactory() {
+      return factory;
+    }
+
+    Entry(Payload.PayloadType type, Supplier<PayloadBase> matcher, PayloadFactory factory) {
+      this.type = type;
+      this.matcher = matcher;
+      this.factory = factory;
+    }
+  }
+
+  private static final List<Entry> entries;
+
+  static {
+    ArrayList<Entry> e = new ArrayList<Entry>();
+    e.add(new Entry(Payload.PayloadType.GLB, GLB::new, GLB::new));
+    e.add(new Entry(Payload.PayloadType.NGINX, Nginx::new, Nginx::new));
+    e.add(new Entry(Payload.PayloadType.SECEVENT, SecEvent::new, SecEvent::new));
+    e.add(new Entry(Payload.PayloadType.CLOUDTRAIL, Cloudtrail::new, Cloudtrail::new));
+    e.add(new Entry(Payload.PayloadType.GCPAUDIT, GcpAudit::new, GcpAudit::new));
+    e.add(new Entry(Payload.PayloadType.APACHE_COMBINED, ApacheCombined::new, ApacheCombined::new));
+    e.add(new Entry(Payload.PayloadType.BMOAUDIT, BmoAudit::new, BmoAudit::new));
+    e.add(new Entry(Payload.PayloadType.FXAAUTH, FxaAuth::new, FxaAuth::new));
+    e.add(new Entry(Payload.PayloadType.OPENSSH, OpenSSH::new, OpenSSH::new));
+    e.add(new Entry(Payload.PayloadType.DUOPULL, Duopull::new, Duopull::new));
+    e.add(new Entry(Payload.PayloadType.RAW, Raw::new, Raw::new));
+    entries = Collections.unmodifiableList(e);
+  }
+
+  /**
+   * Return registry entries for the specified payload types in priority order
+   *
+   * <p>If types is null, all registered entries are returned. {@link Payload.PayloadType#RAW} is
+   * always included as the lowest priority entry, so events which do not match any other registered
+   * payload parser are still assigned a payload.
+   *
+   * @param types Payload types to include, or null for all
+   * @return List of registry entries
+   */
+  public static List<Entry> getEntries(Collection<Payload.PayloadType> types) {
+    if (types == null) {
+      return entries;
+    }
+    ArrayList<Entry> ret = new ArrayList<Entry>();
+    for (Entry e : entries) {
+      if (types.contains(e.getType()) || e.getType() == Payload.PayloadType.RAW) {
+        ret.add(e);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Return registry entry for the specified payload type
+   *
+   * @param type Payload type
+   * @return Registry entry, or null if the type is not registered
+   */
+  public static Entry getEntry(Payload.PayloadType type) {
+    for (Entry e : entries) {
+      if (e.getType() == type) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  private PayloadRegistry() {}
+}
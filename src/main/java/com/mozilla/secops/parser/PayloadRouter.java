@@ -0,0 +1,134 @@
+package com.mozilla.secops.parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Selects candidate payload parsers for an event using cheap discriminators
+ *
+ * <p>The router inspects information that has already been extracted by the parser when stripping
+ * encapsulation (the LogEntry hint, the Mozlog hint and the decoded input), along with the leading
+ * bytes of the input, and returns an ordered list of payload types that are likely to match the
+ * event. The parser tests these candidates first, and falls back to an ordered scan of the
+ * remaining payload parsers if none of the candidates match.
+ */
+class PayloadRouter {
+  private static final String GLB_TYPE =
+      "type.googleapis.com/google.cloud.loadbalancing.type.LoadBalancerLogEntry";
+  private static final String AUDITLOG_TYPE = "type.googleapis.com/google.cloud.audit.AuditLog";
+
+  private static final Pattern syslogTs = Pattern.compile("^" + Parser.SYSLOG_TS_RE + " ");
+
+  private static String textValue(JsonNode node, String field) {
+    if (node == null) {
+      return null;
+    }
+    JsonNode v = node.get(field);
+    if (v == null || !v.isTextual()) {
+      return null;
+    }
+    return v.asText();
+  }
+
+  private static Object fieldValue(ParserState state, String field) {
+    JsonNode d = state.getDecodedInput();
+    if (d != null) {
+      JsonNode v = d.get(field);
+      if (v == null && state.getMozlogHint() == null) {
+        // Check for the field in an encapsulated json payload if present; if the input was
+        // Mozlog the decoded input is already the Mozlog fields
+        JsonNode jp = state.getLogEntryJsonPayload();
+        if (jp != null) {
+          v = jp.get(field);
+        }
+      }
+      if (v == null || v.isNull()) {
+        return null;
+      }
+      return v.isTextual() ? v.asText() : v;
+    }
+    Mozlog m = state.getMozlogHint();
+    if (m != null) {
+      Map<String, Object> fields = m.getFields();
+      if (fields != null) {
+        return fields.get(field);
+      }
+    }
+    return null;
+  }
+
+  static char firstNonWhitespace(String input) {
+    for (int i = 0; i < input.length(); i++) {
+      char c = input.charAt(i);
+      if (!Character.isWhitespace(c)) {
+        return c;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Return ordered list of candidate payload types for an event
+   *
+   * @param input Input string with encapsulation stripped, or null if it has not been created from
+   *     the decoded JSON object
+   * @param state Parser state for event
+   * @return Candidate payload types, empty if no discriminator applied
+   */
+  static List<Payload.PayloadType> route(String input, ParserState state) {
+    ArrayList<Payload.PayloadType> ret = new ArrayList<>();
+
+    // LogEntry payload type discriminators
+    JsonNode jsonPayload = state.getLogEntryJsonPayload();
+    if (jsonPayload != null) {
+      if (GLB_TYPE.equals(textValue(jsonPayload, "@type"))) {
+        ret.add(Payload.PayloadType.GLB);
+        return ret;
+      }
+      if (state.getMozlogHint() == null && !jsonPayload.has("eventVersion")) {
+        ret.add(Payload.PayloadType.NGINX);
+      }
+    }
+    if (AUDITLOG_TYPE.equals(textValue(state.getLogEntryProtoPayload(), "@type"))) {
+      ret.add(Payload.PayloadType.GCPAUDIT);
+      return ret;
+    }
+
+    if (input != null && firstNonWhitespace(input) != '{') {
+      // The input is not a JSON document, so only the line based parsers can apply
+      if (syslogTs.matcher(input).lookingAt()) {
+        ret.add(Payload.PayloadType.OPENSSH);
+      } else {
+        ret.add(Payload.PayloadType.APACHE_COMBINED);
+      }
+      ret.add(Payload.PayloadType.RAW);
+      return ret;
+    }
+
+    // Document content discriminators
+    if (fieldValue(state, "secevent_version") != null) {
+      ret.add(Payload.PayloadType.SECEVENT);
+    }
+    if (fieldValue(state, "eventVersion") != null) {
+      ret.add(Payload.PayloadType.CLOUDTRAIL);
+    }
+    if ("duopull event".equals(fieldValue(state, "msg"))) {
+      ret.add(Payload.PayloadType.DUOPULL);
+    }
+
+    // Mozlog discriminators
+    Mozlog m = state.getMozlogHint();
+    if (m != null) {
+      if ("audit".equals(m.getType())) {
+        ret.add(Payload.PayloadType.BMOAUDIT);
+      }
+      if ("fxa-auth-server".equals(m.getLogger())) {
+        ret.add(Payload.PayloadType.FXAAUTH);
+      }
+    }
+    return ret;
+  }
+}
@@ -1,5 +1,8 @@
 package com.mozilla.secops.parser;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -23,6 +26,16 @@ public class Raw extends PayloadBase implements Serializable {
     return Payload.PayloadType.RAW;
   }
 
+  @Override
+  void writeFields(DataOutputStream out) throws IOException {
+    EventCoder.writeString(out, raw);
+  }
+
+  @Override
+  void readFields(DataInputStream in) throws IOException {
+    raw = EventCoder.readString(in);
+  }
+
   /** Construct matcher object. */
   public Raw() {}
 
@@ -1,10 +1,10 @@
 package com.mozilla.secops.parser;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.joda.JodaModule;
-import com.maxmind.geoip2.model.CityResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import org.joda.time.DateTime;
@@ -15,21 +15,28 @@ public class SecEvent extends PayloadBase implements Serializable {
 
   private com.mozilla.secops.parser.models.secevent.SecEvent secEventData;
 
-  private ObjectMapper getObjectMapper() {
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.registerModule(new JodaModule());
-    mapper.configure(
-        com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-    mapper.configure(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES, true);
-    return mapper;
+  private com.mozilla.secops.parser.models.secevent.SecEvent decode(String input, ParserState state)
+      throws IOException {
+    ObjectReader reader =
+        MapperCache.getReader(
+            MapperCache.Profile.MOZLOG, com.mozilla.secops.parser.models.secevent.SecEvent.class);
+    JsonNode node = state.getDecodedInput();
+    if (node != null) {
+      return reader.readValue(node);
+    }
+    return reader.readValue(input);
+  }
+
+  @Override
+  boolean requiresInputString() {
+    return false;
   }
 
   @Override
   public Boolean matcher(String input, ParserState state) {
-    ObjectMapper mapper = getObjectMapper();
     com.mozilla.secops.parser.models.secevent.SecEvent d;
     try {
-      d = mapper.readValue(input, com.mozilla.secops.parser.models.secevent.SecEvent.class);
+      d = decode(input, state);
     } catch (IOException exc) {
       return false;
     }
@@ -76,6 +83,25 @@ public class SecEvent extends PayloadBase implements Serializable {
     return secEventData;
   }
 
+  @Override
+  void writeFields(DataOutputStream out) throws IOException {
+    EventCoder.writeJson(
+        out,
+        MapperCache.getWriter(
+            MapperCache.Profile.MOZLOG, com.mozilla.secops.parser.models.secevent.SecEvent.class),
+        secEventData);
+  }
+
+  @Override
+  void readFields(DataInputStream in) throws IOException {
+    secEventData =
+        EventCoder.readJson(
+            in,
+            MapperCache.getReader(
+                MapperCache.Profile.MOZLOG,
+                com.mozilla.secops.parser.models.secevent.SecEvent.class));
+  }
+
   /** Construct matcher object. */
   public SecEvent() {}
 
@@ -87,10 +113,8 @@ public class SecEvent extends PayloadBase implements Serializable {
    * @param state State
    */
   public SecEvent(String input, Event e, ParserState state) {
-    ObjectMapper mapper = getObjectMapper();
     try {
-      secEventData =
-          mapper.readValue(input, com.mozilla.secops.parser.models.secevent.SecEvent.class);
+      secEventData = decode(input, state);
       if (secEventData == null) {
         return;
       }
@@ -106,10 +130,10 @@ public class SecEvent extends PayloadBase implements Serializable {
 
     String sa = secEventData.getSourceAddress();
     if (sa != null) {
-      CityResponse cr = state.getParser().geoIp(sa);
-      if (cr != null) {
-        secEventData.setSourceAddressCity(cr.getCity().getName());
-        secEventData.setSourceAddressCountry(cr.getCountry().getIsoCode());
+      GeoIP.Location loc = state.getParser().geoIpLocation(sa);
+      if (loc != null) {
+        secEventData.setSourceAddressCity(loc.getCity());
+        secEventData.setSourceAddressCountry(loc.getCountry());
       }
     }
   }
@@ -0,0 +1,197 @@
+package com.mozilla.secops.parser;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Timestamp decoder for ISO8601 strings
+ *
+ * <p>The fixed RFC3339 layouts emitted by Stackdriver and similar sources (for example
+ * 2018-09-28T18:55:12.469373944Z) are decoded directly, without using a Joda formatter. Events in a
+ * stream are generally close together in time, so the decoder memoizes the date and time up to the
+ * second from the last timestamp it decoded, and only the fractional seconds and offset are parsed
+ * when the next timestamp falls in the same second. Any input not in the fixed layout is handed to
+ * the Joda ISO8601 parser.
+ *
+ * <p>Results are identical to {@link ISODateTimeFormat#dateTimeParser}; values without an offset
+ * are interpreted in the default time zone, and returned values are in the default time zone.
+ *
+ * <p>Decoders are thread-safe.
+ */
+public class TimestampDecoder {
+  // Length of yyyy-MM-ddTHH:mm:ss
+  private static final int SECOND_PREFIX_LENGTH = 19;
+
+  private static final DateTimeFormatter fallback = ISODateTimeFormat.dateTimeParser();
+
+  private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+  private static class Memo {
+    private final String prefix;
+    private final long millis;
+
+    Memo(String prefix, long millis) {
+      this.prefix = prefix;
+      this.millis = millis;
+    }
+  }
+
+  private volatile Memo memo;
+
+  /**
+   * Parse an ISO8601 date string
+   *
+   * @param in Input string
+   * @return Parsed {@link DateTime}
+   * @throws IllegalArgumentException if the input is not a valid ISO8601 date string
+   */
+  public DateTime parseISO8601(String in) {
+    DateTimeZone zone = DateTimeZone.getDefault();
+    long millis = decode(in, zone);
+    if (millis == Long.MIN_VALUE) {
+      return fallback.parseDateTime(in);
+    }
+    return new DateTime(millis, zone);
+  }
+
+  /**
+   * Decode the fixed layout, returning Long.MIN_VALUE if the input should be handed to the fallback
+   * parser
+   */
+  private long decode(String in, DateTimeZone zone) {
+    int len = in.length();
+    if (len < SECOND_PREFIX_LENGTH) {
+      return Long.MIN_VALUE;
+    }
+
+    long base;
+    Memo m = memo;
+    if (m != null && in.regionMatches(0, m.prefix, 0, SECOND_PREFIX_LENGTH)) {
+      base = m.millis;
+    } else {
+      base = decodeSecond(in);
+      if (base == Long.MIN_VALUE) {
+        return Long.MIN_VALUE;
+      }
+      memo = new Memo(in.substring(0, SECOND_PREFIX_LENGTH), base);
+    }
+
+    int i = SECOND_PREFIX_LENGTH;
+    int frac = 0;
+    if (i < len && (in.charAt(i) == '.' || in.charAt(i) == ',')) {
+      // Fractional seconds, anything beyond millisecond precision is truncated
+      int digits = 0;
+      i++;
+      while (i < len && isDigit(in.charAt(i))) {
+        if (digits < 3) {
+          frac = frac * 10 + (in.charAt(i) - '0');
+        }
+        digits++;
+        i++;
+      }
+      if (digits == 0) {
+        return Long.MIN_VALUE;
+      }
+      for (; digits < 3; digits++) {
+        frac *= 10;
+      }
+    }
+    long local = base + frac;
+
+    if (i == len) {
+      // No offset, interpret in the default time zone; zones with transitions are left to the
+      // fallback parser
+      if (zone.isFixed()) {
+        return local - zone.getOffset(local);
+      }
+      return Long.MIN_VALUE;
+    }
+
+    char c = in.charAt(i);
+    if (c == 'Z' && i + 1 == len) {
+      return local;
+    }
+    if (c != '+' && c != '-') {
+      return Long.MIN_VALUE;
+    }
+    // Offset in the form +hh:mm or +hhmm
+    int hh = twoDigits(in, i + 1);
+    int mmpos = i + 3;
+    if (mmpos < len && in.charAt(mmpos) == ':') {
+      mmpos++;
+    }
+    if (mmpos + 2 != len) {
+      return Long.MIN_VALUE;
+    }
+    int mm = twoDigits(in, mmpos);
+    if (hh < 0 || hh > 23 || mm < 0 || mm > 59) {
+      return Long.MIN_VALUE;
+    }
+    long offset = (hh * 60L + mm) * 60000L;
+    return c == '+' ? local - offset : local + offset;
+  }
+
+  /** Decode yyyy-MM-ddTHH:mm:ss as UTC, returning Long.MIN_VALUE if not in this layout */
+  private static long decodeSecond(String in) {
+    if (in.charAt(4) != '-'
+        || in.charAt(7) != '-'
+        || in.charAt(10) != 'T'
+        || in.charAt(13) != ':'
+        || in.charAt(16) != ':') {
+      return Long.MIN_VALUE;
+    }
+    int yh = twoDigits(in, 0);
+    int yl = twoDigits(in, 2);
+    int month = twoDigits(in, 5);
+    int day = twoDigits(in, 8);
+    int hour = twoDigits(in, 11);
+    int minute = twoDigits(in, 14);
+    int second = twoDigits(in, 17);
+    if (yh < 0 || yl < 0 || day < 1 || hour < 0 || hour > 23) {
+      return Long.MIN_VALUE;
+    }
+    if (month < 1 || month > 12 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      return Long.MIN_VALUE;
+    }
+    int year = yh * 100 + yl;
+    if (year == 0) {
+      return Long.MIN_VALUE;
+    }
+    int dim = DAYS_IN_MONTH[month - 1];
+    if (month == 2 && (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0)) {
+      dim++;
+    }
+    if (day > dim) {
+      return Long.MIN_VALUE;
+    }
+    return ((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+  }
+
+  /** Return the number of days since the epoch for a proleptic Gregorian date */
+  private static long daysFromCivil(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = y / 400;
+    int yoe = y - era * 400;
+    int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    return era * 146097L + doe - 719468L;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static int twoDigits(String in, int off) {
+    if (off + 1 >= in.length()) {
+      return -1;
+    }
+    char a = in.charAt(off);
+    char b = in.charAt(off + 1);
+    if (!isDigit(a) || !isDigit(b)) {
+      return -1;
+    }
+    return (a - '0') * 10 + (b - '0');
+  }
+}
@@ -1,2 +0,0 @@
-/** JSON model for nginx log messages in Stackdriver jsonPayload */
-package com.mozilla.secops.parser.models.nginxstackdriver;
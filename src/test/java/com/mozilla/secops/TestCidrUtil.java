@@ -1,8 +1,13 @@
 package com.mozilla.secops;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.net.InetAddress;
+import java.util.Arrays;
+import org.apache.commons.validator.routines.InetAddressValidator;
 import org.junit.Test;
 
 public class TestCidrUtil {
@@ -38,4 +43,80 @@ public class TestCidrUtil {
     assertTrue(c.contains("192.168.1.25"));
     assertTrue(c.contains("35.232.216.1"));
   }
+
+  @Test
+  public void cidrMatchIPv6Test() throws Exception {
+    CidrUtil c = new CidrUtil();
+    c.add("2001:db8:1234::/48");
+    c.add("10.0.0.1");
+    assertTrue(c.contains("2001:db8:1234::1"));
+    assertTrue(c.contains("2001:DB8:1234:ffff:ffff:ffff:ffff:ffff"));
+    assertFalse(c.contains("2001:db8:1235::1"));
+    assertTrue(c.contains("10.0.0.1"));
+    assertTrue(c.contains("::ffff:10.0.0.1"));
+    assertFalse(c.contains("10.0.0.2"));
+    assertFalse(c.contains("localhost"));
+    assertFalse(c.contains(null));
+  }
+
+  @Test
+  public void parseAddressTest() throws Exception {
+    String[] valid =
+        new String[] {
+          "0.0.0.0",
+          "1.2.3.4",
+          "255.255.255.255",
+          "::",
+          "::1",
+          "1::",
+          "2001:db8::1",
+          "2001:0db8:0000:0000:0000:ff00:0042:8329",
+          "fe80::1:2:3:4",
+          "1:2:3:4:5:6:7:8",
+          "1:2:3:4:5:6::8",
+          "::ffff:192.168.1.1",
+          "64:ff9b::10.0.0.1",
+          "1:2:3:4:5:6:1.2.3.4"
+        };
+    String[] invalid =
+        new String[] {
+          "",
+          "test",
+          "1.2.3",
+          "1.2.3.4.5",
+          "1.2.3.999",
+          "01.2.3.4",
+          "1..2.3",
+          "1.2.3.4 ",
+          ":1",
+          "1:",
+          ":::",
+          "1::2::3",
+          "12345::",
+          "1:2:3:4:5:6:7:8:9",
+          "1:2:3:4:5:6:7::8",
+          "1:2:3:4:5:6:7:1.2.3.4",
+          "g::1",
+          "::1.2.3"
+        };
+
+    InetAddressValidator iav = InetAddressValidator.getInstance();
+    byte[] buf = new byte[16];
+    for (String v : valid) {
+      assertTrue(v, iav.isValid(v));
+      byte[] expect = InetAddress.getByName(v).getAddress();
+      int len = CidrUtil.parseAddress(v, 0, v.length(), buf);
+      assertEquals(v, expect.length, len);
+      assertArrayEquals(v, expect, Arrays.copyOf(buf, len));
+
+      // Parse address from within a larger string
+      String w = "x, " + v + ", y";
+      assertEquals(v, len, CidrUtil.parseAddress(w, 3, 3 + v.length(), buf));
+      assertArrayEquals(v, expect, Arrays.copyOf(buf, len));
+    }
+    for (String v : invalid) {
+      assertFalse(v, iav.isValid(v));
+      assertEquals(v, -1, CidrUtil.parseAddress(v, 0, v.length(), buf));
+    }
+  }
 }
@@ -0,0 +1,54 @@
+package com.mozilla.secops;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.values.PCollection;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestCompositeByteInput {
+  public TestCompositeByteInput() {}
+
+  private static InputOptions getInputOptions() {
+    InputOptions o = PipelineOptionsFactory.as(InputOptions.class);
+    o.setInputFile(new String[] {"./target/test-classes/testdata/inputtype_buffer1.txt"});
+    return o;
+  }
+
+  @Rule public final transient TestPipeline pipeline = TestPipeline.fromOptions(getInputOptions());
+
+  @Test
+  public void readBytesTest() throws Exception {
+    InputOptions o = (InputOptions) pipeline.getOptions();
+
+    PCollection<byte[]> results = pipeline.apply(new CompositeByteInput(o));
+    PCollection<Long> count = results.apply(Count.globally());
+
+    PAssert.that(count).containsInAnyOrder(10L);
+
+    pipeline.run().waitUntilFinish();
+  }
+
+  @Test
+  public void splitLinesTest() throws Exception {
+    String[] inputs =
+        new String[] {
+          "", "a", "a\nb", "a\r\nb\n", "\na\n\n", "a\r\rb\r\n", "a\n\r\n\n", "\n", "\r\n\r\n", "a\r"
+        };
+    for (String i : inputs) {
+      String[] expect = i.split("\\r?\\n");
+      List<byte[]> lines = CompositeByteInput.splitLines(i.getBytes(StandardCharsets.UTF_8));
+      assertEquals(expect.length, lines.size());
+      for (int j = 0; j < expect.length; j++) {
+        assertArrayEquals(expect[j].getBytes(StandardCharsets.UTF_8), lines.get(j));
+      }
+    }
+  }
+}
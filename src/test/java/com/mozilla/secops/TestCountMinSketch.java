@@ -0,0 +1,88 @@
+package com.mozilla.secops;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestCountMinSketch {
+  public TestCountMinSketch() {}
+
+  @Rule public final transient TestPipeline pipeline = TestPipeline.create();
+
+  @Test
+  public void countMinSketchTest() throws Exception {
+    CountMinSketch s = new CountMinSketch();
+    for (int i = 0; i < 100000; i++) {
+      s.add(String.format("10.%d.%d.1", i / 256 % 256, i % 256));
+    }
+    s.add("192.168.1.1", 5000L);
+    assertEquals(105000L, s.getTotal());
+
+    // Estimates never undercount, and are close for the default dimensions
+    long e = s.estimate("192.168.1.1");
+    assertTrue(e >= 5000L);
+    assertTrue(e < 5000L + 105000L * 3 / CountMinSketch.DEFAULT_WIDTH);
+    assertTrue(s.estimate("10.0.0.1") >= 2L);
+    assertEquals(0L, new CountMinSketch().estimate("10.0.0.1"));
+  }
+
+  @Test
+  public void countMinSketchMergeTest() throws Exception {
+    CountMinSketch a = new CountMinSketch(3, 16).add("a").add("b");
+    CountMinSketch b = new CountMinSketch(3, 16).add("a", 10L);
+    a.merge(b);
+    assertTrue(a.estimate("a") >= 11L);
+    assertEquals(12L, a.getTotal());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void countMinSketchMergeDimensionsTest() throws Exception {
+    new CountMinSketch(3, 16).merge(new CountMinSketch(3, 32));
+  }
+
+  @Test
+  public void countMinSketchCoderTest() throws Exception {
+    CountMinSketch.CountMinSketchCoder coder = new CountMinSketch.CountMinSketchCoder();
+    CountMinSketch s = new CountMinSketch(4, 64).add("a").add("b", 300L);
+    CountMinSketch d =
+        CoderUtils.decodeFromByteArray(coder, CoderUtils.encodeToByteArray(coder, s));
+    assertEquals(4, d.getDepth());
+    assertEquals(64, d.getWidth());
+    assertEquals(301L, d.getTotal());
+    assertEquals(s.estimate("b"), d.estimate("b"));
+    CoderProperties.structuralValueDecodeEncodeEqual(coder, s);
+  }
+
+  @Test
+  public void countMinSketchCombineTest() throws Exception {
+    ArrayList<String> values = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      values.add(i % 10 == 0 ? "heavy" : String.format("client%d", i));
+    }
+    PCollection<Long> estimate =
+        pipeline
+            .apply(Create.of(values))
+            .apply(Combine.globally(CountMinSketch.combineFn(5, 1024)))
+            .apply(MapElements.into(TypeDescriptors.longs()).via(s -> s.estimate("heavy")));
+    PAssert.thatSingleton(estimate)
+        .satisfies(
+            x -> {
+              assertTrue(x >= 100L && x < 110L);
+              return null;
+            });
+
+    pipeline.run().waitUntilFinish();
+  }
+}
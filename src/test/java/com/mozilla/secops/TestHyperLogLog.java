@@ -0,0 +1,108 @@
+package com.mozilla.secops;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.PCollection;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestHyperLogLog {
+  public TestHyperLogLog() {}
+
+  @Rule public final transient TestPipeline pipeline = TestPipeline.create();
+
+  private static HyperLogLog sketch(int precision, int start, int end) {
+    HyperLogLog ret = new HyperLogLog(precision);
+    for (int i = start; i < end; i++) {
+      ret.add(String.format("10.0.%d.%d", i / 256, i % 256));
+    }
+    return ret;
+  }
+
+  @Test
+  public void hyperLogLogSparseTest() throws Exception {
+    HyperLogLog h = new HyperLogLog();
+    assertEquals(0L, h.cardinality());
+    h.add("a").add("b").add("a");
+    assertTrue(h.isSparse());
+    assertEquals(2L, h.cardinality());
+
+    // Small cardinalities are exact while the sketch is sparse
+    h = sketch(HyperLogLog.DEFAULT_PRECISION, 0, 1000);
+    assertTrue(h.isSparse());
+    assertEquals(1000L, h.cardinality());
+  }
+
+  @Test
+  public void hyperLogLogDenseTest() throws Exception {
+    int[] cardinalities = new int[] {5000, 40000, 250000};
+    for (int n : cardinalities) {
+      HyperLogLog h = sketch(HyperLogLog.DEFAULT_PRECISION, 0, n);
+      assertFalse(h.isSparse());
+      // Well within 5 standard errors at precision 14
+      assertEquals((double) n, (double) h.cardinality(), n * 0.05);
+    }
+
+    // Standard error of about 6.5% at precision 8
+    HyperLogLog h = sketch(8, 0, 10000);
+    assertEquals(10000.0, (double) h.cardinality(), 10000 * 0.3);
+  }
+
+  @Test
+  public void hyperLogLogMergeTest() throws Exception {
+    HyperLogLog a = sketch(12, 0, 600);
+    HyperLogLog b = sketch(12, 400, 30000);
+    assertTrue(a.isSparse());
+    assertFalse(b.isSparse());
+
+    long expect = sketch(12, 0, 30000).cardinality();
+    assertEquals(expect, new HyperLogLog(12).merge(a).merge(b).cardinality());
+    assertEquals(expect, new HyperLogLog(12).merge(b).merge(a).cardinality());
+
+    HyperLogLog c = sketch(12, 0, 600).merge(sketch(12, 400, 800));
+    assertTrue(c.isSparse());
+    assertEquals(800L, c.cardinality());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void hyperLogLogMergePrecisionTest() throws Exception {
+    new HyperLogLog(10).merge(new HyperLogLog(12));
+  }
+
+  @Test
+  public void hyperLogLogCoderTest() throws Exception {
+    HyperLogLog.HyperLogLogCoder coder = new HyperLogLog.HyperLogLogCoder();
+    HyperLogLog[] sketches =
+        new HyperLogLog[] {new HyperLogLog(), sketch(10, 0, 100), sketch(10, 0, 5000)};
+    for (HyperLogLog h : sketches) {
+      HyperLogLog d = CoderUtils.decodeFromByteArray(coder, CoderUtils.encodeToByteArray(coder, h));
+      assertEquals(h.isSparse(), d.isSparse());
+      assertEquals(h.cardinality(), d.cardinality());
+      CoderProperties.structuralValueDecodeEncodeEqual(coder, h);
+    }
+    // Sparse sketches encode compactly
+    assertTrue(CoderUtils.encodeToByteArray(coder, sketch(14, 0, 100)).length < 500);
+  }
+
+  @Test
+  public void hyperLogLogCombineTest() throws Exception {
+    ArrayList<String> values = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      values.add(String.format("client%d", i % 1500));
+    }
+    PCollection<Long> count =
+        pipeline.apply(Create.of(values)).apply(Combine.globally(HyperLogLog.combineFn()));
+    PAssert.that(count).containsInAnyOrder(1500L);
+
+    pipeline.run().waitUntilFinish();
+  }
+}
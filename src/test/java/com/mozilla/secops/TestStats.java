@@ -2,6 +2,7 @@ package com.mozilla.secops;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
@@ -28,9 +29,38 @@ public class TestStats {
               assertEquals(5.5, (double) s.getMean(), 0.1);
               assertEquals(2.25, (double) s.getPopulationVariance(), 0.1);
               assertEquals(55L, (long) s.getTotalSum());
+              assertEquals(1.5, (double) s.getStandardDeviation(), 0.1);
+              assertEquals(5L, (long) s.getMin());
+              assertEquals(10L, (long) s.getMax());
               return null;
             });
 
     pipeline.run().waitUntilFinish();
   }
+
+  @Test
+  public void StatsCombinerMergeTest() throws Exception {
+    Stats.StatsCombiner fn = new Stats.StatsCombiner();
+    ArrayList<Stats.StatsCombiner.State> states = new ArrayList<>();
+    long[][] partitions = new long[][] {{2L, 4L, 4L}, {}, {4L, 5L}, {5L, 7L, 9L}};
+    for (long[] part : partitions) {
+      Stats.StatsCombiner.State state = fn.createAccumulator();
+      for (long v : part) {
+        state = fn.addInput(state, v);
+      }
+      states.add(state);
+    }
+    Stats.StatsOutput s = fn.extractOutput(fn.mergeAccumulators(states));
+    assertEquals(5.0, s.getMean(), 0.0001);
+    assertEquals(4.0, s.getPopulationVariance(), 0.0001);
+    assertEquals(2.0, s.getStandardDeviation(), 0.0001);
+    assertEquals(40L, (long) s.getTotalSum());
+    assertEquals(2L, (long) s.getMin());
+    assertEquals(9L, (long) s.getMax());
+
+    s = fn.extractOutput(fn.createAccumulator());
+    assertEquals(0.0, s.getMean(), 0.0001);
+    assertEquals(0.0, s.getPopulationVariance(), 0.0001);
+    assertEquals(0L, (long) s.getTotalSum());
+  }
 }
@@ -4,11 +4,13 @@ import static org.junit.Assert.assertEquals;
 
 import com.mozilla.secops.TestUtil;
 import com.mozilla.secops.alert.Alert;
+import com.mozilla.secops.parser.CompositeKey;
 import com.mozilla.secops.parser.Event;
 import com.mozilla.secops.parser.ParserCfg;
 import com.mozilla.secops.parser.ParserDoFn;
 import com.mozilla.secops.parser.ParserTest;
 import java.util.Arrays;
+import java.util.Map;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.testing.PAssert;
@@ -17,7 +19,9 @@ import org.apache.beam.sdk.testing.TestStream;
 import org.apache.beam.sdk.transforms.Combine;
 import org.apache.beam.sdk.transforms.Count;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionTuple;
 import org.joda.time.Duration;
 import org.joda.time.Instant;
 import org.junit.Rule;
@@ -161,4 +165,34 @@ public class TestCustoms {
 
     p.run().waitUntilFinish();
   }
+
+  @Test
+  public void detectorDispatchTest() throws Exception {
+    PCollection<String> input =
+        TestUtil.getTestInput("/testdata/customs_rl_badlogin_simple1.txt", p);
+
+    CustomsCfg cfg = CustomsCfg.loadFromResource("/customs/customsdefault.json");
+    DetectorDispatch dispatch = new DetectorDispatch();
+    for (Map.Entry<String, CustomsCfgEntry> entry : cfg.getDetectors().entrySet()) {
+      dispatch.withDetector(
+          entry.getKey(), entry.getValue().getEventFilterCfg().getEventFilter("default"));
+    }
+
+    PCollectionTuple keyed =
+        input
+            .apply(ParDo.of(new ParserDoFn()))
+            .apply(
+                ParDo.of(dispatch)
+                    .withOutputTags(
+                        dispatch.getMainOutputTag(), dispatch.getAdditionalOutputTags()));
+
+    PCollection<Long> count =
+        keyed
+            .get(dispatch.getTag("rl_login_failure_sourceaddress_accountid"))
+            .apply(Combine.globally(Count.<KV<CompositeKey, Event>>combineFn()).withoutDefaults());
+    PAssert.that(count).containsInAnyOrder(5L);
+    PAssert.that(keyed.get(dispatch.getTag("rl_sms_sourceaddress"))).empty();
+
+    p.run().waitUntilFinish();
+  }
 }
@@ -0,0 +1,136 @@
+package com.mozilla.secops.httprequest;
+
+import static org.junit.Assert.assertEquals;
+
+import com.mozilla.secops.HyperLogLog;
+import com.mozilla.secops.TestUtil;
+import com.mozilla.secops.alert.Alert;
+import java.util.ArrayList;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestClientFeatures {
+  public TestClientFeatures() {}
+
+  @Rule public final transient TestPipeline p = TestPipeline.create();
+
+  private HTTPRequest.HTTPRequestOptions getTestOptions() {
+    HTTPRequest.HTTPRequestOptions ret =
+        PipelineOptionsFactory.as(HTTPRequest.HTTPRequestOptions.class);
+    ret.setUseEventTimestamp(true); // Use timestamp from events for our testing
+    ret.setMonitoredResourceIndicator("test");
+    ret.setMaxClientErrorRate(30L);
+    ret.setHardLimitRequestCount(59L);
+    return ret;
+  }
+
+  @Test
+  public void clientFeaturesMergeTest() throws Exception {
+    ClientFeatures.Combiner combiner = new ClientFeatures.Combiner(HyperLogLog.DEFAULT_PRECISION);
+    ArrayList<ClientFeatures> parts = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      ClientFeatures f = combiner.createAccumulator();
+      for (int j = 0; j < 250; j++) {
+        int n = i * 250 + j;
+        f.add(n % 10 == 0 ? 404 : (n % 25 == 0 ? 503 : 200), "/path/" + (n % 100), "ua" + (n % 3));
+      }
+      parts.add(f);
+    }
+    parts.get(0).add(null, null, null);
+
+    ClientFeatures f = combiner.extractOutput(combiner.mergeAccumulators(parts));
+    assertEquals(1001L, f.getRequests());
+    assertEquals(100L, f.getClientErrors());
+    assertEquals(20L, f.getServerErrors());
+    assertEquals(100L, f.getDistinctPaths(), 5.0);
+    assertEquals(3L, f.getDistinctUserAgents());
+
+    ClientFeatures.ClientFeaturesCoder coder = new ClientFeatures.ClientFeaturesCoder();
+    ClientFeatures d =
+        CoderUtils.decodeFromByteArray(coder, CoderUtils.encodeToByteArray(coder, f));
+    assertEquals(f.getRequests(), d.getRequests());
+    assertEquals(f.getClientErrors(), d.getClientErrors());
+    assertEquals(f.getServerErrors(), d.getServerErrors());
+    assertEquals(f.getDistinctPaths(), d.getDistinctPaths());
+    assertEquals(f.getDistinctUserAgents(), d.getDistinctUserAgents());
+  }
+
+  @Test
+  public void clientFeatureAggregationTest() throws Exception {
+    PCollection<String> input = TestUtil.getTestInput("/testdata/httpreq_errorrate1.txt.gz", p);
+
+    PCollection<KV<String, ClientFeatures>> features =
+        input
+            .apply(new HTTPRequest.Parse(getTestOptions()))
+            .apply(new HTTPRequest.WindowForFixed())
+            .apply(new HTTPRequest.ClientFeatureAggregation());
+
+    PAssert.that(features)
+        .inWindow(new IntervalWindow(new Instant(300000L), new Instant(360000L)))
+        .satisfies(
+            i -> {
+              int cnt = 0;
+              for (KV<String, ClientFeatures> kv : i) {
+                ClientFeatures f = kv.getValue();
+                assertEquals(60L, f.getRequests());
+                if (kv.getKey().equals("10.0.0.1") || kv.getKey().equals("10.0.0.2")) {
+                  assertEquals(60L, f.getClientErrors());
+                } else {
+                  assertEquals(0L, f.getClientErrors());
+                }
+                assertEquals(0L, f.getServerErrors());
+                assertEquals(1L, f.getDistinctPaths());
+                assertEquals(1L, f.getDistinctUserAgents());
+                cnt++;
+              }
+              assertEquals(12, cnt);
+              return null;
+            });
+
+    p.run().waitUntilFinish();
+  }
+
+  @Test
+  public void sharedFeaturesAnalysisTest() throws Exception {
+    PCollection<String> input = TestUtil.getTestInput("/testdata/httpreq_errorrate1.txt.gz", p);
+
+    HTTPRequest.HTTPRequestOptions options = getTestOptions();
+    PCollection<KV<String, ClientFeatures>> features =
+        input
+            .apply(new HTTPRequest.Parse(options))
+            .apply(new HTTPRequest.WindowForFixed())
+            .apply(new HTTPRequest.ClientFeatureAggregation(options.getCardinalityPrecision()));
+
+    PCollection<Alert> errorRate =
+        features.apply("error rate", new HTTPRequest.ErrorRateAnalysis(options).fromFeatures());
+    PCollection<Alert> hardLimit =
+        features.apply("hard limit", new HTTPRequest.HardLimitAnalysis(options).fromFeatures());
+
+    PCollection<Long> errorRateCount =
+        errorRate.apply(
+            "count error rate", Combine.globally(Count.<Alert>combineFn()).withoutDefaults());
+    PAssert.that(errorRateCount)
+        .inWindow(new IntervalWindow(new Instant(300000L), new Instant(360000L)))
+        .containsInAnyOrder(2L);
+
+    // Every client makes 60 requests in each window with events
+    PCollection<Long> hardLimitCount =
+        hardLimit.apply(
+            "count hard limit", Combine.globally(Count.<Alert>combineFn()).withoutDefaults());
+    PAssert.that(hardLimitCount)
+        .inWindow(new IntervalWindow(new Instant(300000L), new Instant(360000L)))
+        .containsInAnyOrder(12L);
+
+    p.run().waitUntilFinish();
+  }
+}
@@ -1,16 +1,20 @@
 package com.mozilla.secops.httprequest;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.mozilla.secops.TestUtil;
 import com.mozilla.secops.alert.Alert;
 import com.mozilla.secops.parser.Event;
+import java.util.Arrays;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.transforms.Combine;
 import org.apache.beam.sdk.transforms.Count;
 import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.joda.time.Instant;
 import org.junit.Rule;
@@ -71,6 +75,35 @@ public class TestEndpointAbuse1 {
     p.run().waitUntilFinish();
   }
 
+  @Test
+  public void endpointProfileCombinerTest() throws Exception {
+    HTTPRequest.EndpointAbuseAnalysis.EndpointProfileCombiner fn =
+        new HTTPRequest.EndpointAbuseAnalysis.EndpointProfileCombiner();
+
+    HTTPRequest.EndpointAbuseAnalysis.EndpointProfile a = fn.createAccumulator();
+    a = fn.addInput(a, KV.of(1, "Mozilla"));
+    a = fn.addInput(a, KV.of(1, "curl"));
+    HTTPRequest.EndpointAbuseAnalysis.EndpointProfile b = fn.createAccumulator();
+    b = fn.addInput(b, KV.of(1, "Mozilla"));
+
+    HTTPRequest.EndpointAbuseAnalysis.EndpointProfile m =
+        fn.extractOutput(fn.mergeAccumulators(Arrays.asList(fn.createAccumulator(), a, b)));
+    assertFalse(m.isVaried());
+    assertEquals(1, m.getEndpoint());
+    assertEquals(3, m.getCount());
+    assertEquals("Mozilla", m.getUserAgent());
+
+    HTTPRequest.EndpointAbuseAnalysis.EndpointProfile c = fn.createAccumulator();
+    c = fn.addInput(c, KV.of(0, "Mozilla"));
+    m = fn.mergeAccumulators(Arrays.asList(a, c));
+    assertTrue(m.isVaried());
+    assertEquals(3, m.getCount());
+
+    c = fn.createAccumulator();
+    c = fn.addInput(c, KV.of(HTTPRequest.EndpointAbuseAnalysis.EndpointProfile.UNMONITORED, "x"));
+    assertTrue(c.isVaried());
+  }
+
   @Test
   public void endpointAbuseTestPreprocessFilter() throws Exception {
     PCollection<String> input = TestUtil.getTestInput("/testdata/httpreq_endpointabuse1.txt", p);
@@ -2,13 +2,16 @@ package com.mozilla.secops.httprequest;
 
 import com.mozilla.secops.TestUtil;
 import com.mozilla.secops.parser.Event;
+import java.nio.charset.StandardCharsets;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.transforms.Combine;
 import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TypeDescriptor;
 import org.joda.time.Instant;
 import org.junit.Rule;
 import org.junit.Test;
@@ -79,6 +82,30 @@ public class TestFilter {
     p.run().waitUntilFinish();
   }
 
+  @Test
+  public void withCidrFilterBytesTest() throws Exception {
+    PCollection<byte[]> input =
+        TestUtil.getTestInput("/testdata/httpreq_filter.txt", p)
+            .apply(
+                MapElements.into(TypeDescriptor.of(byte[].class))
+                    .via((String s) -> s.getBytes(StandardCharsets.UTF_8)));
+
+    HTTPRequest.HTTPRequestOptions options = getTestOptions();
+    options.setCidrExclusionList("/testdata/cidrutil2.txt");
+    PCollection<Event> events =
+        input
+            .apply(new HTTPRequest.Parse(options).fromBytes())
+            .apply(new HTTPRequest.WindowForFixed());
+    PCollection<Long> count =
+        events.apply(Combine.globally(Count.<Event>combineFn()).withoutDefaults());
+
+    PAssert.that(count)
+        .inWindow(new IntervalWindow(new Instant(0L), new Instant(60000)))
+        .containsInAnyOrder(2L);
+
+    p.run().waitUntilFinish();
+  }
+
   @Test
   public void withCidrFilterTest() throws Exception {
     PCollection<String> input = TestUtil.getTestInput("/testdata/httpreq_filter.txt", p);
@@ -75,6 +75,42 @@ public class TestHardLimit1 {
     p.run().waitUntilFinish();
   }
 
+  @Test
+  public void hardLimitTestHeavyHitters() throws Exception {
+    PCollection<String> input = TestUtil.getTestInput("/testdata/httpreq_hardlimit1.txt", p);
+
+    HTTPRequest.HTTPRequestOptions options = getTestOptions();
+    options.setHardLimitHeavyHitters(true);
+    // Use a small sketch so estimates collide, candidates are still counted exactly
+    options.setHardLimitSketchWidth(4);
+    PCollection<Alert> results =
+        input
+            .apply(new HTTPRequest.Parse(options))
+            .apply(new HTTPRequest.WindowForFixed())
+            .apply(new HTTPRequest.HardLimitAnalysis(options));
+
+    PCollection<Long> resultCount =
+        results.apply(Combine.globally(Count.<Alert>combineFn()).withoutDefaults());
+    PAssert.that(resultCount)
+        .inWindow(new IntervalWindow(new Instant(0L), new Instant(60000L)))
+        .containsInAnyOrder(2L);
+
+    PAssert.that(results)
+        .inWindow(new IntervalWindow(new Instant(0L), new Instant(60000L)))
+        .satisfies(
+            i -> {
+              for (Alert a : i) {
+                assertThat(
+                    a.getMetadataValue("sourceaddress"),
+                    anyOf(equalTo("192.168.1.2"), equalTo("192.168.1.4")));
+                assertEquals(11L, Long.parseLong(a.getMetadataValue("count")));
+              }
+              return null;
+            });
+
+    p.run().waitUntilFinish();
+  }
+
   @Test
   public void hardLimitTestWithNatDetect() throws Exception {
     PCollection<String> input = TestUtil.getTestInput("/testdata/httpreq_hardlimit1.txt", p);
@@ -4,12 +4,17 @@ import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.mozilla.secops.DetectNat;
 import com.mozilla.secops.TestUtil;
 import com.mozilla.secops.alert.Alert;
 import com.mozilla.secops.parser.Event;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
@@ -106,6 +111,108 @@ public class TestThresholdAnalysis1 {
     p.run().waitUntilFinish();
   }
 
+  @Test
+  public void thresholdAnalysisTestPercentile() throws Exception {
+    PCollection<String> input =
+        TestUtil.getTestInput("/testdata/httpreq_thresholdanalysis1.txt.gz", p);
+
+    HTTPRequest.HTTPRequestOptions options = getTestOptions();
+    options.setThresholdPercentile(50.0);
+    options.setAnalysisThresholdModifier(5.0);
+    PCollection<Alert> results =
+        input
+            .apply(new HTTPRequest.Parse(options))
+            .apply(new HTTPRequest.WindowForFixed())
+            .apply(new HTTPRequest.ThresholdAnalysis(options));
+
+    PCollection<Long> resultCount =
+        results.apply(Combine.globally(Count.<Alert>combineFn()).withoutDefaults());
+    PAssert.that(resultCount)
+        .inWindow(new IntervalWindow(new Instant(300000L), new Instant(360000L)))
+        .containsInAnyOrder(2L);
+
+    PAssert.that(results)
+        .inWindow(new IntervalWindow(new Instant(300000L), new Instant(360000L)))
+        .satisfies(
+            i -> {
+              for (Alert a : i) {
+                assertThat(
+                    a.getMetadataValue("sourceaddress"),
+                    anyOf(equalTo("10.0.0.1"), equalTo("10.0.0.2")));
+                assertEquals(900L, Long.parseLong(a.getMetadataValue("count"), 10));
+                assertEquals(180.0, Double.parseDouble(a.getMetadataValue("mean")), 0.1);
+                assertEquals(
+                    50.0, Double.parseDouble(a.getMetadataValue("threshold_percentile")), 0.1);
+                assertEquals(60.0, Double.parseDouble(a.getMetadataValue("percentile_value")), 0.1);
+              }
+              return null;
+            });
+
+    p.run().waitUntilFinish();
+  }
+
+  @Test
+  public void thresholdAnalysisTestHighPercentile() throws Exception {
+    PCollection<String> input =
+        TestUtil.getTestInput("/testdata/httpreq_thresholdanalysis1.txt.gz", p);
+
+    HTTPRequest.HTTPRequestOptions options = getTestOptions();
+    options.setThresholdPercentile(99.9);
+    PCollection<Alert> results =
+        input
+            .apply(new HTTPRequest.Parse(options))
+            .apply(new HTTPRequest.WindowForFixed())
+            .apply(new HTTPRequest.ThresholdAnalysis(options));
+
+    PCollection<Long> resultCount =
+        results.apply(Combine.globally(Count.<Alert>combineFn()).withoutDefaults());
+    PAssert.that(resultCount)
+        .inWindow(new IntervalWindow(new Instant(300000L), new Instant(360000L)))
+        .containsInAnyOrder(2L);
+
+    PAssert.that(results)
+        .inWindow(new IntervalWindow(new Instant(300000L), new Instant(360000L)))
+        .satisfies(
+            i -> {
+              for (Alert a : i) {
+                assertThat(
+                    a.getMetadataValue("sourceaddress"),
+                    anyOf(equalTo("10.0.0.1"), equalTo("10.0.0.2")));
+                assertEquals(900L, Long.parseLong(a.getMetadataValue("count"), 10));
+                assertEquals(
+                    99.9, Double.parseDouble(a.getMetadataValue("threshold_percentile")), 0.01);
+                assertEquals(
+                    900.0, Double.parseDouble(a.getMetadataValue("percentile_value")), 0.1);
+              }
+              return null;
+            });
+
+    p.run().waitUntilFinish();
+  }
+
+  @Test
+  public void thresholdQuantilesAccuracyTest() throws Exception {
+    // Client counts 1 through n, so the value at each rank is the rank itself
+    long n = 200000L;
+    ArrayList<Long> counts = new ArrayList<>();
+    for (long i = 1; i <= n; i++) {
+      counts.add(i);
+    }
+    Collections.shuffle(counts, new Random(0));
+
+    List<Long> q = HTTPRequest.ThresholdAnalysis.quantilesCombineFn().apply(counts);
+    // The rank error of the sketch is below the 0.1 percentile resolution, so high percentiles
+    // resolve to their own value rather than to the window maximum
+    double maxError = n * 0.001;
+    double[] percentiles = new double[] {50.0, 99.0, 99.8, 99.9};
+    for (double pct : percentiles) {
+      long v = q.get(HTTPRequest.ThresholdAnalysis.quantileIndex(pct));
+      assertEquals(n * pct / 100.0, (double) v, maxError);
+      assertTrue(v < n);
+    }
+    assertEquals(n, (long) q.get(HTTPRequest.ThresholdAnalysis.quantileIndex(100.0)));
+  }
+
   @Test
   public void thresholdAnalysisTestWithNatDetect() throws Exception {
     PCollection<String> input =
@@ -0,0 +1,59 @@
+package com.mozilla.secops.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Arrays;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.junit.Test;
+
+public class CompositeKeyTest {
+  public CompositeKeyTest() {}
+
+  @Test
+  public void testCompositeKey() throws Exception {
+    CompositeKey k = CompositeKey.of("riker", "publickey");
+    assertEquals(2, k.size());
+    assertEquals("riker", k.get(0));
+    assertEquals("publickey", k.get(1));
+    assertArrayEquals(new String[] {"riker", "publickey"}, k.getElements());
+    assertEquals("riker publickey", k.toString());
+
+    assertEquals(k, CompositeKey.of(Arrays.asList("riker", "publickey")));
+    assertEquals(k.hashCode(), CompositeKey.of("riker", "publickey").hashCode());
+    // Values containing the separator used by toString remain distinct
+    assertNotEquals(CompositeKey.of("a b", "c"), CompositeKey.of("a", "b c"));
+    assertNotEquals(CompositeKey.of("a"), CompositeKey.of("a", ""));
+  }
+
+  @Test
+  public void testCompositeKeyCoder() throws Exception {
+    Coder<CompositeKey> coder = CompositeKeyCoder.of();
+    coder.verifyDeterministic();
+    CoderProperties.coderSerializable(coder);
+
+    CompositeKey[] keys =
+        new CompositeKey[] {
+          CompositeKey.of(),
+          CompositeKey.of(""),
+          CompositeKey.of("loginFailure", "q@the-q-continuum"),
+          CompositeKey.of("\u00e9t\u00e9", "\u6771\u4eac", "127.0.0.1")
+        };
+    for (CompositeKey k : keys) {
+      CoderProperties.coderDecodeEncodeEqual(coder, k);
+      CoderProperties.coderDeterministic(coder, k, CompositeKey.of(k.getElements()));
+      CoderProperties.coderConsistentWithEquals(coder, k, CompositeKey.of(k.getElements()));
+    }
+
+    // Count, then length prefixed values
+    assertArrayEquals(
+        new byte[] {2, 1, 'a', 2, 'b', 'c'},
+        CoderUtils.encodeToByteArray(coder, CompositeKey.of("a", "bc")));
+
+    assertEquals(coder, CoderRegistry.createDefault().getCoder(CompositeKey.class));
+  }
+}
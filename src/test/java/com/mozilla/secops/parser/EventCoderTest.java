@@ -0,0 +1,138 @@
+package com.mozilla.secops.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.SerializableUtils;
+import org.junit.Test;
+
+public class EventCoderTest {
+  public EventCoderTest() {}
+
+  private static final String[] resources =
+      new String[] {
+        "/testdata/httpreq_hardlimit1.txt",
+        "/testdata/authprof_buffer1.txt",
+        "/testdata/cloudtrail_buffer1.txt",
+        "/testdata/customs_rl_badlogin_simple1.txt",
+        "/testdata/customs_geo1.txt",
+        "/testdata/duo_buffer1.txt",
+        "/testdata/inputtype_buffer1.txt"
+      };
+
+  private ArrayList<String> readResource(String path) throws Exception {
+    ArrayList<String> ret = new ArrayList<String>();
+    try (BufferedReader r =
+        new BufferedReader(
+            new InputStreamReader(
+                EventCoderTest.class.getResourceAsStream(path), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = r.readLine()) != null) {
+        ret.add(line);
+      }
+    }
+    return ret;
+  }
+
+  private void assertRoundTrip(Event e) throws Exception {
+    Event d =
+        CoderUtils.decodeFromByteArray(
+            EventCoder.of(), CoderUtils.encodeToByteArray(EventCoder.of(), e));
+    assertNotNull(d);
+    assertEquals(e.getEventId(), d.getEventId());
+    assertEquals(e.getPayloadType(), d.getPayloadType());
+    assertEquals(e.getTimestamp(), d.getTimestamp());
+    assertEquals(
+        e.getNormalized().isOfType(Normalized.Type.AUTH),
+        d.getNormalized().isOfType(Normalized.Type.AUTH));
+    assertEquals(
+        e.getNormalized().isOfType(Normalized.Type.HTTP_REQUEST),
+        d.getNormalized().isOfType(Normalized.Type.HTTP_REQUEST));
+    assertEquals(e.toJSON(), d.toJSON());
+    for (EventFilterPayload.StringProperty sp : EventFilterPayload.StringProperty.values()) {
+      assertEquals(
+          sp.toString(), e.getPayload().eventStringValue(sp), d.getPayload().eventStringValue(sp));
+      assertEquals(
+          sp.toString(),
+          e.getNormalized().eventStringValue(sp),
+          d.getNormalized().eventStringValue(sp));
+    }
+    for (EventFilterPayload.IntegerProperty ip : EventFilterPayload.IntegerProperty.values()) {
+      assertEquals(
+          ip.toString(),
+          e.getPayload().eventIntegerValue(ip),
+          d.getPayload().eventIntegerValue(ip));
+    }
+    CoderProperties.coderDecodeEncodeEqual(EventCoder.of(), e);
+  }
+
+  @Test
+  public void testEventCoderRoundTrip() throws Exception {
+    ParserCfg cfg = new ParserCfg();
+    cfg.setMaxmindDbPath(ParserTest.TEST_GEOIP_DBPATH);
+    Parser p = new Parser(cfg);
+    for (String r : resources) {
+      for (String line : readResource(r)) {
+        Event e = p.parse(line);
+        assertNotNull(e);
+        assertRoundTrip(e);
+      }
+    }
+  }
+
+  @Test
+  public void testEventCoderPayloadTypes() throws Exception {
+    String apache =
+        "\"216.160.83.56\" - - [19/Mar/2019:14:52:39 -0500] \"GET /assets/scripts/main.js?t=t HTTP/1.1\" 200"
+            + " 3697 \"https://mozilla.org/item/10\" \"Mozilla/5.0 (Macintosh; Intel Mac OS X 10.12; rv:"
+            + "65.0) Gecko/20100101 Firefox/65.0\"";
+    String buf =
+        "{\"insertId\":\"AAAAAAAAAAAAAAA\",\"jsonPayload\":{\"EnvVersion\":2,\"Fields\":{\"msg\""
+            + ":\"successful login of spock@mozilla.com from 216.160.83.56 using \\\"Mozilla/5.0\\\", auth"
+            + "enticated by Bugzilla::Auth::Login::CGI\",\"remote_ip\":\"216.160.83.56\",\"request_id\""
+            + ":\"00000000\"},\"Hostname\":\"ip-172.us-west-2.compute.internal\",\"Logger\":\"CEREAL\","
+            + "\"Pid\":\"282\",\"Severity\":5,\"Timestamp\":1.548956727e+18,\"Type\":\"audit\"},\"label"
+            + "s\":{\"application\":\"bugzilla\",\"ec2.amazonaws.com/resource_name\":\"ip-172.us-west-2"
+            + ".compute.internal\",\"env\":\"prod\",\"stack\":\"app\",\"type\":\"app\"},\"logName\":\"p"
+            + "rojects/prod/logs/docker.bugzilla\",\"receiveTimestamp\":\"2019-01-31T17:45:27.655836432"
+            + "Z\",\"resource\":{\"labels\":{\"aws_account\":\"000000000000\",\"instance_id\":\"i-0\","
+            + "\"project_id\":\"prod\",\"region\":\"aws:us-west-2a\"},\"type\":\"aws_ec2_instance\"},\""
+            + "timestamp\":\"2019-01-31T17:45:27.478007784Z\"}";
+    Parser p = new Parser();
+    Event e = p.parse(apache);
+    assertEquals(Payload.PayloadType.APACHE_COMBINED, e.getPayloadType());
+    assertRoundTrip(e);
+    e = p.parse(buf);
+    assertEquals(Payload.PayloadType.BMOAUDIT, e.getPayloadType());
+    assertNotNull(e.getMozlog());
+    assertRoundTrip(e);
+  }
+
+  @Test
+  public void testEventCoderLazyPayload() throws Exception {
+    ParserCfg cfg = new ParserCfg();
+    cfg.setLazyPayloadDecoding(true);
+    Event e = new Parser(cfg).parse("test");
+    Event d =
+        CoderUtils.decodeFromByteArray(
+            EventCoder.of(), CoderUtils.encodeToByteArray(EventCoder.of(), e));
+    assertTrue(e.isPayloadDecoded());
+    assertEquals("test", ((Raw) d.getPayload()).getRaw());
+  }
+
+  @Test
+  public void testEventCoderRegistered() throws Exception {
+    Coder<Event> c = Pipeline.create().getCoderRegistry().getCoder(Event.class);
+    assertTrue(c instanceof EventCoder);
+    SerializableUtils.ensureSerializable(c);
+  }
+}
@@ -1,5 +1,6 @@
 package com.mozilla.secops.parser;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -505,4 +506,88 @@ public class EventFilterTest {
     filter.addRule(rule);
     assertFalse(filter.matches(e));
   }
+
+  @Test
+  public void testEventFilterProgram() throws Exception {
+    EventFilter filter = new EventFilter().setWantUTC(true);
+    for (int status : new int[] {403, 404, 200}) {
+      filter.addRule(
+          new EventFilterRule()
+              .wantNormalizedType(Normalized.Type.HTTP_REQUEST)
+              .wantSubtype(Payload.PayloadType.RAW)
+              .addPayloadFilter(
+                  new EventFilterPayload()
+                      .withIntegerMatch(
+                          EventFilterPayload.IntegerProperty.NORMALIZED_REQUESTSTATUS, status)));
+    }
+    filter.addRule(
+        new EventFilterRule()
+            .wantSubtype(Payload.PayloadType.RAW)
+            .addPayloadFilter(
+                new EventFilterPayload(Raw.class)
+                    .withStringMatch(EventFilterPayload.StringProperty.RAW_RAW, "test"))
+            .except(
+                new EventFilterRule()
+                    .addPayloadFilter(
+                        new EventFilterPayload()
+                            .withStringRegexMatch(
+                                EventFilterPayload.StringProperty.RAW_RAW, "t.st"))));
+
+    // Payload type and normalized type checks are shared between rules
+    assertEquals(8, filter.getProgram().getAtomCount());
+
+    Parser p = new Parser();
+    Event e = p.parse("test", true);
+    assertFalse(e.isPayloadDecoded());
+    assertFalse(filter.matches(e));
+    e = p.parse("other", true);
+    assertFalse(filter.matches(e));
+
+    // Rules added after first use are included
+    filter.addRule(
+        new EventFilterRule()
+            .wantSubtype(Payload.PayloadType.RAW)
+            .addPayloadFilter(
+                new EventFilterPayload(Raw.class)
+                    .withStringMatch(EventFilterPayload.StringProperty.RAW_RAW, "other")));
+    assertTrue(filter.matches(e));
+
+    // Rejected on payload type, the payload is never decoded
+    filter = new EventFilter().setWantUTC(true);
+    filter.addRule(
+        new EventFilterRule()
+            .wantNormalizedType(Normalized.Type.HTTP_REQUEST)
+            .wantSubtype(Payload.PayloadType.GLB));
+    e = p.parse("test", true);
+    assertFalse(filter.matches(e));
+    assertFalse(e.isPayloadDecoded());
+  }
+
+  @Test
+  public void testEventFilterSet() throws Exception {
+    EventFilter raw = new EventFilter();
+    raw.addRule(new EventFilterRule().wantSubtype(Payload.PayloadType.RAW));
+    EventFilter rawTest = new EventFilter();
+    rawTest.addRule(
+        new EventFilterRule()
+            .wantSubtype(Payload.PayloadType.RAW)
+            .addPayloadFilter(
+                new EventFilterPayload(Raw.class)
+                    .withStringMatch(EventFilterPayload.StringProperty.RAW_RAW, "test")));
+    EventFilter glb = new EventFilter();
+    glb.addRule(new EventFilterRule().wantSubtype(Payload.PayloadType.GLB));
+    EventFilterSet set = new EventFilterSet().add(raw).add(rawTest).add(glb);
+    assertEquals(3, set.size());
+
+    Parser p = new Parser();
+    boolean[] out = new boolean[set.size()];
+    assertTrue(set.matches(p.parse("test"), out));
+    assertArrayEquals(new boolean[] {true, true, false}, out);
+    assertTrue(set.matches(p.parse("other"), out));
+    assertArrayEquals(new boolean[] {true, false, false}, out);
+
+    glb.matchAny();
+    assertTrue(set.matches(p.parse("other"), out));
+    assertArrayEquals(new boolean[] {true, false, true}, out);
+  }
 }
@@ -115,17 +115,17 @@ public class EventFilterTransformTest {
                     .withStringSelector(EventFilterPayload.StringProperty.SECEVENT_ACTION)
                     .withStringSelector(EventFilterPayload.StringProperty.SECEVENT_ACCOUNTID)));
 
-    PCollection<KV<String, Event>> keyed =
+    PCollection<KV<CompositeKey, Event>> keyed =
         input.apply("filter", EventFilter.getKeyingTransform(filter));
-    PCollection<KV<String, Event>> multiKeyed =
+    PCollection<KV<CompositeKey, Event>> multiKeyed =
         input.apply("multiFilter", EventFilter.getKeyingTransform(multiFilter));
 
     PAssert.thatMap(keyed)
         .satisfies(
             results -> {
-              Event ev = results.get("bG9naW5GYWlsdXJl");
+              Event ev = results.get(CompositeKey.of("loginFailure"));
               assertNotNull(ev);
-              ev = results.get("c2VjZXZlbnQubW9kZWwuMQ==");
+              ev = results.get(CompositeKey.of("secevent.model.1"));
               assertNull(ev);
               return null;
             });
@@ -133,9 +133,9 @@ public class EventFilterTransformTest {
     PAssert.thatMap(multiKeyed)
         .satisfies(
             results -> {
-              Event ev = results.get("bG9naW5GYWlsdXJl cUB0aGUtcS1jb250aW51dW0=");
+              Event ev = results.get(CompositeKey.of("loginFailure", "q@the-q-continuum"));
               assertNotNull(ev);
-              ev = results.get("bG9naW5GYWlsdXJl");
+              ev = results.get(CompositeKey.of("loginFailure"));
               assertNull(ev);
               return null;
             });
@@ -167,13 +167,13 @@ public class EventFilterTransformTest {
                 new EventFilterPayload(OpenSSH.class)
                     .withStringSelector(EventFilterPayload.StringProperty.OPENSSH_AUTHMETHOD)));
 
-    PCollection<KV<String, Event>> keyed =
+    PCollection<KV<CompositeKey, Event>> keyed =
         input.apply("filter", EventFilter.getKeyingTransform(filter));
 
     PAssert.thatMap(keyed)
         .satisfies(
             results -> {
-              Event ev = results.get("cmlrZXI= cHVibGlja2V5");
+              Event ev = results.get(CompositeKey.of("riker", "publickey"));
               assertNotNull(ev);
               return null;
             });
@@ -0,0 +1,173 @@
+package com.mozilla.secops.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import org.junit.Test;
+
+public class FastMatcherTest {
+  public FastMatcherTest() {}
+
+  @Test
+  public void testFastMatcherLiterals() throws Exception {
+    FastMatcher m =
+        new FastMatcher().withLiteral("picard").withLiteral("card").withLiteral("riker");
+    assertEquals(3, m.size());
+
+    assertTrue(m.matches("captain picard"));
+    assertTrue(m.matches("riker and picard"));
+    assertTrue(m.matches("a card"));
+    assertFalse(m.matches("worf"));
+    assertFalse(m.matches(""));
+    assertFalse(m.matches(null));
+
+    // Each pattern is counted once per input
+    assertTrue(m.matches("picard picard"));
+    assertArrayEquals(new long[] {3L, 4L, 1L}, m.getHitCounts());
+  }
+
+  @Test
+  public void testFastMatcherAnchors() throws Exception {
+    FastMatcher m = new FastMatcher().withPattern("^{\"").withPattern("sshd$");
+    assertArrayEquals(new String[] {"^{\"", "sshd$"}, m.getPatterns());
+
+    assertTrue(m.matches("{\"test\": 1}"));
+    assertFalse(m.matches(" {\"test\": 1}"));
+    assertTrue(m.matches("starting sshd"));
+    assertFalse(m.matches("sshd starting"));
+    assertArrayEquals(new long[] {1L, 1L}, m.getHitCounts());
+
+    FastMatcher l = new FastMatcher().withLiteral("^test$");
+    assertTrue(l.matches("a ^test$ b"));
+    assertFalse(l.matches("test"));
+  }
+
+  @Test
+  public void testFastMatcherEmpty() throws Exception {
+    FastMatcher m = new FastMatcher();
+    assertEquals(0, m.size());
+    assertFalse(m.matches("test"));
+  }
+
+  @Test
+  public void testFastMatcherNonAscii() throws Exception {
+    FastMatcher m = new FastMatcher().withLiteral("\u00fcn\u00efc\u00f6d\u00e9");
+    assertTrue(m.matches("some \u00fcn\u00efc\u00f6d\u00e9 input"));
+    assertFalse(m.matches("some unicode input"));
+  }
+
+  @Test
+  public void testParserFastMatcherPatterns() throws Exception {
+    ParserCfg cfg = new ParserCfg();
+    ArrayList<String> patterns = new ArrayList<>();
+    patterns.add("^picard");
+    patterns.add("riker$");
+    cfg.setParserFastMatcherPatterns(patterns);
+
+    Parser p = new Parser(cfg);
+    assertNotNull(p.getFastMatcher());
+    assertNotNull(p.parse("picard test"));
+    assertNotNull(p.parse("test riker"));
+    assertNull(p.parse("test picard"));
+    assertNull(p.parse("riker test"));
+    assertArrayEquals(new long[] {1L, 1L}, p.getFastMatcher().getHitCounts());
+  }
+
+  @Test
+  public void testEventFilterFastMatcherLiterals() throws Exception {
+    EventFilter filter = new EventFilter();
+    filter.addRule(
+        new EventFilterRule()
+            .wantSubtype(Payload.PayloadType.RAW)
+            .addPayloadFilter(
+                new EventFilterPayload(Raw.class)
+                    .withStringMatch(EventFilterPayload.StringProperty.RAW_RAW, "test")));
+    filter.addRule(new EventFilterRule().wantStackdriverProject("test-project"));
+    ArrayList<String> l = filter.getFastMatcherLiterals();
+    assertNotNull(l);
+    assertEquals(2, l.size());
+    assertEquals("test", l.get(0));
+    assertEquals("test-project", l.get(1));
+
+    // A rule without a required literal prevents derivation
+    filter.addRule(new EventFilterRule().wantSubtype(Payload.PayloadType.RAW));
+    assertNull(filter.getFastMatcherLiterals());
+
+    // Values that could be escaped in the input are not used
+    EventFilter esc = new EventFilter();
+    esc.addRule(
+        new EventFilterRule()
+            .addPayloadFilter(
+                new EventFilterPayload(Raw.class)
+                    .withStringMatch(EventFilterPayload.StringProperty.RAW_RAW, "a\"b")));
+    assertNull(esc.getFastMatcherLiterals());
+
+    assertNull(new EventFilter().matchAny().getFastMatcherLiterals());
+  }
+
+  @Test
+  public void testFastMatcherBytes() throws Exception {
+    FastMatcher m =
+        new FastMatcher()
+            .withPattern("^caf\u00e9")
+            .withPattern("\ud83d\ude80$")
+            .withLiteral("picard")
+            .withLiteral("\ufffd");
+    String[] inputs =
+        new String[] {
+          "caf\u00e9 picard",
+          " caf\u00e9",
+          "launch \ud83d\ude80",
+          "\ud83d\ude80 launch",
+          "pic\u00e9ard",
+          "worf",
+          ""
+        };
+    for (String i : inputs) {
+      assertEquals(m.matches(i), m.matchesBytes(i.getBytes(StandardCharsets.UTF_8)));
+    }
+    assertTrue(m.matchesBytes("caf\u00e9 picard".getBytes(StandardCharsets.UTF_8)));
+    assertFalse(m.matchesBytes(" caf\u00e9".getBytes(StandardCharsets.UTF_8)));
+    assertFalse(m.matchesBytes(null));
+
+    // Malformed sequences decode as replacement characters
+    byte[][] malformed =
+        new byte[][] {
+          {'a', (byte) 0xc3},
+          {(byte) 0xe2, (byte) 0x82, 'x'},
+          {(byte) 0xed, (byte) 0xa0, (byte) 0x80}
+        };
+    for (byte[] b : malformed) {
+      assertEquals(m.matches(new String(b, StandardCharsets.UTF_8)), m.matchesBytes(b));
+      assertTrue(m.matchesBytes(b));
+    }
+    assertFalse(m.matchesBytes(new byte[] {'w', 'o', 'r', 'f'}));
+  }
+
+  @Test
+  public void testFastMatcherManyPatterns() throws Exception {
+    FastMatcher m = new FastMatcher();
+    for (int i = 0; i < 100; i++) {
+      m = m.withLiteral(String.format("k%03d;", i));
+    }
+    assertEquals(100, m.size());
+
+    // Each pattern is counted once per input, on either side of the 64 pattern boundary
+    String input = "k000;k063;k064;k099;k000;k063;k064;k099;";
+    assertTrue(m.matches(input));
+    assertTrue(m.matchesBytes(input.getBytes(StandardCharsets.UTF_8)));
+    assertFalse(m.matches("k100;"));
+    long[] expect = new long[100];
+    expect[0] = 2L;
+    expect[63] = 2L;
+    expect[64] = 2L;
+    expect[99] = 2L;
+    assertArrayEquals(expect, m.getHitCounts());
+  }
+}
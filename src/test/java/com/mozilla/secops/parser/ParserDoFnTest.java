@@ -0,0 +1,121 @@
+package com.mozilla.secops.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
+import org.apache.beam.sdk.metrics.DistributionResult;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricQueryResults;
+import org.apache.beam.sdk.metrics.MetricResult;
+import org.apache.beam.sdk.metrics.MetricsFilter;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.PCollection;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ParserDoFnTest {
+  public ParserDoFnTest() {}
+
+  @Rule public final transient TestPipeline pipeline = TestPipeline.create();
+
+  private static final String OPENSSH_BUF =
+      "Sep 18 22:15:38 emit-bastion sshd[2644]: Accepted publickey for riker from "
+          + "127.0.0.1 port 58530 ssh2: RSA SHA256:dd/em2J1ZGnTBLj7ArlGAhz1RlzmnMZQ6nhDUELjyNo";
+
+  private long getCounter(PipelineResult result, String name) {
+    MetricQueryResults q =
+        result
+            .metrics()
+            .queryMetrics(
+                MetricsFilter.builder()
+                    .addNameFilter(MetricNameFilter.named(ParserDoFn.class, name))
+                    .build());
+    long ret = 0;
+    for (MetricResult<Long> r : q.getCounters()) {
+      ret += r.getAttempted();
+    }
+    return ret;
+  }
+
+  private DistributionResult getDistribution(PipelineResult result, String name) {
+    MetricQueryResults q =
+        result
+            .metrics()
+            .queryMetrics(
+                MetricsFilter.builder()
+                    .addNameFilter(MetricNameFilter.named(ParserDoFn.class, name))
+                    .build());
+    for (MetricResult<DistributionResult> r : q.getDistributions()) {
+      return r.getAttempted();
+    }
+    return null;
+  }
+
+  @Test
+  public void testParserDoFnMetrics() throws Exception {
+    EventFilter filter = new EventFilter();
+    filter.addRule(new EventFilterRule().wantSubtype(Payload.PayloadType.OPENSSH));
+    ParserCfg cfg = new ParserCfg();
+    cfg.setParserFastMatcher("e");
+
+    PCollection<Event> events =
+        pipeline
+            .apply(Create.of(OPENSSH_BUF, OPENSSH_BUF, "test", "picard", "riker"))
+            .apply(ParDo.of(new ParserDoFn().withConfiguration(cfg).withInlineEventFilter(filter)));
+    PAssert.that(events.apply(Count.globally())).containsInAnyOrder(2L);
+
+    PipelineResult result = pipeline.run();
+    result.waitUntilFinish();
+
+    assertEquals(5L, getCounter(result, ParserDoFn.METRIC_EVENTS_IN));
+    assertEquals(1L, getCounter(result, ParserDoFn.METRIC_FAST_MATCHER_REJECTS));
+    assertEquals(4L, getCounter(result, ParserDoFn.METRIC_FAST_MATCHER_HITS_PREFIX + "0"));
+    assertEquals(2L, getCounter(result, ParserDoFn.METRIC_PARSED_PREFIX + "openssh"));
+    assertEquals(2L, getCounter(result, ParserDoFn.METRIC_PARSED_PREFIX + "raw"));
+    assertEquals(2L, getCounter(result, ParserDoFn.METRIC_RAW_FALLTHROUGH));
+    assertEquals(2L, getCounter(result, ParserDoFn.METRIC_INLINE_FILTER_REJECTS));
+    assertEquals(0L, getCounter(result, ParserDoFn.METRIC_EVENTS_IGNORED));
+    assertEquals(
+        2L, getDistribution(result, ParserDoFn.METRIC_PARSE_TIME_PREFIX + "openssh").getCount());
+    assertEquals(2L, getDistribution(result, ParserDoFn.METRIC_EVENT_LAG).getCount());
+  }
+
+  @Test
+  public void testByteParserDoFn() throws Exception {
+    EventFilter filter = new EventFilter();
+    filter.addRule(new EventFilterRule().wantSubtype(Payload.PayloadType.OPENSSH));
+    ParserCfg cfg = new ParserCfg();
+    cfg.setParserFastMatcher("e");
+
+    byte[] buf = OPENSSH_BUF.getBytes(StandardCharsets.UTF_8);
+    PCollection<Event> events =
+        pipeline
+            .apply(
+                Create.of(
+                        buf,
+                        buf,
+                        "test".getBytes(StandardCharsets.UTF_8),
+                        "picard".getBytes(StandardCharsets.UTF_8),
+                        "riker".getBytes(StandardCharsets.UTF_8))
+                    .withCoder(ByteArrayCoder.of()))
+            .apply(
+                ParDo.of(
+                    new ByteParserDoFn().withConfiguration(cfg).withInlineEventFilter(filter)));
+    PAssert.that(events.apply(Count.globally())).containsInAnyOrder(2L);
+
+    PipelineResult result = pipeline.run();
+    result.waitUntilFinish();
+
+    assertEquals(5L, getCounter(result, ParserDoFn.METRIC_EVENTS_IN));
+    assertEquals(1L, getCounter(result, ParserDoFn.METRIC_FAST_MATCHER_REJECTS));
+    assertEquals(4L, getCounter(result, ParserDoFn.METRIC_FAST_MATCHER_HITS_PREFIX + "0"));
+    assertEquals(2L, getCounter(result, ParserDoFn.METRIC_PARSED_PREFIX + "openssh"));
+    assertEquals(2L, getCounter(result, ParserDoFn.METRIC_INLINE_FILTER_REJECTS));
+  }
+}
@@ -1,12 +1,20 @@
 package com.mozilla.secops.parser;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.maxmind.geoip2.model.CityResponse;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.joda.time.DateTime;
 import org.junit.Test;
 
@@ -152,6 +160,59 @@ public class ParserTest {
     assertEquals("emit-bastion", n.getObject());
   }
 
+  @Test
+  public void testOpenSSHTokenizer() throws Exception {
+    // Tokenizer results should be identical to the regular expressions it replaces
+    Pattern re = Pattern.compile("^" + Parser.SYSLOG_TS_RE + " \\S+ \\S*sshd\\[\\d+\\]: .+");
+    Pattern authRe =
+        Pattern.compile(
+            "^.* (\\S+) sshd\\[\\d+\\]: Accepted (\\S+) for (\\S+) from (\\S+) port (\\d+).*");
+    String[] lines =
+        new String[] {
+          "Sep 18 22:15:38 emit-bastion sshd[2644]: Accepted publickey for riker from 127.0.0.1 port 1",
+          "Feb  8 2:5:8 emit-bastion sshd[2644]: Accepted password for riker from 127.0.0.1 port 1 x",
+          "Feb 8 22:15:38 emit-bastion /usr/sbin/sshd[2644]: Accepted password for riker from "
+              + "127.0.0.1 port 1",
+          "Feb 8 22:15:38 emit-bastion sshd[2644]: sshd[1]: Accepted password for riker from "
+              + "127.0.0.1 port 1",
+          "Feb 8 22:15:38 emit-bastion sshd[2644]: x h sshd[1]: Accepted password for worf from "
+              + "127.0.0.1 port 1",
+          "Feb 8 22:15:38 emit-bastion sshd[2644]: Accepted password for riker from 127.0.0.1 port x",
+          "Feb 8 22:15:38 emit-bastion sshd[2644]: Accepted password  for riker from 127.0.0.1 port 1",
+          "Feb 8 22:15:38 emit-bastion sshd[2644]: Connection closed by 127.0.0.1 port 58530",
+          "Feb 8 22:15:38 emit-bastion sshd[2644]: Accepted\npassword for riker from 127.0.0.1 port 1",
+          "Feb 8 22:15:38 emit-bastion sshd[2644]: ",
+          "Feb 8 22:15:38 emit-bastion sshd[]: Accepted password for riker from 127.0.0.1 port 1",
+          "Feb 8 22:15:38 emit-bastion sshd[2644] Accepted password for riker from 127.0.0.1 port 1",
+          "Feb 8 22:15:38 emit-bastion  sshd[2644]: Accepted password for riker from 127.0.0.1 port 1",
+          "Feb   8 22:15:38 emit-bastion sshd[2644]: Accepted password for riker from 127.0.0.1 port 1",
+          "Feb 8 122:15:38 emit-bastion sshd[2644]: Accepted password for riker from 127.0.0.1 port 1",
+          "Feb 8 22:15:38 emit-bastion cron[2644]: test",
+          "test"
+        };
+
+    Parser p = new Parser();
+    for (String l : lines) {
+      Event e = p.parse(l);
+      if (!re.matcher(l).matches()) {
+        assertEquals(l, Payload.PayloadType.RAW, e.getPayloadType());
+        continue;
+      }
+      assertEquals(l, Payload.PayloadType.OPENSSH, e.getPayloadType());
+      OpenSSH o = e.getPayload();
+      Matcher mat = authRe.matcher(l);
+      if (!mat.matches()) {
+        assertNull(l, o.getUser());
+        assertNull(l, o.getSourceAddress());
+        continue;
+      }
+      assertEquals(l, mat.group(2), o.getAuthMethod());
+      assertEquals(l, mat.group(3), o.getUser());
+      assertEquals(l, mat.group(4), o.getSourceAddress());
+      assertEquals(l, mat.group(1), e.getNormalized().getObject());
+    }
+  }
+
   @Test
   public void testOpenSSHStackdriver() throws Exception {
     String buf =
@@ -525,6 +586,40 @@ public class ParserTest {
     assertNotNull(p.parse("picard test"));
   }
 
+  @Test
+  public void testParseLazyPayloadDecoding() throws Exception {
+    String buf =
+        "Sep 18 22:15:38 emit-bastion sshd[2644]: Accepted publickey for riker from "
+            + "127.0.0.1 port 58530 ssh2: RSA SHA256:dd/em2J1ZGnTBLj7ArlGAhz1RlzmnMZQ6nhDUELjyNo";
+    ParserCfg cfg = new ParserCfg();
+    cfg.setLazyPayloadDecoding(true);
+    Parser p = new Parser(cfg);
+
+    Event e = p.parse(buf);
+    assertNotNull(e);
+    assertFalse(e.isPayloadDecoded());
+    assertEquals(Payload.PayloadType.OPENSSH, e.getPayloadType());
+    assertFalse(e.isPayloadDecoded());
+
+    EventFilter filter = new EventFilter();
+    filter.addRule(new EventFilterRule().wantSubtype(Payload.PayloadType.RAW));
+    assertFalse(filter.matches(e));
+    assertFalse(e.isPayloadDecoded());
+
+    Normalized n = e.getNormalized();
+    assertTrue(e.isPayloadDecoded());
+    assertTrue(n.isOfType(Normalized.Type.AUTH));
+    assertEquals("riker", n.getSubjectUser());
+    OpenSSH o = e.getPayload();
+    assertEquals("riker", o.getUser());
+
+    Event d = new Parser().parse(buf);
+    assertTrue(d.isPayloadDecoded());
+    OpenSSH od = d.getPayload();
+    assertEquals(od.getAuthMethod(), o.getAuthMethod());
+    assertEquals(od.getSourceAddress(), o.getSourceAddress());
+  }
+
   @Test
   public void testHTTPMultiAddressSelector() throws Exception {
     ParserCfg cfg = new ParserCfg();
@@ -591,6 +686,16 @@ public class ParserTest {
 
     result = Parser.parseXForwardedFor("0.0.0.0, 1.2.3.999");
     assertNull(result);
+
+    result = Parser.parseXForwardedFor("::1,2001:db8::1, 1.1.1.1");
+    assertEquals(3, result.length);
+    assertEquals("::1", result[0]);
+    assertEquals("2001:db8::1", result[1]);
+    assertEquals("1.1.1.1", result[2]);
+
+    assertNull(Parser.parseXForwardedFor("0.0.0.0,  1.1.1.1"));
+    assertNull(Parser.parseXForwardedFor("0.0.0.0,,1.1.1.1"));
+    assertNull(Parser.parseXForwardedFor(", 1.1.1.1"));
   }
 
   @Test
@@ -1003,6 +1108,48 @@ public class ParserTest {
     assertEquals("216.160.83.56", n.getSourceAddress());
   }
 
+  @Test
+  public void testApacheCombinedTokenizer() {
+    // Tokenizer results should be identical to the regular expression it replaces
+    Pattern re =
+        Pattern.compile(
+            "^\"([^\"]+)\" - (\\S+) \\[(\\d{1,2}/\\S{3}/\\d{4}:\\d{1,2}:\\d{1,2}:\\d{1,2} "
+                + "[^\\]]+)\\] \"([^\"]+)\" (\\d+) (\\d+|-) \"([^\"]+)\" \"([^\"]+)\"$");
+    String[] lines =
+        new String[] {
+          "\"216.160.83.56\" - - [19/Mar/2019:14:52:39 -0500] \"GET / HTTP/1.1\" 200 3697 \"-\" \"-\"",
+          "\"-\" - riker [1/Mar/2019:4:2:9 +0000] \"GET /?a=b HTTP/1.1\" 404 - \"r\" \"ua \"",
+          "\"216.160.83.56\" - - [19/Mar/2019:14:52:39 -0500] \"GET / HTTP/1.1\" 200 3697 \"-\" \"-\" ",
+          "\"216.160.83.56\" - - [19/Mar/2019:14:52:39] \"GET / HTTP/1.1\" 200 3697 \"-\" \"-\"",
+          "\"216.160.83.56\" - - [19/March/2019:14:52:39 -0500] \"GET / HTTP/1.1\" 200 3697 \"-\" \"-\"",
+          "\"216.160.83.56\" - - [119/Mar/2019:14:52:39 -0500] \"GET / HTTP/1.1\" 200 3697 \"-\" \"-\"",
+          "\"216.160.83.56\" -  - [19/Mar/2019:14:52:39 -0500] \"GET / HTTP/1.1\" 200 3697 \"-\" \"-\"",
+          "\"216.160.83.56\" - - [19/Mar/2019:14:52:39 -0500] \"\" 200 3697 \"-\" \"-\"",
+          "\"216.160.83.56\" - - [19/Mar/2019:14:52:39 -0500] \"GET / HTTP/1.1\" 200 -- \"-\" \"-\"",
+          "\"216.160.83.56\" - - [19/Mar/2019:14:52:39 -0500] \"GET / HTTP/1.1\" x 3697 \"-\" \"-\"",
+          "\"216.160.83.56\" - - [19/Mar/2019:14:52:39 -0500] \"GET / HTTP/1.1\" 200 3697 \"-\"",
+          "test"
+        };
+
+    Parser p = new Parser();
+    for (String l : lines) {
+      Event e = p.parse(l);
+      Matcher mat = re.matcher(l);
+      if (!mat.matches()) {
+        assertEquals(l, Payload.PayloadType.RAW, e.getPayloadType());
+        continue;
+      }
+      assertEquals(l, Payload.PayloadType.APACHE_COMBINED, e.getPayloadType());
+      ApacheCombined d = e.getPayload();
+      assertEquals(l, mat.group(1).equals("-") ? null : mat.group(1), d.getSourceAddress());
+      assertEquals(l, mat.group(2).equals("-") ? null : mat.group(2), d.getRemoteUser());
+      assertEquals(l, mat.group(4), d.getRequest());
+      assertEquals(l, new Integer(mat.group(5)), d.getStatus());
+      assertEquals(l, mat.group(7).equals("-") ? null : mat.group(7), d.getReferrer());
+      assertEquals(l, mat.group(8).equals("-") ? null : mat.group(8), d.getUserAgent());
+    }
+  }
+
   @Test
   public void testParseApacheCombinedXffUser() {
     String buf =
@@ -1082,6 +1229,107 @@ public class ParserTest {
     assertEquals("2019-02-15T16:56:33.121Z", e.getTimestamp().toString());
   }
 
+  @Test
+  public void testMozlogFieldsTree() throws Exception {
+    // Payload parsers decode the Mozlog fields from the tree shared by the parser
+    String buf =
+        "{\"EnvVersion\": \"2.0\", \"Severity\": 6, \"fields\": {\"secevent_version\": "
+            + "\"secevent.model.1\", \"action\": \"loginFailure\", \"account_id\": "
+            + "\"q@the-q-continuum\", \"timestamp\": \"1970-01-01T00:00:00+00:00\"}, \"Hostname\": "
+            + "\"test\", \"Pid\": 62312, \"Time\": \"2018-07-04T15:49:46Z\", \"Logger\": "
+            + "\"secevent\", \"Type\": \"app.log\", \"Timestamp\": 1530719386349480000}";
+    Parser p = getTestParser();
+    Event e = p.parse(buf);
+    assertNotNull(e);
+    assertEquals(Payload.PayloadType.SECEVENT, e.getPayloadType());
+    assertEquals("test", e.getMozlog().getHostname());
+    SecEvent d = e.getPayload();
+    assertEquals("q@the-q-continuum", d.getSecEventData().getActorAccountId());
+
+    // Mozlog without fields
+    buf =
+        "{\"EnvVersion\": \"2.0\", \"Severity\": 6, \"Hostname\": \"test\", "
+            + "\"Logger\": \"test\", \"Type\": \"app.log\"}";
+    e = p.parse(buf);
+    assertNotNull(e);
+    assertEquals(Payload.PayloadType.RAW, e.getPayloadType());
+    assertEquals("test", e.getMozlog().getHostname());
+    Raw r = e.getPayload();
+    assertEquals("null", r.getRaw());
+  }
+
+  private static JsonNode eventTree(Event e) throws Exception {
+    // Event ID is unique per parse, and the timestamp of events without a timestamp in the input
+    // defaults to creation time
+    ObjectNode ret = (ObjectNode) new ObjectMapper().readTree(e.toJSON());
+    ret.remove("id");
+    ret.remove("timestamp");
+    return ret;
+  }
+
+  @Test
+  public void testParseBytes() throws Exception {
+    String[] bufs =
+        new String[] {
+          // Stackdriver textPayload
+          "{\"insertId\":\"f8p4mz1a3ldcos1xz\",\"labels\":{\"compute.googleapis.com/resource_"
+              + "name\":\"emit-bastion\"},\"logName\":\"projects/sandbox-00/logs/syslog\",\"resource"
+              + "\":{\"labels\":{\"project_id\":\"sandbox-00\"},\"type\":\"gce_instance\"},\""
+              + "textPayload\":\"Sep 18 22:15:38 emit-bastion sshd[2644]: Accepted publickey for riker"
+              + " from 127.0.0.1 port 58530 ssh2: RSA SHA256:dd/AAAAAAAAAAAAAAAAAAAAAAAAAAA\",\""
+              + "timestamp\":\"2018-09-18T22:15:38Z\"}",
+          // Stackdriver jsonPayload containing Mozlog
+          "{\"insertId\":\"AAAAAAAAAAAAAAA\",\"jsonPayload\":{\"EnvVersion\":2,\"Fields\":{\"msg\""
+              + ":\"successful login of spock@mozilla.com from 216.160.83.56 using \\\"Mozilla/5.0\\\", "
+              + "authenticated by Bugzilla::Auth::Login::CGI\",\"remote_ip\":\"216.160.83.56\"},"
+              + "\"Hostname\":\"ip-172.us-west-2.compute.internal\",\"Logger\":\"CEREAL\","
+              + "\"Pid\":\"282\",\"Severity\":5,\"Timestamp\":1.548956727e+18,\"Type\":\"audit\"},"
+              + "\"logName\":\"projects/prod/logs/docker.bugzilla\",\"resource\":{\"labels\":"
+              + "{\"project_id\":\"prod\"},\"type\":\"aws_ec2_instance\"},\""
+              + "timestamp\":\"2019-01-31T17:45:27.478007784Z\"}",
+          // Stackdriver jsonPayload no payload parser matches
+          "{\"insertId\":\"AAAAAAAAAAAAAAA\",\"jsonPayload\":{\"value\":\"caf\u00e9\"},"
+              + "\"logName\":\"projects/prod/logs/test\",\"resource\":{\"labels\":"
+              + "{\"project_id\":\"prod\"},\"type\":\"aws_ec2_instance\"}}",
+          // Mozlog
+          "{\"EnvVersion\": \"2.0\", \"Severity\": 6, \"fields\": {\"secevent_version\": "
+              + "\"secevent.model.1\", \"action\": \"loginFailure\", \"account_id\": "
+              + "\"q@the-q-continuum\", \"timestamp\": \"1970-01-01T00:00:00+00:00\"}, \"Hostname\": "
+              + "\"test\", \"Logger\": \"secevent\", \"Type\": \"app.log\"}",
+          // JSON that is not encapsulated
+          "  {\"secevent_version\":\"secevent.model.1\",\"action\":\"loginFailure\""
+              + ",\"account_id\":\"q@the-q-continuum\",\"timestamp\":\"1970-01-01T00:00:00+00:00\"}",
+          "{\"value\": \"caf\u00e9 \ud83d\ude80\"}",
+          "Sep 18 22:15:38 emit-bastion sshd[2644]: Accepted publickey for riker from "
+              + "127.0.0.1 port 58530 ssh2: RSA SHA256:dd/em2J1ZGnTBLj7ArlGAhz1RlzmnMZQ6nhDUELjyNo",
+          "{invalid",
+          "caf\u00e9",
+          ""
+        };
+    Parser p = getTestParser();
+    for (String buf : bufs) {
+      for (boolean lazy : new boolean[] {false, true}) {
+        Event e = p.parse(buf, lazy);
+        Event b = p.parseBytes(buf.getBytes(StandardCharsets.UTF_8), lazy);
+        assertNotNull(e);
+        assertNotNull(b);
+        assertEquals(e.getPayloadType(), b.getPayloadType());
+        if (e.getPayloadType() == Payload.PayloadType.SECEVENT) {
+          // Timestamp is derived from the payload
+          assertEquals(e.getTimestamp(), b.getTimestamp());
+        }
+        assertEquals(eventTree(e), eventTree(b));
+        if (e.getPayloadType() == Payload.PayloadType.RAW
+            && e.getStackdriverProject() != null
+            && e.getMozlog() == null) {
+          // The input string is created from the bytes only when it is required
+          assertEquals(buf, ((Raw) b.getPayload()).getRaw());
+        }
+      }
+    }
+    assertEquals(Payload.PayloadType.RAW, p.parseBytes(null).getPayloadType());
+  }
+
   @Test
   public void testParseSecEvent() {
     String buf =
@@ -1111,6 +1359,21 @@ public class ParserTest {
     assertNotNull(resp);
     assertEquals("US", resp.getCountry().getIsoCode());
     assertEquals("Milton", resp.getCity().getName());
+
+    GeoIP.Location loc = p.geoIpLocation("216.160.83.56");
+    assertNotNull(loc);
+    assertEquals("US", loc.getCountry());
+    assertEquals("Milton", loc.getCity());
+    // Cached lookups return the same record
+    assertTrue(loc == p.geoIpLocation("216.160.83.56"));
+    // IPv4 mapped IPv6 addresses share the cache entry of the IPv4 address
+    assertTrue(loc == p.geoIpLocation("::ffff:216.160.83.56"));
+    assertEquals("Milton", p.geoIp("::ffff:216.160.83.56").getCity().getName());
+
+    assertNull(p.geoIpLocation("10.0.0.1"));
+    assertNull(p.geoIpLocation("10.0.0.1"));
+    assertNull(p.geoIpLocation("not-an-address"));
+    assertNull(p.geoIp("not-an-address"));
   }
 
   @Test
@@ -1178,4 +1441,23 @@ public class ParserTest {
     assertEquals(m.getHostname(), m2.getHostname());
     assertEquals(m.getLogger(), m2.getLogger());
   }
+
+  @Test
+  public void testParseRestrictedPayloadTypes() throws Exception {
+    String buf =
+        "Sep 18 22:15:38 emit-bastion sshd[2644]: Accepted publickey for riker from "
+            + "127.0.0.1 port 58530 ssh2: RSA SHA256:dd/em2J1ZGnTBLj7ArlGAhz1RlzmnMZQ6nhDUELjyNo";
+    ParserCfg cfg = new ParserCfg();
+    cfg.setPayloadTypes(
+        new ArrayList<Payload.PayloadType>(Arrays.asList(Payload.PayloadType.CLOUDTRAIL)));
+    Parser p = new Parser(cfg);
+    Event e = p.parse(buf);
+    assertNotNull(e);
+    assertEquals(Payload.PayloadType.RAW, e.getPayloadType());
+
+    p = new Parser();
+    e = p.parse(buf);
+    assertNotNull(e);
+    assertEquals(Payload.PayloadType.OPENSSH, e.getPayloadType());
+  }
 }
@@ -0,0 +1,63 @@
+package com.mozilla.secops.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import org.junit.Test;
+
+public class PayloadRouterTest {
+  public PayloadRouterTest() {}
+
+  @Test
+  public void testRouteSyslog() throws Exception {
+    String buf =
+        "Sep 18 22:15:38 emit-bastion sshd[2644]: Accepted publickey for riker from "
+            + "127.0.0.1 port 58530 ssh2: RSA SHA256:dd/em2J1ZGnTBLj7ArlGAhz1RlzmnMZQ6nhDUELjyNo";
+    ParserState state = new ParserState(new Parser());
+    List<Payload.PayloadType> r = PayloadRouter.route(buf, state);
+    assertEquals(2, r.size());
+    assertEquals(Payload.PayloadType.OPENSSH, r.get(0));
+    assertEquals(Payload.PayloadType.RAW, r.get(1));
+
+    Event e = new Parser().parse(buf);
+    assertNotNull(e);
+    assertEquals(Payload.PayloadType.OPENSSH, e.getPayloadType());
+  }
+
+  @Test
+  public void testRouteNotJson() throws Exception {
+    ParserState state = new ParserState(new Parser());
+    List<Payload.PayloadType> r = PayloadRouter.route("test", state);
+    assertEquals(2, r.size());
+    assertEquals(Payload.PayloadType.APACHE_COMBINED, r.get(0));
+    assertEquals(Payload.PayloadType.RAW, r.get(1));
+  }
+
+  @Test
+  public void testRouteLogEntry() throws Exception {
+    String buf =
+        "{\"protoPayload\":{\"@type\":\"type.googleapis.com/google.cloud.audit.AuditLog\"},"
+            + "\"resource\":{\"type\":\"gce_instance\"}}";
+    ParserState state = new ParserState(new Parser());
+    state.setLogEntryHint(new ObjectMapper().readTree(buf));
+    List<Payload.PayloadType> r = PayloadRouter.route(buf, state);
+    assertEquals(1, r.size());
+    assertEquals(Payload.PayloadType.GCPAUDIT, r.get(0));
+  }
+
+  @Test
+  public void testRouteMozlog() throws Exception {
+    String buf =
+        "{\"Timestamp\": 1530719386349480000, \"Logger\": \"fxa-auth-server\", "
+            + "\"Type\": \"request.summary\", \"Fields\": {\"errno\": 0}}";
+    ParserState state = new ParserState(new Parser());
+    Mozlog m = Mozlog.fromJSON(buf);
+    assertNotNull(m);
+    state.setMozlogHint(m);
+    List<Payload.PayloadType> r = PayloadRouter.route(m.getFieldsAsJson(), state);
+    assertTrue(r.contains(Payload.PayloadType.FXAAUTH));
+  }
+}
@@ -0,0 +1,96 @@
+package com.mozilla.secops.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.Test;
+
+public class TimestampDecoderTest {
+  public TimestampDecoderTest() {}
+
+  private static final DateTimeFormatter joda = ISODateTimeFormat.dateTimeParser();
+
+  private static void assertSame(TimestampDecoder d, String in) {
+    DateTime expect = joda.parseDateTime(in);
+    DateTime got = d.parseISO8601(in);
+    assertEquals(in, expect.getMillis(), got.getMillis());
+    assertEquals(in, expect.getZone(), got.getZone());
+  }
+
+  @Test
+  public void testFixedLayouts() throws Exception {
+    TimestampDecoder d = new TimestampDecoder();
+    String[] datelist = {
+      "2018-09-28T18:55:12",
+      "2018-09-28T18:55:12Z",
+      "2018-09-28T18:55:12.4",
+      "2018-09-28T18:55:12.46Z",
+      "2018-09-28T18:55:12.469",
+      "2018-09-28T18:55:12.469Z",
+      "2018-09-28T18:55:12,469Z",
+      "2018-09-28T18:55:12.469+00:00",
+      "2018-09-28T18:55:12.469-07:00",
+      "2018-09-28T18:55:12.469+0530",
+      "2018-09-28T18:55:12.469373944Z",
+      "2018-09-28T18:55:12.469373944+00:00",
+      "2016-02-29T00:00:00Z",
+      "2000-02-29T23:59:59.999Z",
+      "1970-01-01T00:00:00Z",
+      "1969-12-31T23:59:59.999Z",
+      "0001-01-01T00:00:00Z",
+      "9999-12-31T23:59:59Z"
+    };
+    for (String t : datelist) {
+      assertSame(d, t);
+      // Decode again using the memoized second
+      assertSame(d, t);
+    }
+  }
+
+  @Test
+  public void testFallback() throws Exception {
+    TimestampDecoder d = new TimestampDecoder();
+    String[] datelist = {"2018-09-28", "2018-09-28T18:55", "2018-W39-5T18:55:12Z", "2018-271"};
+    for (String t : datelist) {
+      assertSame(d, t);
+    }
+
+    String[] invalid = {
+      "", "test", "2018-13-28T18:55:12Z", "2018-02-29T18:55:12Z", "2018-09-28T18:55:60Z"
+    };
+    for (String t : invalid) {
+      try {
+        d.parseISO8601(t);
+        fail("expected exception for " + t);
+      } catch (IllegalArgumentException exc) {
+        // pass
+      }
+    }
+  }
+
+  @Test
+  public void testRandomTimestamps() throws Exception {
+    TimestampDecoder d = new TimestampDecoder();
+    Random r = new Random(1);
+    for (int i = 0; i < 10000; i++) {
+      long millis = (r.nextLong() % 8000000000000L);
+      DateTime t = new DateTime(millis, DateTimeZone.UTC);
+      assertSame(d, t.toString());
+      assertSame(d, t.withZone(DateTimeZone.forOffsetHoursMinutes(-3, -30)).toString());
+    }
+  }
+
+  @Test
+  public void testSharedSecond() throws Exception {
+    TimestampDecoder d = new TimestampDecoder();
+    assertEquals(1538160912001L, d.parseISO8601("2018-09-28T18:55:12.001Z").getMillis());
+    assertEquals(1538160912999L, d.parseISO8601("2018-09-28T18:55:12.999Z").getMillis());
+    assertEquals(1538160913000L, d.parseISO8601("2018-09-28T18:55:13Z").getMillis());
+    assertEquals(1538160912000L, d.parseISO8601("2018-09-28T18:55:12Z").getMillis());
+  }
+}